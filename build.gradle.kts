@@ -18,4 +18,5 @@ dependencies {
 
 tasks.test {
     useJUnitPlatform()
+    systemProperty("banking.audit.directory", layout.buildDirectory.dir("test-audit").get().asFile.path + "/")
 }
\ No newline at end of file
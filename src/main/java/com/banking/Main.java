@@ -1,24 +1,82 @@
 package com.banking;
 
+import com.banking.api.HttpApiServer;
+import com.banking.batch.BatchRunner;
 import com.banking.enums.AccountType;
+import com.banking.enums.Frequency;
 import com.banking.exceptions.InsufficientFundsException;
 import com.banking.exceptions.InvalidAccountException;
 import com.banking.models.*;
 import com.banking.services.*;
+import com.banking.utils.DateCodec;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.text.SimpleDateFormat;
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+import java.time.YearMonth;
 import java.util.*;
 
 public class Main {
     private static final Logger logger = LogManager.getLogger(Main.class);
     private static final Scanner scanner = new Scanner(System.in);
-    private static final BankService bankService = new BankService();
-    private static final Random random = new Random();
+    private static BankService bankService;
+    private static StandingOrderService standingOrderService;
 
 
+    // The database is opened on first use, so modes that work elsewhere (--replica, sharded --http) or only read
+    // files (--audit-dump) never load, compact or clean up the one in database/.
+    private static synchronized BankService bankService() {
+        if (bankService == null) {
+            bankService = new BankService();
+        }
+        return bankService;
+    }
+
+    private static synchronized StandingOrderService standingOrderService() {
+        if (standingOrderService == null) {
+            standingOrderService = new StandingOrderService(bankService());
+        }
+        return standingOrderService;
+    }
+
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--http")) {
+            startHttpApi(args.length > 1 ? Integer.parseInt(args[1]) : 8080);
+            return;
+        }
+        if (args.length > 1 && args[0].equals("--statements")) {
+            runMonthEndStatements(YearMonth.parse(args[1]), args.length > 2 ? args[2] : "statements/" + args[1],
+                    args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors(),
+                    args.length > 4 && args[4].equals("bundled"));
+            return;
+        }
+        if (args.length > 1 && args[0].equals("--replica")) {
+            startReplica(args[1], args.length > 2 ? Integer.parseInt(args[2]) : 8080);
+            return;
+        }
+        if (args.length > 1 && args[0].equals("--audit-dump")) {
+            dumpAudit(args[1], args.length > 2 ? args[2] : "1970-01-01", args.length > 3 ? args[3] : "9999-12-31",
+                    args.length > 4 ? args[4] : null);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--reconcile")) {
+            runReconciliation(args.length > 1 ? args[1] : "reconciliation.csv",
+                    args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors());
+            return;
+        }
+        if (args.length > 1 && args[0].equals("--backup")) {
+            runBackup(args[1]);
+            return;
+        }
+        if (args.length > 1 && args[0].equals("--batch")) {
+            runBatch(args[1], args.length > 2 ? args[2] : args[1] + ".results.csv",
+                    args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors());
+            return;
+        }
+        standingOrderService().start();
+        startReplicationServer();
         boolean exit = false;
         while (!exit) {
             displayMainMenu();
@@ -60,6 +118,9 @@ public class Main {
                     listCards();
                     break;
                 case 12:
+                    manageStandingOrders();
+                    break;
+                case 13:
                     exit = true;
                     System.out.println("Exiting the application. Goodbye!");
                     break;
@@ -69,6 +130,142 @@ public class Main {
         }
     }
 
+    // Returns the running server, or null when it could not be started.
+    static HttpApiServer startHttpApi(int port) {
+        try {
+            int shards = Integer.getInteger("banking.shards", 1);
+            BankServiceInterface service;
+            if (shards > 1) {
+                ShardedBankService sharded = new ShardedBankService("database/shards/", shards);
+                new StandingOrderService(sharded).start();
+                service = sharded;
+                if (Integer.getInteger("banking.replicationPort") != null) {
+                    logger.warn("Replication ships a single database and is not started with shards");
+                }
+            } else {
+                standingOrderService().start();
+                service = bankService();
+                startReplicationServer();
+            }
+            HttpApiServer server = new HttpApiServer(service, port);
+            Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+            server.start();
+            System.out.println("HTTP API listening on port " + server.getPort());
+            return server;
+        } catch (IOException e) {
+            System.out.println("Could not start HTTP API: " + e.getMessage());
+            logger.error("Error starting HTTP API: {}", e.getMessage(), e);
+            return null;
+        }
+    }
+
+    // Followers connect with --replica host:port when banking.replicationPort is set on the primary.
+    private static void startReplicationServer() {
+        Integer port = Integer.getInteger("banking.replicationPort");
+        if (port == null) {
+            return;
+        }
+        try {
+            ReplicationServer server = new ReplicationServer(bankService(), port);
+            Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+            server.start();
+        } catch (IOException e) {
+            System.out.println("Could not start replication: " + e.getMessage());
+            logger.error("Error starting replication server: {}", e.getMessage(), e);
+        }
+    }
+
+    private static void startReplica(String primary, int httpPort) {
+        int colon = primary.lastIndexOf(':');
+        ReplicaService replica = new ReplicaService(System.getProperty("banking.replicaPath", "replica/"),
+                primary.substring(0, colon), Integer.parseInt(primary.substring(colon + 1)));
+        replica.start();
+        try {
+            HttpApiServer server = new HttpApiServer(replica, httpPort);
+            Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+            server.start();
+            System.out.println("Replica of " + primary + " serving reads on port " + server.getPort()
+                    + "; POST /replication/promote to take over");
+        } catch (IOException e) {
+            System.out.println("Could not start HTTP API: " + e.getMessage());
+            logger.error("Error starting HTTP API: {}", e.getMessage(), e);
+        }
+    }
+
+    private static void runBatch(String inputPath, String outputPath, int parallelism) {
+        try {
+            new BatchRunner(bankService(), parallelism).run(new File(inputPath), new File(outputPath));
+            System.out.println("Results written to " + outputPath);
+        } catch (IOException e) {
+            System.out.println("Batch failed: " + e.getMessage());
+            logger.error("Error running batch: {}", e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Batch interrupted", e);
+        }
+    }
+
+    // Dates are yyyy-MM-dd and inclusive; without an action every action is written. The audit directory is only
+    // read, so this can run next to the application.
+    private static void dumpAudit(String outputPath, String from, String to, String action) {
+        try {
+            long entries = AuditService.openReadOnly().dump(action, DateCodec.parse(from), DateCodec.parseEndOfDay(to),
+                    new File(outputPath));
+            System.out.println("Wrote " + entries + " audit entries to " + outputPath);
+        } catch (ParseException e) {
+            System.out.println("Invalid date: " + e.getMessage());
+        } catch (IOException e) {
+            System.out.println("Audit dump failed: " + e.getMessage());
+            logger.error("Error dumping audit log: {}", e.getMessage(), e);
+        }
+    }
+
+    private static void runReconciliation(String reportPath, int parallelism) {
+        try {
+            Reconciliation.Report report = new Reconciliation(bankService(), parallelism).run();
+            report.write(new File(reportPath));
+            System.out.println("Reconciled " + report.getAccounts() + " accounts and " + report.getTransactions()
+                    + " transactions: " + report.getMismatches().size() + " mismatches, "
+                    + report.getOrphanTransactionCount() + " orphan transactions, " + report.getOrphanCards().size()
+                    + " orphan cards. Report written to " + reportPath);
+        } catch (IOException e) {
+            System.out.println("Reconciliation failed: " + e.getMessage());
+            logger.error("Error reconciling ledger: {}", e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Reconciliation interrupted", e);
+        }
+    }
+
+    // Backs up database/ while the application is stopped. Only one process may open the database, so a running
+    // application is backed up through its own POST /backups instead.
+    private static void runBackup(String targetPath) {
+        try {
+            long position = new OnlineBackup(bankService()).run(new File(targetPath));
+            System.out.println("Backup written to " + targetPath + " at journal position " + position);
+        } catch (IllegalStateException e) {
+            System.out.println("Backup failed: " + e.getMessage() + ". Use POST /backups on the running application.");
+        } catch (IOException e) {
+            System.out.println("Backup failed: " + e.getMessage());
+            logger.error("Error writing backup: {}", e.getMessage(), e);
+        }
+    }
+
+    private static void runMonthEndStatements(YearMonth month, String outputPath, int parallelism, boolean bundled) {
+        try {
+            StatementRun run = new StatementRun(bankService(), new File(outputPath), month.atDay(1).toString(),
+                    month.atEndOfMonth().toString(), parallelism, bundled);
+            int statements = run.run();
+            System.out.println("Generated " + statements + " statements in " + outputPath);
+        } catch (IOException e) {
+            System.out.println("Statement run failed, rerun to resume: " + e.getMessage());
+            logger.error("Error generating month-end statements: {}", e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Statement run interrupted", e);
+        }
+    }
+
     private static void displayMainMenu() {
         System.out.println("\nWelcome to the Banking Application!");
         System.out.println("1. Create Customer");
@@ -82,7 +279,8 @@ public class Main {
         System.out.println("9. Block/Unblock Card");
         System.out.println("10. Get Balance");
         System.out.println("11. List Cards");
-        System.out.println("12. Exit");
+        System.out.println("12. Standing Orders");
+        System.out.println("13. Exit");
         System.out.print("Enter your choice: ");
     }
 
@@ -95,7 +293,7 @@ public class Main {
         int age = scanner.nextInt();
         scanner.nextLine(); // Consume newline
 
-        bankService.createCustomer(name, surname, age);
+        bankService().createCustomer(name, surname, age);
         System.out.println("Customer created successfully.");
     }
 
@@ -125,7 +323,7 @@ public class Main {
 
         if (type != null) {
             try {
-                bankService.createAccount(customerId, AccountType.valueOf(type));
+                bankService().createAccount(customerId, AccountType.valueOf(type));
                 System.out.println("Account created successfully.");
             } catch (IllegalArgumentException e) {
                 System.out.println("Invalid account type.");
@@ -143,7 +341,7 @@ public class Main {
         String customerId = scanner.nextLine();
 
         try {
-            Customer customer = bankService.getCustomerById(customerId);
+            Customer customer = bankService().getCustomerById(customerId);
             if (customer == null) {
                 System.out.println("Customer not found.");
                 return;
@@ -184,7 +382,7 @@ public class Main {
                     // Transfer
                     System.out.print("Enter destination account ID: ");
                     String destinationAccountId = scanner.nextLine();
-                    Account destinationAccount = bankService.getAccountById(destinationAccountId);
+                    Account destinationAccount = bankService().getAccountById(destinationAccountId);
                     if (destinationAccount == null) {
                         System.out.println("Destination account not found.");
                         return;
@@ -196,7 +394,7 @@ public class Main {
                         System.out.println("Amount must be positive.");
                         return;
                     }
-                    bankService.transfer(account.getAccountId(), destinationAccount.getAccountId(), amount);
+                    bankService().transfer(account.getAccountId(), destinationAccount.getAccountId(), amount);
                     System.out.println("Transfer completed successfully.");
                     break;
                 case 2:
@@ -208,7 +406,7 @@ public class Main {
                         System.out.println("Amount must be positive.");
                         return;
                     }
-                    bankService.withdraw(account.getAccountId(), amount);
+                    bankService().withdraw(account.getAccountId(), amount);
                     System.out.println("Withdrawal completed successfully.");
                     break;
                 case 3:
@@ -220,7 +418,7 @@ public class Main {
                         System.out.println("Amount must be positive.");
                         return;
                     }
-                    bankService.deposit(account.getAccountId(), amount);
+                    bankService().deposit(account.getAccountId(), amount);
                     System.out.println("Deposit completed successfully.");
                     break;
                 default:
@@ -243,11 +441,10 @@ public class Main {
         String endDateStr = scanner.nextLine();
 
         try {
-            SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
-            Date startDate = dateFormat.parse(startDateStr);
-            Date endDate = dateFormat.parse(endDateStr);
+            Date startDate = new Date(DateCodec.parse(startDateStr));
+            Date endDate = new Date(DateCodec.parseEndOfDay(endDateStr));
 
-            BankStatement statement = bankService.generateBankStatement(accountId, startDate, endDate);
+            BankStatement statement = bankService().generateBankStatement(accountId, startDate, endDate);
             displayBankStatement(statement);
         } catch (InvalidAccountException e) {
             System.out.println(e.getMessage());
@@ -259,7 +456,7 @@ public class Main {
     }
 
     private static void listCustomers() {
-        List<Customer> customers = bankService.getAllCustomers();
+        List<Customer> customers = bankService().getAllCustomers();
         if (customers.isEmpty()) {
             System.out.println("No customers found.");
         } else {
@@ -271,7 +468,7 @@ public class Main {
     }
 
     private static void listAccounts() {
-        List<Account> accounts = bankService.getAllAccounts();
+        List<Account> accounts = bankService().getAllAccounts();
         if (accounts.isEmpty()) {
             System.out.println("No accounts found.");
         } else {
@@ -287,7 +484,7 @@ public class Main {
         System.out.print("Enter customer ID: ");
         String customerId = scanner.nextLine();
         try {
-            Customer customer = bankService.getCustomerById(customerId);
+            Customer customer = bankService().getCustomerById(customerId);
             if (customer == null) {
                 System.out.println("Customer not found.");
                 return;
@@ -306,23 +503,20 @@ public class Main {
                 case 1:
                     System.out.print("Enter new name: ");
                     String name = scanner.nextLine();
-                    customer.setName(name);
-                    bankService.updateCustomer(customer);
+                    bankService().updateCustomer(customerId, name, null, null);
                     System.out.println("Customer updated successfully.");
                     break;
                 case 2:
                     System.out.print("Enter new surname: ");
                     String surname = scanner.nextLine();
-                    customer.setSurname(surname);
-                    bankService.updateCustomer(customer);
+                    bankService().updateCustomer(customerId, null, surname, null);
                     System.out.println("Customer updated successfully.");
                     break;
                 case 3:
                     System.out.print("Enter new age: ");
                     int age = scanner.nextInt();
                     scanner.nextLine();
-                    customer.setAge(age);
-                    bankService.updateCustomer(customer);
+                    bankService().updateCustomer(customerId, null, null, age);
                     System.out.println("Customer updated successfully.");
                     break;
                 case 99:
@@ -330,7 +524,7 @@ public class Main {
                     String deleteChoice = scanner.nextLine().toLowerCase();
                     if (deleteChoice.equals("yes")) {
                         if (customer.getAccounts().isEmpty()) {
-                            bankService.deleteCustomer(customerId);
+                            bankService().deleteCustomer(customerId);
                             System.out.println("Customer deleted successfully.");
                         } else {
                             System.out.println("Customer cannot be deleted. They have associated accounts.");
@@ -352,7 +546,7 @@ public class Main {
         System.out.print("Enter customer ID: ");
         String customerId = scanner.nextLine();
         try {
-            Customer customer = bankService.getCustomerById(customerId);
+            Customer customer = bankService().getCustomerById(customerId);
             if (customer == null) {
                 System.out.println("Customer not found.");
                 return;
@@ -398,7 +592,7 @@ public class Main {
                         String deleteChoice = scanner.nextLine().toLowerCase();
                         if (deleteChoice.equals("yes")) {
                             if (account.getBalance() == 0 && account.getCards().isEmpty()) {
-                                bankService.deleteAccount(account.getAccountId());
+                                bankService().deleteAccount(account.getAccountId());
                                 System.out.println("Account deleted successfully.");
                             } else {
                                 System.out.println("Account cannot be deleted. It has non-zero balance or associated cards.");
@@ -421,13 +615,7 @@ public class Main {
 
                 switch (PrimaryAccountChoice) {
                     case 1:
-                        StringBuilder cardNumber = new StringBuilder(String.format("%04d", 1000 + random.nextInt(9000)));
-                        for (int i=0; i<3; i++){
-                            cardNumber.append(String.format("%04d", random.nextInt(9000)));
-                        }
-                        Card newCard = new Card(cardNumber.toString(), new Date(), account);
-                        ((PrimaryAccount) account).addCard(newCard);
-                        bankService.addCard(newCard);
+                        bankService().issueCard(account.getAccountId());
                         System.out.println("Card added successfully.");
                         break;
                     case 2:
@@ -450,8 +638,7 @@ public class Main {
                         }
 
                         Card cardToDelete = cards.get(cardDeleteChoice - 1);
-                        ((PrimaryAccount) account).removeCard(cardToDelete);
-                        bankService.removeCard(cardToDelete); // Add this line to ensure the card is removed from the service
+                        bankService().removeCard(cardToDelete);
                         System.out.println("Card deleted successfully.");
                         break;
                     case 99:
@@ -459,7 +646,7 @@ public class Main {
                         String deleteChoice = scanner.nextLine().toLowerCase();
                         if (deleteChoice.equals("yes")) {
                             if (account.getBalance() == 0 && account.getCards().isEmpty()) {
-                                bankService.deleteAccount(account.getAccountId());
+                                bankService().deleteAccount(account.getAccountId());
                                 System.out.println("Account deleted successfully.");
                             } else {
                                 System.out.println("Account cannot be deleted. It has non-zero balance or associated cards.");
@@ -482,7 +669,7 @@ public class Main {
         System.out.print("Enter customer ID: ");
         String customerId = scanner.nextLine();
         try {
-            Customer customer = bankService.getCustomerById(customerId);
+            Customer customer = bankService().getCustomerById(customerId);
             if (customer == null) {
                 System.out.println("Customer not found.");
                 return;
@@ -535,10 +722,10 @@ public class Main {
             scanner.nextLine(); // Consume newline
 
             if (blockUnblockChoice == 1) {
-                card.block();
+                bankService().setCardBlocked(card.getCardNumber(), true);
                 System.out.println("Card blocked successfully.");
             } else if (blockUnblockChoice == 2) {
-                card.unblock();
+                bankService().setCardBlocked(card.getCardNumber(), false);
                 System.out.println("Card unblocked successfully.");
             } else {
                 System.out.println("Invalid choice.");
@@ -554,7 +741,7 @@ public class Main {
         System.out.print("Enter customer ID: ");
         String customerId = scanner.nextLine();
         try {
-            Customer customer = bankService.getCustomerById(customerId);
+            Customer customer = bankService().getCustomerById(customerId);
             if (customer == null) {
                 System.out.println("Customer not found.");
                 return;
@@ -578,7 +765,7 @@ public class Main {
 
     private static void listCards() {
         try {
-            List<Account> accounts = bankService.getAllAccounts();
+            List<Account> accounts = bankService().getAllAccounts();
             if (accounts.isEmpty()) {
                 System.out.println("No accounts found.");
                 return;
@@ -607,6 +794,59 @@ public class Main {
     }
 
 
+    private static void manageStandingOrders() {
+        System.out.println("1. Create Standing Order");
+        System.out.println("2. List Standing Orders");
+        System.out.println("3. Cancel Standing Order");
+        System.out.print("Enter your choice: ");
+        int choice = scanner.nextInt();
+        scanner.nextLine(); // Consume newline
+
+        try {
+            switch (choice) {
+                case 1:
+                    listAccounts();
+                    System.out.print("Enter source account ID: ");
+                    String fromAccountId = scanner.nextLine();
+                    System.out.print("Enter destination account ID: ");
+                    String toAccountId = scanner.nextLine();
+                    System.out.print("Enter amount: ");
+                    double amount = scanner.nextDouble();
+                    scanner.nextLine(); // Consume newline
+                    System.out.print("Enter frequency (DAILY, WEEKLY, MONTHLY): ");
+                    Frequency frequency = Frequency.valueOf(scanner.nextLine().trim().toUpperCase());
+                    System.out.print("Enter first run date (yyyy-MM-dd): ");
+                    long firstRun = DateCodec.parse(scanner.nextLine());
+                    StandingOrder order = standingOrderService().createStandingOrder(fromAccountId, toAccountId, amount,
+                            frequency, firstRun);
+                    System.out.println("Standing order created: " + order);
+                    break;
+                case 2:
+                    List<StandingOrder> orders = standingOrderService().getAllStandingOrders();
+                    if (orders.isEmpty()) {
+                        System.out.println("No standing orders found.");
+                    }
+                    for (StandingOrder standingOrder : orders) {
+                        System.out.println(standingOrder);
+                    }
+                    break;
+                case 3:
+                    System.out.print("Enter standing order ID: ");
+                    standingOrderService().cancelStandingOrder(scanner.nextLine());
+                    System.out.println("Standing order cancelled.");
+                    break;
+                default:
+                    System.out.println("Invalid choice.");
+            }
+        } catch (InvalidAccountException e) {
+            System.out.println(e.getMessage());
+            logger.error("Error managing standing orders: {}", e.getMessage(), e);
+        } catch (Exception e) {
+            System.out.println("Error managing standing orders: " + e.getMessage());
+            logger.error("Error managing standing orders: {}", e.getMessage(), e);
+        }
+    }
+
     private static void displayBankStatement(BankStatement statement) {
         System.out.println("Bank Statement ID: " + statement.getStatementId());
         System.out.println("Account ID: " + statement.getAccount().getAccountId());
@@ -0,0 +1,507 @@
+package com.banking.api;
+
+import com.banking.enums.AccountType;
+import com.banking.enums.TransactionType;
+import com.banking.exceptions.InsufficientFundsException;
+import com.banking.exceptions.InvalidAccountException;
+import com.banking.models.*;
+import com.banking.services.BalanceIndex;
+import com.banking.services.BankService;
+import com.banking.services.BankServiceInterface;
+import com.banking.services.LedgerAggregates;
+import com.banking.services.OnlineBackup;
+import com.banking.services.ReplicaService;
+import com.banking.services.TransactionSearchIndex;
+import com.banking.utils.DateCodec;
+import com.banking.utils.Json;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class HttpApiServer {
+    private static final Logger logger = LogManager.getLogger(HttpApiServer.class);
+    private static final String JSON_TYPE = "application/json; charset=utf-8";
+    private static final int MAX_PAGE = 10_000;
+
+    private final BankServiceInterface bankService;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    public HttpApiServer(BankServiceInterface bankService, int port) throws IOException {
+        this.bankService = bankService;
+        this.server = HttpServer.create(new InetSocketAddress(port), 1024);
+        this.executor = newRequestExecutor();
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+    }
+
+    // One virtual thread per request when the runtime has them (JDK 21+), otherwise a cached platform pool.
+    static ExecutorService newRequestExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            logger.info("Serving HTTP requests on virtual threads.");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            logger.warn("Virtual threads are not available on this JVM, using a cached thread pool.");
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    public void start() {
+        server.start();
+        logger.info("HTTP API listening on port {}", getPort());
+    }
+
+    public void stop() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            try {
+                route(exchange);
+            } catch (InvalidAccountException e) {
+                sendError(exchange, 404, e.getMessage());
+            } catch (InsufficientFundsException e) {
+                sendError(exchange, 409, e.getMessage());
+            } catch (IllegalArgumentException | ParseException e) {
+                sendError(exchange, 400, e.getMessage());
+            } catch (UnsupportedOperationException e) {
+                sendError(exchange, 503, e.getMessage());
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                logger.error("Error handling {} {}: {}", exchange.getRequestMethod(), exchange.getRequestURI(), e.getMessage(), e);
+                sendError(exchange, 500, "Internal error");
+            }
+        }
+    }
+
+    private void route(HttpExchange exchange) throws Exception {
+        String method = exchange.getRequestMethod();
+        String[] path = Arrays.stream(exchange.getRequestURI().getPath().split("/"))
+                .filter(segment -> !segment.isEmpty())
+                .toArray(String[]::new);
+        Map<String, String> body = method.equals("GET") || method.equals("DELETE") ? Map.of() : readBody(exchange);
+
+        if (path.length == 0) {
+            sendError(exchange, 404, "Not found");
+            return;
+        }
+        switch (path[0]) {
+            case "customers" -> routeCustomers(exchange, method, path, body);
+            case "accounts" -> routeAccounts(exchange, method, path, body);
+            case "transfers" -> {
+                requireMethod(method, "POST");
+                bankService.transfer(idempotencyKey(exchange), required(body, "from"), required(body, "to"), parseAmount(body));
+                sendJson(exchange, 200, "{\"status\":\"ok\"}");
+            }
+            case "cards" -> {
+                requireMethod(method, "POST");
+                if (path.length != 3) {
+                    sendError(exchange, 404, "Not found");
+                    return;
+                }
+                switch (path[2]) {
+                    case "payment" -> bankService.cardPayment(path[1], parseAmount(body));
+                    case "block" -> bankService.setCardBlocked(path[1], true);
+                    case "unblock" -> bankService.setCardBlocked(path[1], false);
+                    default -> {
+                        sendError(exchange, 404, "Not found");
+                        return;
+                    }
+                }
+                sendJson(exchange, 200, "{\"status\":\"ok\"}");
+            }
+            case "replication" -> routeReplication(exchange, method, path);
+            case "aggregates" -> routeAggregates(exchange, method);
+            case "transactions" -> searchTransactions(exchange, method);
+            case "backups" -> {
+                requireMethod(method, "POST");
+                if (!(bankService instanceof BankService service)) {
+                    sendError(exchange, 404, "Backups are taken per node");
+                    return;
+                }
+                File target = new File(System.getProperty("banking.backup.dir", "backups"), "backup-" + System.currentTimeMillis());
+                long position = new OnlineBackup(service).run(target);
+                sendJson(exchange, 201, "{\"path\":" + Json.quote(target.getPath()) + ",\"journalPosition\":" + position + "}");
+            }
+            default -> sendError(exchange, 404, "Not found");
+        }
+    }
+
+    // GET /aggregates[?date=yyyy-MM-dd][&customerId=...]: maintained totals, without walking accounts or postings.
+    private void routeAggregates(HttpExchange exchange, String method) throws IOException, ParseException {
+        requireMethod(method, "GET");
+        if (!(bankService instanceof BankService service)) {
+            sendError(exchange, 404, "Aggregates are kept per node");
+            return;
+        }
+        LedgerAggregates aggregates = service.getAggregates();
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        String date = query.containsKey("date") ? DateCodec.formatDate(DateCodec.parse(query.get("date")))
+                : DateCodec.formatDate(System.currentTimeMillis());
+        StringBuilder json = new StringBuilder("{\"totalBalance\":").append(aggregates.getTotalBalance());
+        for (AccountType type : AccountType.values()) {
+            json.append(",\"").append(type.name().toLowerCase()).append("\":{\"balance\":").append(aggregates.getBalance(type))
+                    .append(",\"accounts\":").append(aggregates.getAccountCount(type)).append('}');
+        }
+        json.append(",\"date\":").append(Json.quote(date));
+        for (TransactionType type : TransactionType.values()) {
+            json.append(",\"").append(type.name().toLowerCase()).append("s\":{\"amount\":")
+                    .append(aggregates.getDailyTotal(date, type))
+                    .append(",\"count\":").append(aggregates.getDailyCount(date, type)).append('}');
+        }
+        json.append(",\"cards\":").append(aggregates.getCardCount())
+                .append(",\"blockedCards\":").append(aggregates.getBlockedCardCount());
+        if (query.containsKey("customerId")) {
+            json.append(",\"customerId\":").append(Json.quote(query.get("customerId")))
+                    .append(",\"customerBalance\":").append(aggregates.getCustomerBalance(query.get("customerId")));
+        }
+        sendJson(exchange, 200, json.append('}').toString());
+    }
+
+    // GET /transactions?type=&from=&to=&minAmount=&maxAmount=&limit=&cursor=: postings across all accounts in time
+    // order; pass the returned nextCursor to get the following page.
+    private void searchTransactions(HttpExchange exchange, String method) throws IOException, ParseException {
+        requireMethod(method, "GET");
+        if (!(bankService instanceof BankService service)) {
+            sendError(exchange, 404, "Transactions are searched per node");
+            return;
+        }
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        TransactionType type = query.containsKey("type") ? TransactionType.valueOf(query.get("type")) : null;
+        long from = DateCodec.parse(query.getOrDefault("from", "1970-01-01"));
+        long to = DateCodec.parseEndOfDay(query.getOrDefault("to", "9999-12-31"));
+        double minAmount = Double.parseDouble(query.getOrDefault("minAmount", "-Infinity"));
+        double maxAmount = Double.parseDouble(query.getOrDefault("maxAmount", "Infinity"));
+        int limit = Math.min(Integer.parseInt(query.getOrDefault("limit", "100")), MAX_PAGE);
+        TransactionSearchIndex.Page page = service.getSearchIndex().search(type, from, to, minAmount, maxAmount,
+                query.get("cursor"), limit);
+        StringBuilder json = new StringBuilder("{\"transactions\":[");
+        for (TransactionSearchIndex.Hit hit : page.getHits()) {
+            appendSeparator(json, '[');
+            json.append("{\"transactionId\":").append(Json.quote(hit.getTransactionId()))
+                    .append(",\"accountId\":").append(Json.quote(hit.getAccountId()))
+                    .append(",\"type\":\"").append(hit.getType())
+                    .append("\",\"amount\":").append(hit.getAmount())
+                    .append(",\"timestamp\":").append(hit.getTimestampMillis())
+                    .append('}');
+        }
+        json.append("],\"nextCursor\":").append(page.getNextCursor() == null ? "null" : Json.quote(page.getNextCursor()));
+        sendJson(exchange, 200, json.append('}').toString());
+    }
+
+    private void routeReplication(HttpExchange exchange, String method, String[] path) throws IOException {
+        if (!(bankService instanceof ReplicaService replica)) {
+            sendError(exchange, 404, "Not a replica");
+            return;
+        }
+        if (path.length == 2 && path[1].equals("promote")) {
+            requireMethod(method, "POST");
+            replica.promote();
+        } else {
+            requireMethod(method, "GET");
+        }
+        sendJson(exchange, 200, "{\"role\":\"" + (replica.isPromoted() ? "primary" : "replica") + "\""
+                + ",\"appliedPosition\":" + replica.getAppliedPosition()
+                + ",\"primaryPosition\":" + replica.getPrimaryPosition()
+                + ",\"lagRecords\":" + replica.getLagRecords()
+                + ",\"lagMillis\":" + replica.getLagMillis()
+                + ",\"millisSinceContact\":" + replica.getMillisSinceContact() + "}");
+    }
+
+    private void routeCustomers(HttpExchange exchange, String method, String[] path, Map<String, String> body) throws Exception {
+        if (path.length == 1) {
+            if (method.equals("GET")) {
+                StringBuilder json = new StringBuilder("[");
+                for (Customer customer : bankService.getAllCustomers()) {
+                    appendSeparator(json, '[');
+                    appendCustomer(json, customer);
+                }
+                sendJson(exchange, 200, json.append(']').toString());
+            } else {
+                requireMethod(method, "POST");
+                Customer customer = bankService.createCustomer(required(body, "name"), required(body, "surname"),
+                        Integer.parseInt(required(body, "age")));
+                sendJson(exchange, 201, appendCustomer(new StringBuilder(), customer).toString());
+            }
+            return;
+        }
+        String customerId = path[1];
+        if (path.length == 3 && path[2].equals("accounts")) {
+            requireMethod(method, "GET");
+            sendJson(exchange, 200, accountsJson(bankService.getAccountsByCustomer(customerId)));
+            return;
+        }
+        switch (method) {
+            case "GET" -> sendJson(exchange, 200,
+                    appendCustomer(new StringBuilder(), bankService.getCustomerById(customerId)).toString());
+            case "PUT" -> {
+                Integer age = body.containsKey("age") ? Integer.valueOf(body.get("age")) : null;
+                Customer customer = bankService.updateCustomer(customerId, body.get("name"), body.get("surname"), age);
+                sendJson(exchange, 200, appendCustomer(new StringBuilder(), customer).toString());
+            }
+            case "DELETE" -> {
+                bankService.deleteCustomer(customerId);
+                sendJson(exchange, 200, "{\"status\":\"deleted\"}");
+            }
+            default -> throw new IllegalArgumentException("Unsupported method " + method);
+        }
+    }
+
+    private void routeAccounts(HttpExchange exchange, String method, String[] path, Map<String, String> body) throws Exception {
+        if (path.length == 1) {
+            if (method.equals("GET")) {
+                sendJson(exchange, 200, accountsJson(listAccounts(parseQuery(exchange.getRequestURI().getRawQuery()))));
+            } else {
+                requireMethod(method, "POST");
+                Account account = bankService.createAccount(required(body, "customerId"),
+                        AccountType.valueOf(required(body, "type")));
+                sendJson(exchange, 201, appendAccount(new StringBuilder(), account).toString());
+            }
+            return;
+        }
+        String accountId = path[1];
+        if (path.length == 2) {
+            if (method.equals("DELETE")) {
+                bankService.deleteAccount(accountId);
+                sendJson(exchange, 200, "{\"status\":\"deleted\"}");
+            } else {
+                requireMethod(method, "GET");
+                sendJson(exchange, 200, appendAccount(new StringBuilder(), findAccount(accountId)).toString());
+            }
+            return;
+        }
+        switch (path[2]) {
+            case "deposit" -> {
+                requireMethod(method, "POST");
+                bankService.deposit(idempotencyKey(exchange), accountId, parseAmount(body));
+                sendJson(exchange, 200, appendAccount(new StringBuilder(), findAccount(accountId)).toString());
+            }
+            case "withdraw" -> {
+                requireMethod(method, "POST");
+                bankService.withdraw(idempotencyKey(exchange), accountId, parseAmount(body));
+                sendJson(exchange, 200, appendAccount(new StringBuilder(), findAccount(accountId)).toString());
+            }
+            case "statement" -> {
+                requireMethod(method, "GET");
+                Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+                Date start = new Date(DateCodec.parse(query.getOrDefault("from", "1970-01-01")));
+                Date end = new Date(DateCodec.parseEndOfDay(query.getOrDefault("to", "9999-12-31")));
+                streamStatement(exchange, bankService.generateBankStatement(accountId, start, end));
+            }
+            case "cards" -> routeCards(exchange, method, path, findAccount(accountId));
+            default -> sendError(exchange, 404, "Not found");
+        }
+    }
+
+    // ?top=N lists the largest balances, ?minBalance=&maxBalance= a balance range. A single node answers from its
+    // balance index; other services sort a copy of all accounts.
+    private List<Account> listAccounts(Map<String, String> query) {
+        if (!query.containsKey("top") && !query.containsKey("minBalance") && !query.containsKey("maxBalance")) {
+            return bankService.getAllAccounts();
+        }
+        BalanceIndex index = bankService instanceof BankService service ? service.getBalanceIndex() : null;
+        Comparator<Account> byBalance = Comparator.comparingDouble(Account::getBalance);
+        if (query.containsKey("top")) {
+            int top = Integer.parseInt(query.get("top"));
+            if (top < 0) {
+                throw new IllegalArgumentException("top must not be negative");
+            }
+            return index != null ? index.top(top)
+                    : bankService.getAllAccounts().stream().sorted(byBalance.reversed()).limit(top).toList();
+        }
+        double min = Double.parseDouble(query.getOrDefault("minBalance", "-Infinity"));
+        double max = Double.parseDouble(query.getOrDefault("maxBalance", "Infinity"));
+        return index != null ? index.range(min, max)
+                : bankService.getAllAccounts().stream()
+                        .filter(account -> account.getBalance() >= min && account.getBalance() <= max)
+                        .sorted(byBalance).toList();
+    }
+
+    private void routeCards(HttpExchange exchange, String method, String[] path, Account account) throws Exception {
+        if (path.length == 3) {
+            requireMethod(method, "POST");
+            Card card = bankService.issueCard(account.getAccountId());
+            sendJson(exchange, 201, appendCard(new StringBuilder(), card).toString());
+            return;
+        }
+        requireMethod(method, "DELETE");
+        Card card = account.getCards().stream()
+                .filter(c -> c.getCardNumber().equals(path[3]))
+                .findFirst()
+                .orElseThrow(() -> new InvalidAccountException("Card not found"));
+        bankService.removeCard(card);
+        sendJson(exchange, 200, "{\"status\":\"deleted\"}");
+    }
+
+    private Account findAccount(String accountId) throws InvalidAccountException {
+        Account account = bankService.getAccountById(accountId);
+        if (account == null) {
+            throw new InvalidAccountException("Account not found");
+        }
+        return account;
+    }
+
+    // Statements are written row by row with chunked encoding while the history is read, one cold segment at a time,
+    // so large histories never sit in one buffer. Once the headers are out an error status can no longer be sent: a
+    // failure ends the exchange without the closing chunk, which the client sees as a broken response.
+    private void streamStatement(HttpExchange exchange, BankStatement statement) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", JSON_TYPE);
+        exchange.sendResponseHeaders(200, 0);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8), 8192);
+        StringBuilder json = new StringBuilder();
+        json.append("{\"statementId\":").append(Json.quote(statement.getStatementId()))
+                .append(",\"accountId\":").append(Json.quote(statement.getAccount().getAccountId()))
+                .append(",\"closingBalance\":").append(statement.getClosingBalance())
+                .append(",\"transactions\":[");
+        writer.write(json.toString());
+        boolean[] first = {true};
+        try {
+            statement.forEachTransaction(transaction -> {
+                json.setLength(0);
+                if (!first[0]) {
+                    json.append(',');
+                }
+                first[0] = false;
+                appendTransaction(json, transaction);
+                try {
+                    writer.write(json.toString());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (RuntimeException e) {
+            logger.error("Statement {} failed after the response started: {}", statement.getStatementId(), e.getMessage(), e);
+            throw new IOException("Statement " + statement.getStatementId() + " was cut short", e);
+        }
+        writer.write("]}");
+        writer.close();
+    }
+
+    private static String accountsJson(List<Account> accounts) {
+        StringBuilder json = new StringBuilder("[");
+        for (Account account : accounts) {
+            appendSeparator(json, '[');
+            appendAccount(json, account);
+        }
+        return json.append(']').toString();
+    }
+
+    private static StringBuilder appendCustomer(StringBuilder json, Customer customer) {
+        json.append("{\"id\":").append(Json.quote(customer.getId()))
+                .append(",\"name\":").append(Json.quote(customer.getName()))
+                .append(",\"surname\":").append(Json.quote(customer.getSurname()))
+                .append(",\"age\":").append(customer.getAge())
+                .append(",\"accounts\":[");
+        for (Account account : customer.getAccounts()) {
+            appendSeparator(json, '[');
+            json.append(Json.quote(account.getAccountId()));
+        }
+        return json.append("]}");
+    }
+
+    private static StringBuilder appendAccount(StringBuilder json, Account account) {
+        json.append("{\"accountId\":").append(Json.quote(account.getAccountId()))
+                .append(",\"type\":\"").append(account instanceof PrimaryAccount ? "PRIMARY" : "SAVINGS")
+                .append("\",\"ownerId\":").append(Json.quote(account.getOwner().getId()))
+                .append(",\"balance\":").append(account.getBalance())
+                .append(",\"cards\":[");
+        for (Card card : account.getCards()) {
+            appendSeparator(json, '[');
+            appendCard(json, card);
+        }
+        return json.append("]}");
+    }
+
+    private static StringBuilder appendCard(StringBuilder json, Card card) {
+        return json.append("{\"cardNumber\":").append(Json.quote(card.getCardNumber()))
+                .append(",\"expirationDate\":").append(card.getExpirationDate().getTime())
+                .append(",\"blocked\":").append(card.isBlocked())
+                .append('}');
+    }
+
+    private static void appendTransaction(StringBuilder json, Transaction transaction) {
+        json.append("{\"transactionId\":").append(Json.quote(transaction.getTransactionId()))
+                .append(",\"type\":\"").append(transaction.getType())
+                .append("\",\"amount\":").append(transaction.getAmount())
+                .append(",\"timestamp\":").append(transaction.getTimestampMillis())
+                .append('}');
+    }
+
+    private static void appendSeparator(StringBuilder json, char open) {
+        if (json.charAt(json.length() - 1) != open) {
+            json.append(',');
+        }
+    }
+
+    private static String idempotencyKey(HttpExchange exchange) {
+        return exchange.getRequestHeaders().getFirst("Idempotency-Key");
+    }
+
+    private static Map<String, String> readBody(HttpExchange exchange) throws IOException {
+        String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        return Json.parseObject(body);
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                query.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return query;
+    }
+
+    private static String required(Map<String, String> body, String field) {
+        String value = body.get(field);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing field: " + field);
+        }
+        return value;
+    }
+
+    private static double parseAmount(Map<String, String> body) {
+        return Double.parseDouble(required(body, "amount"));
+    }
+
+    private static void requireMethod(String method, String expected) {
+        if (!method.equals(expected)) {
+            throw new IllegalArgumentException("Unsupported method " + method);
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        sendJson(exchange, status, "{\"error\":" + Json.quote(message) + "}");
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", JSON_TYPE);
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+}
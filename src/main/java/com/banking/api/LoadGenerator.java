@@ -0,0 +1,142 @@
+package com.banking.api;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class LoadGenerator {
+    private static final int MAX_SAMPLES_PER_WORKER = 200_000;
+
+    private final String baseUrl;
+    private final int workers;
+    private final Duration duration;
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+    private final AtomicLong errors = new AtomicLong();
+
+    public LoadGenerator(String baseUrl, int workers, Duration duration) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.workers = workers;
+        this.duration = duration;
+    }
+
+    // Usage: LoadGenerator [baseUrl] [workers] [seconds] [accounts]
+    public static void main(String[] args) throws Exception {
+        String baseUrl = args.length > 0 ? args[0] : "http://localhost:8080";
+        int workers = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int accounts = args.length > 3 ? Integer.parseInt(args[3]) : 32;
+        new LoadGenerator(baseUrl, workers, Duration.ofSeconds(seconds)).run(accounts);
+    }
+
+    public void run(int accountCount) throws Exception {
+        List<String> accountIds = setUp(accountCount);
+        long deadline = System.nanoTime() + duration.toNanos();
+        long[][] samples = new long[workers][];
+        int[] counts = new int[workers];
+        Thread[] threads = new Thread[workers];
+        for (int w = 0; w < workers; w++) {
+            int worker = w;
+            samples[w] = new long[MAX_SAMPLES_PER_WORKER];
+            threads[w] = new Thread(() -> counts[worker] = drive(accountIds, deadline, samples[worker]), "load-" + w);
+            threads[w].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        report(samples, counts);
+    }
+
+    private List<String> setUp(int accountCount) throws IOException, InterruptedException {
+        String customer = send("POST", "/customers", "{\"name\":\"load\",\"surname\":\"generator\",\"age\":30}");
+        String customerId = stringField(customer, "id");
+        List<String> accountIds = new ArrayList<>();
+        for (int i = 0; i < accountCount; i++) {
+            String account = send("POST", "/accounts", "{\"customerId\":\"" + customerId + "\",\"type\":\"PRIMARY\"}");
+            String accountId = stringField(account, "accountId");
+            send("POST", "/accounts/" + accountId + "/deposit", "{\"amount\":1000000}");
+            accountIds.add(accountId);
+        }
+        return accountIds;
+    }
+
+    private int drive(List<String> accountIds, long deadline, long[] latencies) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int count = 0;
+        while (System.nanoTime() < deadline && count < latencies.length) {
+            String account = accountIds.get(random.nextInt(accountIds.size()));
+            int op = random.nextInt(10);
+            long start = System.nanoTime();
+            try {
+                if (op < 7) {
+                    send("GET", "/accounts/" + account, null);
+                } else if (op < 9) {
+                    send("POST", "/accounts/" + account + "/deposit", "{\"amount\":1}");
+                } else {
+                    String target = accountIds.get(random.nextInt(accountIds.size()));
+                    send("POST", "/transfers", "{\"from\":\"" + account + "\",\"to\":\"" + target + "\",\"amount\":1}");
+                }
+            } catch (IOException | RuntimeException e) {
+                errors.incrementAndGet();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            latencies[count++] = System.nanoTime() - start;
+        }
+        return count;
+    }
+
+    private String send(String method, String path, String body) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(baseUrl + path)).timeout(Duration.ofSeconds(30));
+        if (body == null) {
+            request.method(method, HttpRequest.BodyPublishers.noBody());
+        } else {
+            request.header("Content-Type", "application/json").method(method, HttpRequest.BodyPublishers.ofString(body));
+        }
+        HttpResponse<String> response = client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() >= 400) {
+            throw new IOException("HTTP " + response.statusCode() + ": " + response.body());
+        }
+        return response.body();
+    }
+
+    private void report(long[][] samples, int[] counts) {
+        int total = Arrays.stream(counts).sum();
+        long[] all = new long[total];
+        int position = 0;
+        for (int w = 0; w < samples.length; w++) {
+            System.arraycopy(samples[w], 0, all, position, counts[w]);
+            position += counts[w];
+        }
+        Arrays.sort(all);
+        double seconds = duration.toMillis() / 1000.0;
+        System.out.printf("requests=%d errors=%d workers=%d duration=%.1fs%n", total, errors.get(), workers, seconds);
+        System.out.printf("throughput=%.1f req/s%n", total / seconds);
+        if (total > 0) {
+            System.out.printf("latency p50=%.3fms p90=%.3fms p99=%.3fms max=%.3fms%n",
+                    percentile(all, 0.50), percentile(all, 0.90), percentile(all, 0.99), all[total - 1] / 1e6);
+        }
+    }
+
+    private static String stringField(String json, String name) {
+        String key = "\"" + name + "\":\"";
+        int start = json.indexOf(key) + key.length();
+        return json.substring(start, json.indexOf('"', start));
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        int index = (int) Math.min(sorted.length - 1, Math.round(p * (sorted.length - 1)));
+        return sorted[index] / 1e6;
+    }
+}
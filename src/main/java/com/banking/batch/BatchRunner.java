@@ -0,0 +1,215 @@
+package com.banking.batch;
+
+import com.banking.enums.AccountType;
+import com.banking.models.Account;
+import com.banking.services.BankService;
+import com.banking.utils.CsvReader;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class BatchRunner {
+    private static final Logger logger = LogManager.getLogger(BatchRunner.class);
+    private static final int QUEUE_CAPACITY = 4096;
+    private static final String[] STOP = new String[0];
+
+    private final BankService bankService;
+    private final int parallelism;
+    private final AtomicLong succeeded = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private PrintWriter results;
+
+    public BatchRunner(BankService bankService, int parallelism) {
+        this.bankService = bankService;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    // Commands run in file order for every account they touch: one whose accounts all map to the same worker is
+    // queued there, anything else (a transfer between accounts of two workers, creates, deletes) is a barrier that
+    // waits for all queued work and runs on its own, so later lines can also refer to the entities it produces. Lines
+    // are CSV records like the database files, so a quoted argument may hold a comma; results carry the line number
+    // each command started on.
+    public void run(File input, File output) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        bankService.setDeferSaves(true);
+        List<BlockingQueue<Object[]>> queues = new ArrayList<>(parallelism);
+        List<Thread> workers = new ArrayList<>(parallelism);
+        long lines = 0;
+        try (CsvReader reader = new CsvReader(new FileInputStream(input));
+             PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(output), 1 << 16))) {
+            results = writer;
+            boolean finished = false;
+            try {
+                for (int i = 0; i < parallelism; i++) {
+                    BlockingQueue<Object[]> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+                    Thread worker = new Thread(() -> work(queue), "batch-" + i);
+                    worker.start();
+                    queues.add(queue);
+                    workers.add(worker);
+                }
+                while (reader.next()) {
+                    lines = reader.getLineNumber();
+                    String[] command = reader.toArray();
+                    if ((command.length == 1 && command[0].isBlank()) || command[0].startsWith("#")) {
+                        continue;
+                    }
+                    int worker = worker(command);
+                    if (worker < 0) {
+                        drain(queues);
+                        execute(lines, command);
+                    } else {
+                        queues.get(worker).put(new Object[]{lines, command});
+                    }
+                }
+                finished = true;
+            } finally {
+                stopWorkers(queues, workers, finished);
+            }
+        } finally {
+            bankService.setDeferSaves(false);
+        }
+        report(lines, System.nanoTime() - start);
+    }
+
+    // Workers always stop: after the whole file they finish what is queued, after a failure they are interrupted.
+    // Either way they are gone before the results file closes.
+    private static void stopWorkers(List<BlockingQueue<Object[]>> queues, List<Thread> workers, boolean finished) throws InterruptedException {
+        try {
+            for (int i = 0; i < workers.size(); i++) {
+                if (finished) {
+                    queues.get(i).put(new Object[]{0L, STOP});
+                } else {
+                    workers.get(i).interrupt();
+                }
+            }
+        } catch (InterruptedException e) {
+            for (Thread worker : workers) {
+                worker.interrupt();
+            }
+            throw e;
+        } finally {
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        }
+    }
+
+    private void work(BlockingQueue<Object[]> queue) {
+        try {
+            while (true) {
+                Object[] item = queue.take();
+                if (item[1] == STOP) {
+                    return;
+                }
+                if (item[1] instanceof CountDownLatch latch) {
+                    latch.countDown();
+                    continue;
+                }
+                execute((Long) item[0], (String[]) item[1]);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drain(List<BlockingQueue<Object[]>> queues) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(queues.size());
+        for (BlockingQueue<Object[]> queue : queues) {
+            queue.put(new Object[]{0L, latch});
+        }
+        latch.await();
+    }
+
+    // The worker every account the command touches maps to, or -1 when the command has to run as a barrier.
+    private int worker(String[] command) {
+        return switch (command[0].trim().toUpperCase()) {
+            case "DEPOSIT", "WITHDRAW" -> command.length > 1 ? partition(command[1]) : 0;
+            case "TRANSFER" -> {
+                if (command.length < 3) {
+                    yield 0;
+                }
+                int from = partition(command[1]);
+                yield from == partition(command[2]) ? from : -1;
+            }
+            // Card commands go with the card's account, so they stay in order with its deposits and withdrawals.
+            case "CARD_PAYMENT", "BLOCK_CARD", "UNBLOCK_CARD" -> {
+                if (command.length < 2) {
+                    yield 0;
+                }
+                Account account = bankService.getCardAccount(command[1]);
+                yield partition(account == null ? command[1] : account.getAccountId());
+            }
+            default -> -1;
+        };
+    }
+
+    private int partition(String accountId) {
+        return Math.floorMod(accountId.hashCode(), parallelism);
+    }
+
+    private void execute(long lineNumber, String[] command) {
+        try {
+            String detail = switch (command[0].trim().toUpperCase()) {
+                case "CREATE_CUSTOMER" -> bankService.createCustomer(command[1], command[2], Integer.parseInt(command[3])).getId();
+                case "CREATE_ACCOUNT" -> bankService.createAccount(command[1], AccountType.valueOf(command[2])).getAccountId();
+                case "DEPOSIT" -> {
+                    bankService.deposit(command[1], Double.parseDouble(command[2]));
+                    yield "";
+                }
+                case "WITHDRAW" -> {
+                    bankService.withdraw(command[1], Double.parseDouble(command[2]));
+                    yield "";
+                }
+                case "TRANSFER" -> {
+                    bankService.transfer(command[1], command[2], Double.parseDouble(command[3]));
+                    yield "";
+                }
+                case "CARD_PAYMENT" -> {
+                    bankService.cardPayment(command[1], Double.parseDouble(command[2]));
+                    yield "";
+                }
+                case "BLOCK_CARD" -> {
+                    bankService.setCardBlocked(command[1], true);
+                    yield "";
+                }
+                case "UNBLOCK_CARD" -> {
+                    bankService.setCardBlocked(command[1], false);
+                    yield "";
+                }
+                case "DELETE_ACCOUNT" -> {
+                    bankService.deleteAccount(command[1]);
+                    yield "";
+                }
+                case "DELETE_CUSTOMER" -> {
+                    bankService.deleteCustomer(command[1]);
+                    yield "";
+                }
+                default -> throw new IllegalArgumentException("Unknown command " + command[0]);
+            };
+            succeeded.incrementAndGet();
+            record(lineNumber, "OK", detail);
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            String message = e instanceof ArrayIndexOutOfBoundsException ? "Missing arguments" : e.getMessage();
+            record(lineNumber, "ERR", message == null ? e.getClass().getSimpleName() : message);
+        }
+    }
+
+    private synchronized void record(long lineNumber, String status, String detail) {
+        results.println(lineNumber + "," + status + "," + detail.replace(',', ';'));
+    }
+
+    private void report(long lines, long elapsedNanos) {
+        long total = succeeded.get() + failed.get();
+        double seconds = elapsedNanos / 1e9;
+        String summary = String.format("Batch finished: %d lines, %d commands, %d ok, %d failed in %.2fs (%.0f commands/s, parallelism %d)",
+                lines, total, succeeded.get(), failed.get(), seconds, total / Math.max(seconds, 1e-9), parallelism);
+        System.out.println(summary);
+        logger.info(summary);
+    }
+}
@@ -0,0 +1,27 @@
+package com.banking.enums;
+
+import com.banking.exceptions.InsufficientFundsException;
+import com.banking.exceptions.InvalidAccountException;
+import com.banking.exceptions.LimitExceededException;
+
+public enum AuditResult {
+    OK,
+    INSUFFICIENT_FUNDS,
+    LIMIT_EXCEEDED,
+    INVALID_ACCOUNT,
+    REJECTED,
+    ERROR;
+
+    public static AuditResult of(Exception e) {
+        if (e instanceof LimitExceededException) {
+            return LIMIT_EXCEEDED;
+        }
+        if (e instanceof InsufficientFundsException) {
+            return INSUFFICIENT_FUNDS;
+        }
+        if (e instanceof InvalidAccountException) {
+            return INVALID_ACCOUNT;
+        }
+        return e instanceof IllegalArgumentException ? REJECTED : ERROR;
+    }
+}
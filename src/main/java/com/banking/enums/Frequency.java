@@ -0,0 +1,22 @@
+package com.banking.enums;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+public enum Frequency {
+    DAILY,
+    WEEKLY,
+    MONTHLY;
+
+    // Occurrences are counted from the first run, so a monthly order on the 31st does not drift after February.
+    public long occurrence(long firstRunMillis, long index) {
+        ZonedDateTime first = Instant.ofEpochMilli(firstRunMillis).atZone(ZoneId.systemDefault());
+        ZonedDateTime next = switch (this) {
+            case DAILY -> first.plusDays(index);
+            case WEEKLY -> first.plusWeeks(index);
+            case MONTHLY -> first.plusMonths(index);
+        };
+        return next.toInstant().toEpochMilli();
+    }
+}
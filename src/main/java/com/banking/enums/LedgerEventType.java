@@ -0,0 +1,14 @@
+package com.banking.enums;
+
+public enum LedgerEventType {
+    CUSTOMER_CREATED,
+    CUSTOMER_UPDATED,
+    CUSTOMER_DELETED,
+    ACCOUNT_OPENED,
+    ACCOUNT_CLOSED,
+    POSTING,
+    CARD_ADDED,
+    CARD_REMOVED,
+    CARD_BLOCKED,
+    CARD_UNBLOCKED
+}
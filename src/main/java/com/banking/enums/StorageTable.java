@@ -0,0 +1,19 @@
+package com.banking.enums;
+
+// Tables behind a StorageEngine; rows are the CSV columns of the table's file, in order.
+public enum StorageTable {
+    CUSTOMERS("customers.csv"),
+    ACCOUNTS("accounts.csv"),
+    CARDS("cards.csv"),
+    POSTINGS("transactions.csv");
+
+    private final String fileName;
+
+    StorageTable(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+}
@@ -0,0 +1,7 @@
+package com.banking.exceptions;
+
+public class LimitExceededException extends InsufficientFundsException {
+    public LimitExceededException(String message) {
+        super(message);
+    }
+}
@@ -1,26 +1,58 @@
 package com.banking.models;
 
 import com.banking.exceptions.InsufficientFundsException;
+import com.banking.utils.AccountIds;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
 public abstract class Account {
-    protected String accountId;
-    protected double balance;
+    protected final long accountNumber;
+    protected int ordinal = -1;
+    protected volatile double balance;
     protected Customer owner;
-    protected List<Transaction> transactions;
-    protected List<Card> cards;
+    protected final List<Card> cards = new CopyOnWriteArrayList<>();
+    protected volatile HistoryLoader historyLoader;
+    // Replaced as a whole on every change, so a reader always sees the cold and hot tiers of one moment.
+    private volatile History history = History.EMPTY;
 
     public Account(String accountId, Customer owner) {
-        this.accountId = accountId;
+        this(parseAccountNumber(accountId), owner);
+    }
+
+    public Account(long accountNumber, Customer owner) {
+        this.accountNumber = accountNumber;
         this.balance = 0.0;
         this.owner = owner;
-        this.transactions = new ArrayList<>();
-        this.cards = new ArrayList<>();
+    }
+
+    private static long parseAccountNumber(String accountId) {
+        long number = AccountIds.parse(accountId);
+        if (number == AccountIds.INVALID) {
+            throw new IllegalArgumentException("Invalid account id: " + accountId);
+        }
+        return number;
     }
 
     public String getAccountId() {
-        return accountId;
+        return AccountIds.format(accountNumber);
+    }
+
+    public long getAccountNumber() {
+        return accountNumber;
+    }
+
+    public int getOrdinal() {
+        return ordinal;
+    }
+
+    public void setOrdinal(int ordinal) {
+        this.ordinal = ordinal;
     }
 
     public double getBalance() {
@@ -32,7 +64,126 @@ public abstract class Account {
     }
 
     public List<Transaction> getTransactions() {
-        return transactions;
+        return collect(Long.MIN_VALUE, Long.MAX_VALUE, Long.MAX_VALUE);
+    }
+
+    public List<Transaction> getTransactions(Date startDate, Date endDate) {
+        return collect(startDate.getTime(), endDate.getTime(), Long.MAX_VALUE);
+    }
+
+    // Only the first postingCount postings ever added count, as of a snapshot taken when getPostingCount() returned
+    // that; anything added since sits at the newest end, in memory or already spilled, and is left out.
+    public List<Transaction> getTransactions(Date startDate, Date endDate, long postingCount) {
+        return collect(startDate.getTime(), endDate.getTime(), postingCount);
+    }
+
+    private List<Transaction> collect(long from, long to, long postingCount) {
+        List<Transaction> result = new ArrayList<>();
+        forEachTransaction(from, to, postingCount, result::add);
+        return result;
+    }
+
+    // Same postings as getTransactions(startDate, endDate, postingCount), handed over one cold segment at a time.
+    public void forEachTransaction(Date startDate, Date endDate, long postingCount, Consumer<Transaction> action) {
+        forEachTransaction(startDate.getTime(), endDate.getTime(), postingCount, action);
+    }
+
+    private void forEachTransaction(long from, long to, long postingCount, Consumer<Transaction> action) {
+        pageInHistory();
+        History current = history;
+        long remaining = current.size() - Math.max(0, current.appended - postingCount);
+        for (ColdSegment segment : current.cold) {
+            if (remaining <= 0) {
+                break;
+            }
+            if (segment.overlaps(from, to)) {
+                List<Transaction> spilled = current.coldStore.read(this, segment);
+                forEachInRange(spilled.subList(0, (int) Math.min(spilled.size(), remaining)), from, to, action);
+            }
+            remaining -= segment.getCount();
+        }
+        if (remaining > 0) {
+            forEachInRange(current.hot(0, (int) Math.min(current.hotSize, remaining)), from, to, action);
+        }
+    }
+
+    private static void forEachInRange(List<Transaction> source, long from, long to, Consumer<Transaction> action) {
+        for (Transaction transaction : source) {
+            long time = transaction.getTimestampMillis();
+            if (time >= from && time <= to) {
+                action.accept(transaction);
+            }
+        }
+    }
+
+    public synchronized void addTransaction(Transaction transaction) {
+        history = history.append(transaction);
+    }
+
+    public int getHotTransactionCount() {
+        return history.hotSize;
+    }
+
+    public List<ColdSegment> getColdSegments() {
+        return history.cold;
+    }
+
+    // Postings added to this account in this session, including ones spilled since; it only ever grows.
+    public long getPostingCount() {
+        return history.appended;
+    }
+
+    protected List<Transaction> hotTransactions() {
+        History current = history;
+        return current.hot(0, current.hotSize);
+    }
+
+    // Writes the oldest in-memory postings to a cold segment and drops them from memory in one step.
+    public synchronized int spillOldest(int count, ColdStore coldStore) throws IOException {
+        pageInHistory();
+        History current = history;
+        int spilled = Math.min(count, current.hotSize);
+        if (spilled <= 0) {
+            return 0;
+        }
+        ColdSegment segment = coldStore.write(current.hot(0, spilled));
+        List<ColdSegment> cold = new ArrayList<>(current.cold);
+        cold.add(segment);
+        Transaction[] hot = Arrays.copyOfRange(current.items, spilled, Math.max(spilled + 8, current.items.length));
+        history = new History(List.copyOf(cold), coldStore, hot, current.hotSize - spilled, current.appended);
+        return spilled;
+    }
+
+    private void pageInHistory() {
+        if (historyLoader == null) {
+            return;
+        }
+        synchronized (this) {
+            HistoryLoader loader = historyLoader;
+            if (loader == null) {
+                return;
+            }
+            // Stored history predates anything posted in this session, so it goes in front.
+            List<Transaction> loaded = loader.load(this);
+            History current = history;
+            Transaction[] hot = new Transaction[loaded.size() + current.items.length];
+            loaded.toArray(hot);
+            System.arraycopy(current.items, 0, hot, loaded.size(), current.hotSize);
+            history = new History(current.cold, current.coldStore, hot, loaded.size() + current.hotSize, current.appended);
+            historyLoader = null;
+        }
+    }
+
+    public void setHistoryLoader(HistoryLoader historyLoader) {
+        this.historyLoader = historyLoader;
+    }
+
+    public boolean isHistoryLoaded() {
+        return historyLoader == null;
+    }
+
+    public void restoreBalance(double balance) {
+        this.balance = balance;
     }
 
     public List<Card> getCards() {
@@ -54,11 +205,52 @@ public abstract class Account {
     @Override
     public String toString() {
         return "Account{" +
-                "accountId='" + accountId + '\'' +
+                "accountId='" + getAccountId() + '\'' +
                 ", balance=" + balance +
                 ", owner=" + owner.getId() +
-                ", transactions=" + transactions.size() +
+                ", transactions=" + getHotTransactionCount() +
                 ", cards=" + cards.stream().map(Card::getCardNumber).toList() +
                 '}';
     }
+
+    // Postings in order: cold segments, then the in-memory array up to hotSize. Appending writes past hotSize into
+    // the same array when it has room, which no older History reads, so only growth and spills copy.
+    private static final class History {
+        private static final History EMPTY = new History(List.of(), null, new Transaction[0], 0, 0);
+
+        private final List<ColdSegment> cold;
+        private final ColdStore coldStore;
+        private final Transaction[] items;
+        private final int hotSize;
+        private final long appended;
+
+        private History(List<ColdSegment> cold, ColdStore coldStore, Transaction[] items, int hotSize, long appended) {
+            this.cold = cold;
+            this.coldStore = coldStore;
+            this.items = items;
+            this.hotSize = hotSize;
+            this.appended = appended;
+        }
+
+        private History append(Transaction transaction) {
+            Transaction[] target = items;
+            if (hotSize == target.length) {
+                target = Arrays.copyOf(target, Math.max(8, hotSize * 2));
+            }
+            target[hotSize] = transaction;
+            return new History(cold, coldStore, target, hotSize + 1, appended + 1);
+        }
+
+        private long size() {
+            long size = hotSize;
+            for (ColdSegment segment : cold) {
+                size += segment.getCount();
+            }
+            return size;
+        }
+
+        private List<Transaction> hot(int from, int to) {
+            return Collections.unmodifiableList(Arrays.asList(items).subList(from, to));
+        }
+    }
 }
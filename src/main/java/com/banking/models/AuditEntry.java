@@ -0,0 +1,79 @@
+package com.banking.models;
+
+import com.banking.enums.AuditResult;
+import com.banking.utils.DateCodec;
+
+// One decoded audit record; ids that do not apply to the action are null.
+public class AuditEntry {
+    public static final String CSV_HEADER = "timestamp,action,result,durationNanos,customerId,accountId,counterpartyAccountId,cardNumber,amount";
+
+    private final String action;
+    private final long timestamp;
+    private final AuditResult result;
+    private final long durationNanos;
+    private final String customerId;
+    private final String accountId;
+    private final String counterpartyAccountId;
+    private final String cardNumber;
+    private final double amount;
+
+    public AuditEntry(String action, long timestamp, AuditResult result, long durationNanos, String customerId,
+                      String accountId, String counterpartyAccountId, String cardNumber, double amount) {
+        this.action = action;
+        this.timestamp = timestamp;
+        this.result = result;
+        this.durationNanos = durationNanos;
+        this.customerId = customerId;
+        this.accountId = accountId;
+        this.counterpartyAccountId = counterpartyAccountId;
+        this.cardNumber = cardNumber;
+        this.amount = amount;
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public AuditResult getResult() {
+        return result;
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    public String getCustomerId() {
+        return customerId;
+    }
+
+    public String getAccountId() {
+        return accountId;
+    }
+
+    public String getCounterpartyAccountId() {
+        return counterpartyAccountId;
+    }
+
+    public String getCardNumber() {
+        return cardNumber;
+    }
+
+    public double getAmount() {
+        return amount;
+    }
+
+    // A CSV row matching CSV_HEADER.
+    @Override
+    public String toString() {
+        return String.join(",", DateCodec.formatTimestamp(timestamp), action, result.name(), String.valueOf(durationNanos),
+                customerId == null ? "" : customerId,
+                accountId == null ? "" : accountId,
+                counterpartyAccountId == null ? "" : counterpartyAccountId,
+                cardNumber == null ? "" : cardNumber,
+                String.valueOf(amount));
+    }
+}
@@ -1,17 +1,24 @@
 package com.banking.models;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.function.Consumer;
 
 public class BankStatement {
     private String statementId;
     private Account account;
     private Date startDate;
     private Date endDate;
-    private List<Transaction> transactions;
+    private Consumer<Consumer<Transaction>> transactions;
     private double closingBalance;
 
     public BankStatement(String statementId, Account account, Date startDate, Date endDate, List<Transaction> transactions, double closingBalance) {
+        this(statementId, account, startDate, endDate, transactions::forEach, closingBalance);
+    }
+
+    // The transactions are read when the statement is printed or streamed rather than held in a list up front.
+    public BankStatement(String statementId, Account account, Date startDate, Date endDate, Consumer<Consumer<Transaction>> transactions, double closingBalance) {
         this.statementId = statementId;
         this.account = account;
         this.startDate = startDate;
@@ -37,7 +44,13 @@ public class BankStatement {
     }
 
     public List<Transaction> getTransactions() {
-        return transactions;
+        List<Transaction> result = new ArrayList<>();
+        transactions.accept(result::add);
+        return result;
+    }
+
+    public void forEachTransaction(Consumer<Transaction> action) {
+        transactions.accept(action);
     }
 
     public double getClosingBalance() {
@@ -51,7 +64,7 @@ public class BankStatement {
                 ", account=" + account +
                 ", startDate=" + startDate +
                 ", endDate=" + endDate +
-                ", transactions=" + transactions +
+                ", transactions=" + getTransactions() +
                 ", closingBalance=" + closingBalance +
                 '}';
     }
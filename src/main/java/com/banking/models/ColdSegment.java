@@ -0,0 +1,53 @@
+package com.banking.models;
+
+public class ColdSegment {
+    private final int length;
+    private final int count;
+    private final long firstTimestamp;
+    private final long lastTimestamp;
+    // Where the bytes are. Only the cold store reads or changes these, under its own lock, when it compacts its files.
+    private int file;
+    private long offset;
+
+    public ColdSegment(int file, long offset, int length, int count, long firstTimestamp, long lastTimestamp) {
+        this.file = file;
+        this.offset = offset;
+        this.length = length;
+        this.count = count;
+        this.firstTimestamp = firstTimestamp;
+        this.lastTimestamp = lastTimestamp;
+    }
+
+    public int getFile() {
+        return file;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public void moveTo(int file, long offset) {
+        this.file = file;
+        this.offset = offset;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public long getFirstTimestamp() {
+        return firstTimestamp;
+    }
+
+    public long getLastTimestamp() {
+        return lastTimestamp;
+    }
+
+    public boolean overlaps(long from, long to) {
+        return firstTimestamp <= to && lastTimestamp >= from;
+    }
+}
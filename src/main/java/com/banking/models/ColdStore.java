@@ -0,0 +1,12 @@
+package com.banking.models;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+public interface ColdStore {
+    ColdSegment write(List<Transaction> transactions) throws IOException;
+
+    // Throws rather than returning part of the segment when it cannot be read.
+    List<Transaction> read(Account account, ColdSegment segment) throws UncheckedIOException;
+}
@@ -1,21 +1,25 @@
 package com.banking.models;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class Customer {
     private String id;
     private String name;
     private String surname;
     private int age;
-    private List<Account> accounts;
+    // Copied on every change so listings read it without a lock.
+    private volatile Map<Long, Account> accounts;
 
     public Customer(String id, String name, String surname, int age) {
         this.id = id;
         this.name = name;
         this.surname = surname;
         this.age = age;
-        this.accounts = new ArrayList<>();
+        this.accounts = Collections.emptyMap();
     }
 
     public String getId() {
@@ -47,11 +51,23 @@ public class Customer {
     }
 
     public List<Account> getAccounts() {
-        return accounts;
+        return new ArrayList<>(accounts.values());
     }
 
-    public void addAccount(Account account) {
-        accounts.add(account);
+    public synchronized void addAccount(Account account) {
+        Map<Long, Account> copy = new LinkedHashMap<>(accounts);
+        copy.put(account.getAccountNumber(), account);
+        accounts = Collections.unmodifiableMap(copy);
+    }
+
+    public synchronized boolean removeAccount(Account account) {
+        if (!accounts.containsKey(account.getAccountNumber())) {
+            return false;
+        }
+        Map<Long, Account> copy = new LinkedHashMap<>(accounts);
+        copy.remove(account.getAccountNumber());
+        accounts = Collections.unmodifiableMap(copy);
+        return true;
     }
 
     @Override
@@ -61,7 +77,7 @@ public class Customer {
                 ", name='" + name + '\'' +
                 ", surname='" + surname + '\'' +
                 ", age=" + age +
-                ", accounts=" + accounts.stream().map(Account::getAccountId).toList() +
+                ", accounts=" + accounts.values().stream().map(Account::getAccountId).toList() +
                 '}';
     }
 }
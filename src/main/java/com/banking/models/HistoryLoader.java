@@ -0,0 +1,7 @@
+package com.banking.models;
+
+import java.util.List;
+
+public interface HistoryLoader {
+    List<Transaction> load(Account account);
+}
@@ -0,0 +1,81 @@
+package com.banking.models;
+
+import com.banking.enums.LedgerEventType;
+import com.banking.enums.TransactionType;
+
+// A change to the ledger as seen by subscribers; fields that do not apply to the event type are null.
+public class LedgerEvent {
+    private final LedgerEventType type;
+    private final long position;
+    private final long timestamp;
+    private final String customerId;
+    private final String accountId;
+    private final String cardNumber;
+    private final String transactionId;
+    private final TransactionType postingType;
+    private final double amount;
+
+    public LedgerEvent(LedgerEventType type, long position, long timestamp, String customerId, String accountId,
+                       String cardNumber, String transactionId, TransactionType postingType, double amount) {
+        this.type = type;
+        this.position = position;
+        this.timestamp = timestamp;
+        this.customerId = customerId;
+        this.accountId = accountId;
+        this.cardNumber = cardNumber;
+        this.transactionId = transactionId;
+        this.postingType = postingType;
+        this.amount = amount;
+    }
+
+    public LedgerEventType getType() {
+        return type;
+    }
+
+    // Journal position of the mutation; a subscriber that stores it can resume right after it.
+    public long getPosition() {
+        return position;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getCustomerId() {
+        return customerId;
+    }
+
+    public String getAccountId() {
+        return accountId;
+    }
+
+    public String getCardNumber() {
+        return cardNumber;
+    }
+
+    public String getTransactionId() {
+        return transactionId;
+    }
+
+    public TransactionType getPostingType() {
+        return postingType;
+    }
+
+    public double getAmount() {
+        return amount;
+    }
+
+    @Override
+    public String toString() {
+        return "LedgerEvent{" +
+                "type=" + type +
+                ", position=" + position +
+                ", customerId=" + customerId +
+                ", accountId=" + accountId +
+                ", cardNumber=" + cardNumber +
+                ", transactionId=" + transactionId +
+                ", postingType=" + postingType +
+                ", amount=" + amount +
+                '}';
+    }
+}
@@ -8,11 +8,15 @@ public class PrimaryAccount extends Account {
         super(accountId, owner);
     }
 
+    public PrimaryAccount(long accountNumber, Customer owner) {
+        super(accountNumber, owner);
+    }
+
     @Override
     public void deposit(double amount) {
         if (amount > 0) {
             balance += amount;
-            transactions.add(new Transaction("T" + transactions.size(), amount, TransactionType.DEPOSIT, this));
+            addTransaction(new Transaction("T" + getHotTransactionCount(), amount, TransactionType.DEPOSIT, this));
         }
     }
 
@@ -20,7 +24,7 @@ public class PrimaryAccount extends Account {
     public void withdraw(double amount) throws InsufficientFundsException {
         if (amount > 0 && amount <= balance) {
             balance -= amount;
-            transactions.add(new Transaction("T" + transactions.size(), amount, TransactionType.WITHDRAWAL, this));
+            addTransaction(new Transaction("T" + getHotTransactionCount(), amount, TransactionType.WITHDRAWAL, this));
         } else {
             throw new InsufficientFundsException("Insufficient funds for withdrawal.");
         }
@@ -29,10 +33,10 @@ public class PrimaryAccount extends Account {
     @Override
     public String toString() {
         return "PrimaryAccount{" +
-                "accountId='" + accountId + '\'' +
+                "accountId='" + getAccountId() + '\'' +
                 ", balance=" + balance +
                 ", owner=" + owner.getId() +
-                ", transactions=" + transactions.size() +
+                ", transactions=" + getHotTransactionCount() +
                 ", cards=" + cards.stream().map(Card::getCardNumber).toList() +
                 '}';
     }
@@ -11,11 +11,16 @@ public class SavingsAccount extends Account {
         this.interestRate = interestRate;
     }
 
+    public SavingsAccount(long accountNumber, Customer owner, double interestRate) {
+        super(accountNumber, owner);
+        this.interestRate = interestRate;
+    }
+
     @Override
     public void deposit(double amount) {
         if (amount > 0) {
             balance += amount;
-            transactions.add(new Transaction("T" + transactions.size(), amount, TransactionType.DEPOSIT, this));
+            addTransaction(new Transaction("T" + getHotTransactionCount(), amount, TransactionType.DEPOSIT, this));
         }
     }
 
@@ -23,7 +28,7 @@ public class SavingsAccount extends Account {
     public void withdraw(double amount) throws InsufficientFundsException {
         if (amount > 0 && amount <= balance) {
             balance -= amount;
-            transactions.add(new Transaction("T" + transactions.size(), amount, TransactionType.WITHDRAWAL, this));
+            addTransaction(new Transaction("T" + getHotTransactionCount(), amount, TransactionType.WITHDRAWAL, this));
         } else {
             throw new InsufficientFundsException("Insufficient funds for withdrawal.");
         }
@@ -40,17 +45,17 @@ public class SavingsAccount extends Account {
     public void applyInterest() {
         double interest = balance * interestRate / 100;
         balance += interest;
-        transactions.add(new Transaction("T" + transactions.size(), interest, TransactionType.DEPOSIT, this));
+        addTransaction(new Transaction("T" + getHotTransactionCount(), interest, TransactionType.DEPOSIT, this));
     }
 
     @Override
     public String toString() {
         return "SavingsAccount{" +
-                "accountId='" + accountId + '\'' +
+                "accountId='" + getAccountId() + '\'' +
                 ", balance=" + balance +
                 ", owner=" + owner.getId() +
                 ", interestRate=" + interestRate +
-                ", transactions=" + transactions +
+                ", transactions=" + hotTransactions() +
                 ", cards=" + cards.stream().map(Card::getCardNumber).toList() +
                 '}';
     }
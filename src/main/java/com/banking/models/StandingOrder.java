@@ -0,0 +1,87 @@
+package com.banking.models;
+
+import com.banking.enums.Frequency;
+
+import java.util.Date;
+
+public class StandingOrder {
+    private final String id;
+    private final String fromAccountId;
+    private final String toAccountId;
+    private final double amount;
+    private final Frequency frequency;
+    private final long firstRun;
+    private long runs;
+    private long nextRun;
+    private boolean cancelled;
+
+    public StandingOrder(String id, String fromAccountId, String toAccountId, double amount, Frequency frequency,
+                         long firstRun, long runs) {
+        this.id = id;
+        this.fromAccountId = fromAccountId;
+        this.toAccountId = toAccountId;
+        this.amount = amount;
+        this.frequency = frequency;
+        this.firstRun = firstRun;
+        this.runs = runs;
+        this.nextRun = frequency.occurrence(firstRun, runs);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getFromAccountId() {
+        return fromAccountId;
+    }
+
+    public String getToAccountId() {
+        return toAccountId;
+    }
+
+    public double getAmount() {
+        return amount;
+    }
+
+    public Frequency getFrequency() {
+        return frequency;
+    }
+
+    public long getFirstRun() {
+        return firstRun;
+    }
+
+    public long getRuns() {
+        return runs;
+    }
+
+    public long getNextRun() {
+        return nextRun;
+    }
+
+    // Moves past the current occurrence, whether it was paid or skipped.
+    public void advance() {
+        runs++;
+        nextRun = frequency.occurrence(firstRun, runs);
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public void cancel() {
+        this.cancelled = true;
+    }
+
+    @Override
+    public String toString() {
+        return "StandingOrder{" +
+                "id='" + id + '\'' +
+                ", from=" + fromAccountId +
+                ", to=" + toAccountId +
+                ", amount=" + amount +
+                ", frequency=" + frequency +
+                ", nextRun=" + new Date(nextRun) +
+                '}';
+    }
+}
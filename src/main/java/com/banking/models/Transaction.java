@@ -2,17 +2,18 @@ package com.banking.models;
 
 import java.util.Date;
 import com.banking.enums.TransactionType;
+import com.banking.utils.DateCodec;
 
 public class Transaction {
     private String transactionId;
-    private Date timestamp;
+    private long timestamp;
     private double amount;
     private TransactionType type;
     private Account account;
 
     public Transaction(String transactionId, double amount, TransactionType type, Account account) {
         this.transactionId = transactionId;
-        this.timestamp = new Date();
+        this.timestamp = System.currentTimeMillis();
         this.amount = amount;
         this.type = type;
         this.account = account;
@@ -24,6 +25,10 @@ public class Transaction {
     }
 
     public Date getTimestamp() {
+        return new Date(timestamp);
+    }
+
+    public long getTimestampMillis() {
         return timestamp;
     }
 
@@ -40,6 +45,10 @@ public class Transaction {
     }
 
     public void setTimestamp(Date timestamp) {
+        this.timestamp = timestamp.getTime();
+    }
+
+    public void setTimestampMillis(long timestamp) {
         this.timestamp = timestamp;
     }
 
@@ -49,7 +58,7 @@ public class Transaction {
                 "transactionId='" + transactionId + '\'' +
                 ", amount=" + amount +
                 ", type=" + type +
-                ", timestamp=" + timestamp +
+                ", timestamp=" + DateCodec.formatTimestamp(timestamp) +
                 ", account=" + account.getAccountId() +
                 '}';
     }
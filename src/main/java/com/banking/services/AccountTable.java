@@ -0,0 +1,154 @@
+package com.banking.services;
+
+import com.banking.models.Account;
+import com.banking.utils.AccountIds;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class AccountTable {
+    private static final int INITIAL_CAPACITY = 64;
+    private static final long EMPTY = 0L;
+
+    private Account[] slots = new Account[INITIAL_CAPACITY];
+    private int nextOrdinal = 0;
+    private int size = 0;
+
+    // Open-addressing index from account number to ordinal, linear probing with backward-shift deletion.
+    private long[] keys = new long[INITIAL_CAPACITY * 2];
+    private int[] ordinals = new int[INITIAL_CAPACITY * 2];
+
+    public int add(Account account) {
+        long number = account.getAccountNumber();
+        if (indexOf(number) >= 0) {
+            throw new IllegalStateException("Duplicate account: " + account.getAccountId());
+        }
+        if (nextOrdinal == slots.length) {
+            Account[] grown = new Account[slots.length * 2];
+            System.arraycopy(slots, 0, grown, 0, slots.length);
+            slots = grown;
+        }
+        if ((size + 1) * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+        int ordinal = nextOrdinal++;
+        slots[ordinal] = account;
+        account.setOrdinal(ordinal);
+        insert(number, ordinal);
+        size++;
+        return ordinal;
+    }
+
+    public Account get(int ordinal) {
+        return ordinal >= 0 && ordinal < nextOrdinal ? slots[ordinal] : null;
+    }
+
+    public Account get(long number) {
+        int slot = indexOf(number);
+        return slot < 0 ? null : slots[ordinals[slot]];
+    }
+
+    public Account get(String accountId) {
+        long number = AccountIds.parse(accountId);
+        return number == AccountIds.INVALID ? null : get(number);
+    }
+
+    public boolean contains(long number) {
+        return indexOf(number) >= 0;
+    }
+
+    public Account remove(long number) {
+        int slot = indexOf(number);
+        if (slot < 0) {
+            return null;
+        }
+        int ordinal = ordinals[slot];
+        Account account = slots[ordinal];
+        slots[ordinal] = null;
+        deleteSlot(slot);
+        size--;
+        return account;
+    }
+
+    public Account remove(String accountId) {
+        long number = AccountIds.parse(accountId);
+        return number == AccountIds.INVALID ? null : remove(number);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int ordinalLimit() {
+        return nextOrdinal;
+    }
+
+    public List<Account> values() {
+        List<Account> result = new ArrayList<>(size);
+        for (int i = 0; i < nextOrdinal; i++) {
+            if (slots[i] != null) {
+                result.add(slots[i]);
+            }
+        }
+        return result;
+    }
+
+    private int indexOf(long number) {
+        if (number == EMPTY) {
+            return -1;
+        }
+        int mask = keys.length - 1;
+        int slot = hash(number) & mask;
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == number) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void insert(long number, int ordinal) {
+        int mask = keys.length - 1;
+        int slot = hash(number) & mask;
+        while (keys[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = number;
+        ordinals[slot] = ordinal;
+    }
+
+    private void deleteSlot(int slot) {
+        int mask = keys.length - 1;
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (keys[next] != EMPTY) {
+            int home = hash(keys[next]) & mask;
+            // Shift the entry back if its home position is not between the hole and its current slot.
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                ordinals[hole] = ordinals[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[hole] = EMPTY;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldOrdinals = ordinals;
+        keys = new long[capacity];
+        ordinals = new int[capacity];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                insert(oldKeys[i], oldOrdinals[i]);
+            }
+        }
+    }
+
+    private static int hash(long number) {
+        long h = number * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
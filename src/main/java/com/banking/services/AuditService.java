@@ -1,33 +1,686 @@
 package com.banking.services;
 
 import java.io.*;
-import java.util.Date;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
+import com.banking.enums.AuditResult;
+import com.banking.models.AuditEntry;
+import com.banking.utils.AccountIds;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+// Actions go to one segment file per time bucket (banking.audit.segmentMinutes, an hour by default) as fixed-size
+// binary records; action names are coded through actions.dict. Every segment has an index of blocks of BLOCK_ENTRIES
+// records with their time range, byte range and the actions they contain, so a query only reads the blocks that can
+// match. Sealed segments are recompressed in the background as one gzip member per block, which keeps the blocks
+// addressable; the result is still an ordinary .gz file. One process writes a directory at a time, holding audit.lock;
+// segment offsets and action codes live in its memory. Any other instance over the directory is read-only and reads
+// what the writer has put on disk at each query.
 public class AuditService {
     private static final Logger logger = LogManager.getLogger(AuditService.class);
     private static AuditService instance = null;
-    private static final String AUDIT_FILE_PATH = "database/audit.csv";
+    private static final int BLOCK_ENTRIES = 256;
+    // timestamp, duration, account, counterparty, card, amount, customer, action, result and one spare byte.
+    static final int RECORD_BYTES = 56;
+    private static final int NO_CUSTOMER = -1;
 
-    private AuditService() { }
+    private final File directory;
+    private final boolean readOnly;
+    private final long segmentMillis;
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private final Map<String, Integer> actionCodes = new HashMap<>();
+    private final List<String> actionNames = new ArrayList<>();
+    // Queries read sealed segments under the read lock; compression swaps a segment's files under the write lock.
+    private final ReadWriteLock segmentFiles = new ReentrantReadWriteLock();
+    private final ScheduledExecutorService background = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "audit");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Records are staged here and written when it fills, on every flush tick and before queries.
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(RECORD_BYTES * BLOCK_ENTRIES * 4);
+    private final ThreadLocal<Event> events = ThreadLocal.withInitial(() -> new Event(this));
+    private Segment active;
+    private FileChannel channel;
+    private FileChannel lock;
 
+    private AuditService(File directory, boolean readOnly) {
+        this.directory = directory;
+        this.segmentMillis = Long.getLong("banking.audit.segmentMinutes", 60) * 60 * 1000;
+        directory.mkdirs();
+        this.readOnly = readOnly || !lock();
+        if (this.readOnly) {
+            return;
+        }
+        loadActions();
+        recover();
+        long flushMillis = Long.getLong("banking.audit.flushMillis", 1000);
+        background.scheduleWithFixedDelay(this::flush, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush));
+    }
+
+    // The writer for banking.audit.directory (database/audit/ by default). When another process already writes there,
+    // this one records nothing rather than interleave records and action codes with it.
     public static synchronized AuditService getInstance() {
         if (instance == null) {
-            instance = new AuditService();
+            instance = new AuditService(configuredDirectory(), false);
+            if (instance.readOnly) {
+                logger.warn("Audit directory {} is written by another process; actions of this one are not audited",
+                        instance.directory);
+            }
         }
         return instance;
     }
 
+    // Reads the directory without writing to it, e.g. to dump it while the application keeps running.
+    public static AuditService openReadOnly() {
+        return openReadOnly(configuredDirectory());
+    }
+
+    static AuditService forDirectory(File directory) {
+        return new AuditService(directory, false);
+    }
+
+    static AuditService openReadOnly(File directory) {
+        return new AuditService(directory, true);
+    }
+
+    private static File configuredDirectory() {
+        return new File(System.getProperty("banking.audit.directory", "database/audit/"));
+    }
+
+    // Held until the process exits.
+    private boolean lock() {
+        try {
+            lock = FileChannel.open(new File(directory, "audit.lock").toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE);
+            if (lock.tryLock() != null) {
+                return true;
+            }
+        } catch (IOException | OverlappingFileLockException e) {
+            logger.error("Error locking audit directory {}: {}", directory, e.getMessage(), e);
+        }
+        return false;
+    }
+
     public void logAction(String actionName) {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(AUDIT_FILE_PATH, true))) {
-            String timestamp = new Date().toString();
-            writer.println(actionName + "," + timestamp);
-            logger.info("Logged action: {} at {}", actionName, timestamp);
+        event(actionName, 0).record();
+    }
+
+    // Returns this thread's reusable event, cleared; fill it in and call record() straight away. A start time of 0
+    // records no duration.
+    public Event event(String actionName, long startedNanos) {
+        return events.get().reset(actionName, startedNanos);
+    }
+
+    private synchronized void write(Event event) {
+        if (readOnly) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        try {
+            Segment segment = segmentFor(now);
+            int code = actionCode(event.action);
+            if (buffer.remaining() < RECORD_BYTES) {
+                drain();
+            }
+            buffer.putLong(now)
+                    .putLong(event.startedNanos == 0 ? 0 : System.nanoTime() - event.startedNanos)
+                    .putLong(event.account)
+                    .putLong(event.counterparty)
+                    .putLong(event.card)
+                    .putDouble(event.amount)
+                    .putInt(event.customer)
+                    .putShort((short) code)
+                    .put((byte) event.result.ordinal())
+                    .put((byte) 0);
+            segment.append(now, code, RECORD_BYTES);
+            if (logger.isDebugEnabled()) {
+                logger.debug("Logged action: {} with result {}", event.action, event.result);
+            }
         } catch (IOException e) {
             logger.error("Error logging action: {}", e.getMessage(), e);
-            e.printStackTrace();
+        }
+    }
+
+    public synchronized void flush() {
+        if (readOnly) {
+            return;
+        }
+        try {
+            drain();
+        } catch (IOException e) {
+            logger.error("Error writing audit records: {}", e.getMessage(), e);
+        }
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    public List<AuditEntry> query(String action, long fromMillis, long toMillis) {
+        List<AuditEntry> entries = new ArrayList<>();
+        query(action, fromMillis, toMillis, entries::add);
+        return entries;
+    }
+
+    // Entries with the given action (or any action when null) between the two times inclusive, in the order logged.
+    public void query(String action, long fromMillis, long toMillis, Consumer<AuditEntry> consumer) {
+        segmentFiles.readLock().lock();
+        try {
+            Map<Segment, List<Block>> candidates = new LinkedHashMap<>();
+            String[] names;
+            int code;
+            synchronized (this) {
+                if (readOnly) {
+                    refresh();
+                } else {
+                    drain();
+                }
+                Integer known = action == null ? Integer.valueOf(-1) : actionCodes.get(action);
+                if (known == null) {
+                    return;
+                }
+                code = known;
+                names = actionNames.toArray(new String[0]);
+                Long first = segments.floorKey(fromMillis);
+                for (Segment segment : segments.subMap(first == null ? fromMillis : first, true, toMillis, true).values()) {
+                    candidates.put(segment, segment == active ? segment.snapshot() : null);
+                }
+            }
+            for (Map.Entry<Segment, List<Block>> candidate : candidates.entrySet()) {
+                Segment segment = candidate.getKey();
+                List<Block> blocks = candidate.getValue() != null ? candidate.getValue() : segment.sealedBlocks();
+                try {
+                    read(segment, blocks, code, names, fromMillis, toMillis, consumer);
+                } catch (FileNotFoundException e) {
+                    // The writer compressed the segment since this reader listed it; nothing of it was read yet.
+                    if (!readOnly || segment.compressed) {
+                        throw e;
+                    }
+                    segment.data = new File(directory, segment.data.getName() + ".gz");
+                    segment.compressed = true;
+                    read(segment, readIndex(indexFile(segment.start)), code, names, fromMillis, toMillis, consumer);
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Error querying audit log: {}", e.getMessage(), e);
+        } finally {
+            segmentFiles.readLock().unlock();
+        }
+    }
+
+    // Writes the matching entries as CSV with a header row; returns how many were written.
+    public long dump(String action, long fromMillis, long toMillis, File output) throws IOException {
+        long[] count = new long[1];
+        try (PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(output)))) {
+            writer.println(AuditEntry.CSV_HEADER);
+            query(action, fromMillis, toMillis, entry -> {
+                writer.println(entry);
+                count[0]++;
+            });
+        }
+        return count[0];
+    }
+
+    private void read(Segment segment, List<Block> blocks, int code, String[] names, long fromMillis, long toMillis,
+                      Consumer<AuditEntry> consumer) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(segment.data, "r")) {
+            for (Block block : blocks) {
+                if (block.first > toMillis || block.last < fromMillis || (code >= 0 && !block.actions.get(code))) {
+                    continue;
+                }
+                byte[] bytes = new byte[block.length];
+                file.seek(block.offset);
+                file.readFully(bytes);
+                if (segment.compressed) {
+                    try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+                        bytes = in.readAllBytes();
+                    }
+                }
+                ByteBuffer records = ByteBuffer.wrap(bytes);
+                while (records.remaining() >= RECORD_BYTES) {
+                    long timestamp = records.getLong();
+                    long duration = records.getLong();
+                    long account = records.getLong();
+                    long counterparty = records.getLong();
+                    long card = records.getLong();
+                    double amount = records.getDouble();
+                    int customer = records.getInt();
+                    int action = records.getShort();
+                    int result = records.get();
+                    records.get();
+                    if (timestamp < fromMillis || timestamp > toMillis || (code >= 0 && action != code)) {
+                        continue;
+                    }
+                    consumer.accept(new AuditEntry(action < names.length ? names[action] : "#" + action, timestamp,
+                            AuditResult.values()[result], duration,
+                            customer == NO_CUSTOMER ? null : String.format("%04d", customer),
+                            account == 0 ? null : AccountIds.format(account),
+                            counterparty == 0 ? null : AccountIds.format(counterparty),
+                            decodeDigits(card), amount));
+                }
+            }
+        }
+    }
+
+    private int actionCode(String action) throws IOException {
+        Integer code = actionCodes.get(action);
+        if (code == null) {
+            code = actionNames.size();
+            Files.writeString(new File(directory, "actions.dict").toPath(), code + "," + action + "\n",
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            actionCodes.put(action, code);
+            actionNames.add(action);
+        }
+        return code;
+    }
+
+    // What the writer has put on disk: its action codes, sealed segments by their index, and plain ones by their
+    // whole records. A plain segment next to a .gz is still whole, while the .gz may not be indexed yet.
+    private void refresh() throws IOException {
+        actionCodes.clear();
+        actionNames.clear();
+        loadActions();
+        segments.clear();
+        File[] files = directory.listFiles();
+        for (File file : files == null ? new File[0] : files) {
+            String name = file.getName();
+            if (name.startsWith("audit-") && name.endsWith(".bin.gz")) {
+                long start = Long.parseLong(name.substring(6, name.length() - 7));
+                segments.putIfAbsent(start, new Segment(start, file, true));
+            } else if (name.startsWith("audit-") && name.endsWith(".bin")) {
+                long start = Long.parseLong(name.substring(6, name.length() - 4));
+                segments.put(start, new Segment(start, file, false));
+            }
+        }
+        for (Segment segment : segments.values()) {
+            if (segment.compressed) {
+                continue;
+            }
+            try {
+                segment.blocks = scan(segment.data, false);
+            } catch (NoSuchFileException e) {
+                segment.data = new File(directory, segment.data.getName() + ".gz");
+                segment.compressed = true;
+            }
+        }
+    }
+
+    private void loadActions() {
+        File file = new File(directory, "actions.dict");
+        if (!file.exists()) {
+            return;
+        }
+        try {
+            for (String line : Files.readAllLines(file.toPath())) {
+                int comma = line.indexOf(',');
+                if (comma > 0 && Integer.parseInt(line.substring(0, comma)) == actionNames.size()) {
+                    actionCodes.put(line.substring(comma + 1), actionNames.size());
+                    actionNames.add(line.substring(comma + 1));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            logger.error("Error loading audit actions: {}", e.getMessage(), e);
+        }
+    }
+
+    // A clock that steps back keeps writing to the current segment rather than reopening an older one.
+    private Segment segmentFor(long now) throws IOException {
+        long bucket = now - Math.floorMod(now, segmentMillis);
+        if (active != null && bucket <= active.start) {
+            return active;
+        }
+        if (active != null) {
+            seal(active);
+        }
+        active = new Segment(bucket, segmentFile(bucket), false);
+        active.blocks = new ArrayList<>();
+        segments.put(bucket, active);
+        openChannel();
+        return active;
+    }
+
+    private void openChannel() throws IOException {
+        channel = FileChannel.open(active.data.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    private File segmentFile(long start) {
+        return new File(directory, "audit-" + start + ".bin");
+    }
+
+    private void seal(Segment segment) throws IOException {
+        drain();
+        channel.close();
+        channel = null;
+        writeIndex(indexFile(segment.start), segment.blocks);
+        logger.info("Sealed audit segment {}", segment.data.getName());
+        background.execute(() -> compress(segment));
+    }
+
+    private void compress(Segment segment) {
+        File compressed = new File(directory, segment.data.getName() + ".gz");
+        File compressedTemp = new File(directory, compressed.getName() + ".tmp");
+        File indexTemp = new File(directory, indexFile(segment.start).getName() + ".tmp");
+        try {
+            List<Block> packed = new ArrayList<>(segment.blocks.size());
+            try (RandomAccessFile in = new RandomAccessFile(segment.data, "r");
+                 OutputStream out = new BufferedOutputStream(new FileOutputStream(compressedTemp))) {
+                long offset = 0;
+                for (Block block : segment.blocks) {
+                    byte[] raw = new byte[block.length];
+                    in.seek(block.offset);
+                    in.readFully(raw);
+                    ByteArrayOutputStream member = new ByteArrayOutputStream(raw.length / 4 + 64);
+                    try (GZIPOutputStream gzip = new GZIPOutputStream(member)) {
+                        gzip.write(raw);
+                    }
+                    member.writeTo(out);
+                    packed.add(block.movedTo(offset, member.size()));
+                    offset += member.size();
+                }
+            }
+            writeIndex(indexTemp, packed);
+            segmentFiles.writeLock().lock();
+            try {
+                Files.move(compressedTemp.toPath(), compressed.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                Files.move(indexTemp.toPath(), indexFile(segment.start).toPath(), StandardCopyOption.REPLACE_EXISTING);
+                File plain = segment.data;
+                synchronized (this) {
+                    segment.data = compressed;
+                    segment.compressed = true;
+                    segment.blocks = packed;
+                }
+                Files.delete(plain.toPath());
+            } finally {
+                segmentFiles.writeLock().unlock();
+            }
+            logger.info("Compressed audit segment {}", compressed.getName());
+        } catch (IOException e) {
+            logger.error("Error compressing audit segment {}: {}", segment.data.getName(), e.getMessage(), e);
+            compressedTemp.delete();
+            indexTemp.delete();
+        }
+    }
+
+    // A plain segment next to a .gz was interrupted mid-compression; the plain file and its index are still whole.
+    // A record cut short by a crash is dropped.
+    private void recover() {
+        File[] files = directory.listFiles();
+        long currentBucket = System.currentTimeMillis() - Math.floorMod(System.currentTimeMillis(), segmentMillis);
+        for (File file : files == null ? new File[0] : files) {
+            String name = file.getName();
+            if (name.endsWith(".tmp")) {
+                file.delete();
+            } else if (name.startsWith("audit-") && name.endsWith(".bin.gz")) {
+                long start = Long.parseLong(name.substring(6, name.length() - 7));
+                segments.putIfAbsent(start, new Segment(start, file, true));
+            } else if (name.startsWith("audit-") && name.endsWith(".bin")) {
+                long start = Long.parseLong(name.substring(6, name.length() - 4));
+                segments.put(start, new Segment(start, file, false));
+                new File(directory, name + ".gz").delete();
+            }
+        }
+        for (Segment segment : segments.values()) {
+            if (segment.compressed) {
+                continue;
+            }
+            try {
+                segment.blocks = scan(segment.data, true);
+                if (segment.start >= currentBucket && segment == segments.lastEntry().getValue()) {
+                    active = segment;
+                    openChannel();
+                } else {
+                    writeIndex(indexFile(segment.start), segment.blocks);
+                    background.execute(() -> compress(segment));
+                }
+            } catch (IOException e) {
+                logger.error("Error recovering audit segment {}: {}", segment.data.getName(), e.getMessage(), e);
+            }
+        }
+    }
+
+    // A writer cuts off a record left partly written by a crash; a reader only stops before it.
+    private static List<Block> scan(File file, boolean truncate) throws IOException {
+        List<Block> blocks = new ArrayList<>();
+        try (FileChannel in = truncate ? FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long whole = in.size() - in.size() % RECORD_BYTES;
+            if (truncate) {
+                in.truncate(whole);
+            }
+            ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES);
+            Block block = null;
+            for (long offset = 0; offset < whole; offset += RECORD_BYTES) {
+                record.clear();
+                while (record.hasRemaining()) {
+                    in.read(record, offset + record.position());
+                }
+                if (block == null || block.count == BLOCK_ENTRIES) {
+                    block = new Block(offset);
+                    blocks.add(block);
+                }
+                block.add(record.getLong(0), record.getShort(52), RECORD_BYTES);
+            }
+        }
+        return blocks;
+    }
+
+    private File indexFile(long start) {
+        return new File(directory, "audit-" + start + ".idx");
+    }
+
+    // One line per block: first,last,offset,length,count,actionCode;actionCode
+    private static void writeIndex(File file, List<Block> blocks) throws IOException {
+        try (PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(file)))) {
+            for (Block block : blocks) {
+                StringJoiner codes = new StringJoiner(";");
+                block.actions.stream().forEach(code -> codes.add(String.valueOf(code)));
+                writer.println(String.join(",", String.valueOf(block.first), String.valueOf(block.last),
+                        String.valueOf(block.offset), String.valueOf(block.length), String.valueOf(block.count),
+                        codes.toString()));
+            }
+        }
+    }
+
+    private static List<Block> readIndex(File file) throws IOException {
+        List<Block> blocks = new ArrayList<>();
+        for (String line : Files.readAllLines(file.toPath())) {
+            String[] values = line.split(",", -1);
+            Block block = new Block(Long.parseLong(values[2]));
+            block.first = Long.parseLong(values[0]);
+            block.last = Long.parseLong(values[1]);
+            block.length = Integer.parseInt(values[3]);
+            block.count = Integer.parseInt(values[4]);
+            if (!values[5].isEmpty()) {
+                for (String code : values[5].split(";")) {
+                    block.actions.set(Integer.parseInt(code));
+                }
+            }
+            blocks.add(block);
+        }
+        return blocks;
+    }
+
+    // Up to 17 digits with the digit count in the top bits, so leading zeros survive; anything else is 0.
+    private static long encodeDigits(String digits) {
+        if (digits == null || digits.isEmpty() || digits.length() > 17) {
+            return 0;
+        }
+        long value = 0;
+        for (int i = 0; i < digits.length(); i++) {
+            char c = digits.charAt(i);
+            if (c < '0' || c > '9') {
+                return 0;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value | (long) digits.length() << 57;
+    }
+
+    private static String decodeDigits(long encoded) {
+        if (encoded == 0) {
+            return null;
+        }
+        int length = (int) (encoded >>> 57);
+        String digits = Long.toString(encoded & ((1L << 57) - 1));
+        return "0".repeat(Math.max(0, length - digits.length())) + digits;
+    }
+
+    // A reusable, preallocated record per thread: filling it and recording it allocates nothing.
+    public static final class Event {
+        private final AuditService service;
+        private String action;
+        private long startedNanos;
+        private int customer;
+        private long account;
+        private long counterparty;
+        private long card;
+        private double amount;
+        private AuditResult result;
+
+        private Event(AuditService service) {
+            this.service = service;
+        }
+
+        private Event reset(String action, long startedNanos) {
+            this.action = action;
+            this.startedNanos = startedNanos;
+            this.customer = NO_CUSTOMER;
+            this.account = 0;
+            this.counterparty = 0;
+            this.card = 0;
+            this.amount = 0;
+            this.result = AuditResult.OK;
+            return this;
+        }
+
+        public Event customer(String customerId) {
+            long digits = encodeDigits(customerId);
+            customer = digits == 0 ? NO_CUSTOMER : (int) Math.min(Integer.MAX_VALUE, digits & ((1L << 57) - 1));
+            return this;
+        }
+
+        public Event account(String accountId) {
+            account = Math.max(0, AccountIds.parse(accountId));
+            return this;
+        }
+
+        public Event counterparty(String accountId) {
+            counterparty = Math.max(0, AccountIds.parse(accountId));
+            return this;
+        }
+
+        public Event card(String cardNumber) {
+            card = encodeDigits(cardNumber);
+            return this;
+        }
+
+        public Event amount(double amount) {
+            this.amount = amount;
+            return this;
+        }
+
+        public Event result(AuditResult result) {
+            this.result = result;
+            return this;
+        }
+
+        public void record() {
+            service.write(this);
+        }
+    }
+
+    private class Segment {
+        private final long start;
+        private volatile File data;
+        private volatile boolean compressed;
+        // Loaded from the index on first query for segments sealed in an earlier run.
+        private volatile List<Block> blocks;
+
+        private Segment(long start, File data, boolean compressed) {
+            this.start = start;
+            this.data = data;
+            this.compressed = compressed;
+        }
+
+        private void append(long timestamp, int action, int length) {
+            Block block = blocks.isEmpty() ? null : blocks.get(blocks.size() - 1);
+            if (block == null || block.count == BLOCK_ENTRIES) {
+                block = new Block(block == null ? 0 : block.offset + block.length);
+                blocks.add(block);
+            }
+            block.add(timestamp, action, length);
+        }
+
+        // The active segment keeps growing, so queries work on a copy of its blocks as of now.
+        private List<Block> snapshot() {
+            List<Block> copy = new ArrayList<>(blocks.size());
+            for (Block block : blocks) {
+                copy.add(block.movedTo(block.offset, block.length));
+            }
+            return copy;
+        }
+
+        private List<Block> sealedBlocks() throws IOException {
+            List<Block> loaded = blocks;
+            if (loaded == null) {
+                loaded = readIndex(indexFile(start));
+                blocks = loaded;
+            }
+            return loaded;
+        }
+    }
+
+    private static class Block {
+        private final long offset;
+        private final BitSet actions = new BitSet();
+        private int length;
+        private int count;
+        private long first = Long.MAX_VALUE;
+        private long last = Long.MIN_VALUE;
+
+        private Block(long offset) {
+            this.offset = offset;
+        }
+
+        private void add(long timestamp, int action, int bytes) {
+            first = Math.min(first, timestamp);
+            last = Math.max(last, timestamp);
+            actions.set(action);
+            length += bytes;
+            count++;
+        }
+
+        private Block movedTo(long offset, int length) {
+            Block moved = new Block(offset);
+            moved.actions.or(actions);
+            moved.length = length;
+            moved.count = count;
+            moved.first = first;
+            moved.last = last;
+            return moved;
         }
     }
 }
@@ -0,0 +1,67 @@
+package com.banking.services;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+// Copies of files that stay in use while the copy is taken. Nothing in the database directory is rewritten in
+// place: tables are replaced by renaming a new file over them, and logs only grow until they are deleted and
+// recreated. A hard link therefore freezes a replaced file, and a link plus the current length freezes a log.
+final class BackupFiles {
+    private BackupFiles() { }
+
+    // Falls back to a full copy where the file system has no hard links.
+    static void link(File source, File target) throws IOException {
+        if (!source.exists()) {
+            return;
+        }
+        target.getParentFile().mkdirs();
+        try {
+            Files.createLink(target.toPath(), source.toPath());
+        } catch (UnsupportedOperationException | IOException e) {
+            Files.copy(source.toPath(), target.toPath());
+        }
+    }
+
+    // Takes the length now and copies that many bytes when the returned step runs, by which time the file may
+    // have grown or been replaced.
+    static StorageEngine.Backup copyPrefix(File source, File target) throws IOException {
+        if (!source.exists()) {
+            return () -> { };
+        }
+        File pinned = new File(target.getPath() + ".pin");
+        link(source, pinned);
+        long length = Math.min(source.length(), pinned.length());
+        return () -> {
+            try (FileChannel in = FileChannel.open(pinned.toPath(), StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(target.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                long copied = 0;
+                while (copied < length) {
+                    long transferred = in.transferTo(copied, length - copied, out);
+                    if (transferred <= 0) {
+                        throw new IOException("File shrank while it was being backed up: " + source);
+                    }
+                    copied += transferred;
+                }
+            } finally {
+                Files.deleteIfExists(pinned.toPath());
+            }
+        };
+    }
+
+    static void deleteRecursively(File directory) throws IOException {
+        if (!directory.exists()) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(directory.toPath())) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
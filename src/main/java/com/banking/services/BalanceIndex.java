@@ -0,0 +1,81 @@
+package com.banking.services;
+
+import com.banking.models.Account;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+// Accounts ordered by published balance in cents, ties broken by ordinal, so the largest balances and balance ranges
+// are read in O(log n + k) off a concurrent skip list. The service moves an account's entry when it publishes a new
+// balance; readers never lock and may briefly miss an account whose entry is being moved.
+public class BalanceIndex {
+    private static final Comparator<Entry> ORDER = Comparator.<Entry>comparingLong(entry -> entry.cents)
+            .thenComparingInt(entry -> entry.ordinal);
+
+    private final NavigableSet<Entry> entries = new ConcurrentSkipListSet<>(ORDER);
+
+    // Largest balances first.
+    public List<Account> top(int count) {
+        List<Account> result = new ArrayList<>(Math.min(count, 1024));
+        Iterator<Entry> iterator = entries.descendingIterator();
+        while (result.size() < count && iterator.hasNext()) {
+            result.add(iterator.next().account);
+        }
+        return result;
+    }
+
+    // Accounts with minBalance <= balance <= maxBalance, lowest first.
+    public List<Account> range(double minBalance, double maxBalance) {
+        List<Account> result = new ArrayList<>();
+        if (minBalance > maxBalance) {
+            return result;
+        }
+        Entry from = new Entry(cents(minBalance), Integer.MIN_VALUE, null);
+        Entry to = new Entry(cents(maxBalance), Integer.MAX_VALUE, null);
+        for (Entry entry : entries.subSet(from, true, to, true)) {
+            result.add(entry.account);
+        }
+        return result;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    // An account's published balance moved from previous to current; null means absent from that version.
+    void update(Account account, Double previous, Double current) {
+        if (previous != null && current != null && cents(previous) == cents(current)) {
+            return;
+        }
+        if (previous != null) {
+            entries.remove(new Entry(cents(previous), account.getOrdinal(), account));
+        }
+        if (current != null) {
+            entries.add(new Entry(cents(current), account.getOrdinal(), account));
+        }
+    }
+
+    void clear() {
+        entries.clear();
+    }
+
+    private static long cents(double amount) {
+        return Math.round(amount * 100);
+    }
+
+    private static final class Entry {
+        private final long cents;
+        private final int ordinal;
+        private final Account account;
+
+        private Entry(long cents, int ordinal, Account account) {
+            this.cents = cents;
+            this.ordinal = ordinal;
+            this.account = account;
+        }
+    }
+}
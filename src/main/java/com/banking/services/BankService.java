@@ -1,133 +1,399 @@
 package com.banking.services;
 
 import com.banking.enums.AccountType;
+import com.banking.enums.AuditResult;
+import com.banking.enums.StorageTable;
 import com.banking.enums.TransactionType;
 import com.banking.exceptions.InsufficientFundsException;
 import com.banking.exceptions.InvalidAccountException;
 import com.banking.models.*;
+import com.banking.utils.AccountIds;
+import com.banking.utils.AccountNumberGenerator;
+import com.banking.utils.DateCodec;
+import com.banking.utils.IdGenerator;
+import com.banking.utils.PersistentVector;
+import com.banking.utils.SnowflakeIdGenerator;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.ParseException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 public class BankService implements BankServiceInterface {
     private static final Logger logger = LogManager.getLogger(BankService.class);
     private static final AuditService auditService = AuditService.getInstance();
-    private static int customerIndex = 0;
+    private static final int DEFERRED_TRANSACTION_FLUSH = 8192;
+    private static final AtomicInteger customerIndex = new AtomicInteger();
+    private static final String[] NO_FIELDS = new String[0];
 
     private final Map<String, Customer> customers = new HashMap<>();
-    private final Map<String, Account> accounts = new HashMap<>();
-    private List<Transaction> transactions = new ArrayList<>();
-    private List<Card> cards = new ArrayList<>();
-    private final Random random = new Random();
+    private final AccountTable accounts = new AccountTable();
+    private final List<Transaction> unsavedTransactions = new ArrayList<>();
+    private final StorageService storageService;
+    private final TieredTransactionStore historyStore;
+    private final VelocityLimiter velocityLimiter = VelocityLimiter.fromSystemProperties();
+    private final Map<String, Card> cards = new LinkedHashMap<>();
+    private final JournalService journal;
+    private final EventBus eventBus;
+    private final IdempotencyCache idempotencyCache = IdempotencyCache.fromSystemProperties();
+    private final IdGenerator accountNumberGenerator;
+    private final IdGenerator transactionIdGenerator;
+    private final boolean lazyHistory = Boolean.getBoolean("banking.lazyHistory");
+    private final Map<String, PreparedTransfer> prepared = new HashMap<>();
+    private final Map<Account, Double> held = new HashMap<>();
+    private final File checkpointFile;
+    private final File dailyTotalsFile;
+    private final long checkpointRecords = Long.getLong("banking.journal.checkpointRecords", 10_000);
+    private long checkpointPosition;
+    private final Set<String> pendingSaves = new LinkedHashSet<>();
+    // Rows changed since the last save of their table; saves write only these.
+    private final Set<Customer> changedCustomers = new LinkedHashSet<>();
+    private final Set<String> deletedCustomers = new LinkedHashSet<>();
+    private final Set<Account> changedAccounts = new LinkedHashSet<>();
+    private final Set<String> deletedAccounts = new LinkedHashSet<>();
+    private final Set<Card> changedCards = new LinkedHashSet<>();
+    private final Set<String> deletedCards = new LinkedHashSet<>();
+    // Changed since the last publish; listings and statements read the published snapshot without the service lock.
+    private final Set<Account> unpublishedAccounts = new LinkedHashSet<>();
+    private final Set<Customer> unpublishedCustomers = new LinkedHashSet<>();
+    private final Set<String> unpublishedCards = new LinkedHashSet<>();
+    private final Map<Long, Integer> accountOrdinals = new ConcurrentHashMap<>();
+    private volatile LedgerSnapshot snapshot = new LedgerSnapshot(0, PersistentVector.empty(), PersistentVector.empty(),
+            accountOrdinals);
+    private final LedgerAggregates aggregates = LedgerAggregates.fromSystemProperties();
+    private final BalanceIndex balanceIndex = new BalanceIndex();
+    private final TransactionSearchIndex searchIndex;
+    // False until the index holds every posting: restored from its last save, or built on first use.
+    private volatile boolean searchIndexReady;
+    private boolean deferSaves = false;
 
     public BankService() {
+        this(new AccountNumberGenerator(), new SnowflakeIdGenerator(Integer.getInteger("banking.workerId", 0)));
+    }
+
+    public BankService(IdGenerator accountNumberGenerator, IdGenerator transactionIdGenerator) {
+        this(StorageService.getInstance(), accountNumberGenerator, transactionIdGenerator);
+    }
+
+    public BankService(StorageService storageService, IdGenerator accountNumberGenerator, IdGenerator transactionIdGenerator) {
+        this.storageService = storageService;
+        this.historyStore = TieredTransactionStore.fromSystemProperties(storageService.getDatabasePath());
+        this.journal = new JournalService(new File(storageService.getDatabasePath() + "journal.log"));
+        this.checkpointFile = new File(storageService.getDatabasePath() + "journal.checkpoint");
+        this.dailyTotalsFile = new File(storageService.getDatabasePath() + "aggregates.checkpoint");
+        this.searchIndex = new TransactionSearchIndex(new File(storageService.getDatabasePath() + "search"));
+        this.eventBus = EventBus.fromSystemProperties(journal, storageService.getDatabasePath());
+        this.accountNumberGenerator = accountNumberGenerator;
+        this.transactionIdGenerator = transactionIdGenerator;
         loadData();
     }
 
     private void loadData() {
-        StorageService storageService = StorageService.getInstance();
-
+        long started = System.nanoTime();
         List<Customer> loadedCustomers = storageService.loadCustomers();
         for (Customer customer : loadedCustomers) {
             customers.put(customer.getId(), customer);
-            customerIndex = Math.max(customerIndex, Integer.parseInt(customer.getId()));
+            customerIndex.accumulateAndGet(Integer.parseInt(customer.getId()), Math::max);
         }
 
         List<Account> loadedAccounts = storageService.loadAccounts(customers);
         for (Account account : loadedAccounts) {
-            accounts.put(account.getAccountId(), account);
+            accounts.add(account);
+            accountNumberGenerator.observe(account.getAccountNumber());
+        }
+        // Ids of deleted customers and accounts are never handed out again; their postings are still stored.
+        for (String[] retired : storageService.loadRetired()) {
+            observeRetired(retired);
+        }
+
+        if (lazyHistory) {
+            // History is paged in per account on first use; startup only touches customers, accounts and cards.
+            HistoryLoader historyLoader = storageService.historyLoader();
+            for (Account account : loadedAccounts) {
+                account.setHistoryLoader(historyLoader);
+            }
+        } else {
+            storageService.loadTransactions(accounts);
+            for (Account account : loadedAccounts) {
+                historyStore.touch(account);
+            }
+        }
+
+        for (Card card : storageService.loadCards(accounts)) {
+            cards.put(card.getCardNumber(), card);
+        }
+        unpublishedCards.addAll(cards.keySet());
+        restoreDailyTotals();
+        restoreSearchIndex();
+
+        idempotencyCache.restore(journal);
+        compactJournal();
+
+        unpublishedCustomers.addAll(customers.values());
+        unpublishedAccounts.addAll(loadedAccounts);
+        publish();
+        logger.info("Loaded all data.");
+        auditService.event("loadData", started).record();
+    }
+
+    // Daily flows start from the totals saved at the last checkpoint and add the postings journaled since. Only with
+    // no save to start from are they counted from the stored postings, including those of deleted accounts, once.
+    private void restoreDailyTotals() {
+        long position = aggregates.restoreDailyTotals(dailyTotalsFile);
+        if (position >= 0 && replayPostings(position, this::countPosting)) {
+            return;
+        }
+        if (position >= 0) {
+            logger.warn("Daily totals saved at journal position {} cannot be caught up; counting stored postings", position);
+            aggregates.clearDailyTotals();
+        }
+        scanStoredPostings(this::countPosting);
+        saveDailyTotals(journal.getPosition());
+    }
+
+    private void countPosting(String transactionId, String accountId, TransactionType type, double amount, long timestampMillis) {
+        aggregates.posted(DateCodec.formatDate(timestampMillis), type, amount);
+    }
+
+    private void saveDailyTotals(long position) {
+        try {
+            aggregates.saveDailyTotals(dailyTotalsFile, position);
+        } catch (IOException e) {
+            logger.error("Error saving daily totals: {}", e.getMessage(), e);
+        }
+    }
+
+    // Maps the index saved at the last checkpoint and adds the postings journaled since. Without a save to start
+    // from, the index is built on first use instead of holding up the load with a read of every stored posting.
+    private void restoreSearchIndex() {
+        long position = searchIndex.restore();
+        if (position >= 0 && replayPostings(position, this::indexPosting)) {
+            searchIndexReady = true;
+        } else if (position >= 0) {
+            logger.warn("Search index saved at journal position {} cannot be caught up; it is built on first use", position);
+            searchIndex.clear();
+        }
+    }
+
+    // Stores the postings still queued, so one scan of the stored rows covers every posting made so far. Writers
+    // wait for the scan, which runs once: the index is saved right away and mapped on later starts.
+    private synchronized void buildSearchIndex() {
+        if (searchIndexReady) {
+            return;
+        }
+        long started = System.nanoTime();
+        storeQueuedPostings();
+        searchIndex.clear();
+        scanStoredPostings(this::indexPosting);
+        saveSearchIndex(journal.getPosition());
+        searchIndexReady = true;
+        logger.info("Built the search index over {} postings", searchIndex.size());
+        auditService.event("buildSearchIndex", started).record();
+    }
+
+    private void saveSearchIndex(long position) {
+        try {
+            searchIndex.save(position);
+        } catch (IOException e) {
+            logger.error("Error saving the search index: {}", e.getMessage(), e);
+        }
+    }
+
+    private void indexPosting(String transactionId, String accountId, TransactionType type, double amount, long timestampMillis) {
+        long accountNumber = AccountIds.parse(accountId);
+        if (accountNumber != AccountIds.INVALID) {
+            searchIndex.add(transactionId, accountNumber, type, amount, timestampMillis);
         }
+    }
+
+    private void scanStoredPostings(PostingConsumer consumer) {
+        try {
+            storageService.scanTransactionRows(row -> {
+                if (row.length < 5) {
+                    return;
+                }
+                try {
+                    consumer.posted(row[0], row[1], TransactionType.valueOf(row[2]), Double.parseDouble(row[3]),
+                            DateCodec.parse(row[4]));
+                } catch (IllegalArgumentException | ParseException e) {
+                    logger.error("Skipping stored posting {}: {}", row[0], e.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            logger.error("Error scanning stored postings: {}", e.getMessage(), e);
+        }
+    }
 
-        transactions = storageService.loadTransactions(accounts);
+    // Hands the postings journaled after the position to the consumer. False when the journal no longer starts right
+    // after the position, or ends before it, so state saved at that position cannot be caught up from it.
+    private boolean replayPostings(long position, PostingConsumer consumer) {
+        if (journal.getPosition() < position) {
+            return false;
+        }
+        boolean[] complete = {true};
+        long[] expected = {position + 1};
+        journal.replay(position, record -> {
+            if (expected[0] > 0 && record.getPosition() != expected[0]) {
+                complete[0] = false;
+            }
+            expected[0] = 0;
+            if (complete[0]) {
+                forEachPosting(record, consumer);
+            }
+        });
+        return complete[0];
+    }
 
-        cards = storageService.loadCards(accounts);
+    // The postings a journal record stands for, with the ids and time post() gave them.
+    private static void forEachPosting(JournalService.JournalRecord record, PostingConsumer consumer) {
+        String[] f = record.getFields();
+        long time = record.getTimestamp();
+        try {
+            switch (record.getType()) {
+                case "DEPOSIT" -> consumer.posted(f[2], f[0], TransactionType.DEPOSIT, Double.parseDouble(f[1]), time);
+                case "WITHDRAW" -> consumer.posted(f[2], f[0], TransactionType.WITHDRAWAL, Double.parseDouble(f[1]), time);
+                case "CARD_PAYMENT" -> consumer.posted(f[2], f[3], TransactionType.WITHDRAWAL, Double.parseDouble(f[1]), time);
+                case "TRANSFER" -> {
+                    consumer.posted(f[3], f[0], TransactionType.WITHDRAWAL, Double.parseDouble(f[2]), time);
+                    consumer.posted(f[4], f[1], TransactionType.DEPOSIT, Double.parseDouble(f[2]), time);
+                }
+                case "COMMIT" -> consumer.posted(commitTransactionId(f), f[1],
+                        f[3].equals("DEBIT") ? TransactionType.WITHDRAWAL : TransactionType.DEPOSIT,
+                        Double.parseDouble(f[2]), time);
+                default -> { }
+            }
+        } catch (RuntimeException e) {
+            logger.error("Skipping postings of journal record {}: {}", record.getPosition(), e.getMessage());
+        }
+    }
 
-        logger.info("Loaded all data from CSV files.");
-        auditService.logAction("loadData");
+    // COMMIT records written before they carried the posting's id stand for it with the transfer id.
+    private static String commitTransactionId(String[] fields) {
+        return fields.length > 4 ? fields[4] : fields[0];
     }
 
     @Override
-    public void createCustomer(String name, String surname, int age) {
-        String customerId = String.format("%04d", ++customerIndex);
+    public synchronized Customer createCustomer(String name, String surname, int age) {
+        String customerId = String.format("%04d", customerIndex.incrementAndGet());
         Customer customer = new Customer(customerId, name, surname, age);
         customers.put(customerId, customer);
+        changedCustomers.add(customer);
+        unpublishedCustomers.add(customer);
+        journal.append("CREATE_CUSTOMER", customerId, name, surname, String.valueOf(age));
         logger.info("Created customer: {}", customerId);
-        auditService.logAction("createCustomer");
+        auditService.event("createCustomer", 0).customer(customerId).record();
         saveData("customers");
+        return customer;
     }
 
     @Override
-    public void createAccount(String customerId, AccountType type) throws InvalidAccountException {
+    public synchronized Account createAccount(String customerId, AccountType type) throws InvalidAccountException {
         Customer customer = customers.get(customerId);
         if (customer == null) {
             logger.error("Customer not found: {}", customerId);
             throw new InvalidAccountException("Customer not found");
         }
 
-        String accountId = "RO49AAAA1B31007" + (100000000 + random.nextInt(900000000));
+        long accountNumber = nextAccountNumber();
         Account account;
         if (type == AccountType.PRIMARY) {
-            account = new PrimaryAccount(accountId, customer);
+            account = new PrimaryAccount(accountNumber, customer);
         } else if (type == AccountType.SAVINGS) {
-            account = new SavingsAccount(accountId, customer, 1.5); // Assuming 1.5% interest rate
+            account = new SavingsAccount(accountNumber, customer, 1.5); // Assuming 1.5% interest rate
         } else {
             logger.error("Invalid account type: {}", type);
             throw new InvalidAccountException("Invalid account type");
         }
 
-        accounts.put(accountId, account);
+        accounts.add(account);
         customer.addAccount(account);
-        logger.info("Created account: {} for customer: {}", accountId, customerId);
-        auditService.logAction("createAccount");
+        changedAccounts.add(account);
+        unpublishedAccounts.add(account);
+        journal.append("CREATE_ACCOUNT", account.getAccountId(), type.name(), customerId);
+        logger.info("Created account: {} for customer: {}", account.getAccountId(), customerId);
+        auditService.event("createAccount", 0).customer(customerId).account(account.getAccountId()).record();
         saveData("accounts");
+        return account;
     }
 
     @Override
     public List<Account> getAccountsByCustomer(String customerId) throws InvalidAccountException {
-        Customer customer = customers.get(customerId);
-        if (customer == null) {
+        List<Account> customerAccounts = snapshot.getAccounts(customerId);
+        if (customerAccounts == null) {
             logger.error("Customer not found: {}", customerId);
             throw new InvalidAccountException("Customer not found");
         }
         logger.info("Retrieved accounts for customer: {}", customerId);
-        return customer.getAccounts();
+        return customerAccounts;
     }
 
+    // Reads one published snapshot: the postings and closing balance agree with each other even while writers carry
+    // on, and nothing here waits for the service lock.
     @Override
     public BankStatement generateBankStatement(String accountId, Date startDate, Date endDate) throws InvalidAccountException {
-        Account account = accounts.get(accountId);
+        LedgerSnapshot current = snapshot;
+        Account account = current.getAccount(accountId);
         if (account == null) {
             logger.error("Account not found: {}", accountId);
             throw new InvalidAccountException("Account not found");
         }
 
-        List<Transaction> filteredTransactions = new ArrayList<>();
-        for (Transaction transaction : account.getTransactions()) {
-            if (!transaction.getTimestamp().before(startDate) && !transaction.getTimestamp().after(endDate)) {
-                filteredTransactions.add(transaction);
-            }
-        }
-
-        double closingBalance = account.getBalance();
+        double closingBalance = current.getBalance(account);
         String statementId = UUID.randomUUID().toString();
 
         logger.info("Generated bank statement: {} for account: {} from {} to {}", statementId, accountId, startDate, endDate);
-        return new BankStatement(statementId, account, startDate, endDate, filteredTransactions, closingBalance);
+        // Read while the statement is written out; paging in the stored history counts against the heap budget after.
+        return new BankStatement(statementId, account, startDate, endDate, action -> {
+            current.forEachTransaction(account, startDate, endDate, action);
+            historyStore.touch(account);
+            if (snapshot.getAccount(accountId) != account) {
+                // Deleted meanwhile; detachAccount may already have dropped it from the history store.
+                historyStore.forget(account);
+            }
+        }, closingBalance);
     }
 
     @Override
     public List<Customer> getAllCustomers() {
-        return new ArrayList<>(customers.values());
+        return snapshot.getCustomers();
     }
 
     @Override
     public List<Account> getAllAccounts() {
-        return new ArrayList<>(accounts.values());
+        return snapshot.getAccounts();
+    }
+
+    public LedgerSnapshot snapshot() {
+        return snapshot;
+    }
+
+    public LedgerAggregates getAggregates() {
+        return aggregates;
+    }
+
+    public BalanceIndex getBalanceIndex() {
+        return balanceIndex;
+    }
+
+    // Built on first use when load found no saved index to start from.
+    public TransactionSearchIndex getSearchIndex() {
+        if (!searchIndexReady) {
+            buildSearchIndex();
+        }
+        return searchIndex;
     }
 
     @Override
-    public Customer getCustomerById(String customerId) throws InvalidAccountException {
+    public synchronized Customer getCustomerById(String customerId) throws InvalidAccountException {
         Customer customer = customers.get(customerId);
         if (customer == null) {
             logger.error("Customer not found: {}", customerId);
@@ -136,145 +402,994 @@ public class BankService implements BankServiceInterface {
         return customer;
     }
 
+    // Null fields are left as they are. The customer is changed under the service lock, like every other mutation.
     @Override
-    public void updateCustomer(Customer customer) {
-        customers.put(customer.getId(), customer);
+    public synchronized Customer updateCustomer(String customerId, String name, String surname, Integer age) throws InvalidAccountException {
+        Customer customer = customers.get(customerId);
+        if (customer == null) {
+            logger.error("Customer not found: {}", customerId);
+            throw new InvalidAccountException("Customer not found");
+        }
+        if (name != null) {
+            customer.setName(name);
+        }
+        if (surname != null) {
+            customer.setSurname(surname);
+        }
+        if (age != null) {
+            customer.setAge(age);
+        }
+        changedCustomers.add(customer);
+        unpublishedCustomers.add(customer);
+        journal.append("UPDATE_CUSTOMER", customer.getId(), customer.getName(), customer.getSurname(),
+                String.valueOf(customer.getAge()));
         logger.info("Updated customer: {}", customer.getId());
-        auditService.logAction("updateCustomer");
+        auditService.event("updateCustomer", 0).customer(customer.getId()).record();
         saveData("customers");
+        return customer;
     }
 
     @Override
-    public void deleteCustomer(String customerId) throws InvalidAccountException {
-        Customer customer = customers.remove(customerId);
+    public synchronized void deleteCustomer(String customerId) throws InvalidAccountException {
+        Customer customer = customers.get(customerId);
         if (customer == null) {
             logger.error("Customer not found: {}", customerId);
             throw new InvalidAccountException("Customer not found");
         }
-        logger.info("Deleted customer: {}", customerId);
-        auditService.logAction("deleteCustomer");
+        for (Account account : customer.getAccounts()) {
+            checkNoTransferInProgress(account);
+        }
+        customers.remove(customerId);
+        deletedCustomers.add(customerId);
+        unpublishedCustomers.add(customer);
+        List<Account> ownedAccounts = customer.getAccounts();
+        boolean hadCards = false;
+        for (Account account : ownedAccounts) {
+            hadCards |= detachAccount(account);
+        }
+        archive(customer, ownedAccounts);
+        journal.append("DELETE_CUSTOMER", customerId);
+        logger.info("Deleted customer: {} with {} accounts", customerId, ownedAccounts.size());
+        auditService.event("deleteCustomer", 0).customer(customerId).record();
         saveData("customers");
+        if (!ownedAccounts.isEmpty()) {
+            saveData("accounts");
+        }
+        if (hadCards) {
+            saveData("cards");
+        }
     }
 
     @Override
-    public void deleteAccount(String accountId) throws InvalidAccountException {
-        Account account = accounts.remove(accountId);
+    public synchronized void deleteAccount(String accountId) throws InvalidAccountException {
+        Account account = accounts.get(accountId);
         if (account == null) {
             logger.error("Account not found: {}", accountId);
             throw new InvalidAccountException("Account not found");
         }
-        account.getOwner().getAccounts().remove(account);
+        checkNoTransferInProgress(account);
+        account.getOwner().removeAccount(account);
+        boolean hadCards = detachAccount(account);
+        archive(null, List.of(account));
+        journal.append("DELETE_ACCOUNT", accountId);
         logger.info("Deleted account: {}", accountId);
-        auditService.logAction("deleteAccount");
+        auditService.event("deleteAccount", 0).account(accountId).record();
         saveData("accounts");
+        if (hadCards) {
+            saveData("cards");
+        }
+    }
+
+    // Walks the account's own cards instead of scanning the card table. Its postings stay in transactions.csv as rows
+    // of a retired account, which loading skips and no new account can take over.
+    private boolean detachAccount(Account account) {
+        accounts.remove(account.getAccountNumber());
+        deletedAccounts.add(account.getAccountId());
+        unpublishedAccounts.add(account);
+        historyStore.forget(account);
+        for (Card card : account.getCards()) {
+            cards.remove(card.getCardNumber());
+            deletedCards.add(card.getCardNumber());
+            unpublishedCards.add(card.getCardNumber());
+        }
+        return !account.getCards().isEmpty();
+    }
+
+    // Postings still queued are stored first, so the archive copies every stored row of the accounts.
+    private void archive(Customer customer, List<Account> removed) {
+        storeQueuedPostings();
+        storageService.archive(customer, removed);
+    }
+
+    private void storeQueuedPostings() {
+        if (!unsavedTransactions.isEmpty()) {
+            storageService.appendTransactions(unsavedTransactions);
+            unsavedTransactions.clear();
+        }
     }
 
     @Override
-    public void addCard(Card card) {
-        cards.add(card);
+    public synchronized void addCard(Card card) {
+        Card existing = cards.get(card.getCardNumber());
+        if (existing != null && existing != card) {
+            logger.error("Card number already in use: {}", card.getCardNumber());
+            throw new IllegalArgumentException("Card number already in use");
+        }
+        cards.put(card.getCardNumber(), card);
+        changedCards.add(card);
+        unpublishedCards.add(card.getCardNumber());
+        journal.append("ADD_CARD", card.getCardNumber(), card.getAccount().getAccountId(),
+                String.valueOf(card.getExpirationDate().getTime()));
         logger.info("Added card: {}", card.getCardNumber());
-        auditService.logAction("addCard");
+        auditService.event("addCard", 0).card(card.getCardNumber()).account(card.getAccount().getAccountId()).record();
         saveData("cards");
     }
 
     @Override
-    public void removeCard(Card card) {
-        cards.remove(card);
+    public Card issueCard(String accountId) throws InvalidAccountException {
+        return issueCard(accountId, number -> false);
+    }
+
+    // Draws random numbers until one is free here and not taken elsewhere, which the sharded router checks for.
+    synchronized Card issueCard(String accountId, Predicate<String> takenElsewhere) throws InvalidAccountException {
+        Account account = accounts.get(accountId);
+        if (account == null) {
+            logger.error("Account not found: {}", accountId);
+            throw new InvalidAccountException("Account not found");
+        }
+        String number;
+        do {
+            number = newCardNumber();
+        } while (cards.containsKey(number) || takenElsewhere.test(number));
+        Card card = new Card(number, new Date(), account);
+        account.addCard(card);
+        addCard(card);
+        return card;
+    }
+
+    private static String newCardNumber() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        StringBuilder number = new StringBuilder(String.format("%04d", 1000 + random.nextInt(9000)));
+        for (int i = 0; i < 3; i++) {
+            number.append(String.format("%04d", random.nextInt(9000)));
+        }
+        return number.toString();
+    }
+
+    @Override
+    public synchronized void removeCard(Card card) {
+        // The account's card list is read under this lock too, so it changes here rather than in the caller.
+        card.getAccount().removeCard(card);
+        cards.remove(card.getCardNumber());
+        deletedCards.add(card.getCardNumber());
+        unpublishedCards.add(card.getCardNumber());
+        journal.append("REMOVE_CARD", card.getCardNumber());
         logger.info("Removed card: {}", card.getCardNumber());
-        auditService.logAction("removeCard");
+        auditService.event("removeCard", 0).card(card.getCardNumber()).record();
         saveData("cards");
     }
 
     @Override
-    public void transfer(String fromAccountId, String toAccountId, double amount) throws InsufficientFundsException, InvalidAccountException {
-        Account fromAccount = accounts.get(fromAccountId);
-        Account toAccount = accounts.get(toAccountId);
-        if (fromAccount == null) {
-            logger.error("Source account not found: {}", fromAccountId);
-            throw new InvalidAccountException("Source account not found");
-        }
-        if (toAccount == null) {
-            logger.error("Destination account not found: {}", toAccountId);
-            throw new InvalidAccountException("Destination account not found");
-        }
-        if (amount <= 0) {
-            logger.error("Transfer amount must be positive: {}", amount);
-            throw new IllegalArgumentException("Transfer amount must be positive");
-        }
-        fromAccount.withdraw(amount);
-        toAccount.deposit(amount);
-        Transaction transaction = new Transaction(UUID.randomUUID().toString(), amount, TransactionType.WITHDRAWAL, fromAccount);
-        transactions.add(transaction);
-        transaction = new Transaction(UUID.randomUUID().toString(), amount, TransactionType.DEPOSIT, toAccount);
-        transactions.add(transaction);
-        logger.info("Transferred {} from account {} to account {}", amount, fromAccountId, toAccountId);
-        auditService.logAction("transfer");
-        saveData("transactions");
+    public synchronized void transfer(String fromAccountId, String toAccountId, double amount) throws InsufficientFundsException, InvalidAccountException {
+        transfer(fromAccountId, toAccountId, amount, NO_FIELDS);
+    }
+
+    // The outcome fields of an idempotent request go at the end of the mutation's own journal record. Postings are
+    // journaled before any balance changes, so an append that fails leaves nothing applied and a retry of the same key
+    // cannot move the money twice.
+    synchronized void transfer(String fromAccountId, String toAccountId, double amount, String[] outcome) throws InsufficientFundsException, InvalidAccountException {
+        long started = System.nanoTime();
+        AuditResult result = AuditResult.ERROR;
+        try {
+            Account fromAccount = accounts.get(fromAccountId);
+            Account toAccount = accounts.get(toAccountId);
+            if (fromAccount == null) {
+                logger.error("Source account not found: {}", fromAccountId);
+                throw new InvalidAccountException("Source account not found");
+            }
+            if (toAccount == null) {
+                logger.error("Destination account not found: {}", toAccountId);
+                throw new InvalidAccountException("Destination account not found");
+            }
+            if (amount <= 0) {
+                logger.error("Transfer amount must be positive: {}", amount);
+                throw new IllegalArgumentException("Transfer amount must be positive");
+            }
+            checkWithdrawal(fromAccount, null, amount);
+            Transaction withdrawal = new Transaction(nextTransactionId(), amount, TransactionType.WITHDRAWAL, fromAccount);
+            Transaction deposit = new Transaction(nextTransactionId(), amount, TransactionType.DEPOSIT, toAccount);
+            deposit.setTimestampMillis(withdrawal.getTimestampMillis());
+            journal.append(withdrawal.getTimestampMillis(), "TRANSFER", IdempotencyCache.withOutcome(new String[]{fromAccountId, toAccountId,
+                    String.valueOf(amount), withdrawal.getTransactionId(), deposit.getTransactionId()}, outcome));
+            fromAccount.withdraw(amount);
+            toAccount.deposit(amount);
+            post(withdrawal);
+            post(deposit);
+            historyStore.touch(fromAccount);
+            historyStore.touch(toAccount);
+            logger.info("Transferred {} from account {} to account {}", amount, fromAccountId, toAccountId);
+            saveData("transactions");
+            result = AuditResult.OK;
+        } catch (InsufficientFundsException | InvalidAccountException | IllegalArgumentException e) {
+            result = AuditResult.of(e);
+            throw e;
+        } finally {
+            auditService.event("transfer", started).account(fromAccountId).counterparty(toAccountId).amount(amount).result(result).record();
+        }
+    }
+
+    @Override
+    public synchronized void withdraw(String accountId, double amount) throws InsufficientFundsException, InvalidAccountException {
+        withdraw(accountId, amount, NO_FIELDS);
+    }
+
+    synchronized void withdraw(String accountId, double amount, String[] outcome) throws InsufficientFundsException, InvalidAccountException {
+        long started = System.nanoTime();
+        AuditResult result = AuditResult.ERROR;
+        try {
+            Account account = accounts.get(accountId);
+            if (account == null) {
+                logger.error("Account not found: {}", accountId);
+                throw new InvalidAccountException("Account not found");
+            }
+            if (amount <= 0) {
+                logger.error("Withdrawal amount must be positive: {}", amount);
+                throw new IllegalArgumentException("Withdrawal amount must be positive");
+            }
+            checkWithdrawal(account, null, amount);
+            Transaction transaction = new Transaction(nextTransactionId(), amount, TransactionType.WITHDRAWAL, account);
+            journal.append(transaction.getTimestampMillis(), "WITHDRAW", IdempotencyCache.withOutcome(new String[]{accountId, String.valueOf(amount),
+                    transaction.getTransactionId()}, outcome));
+            account.withdraw(amount);
+            post(transaction);
+            historyStore.touch(account);
+            logger.info("Withdrew {} from account {}", amount, accountId);
+            saveData("transactions");
+            result = AuditResult.OK;
+        } catch (InsufficientFundsException | InvalidAccountException | IllegalArgumentException e) {
+            result = AuditResult.of(e);
+            throw e;
+        } finally {
+            auditService.event("withdraw", started).account(accountId).amount(amount).result(result).record();
+        }
+    }
+
+    @Override
+    public synchronized void cardPayment(String cardNumber, double amount) throws InsufficientFundsException, InvalidAccountException {
+        long started = System.nanoTime();
+        AuditResult result = AuditResult.ERROR;
+        try {
+            Card card = cards.get(cardNumber);
+            if (card == null) {
+                logger.error("Card not found: {}", cardNumber);
+                throw new InvalidAccountException("Card not found");
+            }
+            if (card.isBlocked()) {
+                logger.error("Card is blocked: {}", cardNumber);
+                throw new InvalidAccountException("Card is blocked");
+            }
+            if (amount <= 0) {
+                logger.error("Card payment amount must be positive: {}", amount);
+                throw new IllegalArgumentException("Card payment amount must be positive");
+            }
+            Account account = card.getAccount();
+            checkWithdrawal(account, card, amount);
+            Transaction transaction = new Transaction(nextTransactionId(), amount, TransactionType.WITHDRAWAL, account);
+            journal.append(transaction.getTimestampMillis(), "CARD_PAYMENT", cardNumber, String.valueOf(amount), transaction.getTransactionId(),
+                    account.getAccountId());
+            account.withdraw(amount);
+            post(transaction);
+            historyStore.touch(account);
+            logger.info("Card {} paid {} from account {}", cardNumber, amount, account.getAccountId());
+            saveData("transactions");
+            result = AuditResult.OK;
+        } catch (InsufficientFundsException | InvalidAccountException | IllegalArgumentException e) {
+            result = AuditResult.of(e);
+            throw e;
+        } finally {
+            auditService.event("cardPayment", started).card(cardNumber).amount(amount).result(result).record();
+        }
+    }
+
+    @Override
+    public synchronized void deposit(String accountId, double amount) throws InvalidAccountException {
+        deposit(accountId, amount, NO_FIELDS);
+    }
+
+    synchronized void deposit(String accountId, double amount, String[] outcome) throws InvalidAccountException {
+        long started = System.nanoTime();
+        AuditResult result = AuditResult.ERROR;
+        try {
+            Account account = accounts.get(accountId);
+            if (account == null) {
+                logger.error("Account not found: {}", accountId);
+                throw new InvalidAccountException("Account not found");
+            }
+            if (amount <= 0) {
+                logger.error("Deposit amount must be positive: {}", amount);
+                throw new IllegalArgumentException("Deposit amount must be positive");
+            }
+            Transaction transaction = new Transaction(nextTransactionId(), amount, TransactionType.DEPOSIT, account);
+            journal.append(transaction.getTimestampMillis(), "DEPOSIT", IdempotencyCache.withOutcome(new String[]{accountId, String.valueOf(amount),
+                    transaction.getTransactionId()}, outcome));
+            account.deposit(amount);
+            post(transaction);
+            historyStore.touch(account);
+            logger.info("Deposited {} to account {}", amount, accountId);
+            saveData("transactions");
+            result = AuditResult.OK;
+        } catch (InvalidAccountException | IllegalArgumentException e) {
+            result = AuditResult.of(e);
+            throw e;
+        } finally {
+            auditService.event("deposit", started).account(accountId).amount(amount).result(result).record();
+        }
+    }
+
+    @Override
+    public synchronized Account getAccountById(String accountId) {
+        return accounts.get(accountId);
+    }
+
+    // The account a card payment is charged to, or null for an unknown card.
+    public synchronized Account getCardAccount(String cardNumber) {
+        Card card = cards.get(cardNumber);
+        return card == null ? null : card.getAccount();
+    }
+
+    @Override
+    public synchronized void setCardBlocked(String cardNumber, boolean blocked) throws InvalidAccountException {
+        Card card = cards.get(cardNumber);
+        if (card == null) {
+            logger.error("Card not found: {}", cardNumber);
+            throw new InvalidAccountException("Card not found");
+        }
+        if (blocked) {
+            card.block();
+        } else {
+            card.unblock();
+        }
+        changedCards.add(card);
+        unpublishedCards.add(cardNumber);
+        journal.append("CARD_BLOCKED", cardNumber, String.valueOf(blocked));
+        logger.info("{} card: {}", blocked ? "Blocked" : "Unblocked", cardNumber);
+        auditService.event(blocked ? "blockCard" : "unblockCard", 0).card(cardNumber).record();
+        saveData("cards");
+    }
+
+    @Override
+    public synchronized void transfer(String idempotencyKey, String fromAccountId, String toAccountId, double amount) throws InsufficientFundsException, InvalidAccountException {
+        idempotencyCache.executeInRecord(idempotencyKey, "TRANSFER " + fromAccountId + " " + toAccountId + " " + amount,
+                journal, outcome -> transfer(fromAccountId, toAccountId, amount, outcome));
+    }
+
+    @Override
+    public synchronized void withdraw(String idempotencyKey, String accountId, double amount) throws InsufficientFundsException, InvalidAccountException {
+        idempotencyCache.executeInRecord(idempotencyKey, "WITHDRAW " + accountId + " " + amount, journal,
+                outcome -> withdraw(accountId, amount, outcome));
     }
 
     @Override
-    public void withdraw(String accountId, double amount) throws InsufficientFundsException, InvalidAccountException {
+    public synchronized void deposit(String idempotencyKey, String accountId, double amount) throws InvalidAccountException {
+        try {
+            idempotencyCache.executeInRecord(idempotencyKey, "DEPOSIT " + accountId + " " + amount, journal,
+                    outcome -> deposit(accountId, amount, outcome));
+        } catch (InsufficientFundsException e) {
+            throw new IllegalStateException("Deposit cannot fail for insufficient funds", e);
+        }
+    }
+
+    // Legs of a transfer between shards. Preparing a debit reserves the funds without moving them; money only moves
+    // on commit, so aborting, or crashing before the decision, leaves balances untouched.
+    synchronized void prepareTransfer(String transferId, String accountId, double amount, boolean debit) throws InsufficientFundsException, InvalidAccountException {
         Account account = accounts.get(accountId);
         if (account == null) {
             logger.error("Account not found: {}", accountId);
             throw new InvalidAccountException("Account not found");
         }
-        if (amount <= 0) {
-            logger.error("Withdrawal amount must be positive: {}", amount);
-            throw new IllegalArgumentException("Withdrawal amount must be positive");
+        if (debit) {
+            checkWithdrawal(account, null, amount);
+            held.merge(account, amount, Double::sum);
         }
-        account.withdraw(amount);
-        Transaction transaction = new Transaction(UUID.randomUUID().toString(), amount, TransactionType.WITHDRAWAL, account);
-        transactions.add(transaction);
-        logger.info("Withdrew {} from account {}", amount, accountId);
-        auditService.logAction("withdraw");
+        prepared.put(transferId, new PreparedTransfer(account, amount, debit));
+        journal.append("PREPARE", transferId, accountId, String.valueOf(amount), debit ? "DEBIT" : "CREDIT");
+    }
+
+    synchronized void commitTransfer(String transferId) {
+        PreparedTransfer transfer = prepared.get(transferId);
+        if (transfer == null) {
+            return;
+        }
+        Account account = transfer.account;
+        Transaction transaction = new Transaction(nextTransactionId(), transfer.amount,
+                transfer.debit ? TransactionType.WITHDRAWAL : TransactionType.DEPOSIT, account);
+        journal.append(transaction.getTimestampMillis(), "COMMIT", transferId, account.getAccountId(),
+                String.valueOf(transfer.amount), transfer.debit ? "DEBIT" : "CREDIT", transaction.getTransactionId());
+        prepared.remove(transferId);
+        if (transfer.debit) {
+            release(transfer);
+            try {
+                account.withdraw(transfer.amount);
+            } catch (InsufficientFundsException e) {
+                throw new IllegalStateException("Reserved funds missing for transfer " + transferId, e);
+            }
+        } else {
+            account.deposit(transfer.amount);
+        }
+        post(transaction);
+        historyStore.touch(account);
+        logger.info("Committed transfer {} on account {}", transferId, account.getAccountId());
+        auditService.event("commitTransfer", 0).account(account.getAccountId()).amount(transfer.amount).record();
         saveData("transactions");
+    }
 
+    synchronized void abortTransfer(String transferId) {
+        PreparedTransfer transfer = prepared.remove(transferId);
+        if (transfer == null) {
+            return;
+        }
+        if (transfer.debit) {
+            release(transfer);
+        }
+        journal.append("ABORT", transferId);
+        logger.info("Aborted transfer {} on account {}", transferId, transfer.account.getAccountId());
+        auditService.event("abortTransfer", 0).account(transfer.account.getAccountId()).amount(transfer.amount).record();
     }
 
-    @Override
-    public void deposit(String accountId, double amount) throws InvalidAccountException {
+    // Re-reserves the legs that were prepared but neither committed nor aborted before the last shutdown, so the
+    // coordinator can finish them; returns their transfer ids. Starts from the legs open at the last checkpoint and
+    // replays only the journal after it.
+    synchronized List<String> recoverPreparedTransfers() {
+        Map<String, JournalService.JournalRecord> open = new LinkedHashMap<>();
+        long checkpoint = readCheckpoint(open);
+        journal.replay(checkpoint, record -> {
+            switch (record.getType()) {
+                case "PREPARE" -> open.put(record.getField(0), record);
+                case "COMMIT", "ABORT" -> open.remove(record.getField(0));
+                default -> { }
+            }
+        });
+        for (JournalService.JournalRecord record : open.values()) {
+            Account account = accounts.get(record.getField(1));
+            if (account == null) {
+                continue;
+            }
+            double amount = Double.parseDouble(record.getField(2));
+            boolean debit = record.getField(3).equals("DEBIT");
+            if (debit) {
+                held.merge(account, amount, Double::sum);
+            }
+            prepared.put(record.getField(0), new PreparedTransfer(account, amount, debit));
+        }
+        return new ArrayList<>(prepared.keySet());
+    }
+
+    // Writes the journal position with the transfer legs still open at it, and saves the daily totals and the search
+    // index as of that position. Called under the service lock, so no record lands between reading the position and
+    // listing the legs.
+    private void checkpoint() {
+        long position = journal.getPosition();
+        StringBuilder lines = new StringBuilder().append(position).append('\n');
+        for (Map.Entry<String, PreparedTransfer> entry : prepared.entrySet()) {
+            PreparedTransfer transfer = entry.getValue();
+            lines.append(JournalService.format(0, 0, "PREPARE", entry.getKey(), transfer.account.getAccountId(),
+                    String.valueOf(transfer.amount), transfer.debit ? "DEBIT" : "CREDIT"));
+        }
+        try {
+            File temporary = new File(checkpointFile.getPath() + ".tmp");
+            Files.writeString(temporary.toPath(), lines);
+            Files.move(temporary.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            checkpointPosition = position;
+        } catch (IOException e) {
+            logger.error("Error writing journal checkpoint: {}", e.getMessage(), e);
+        }
+        saveDailyTotals(position);
+        if (searchIndexReady) {
+            saveSearchIndex(position);
+        }
+    }
+
+    // Returns the checkpoint's journal position, 0 without one, and adds the legs open at it.
+    private long readCheckpoint(Map<String, JournalService.JournalRecord> open) {
+        if (!checkpointFile.exists()) {
+            return 0;
+        }
+        try {
+            List<String> lines = Files.readAllLines(checkpointFile.toPath());
+            for (String line : lines.subList(1, lines.size())) {
+                JournalService.JournalRecord record = JournalService.JournalRecord.parse(line);
+                if (record != null) {
+                    open.put(record.getField(0), record);
+                }
+            }
+            return Long.parseLong(lines.get(0));
+        } catch (IOException | RuntimeException e) {
+            logger.error("Error reading journal checkpoint, replaying the whole journal: {}", e.getMessage(), e);
+            open.clear();
+            return 0;
+        }
+    }
+
+    // Once the journal outgrows banking.journal.compactMb it is cut back to the last checkpoint, keeping the
+    // idempotency window and whatever durable event subscribers have not consumed. Runs while loading, before
+    // anything tails the file.
+    private void compactJournal() {
+        checkpointPosition = readCheckpoint(new HashMap<>());
+        long limit = Long.getLong("banking.journal.compactMb", 64) * 1024 * 1024;
+        if (journal.getFile().length() < limit) {
+            return;
+        }
+        long through = Math.min(checkpointPosition, eventBus.getOldestDurablePosition());
+        try {
+            journal.compact(through, System.currentTimeMillis() - idempotencyCache.getTtlMillis());
+        } catch (IOException e) {
+            logger.error("Error compacting journal: {}", e.getMessage(), e);
+        }
+    }
+
+    private void release(PreparedTransfer transfer) {
+        held.computeIfPresent(transfer.account,
+                (account, reserved) -> reserved - transfer.amount > 0.000001 ? reserved - transfer.amount : null);
+    }
+
+    private void checkNoTransferInProgress(Account account) throws InvalidAccountException {
+        for (PreparedTransfer transfer : prepared.values()) {
+            if (transfer.account == account) {
+                logger.error("Account has a transfer in progress: {}", account.getAccountId());
+                throw new InvalidAccountException("Account has a transfer in progress");
+            }
+        }
+    }
+
+    // Writes the whole state as journal lines fenced at a journal position, so a follower applies exactly the records
+    // after it. Like startBackup, the lock is held only to flush pending saves and pin the tables; the pinned copy is
+    // read and sent with writes running, so a slow follower never holds them up. The journal records up to the fence
+    // that are still within the idempotency window follow the state, for the follower's own journal. Returns the
+    // byte offset in the journal file where the records after the fence start.
+    long writeSnapshot(Consumer<String> out) throws IOException {
+        File directory = storageService.newSnapshotDirectory();
+        try {
+            List<StorageEngine.Backup> pending = new ArrayList<>();
+            long position;
+            long recent;
+            long offset;
+            synchronized (this) {
+                flush();
+                storageService.pinSnapshot(directory, pending);
+                position = journal.getPosition();
+                recent = journal.offsetOfRecent(position, System.currentTimeMillis() - idempotencyCache.getTtlMillis());
+                offset = journal.getFile().length();
+            }
+            for (StorageEngine.Backup step : pending) {
+                step.finish();
+            }
+            StorageService copy = StorageService.openCopy(directory);
+            try {
+                writeSnapshot(copy, out);
+            } finally {
+                copy.close();
+            }
+            journal.readLines(recent, offset, out);
+            out.accept(JournalService.format(0, System.currentTimeMillis(), "SNAPSHOT_END", String.valueOf(position)));
+            return offset;
+        } finally {
+            storageService.removeSnapshotDirectory(directory);
+        }
+    }
+
+    private static void writeSnapshot(StorageService copy, Consumer<String> out) throws IOException {
+        long now = System.currentTimeMillis();
+        StorageEngine engine = copy.getEngine();
+        out.accept(JournalService.format(0, now, "SNAPSHOT_BEGIN"));
+        engine.scan(StorageTable.CUSTOMERS, row -> out.accept(JournalService.format(0, now, "CREATE_CUSTOMER", row)));
+        engine.scan(StorageTable.ACCOUNTS, row -> {
+            out.accept(JournalService.format(0, now, "CREATE_ACCOUNT", row[0], row[1], row[2]));
+            out.accept(JournalService.format(0, now, "BALANCE", row[0], row[3]));
+        });
+        IOException[] failure = {null};
+        engine.scan(StorageTable.CARDS, row -> {
+            try {
+                out.accept(JournalService.format(0, now, "ADD_CARD", row[0], row[1],
+                        String.valueOf(DateCodec.parse(row[2]))));
+            } catch (ParseException e) {
+                failure[0] = failure[0] == null ? new IOException("Bad card row " + row[0], e) : failure[0];
+                return;
+            }
+            if (Boolean.parseBoolean(row[3])) {
+                out.accept(JournalService.format(0, now, "CARD_BLOCKED", row[0], "true"));
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        for (String[] retired : copy.loadRetired()) {
+            out.accept(JournalService.format(0, now, "RETIRED", retired));
+        }
+        copy.scanTransactionRows(row -> out.accept(JournalService.format(0, now, "TRANSACTION", row)));
+    }
+
+    // Fences a backup at the current journal position. Pending saves are flushed, then every file is linked or has
+    // its length taken under the service lock, so the copy holds exactly the changes up to the returned position;
+    // the steps added to pending do the copying once the lock is released.
+    synchronized long startBackup(File directory, List<StorageEngine.Backup> pending) throws IOException {
+        flush();
+        long position = journal.getPosition();
+        storageService.backup(directory, pending);
+        pending.add(BackupFiles.copyPrefix(journal.getFile(), new File(directory, journal.getFile().getName())));
+        return position;
+    }
+
+    // Applies a record shipped from a primary. Ids come from the record so the follower mirrors the primary exactly,
+    // and journal records are written to the follower's own journal under the primary's position, before they are
+    // applied as on the primary; saves are expected to be deferred and flushed by the caller.
+    synchronized void applyReplicated(JournalService.JournalRecord record) {
+        String[] f = record.getFields();
+        if (record.getPosition() > 0) {
+            journal.appendReplicated(record);
+        }
+        switch (record.getType()) {
+            case "SNAPSHOT_BEGIN" -> {
+                customers.clear();
+                for (Account account : accounts.values()) {
+                    detachAccount(account);
+                }
+                cards.clear();
+                unsavedTransactions.clear();
+                changedCustomers.clear();
+                deletedCustomers.clear();
+                changedAccounts.clear();
+                deletedAccounts.clear();
+                changedCards.clear();
+                deletedCards.clear();
+                storageService.clear();
+                unpublishedAccounts.clear();
+                unpublishedCustomers.clear();
+                unpublishedCards.clear();
+                accountOrdinals.clear();
+                aggregates.clear();
+                if (dailyTotalsFile.exists() && !dailyTotalsFile.delete()) {
+                    logger.error("Could not delete {}", dailyTotalsFile);
+                }
+                balanceIndex.clear();
+                searchIndex.clear();
+                searchIndexReady = true;
+                journal.reset();
+                snapshot = snapshot.with(journal.getPosition(), PersistentVector.empty(), PersistentVector.empty());
+            }
+            case "CREATE_CUSTOMER" -> {
+                Customer customer = new Customer(f[0], f[1], f[2], Integer.parseInt(f[3]));
+                customers.put(f[0], customer);
+                changedCustomers.add(customer);
+                unpublishedCustomers.add(customer);
+                customerIndex.accumulateAndGet(Integer.parseInt(f[0]), Math::max);
+                saveData("customers");
+            }
+            case "UPDATE_CUSTOMER" -> {
+                Customer customer = customers.get(f[0]);
+                if (customer != null) {
+                    customer.setName(f[1]);
+                    customer.setSurname(f[2]);
+                    customer.setAge(Integer.parseInt(f[3]));
+                    changedCustomers.add(customer);
+                    unpublishedCustomers.add(customer);
+                    saveData("customers");
+                }
+            }
+            case "DELETE_CUSTOMER" -> {
+                Customer customer = customers.remove(f[0]);
+                if (customer != null) {
+                    deletedCustomers.add(f[0]);
+                    unpublishedCustomers.add(customer);
+                    customer.getAccounts().forEach(this::detachAccount);
+                    archive(customer, customer.getAccounts());
+                    saveData("customers");
+                    saveData("accounts");
+                    saveData("cards");
+                }
+            }
+            case "CREATE_ACCOUNT" -> {
+                Customer customer = customers.get(f[2]);
+                if (customer != null) {
+                    Account account = f[1].equals("PRIMARY") ? new PrimaryAccount(f[0], customer)
+                            : new SavingsAccount(f[0], customer, 1.5);
+                    accounts.add(account);
+                    customer.addAccount(account);
+                    changedAccounts.add(account);
+                    unpublishedAccounts.add(account);
+                    accountNumberGenerator.observe(account.getAccountNumber());
+                    saveData("accounts");
+                }
+            }
+            case "BALANCE" -> {
+                Account account = accounts.get(f[0]);
+                if (account != null) {
+                    account.restoreBalance(Double.parseDouble(f[1]));
+                    changedAccounts.add(account);
+                    unpublishedAccounts.add(account);
+                    saveData("accounts");
+                }
+            }
+            case "DELETE_ACCOUNT" -> {
+                Account account = accounts.get(f[0]);
+                if (account != null) {
+                    account.getOwner().removeAccount(account);
+                    detachAccount(account);
+                    archive(null, List.of(account));
+                    saveData("accounts");
+                    saveData("cards");
+                }
+            }
+            case "ADD_CARD" -> {
+                Account account = accounts.get(f[1]);
+                if (account != null) {
+                    Card card = new Card(f[0], new Date(Long.parseLong(f[2])), account);
+                    account.addCard(card);
+                    cards.put(card.getCardNumber(), card);
+                    changedCards.add(card);
+                    unpublishedCards.add(card.getCardNumber());
+                    saveData("cards");
+                }
+            }
+            case "REMOVE_CARD" -> {
+                Card card = cards.remove(f[0]);
+                if (card != null) {
+                    card.getAccount().removeCard(card);
+                    deletedCards.add(f[0]);
+                    unpublishedCards.add(f[0]);
+                    saveData("cards");
+                }
+            }
+            case "CARD_BLOCKED" -> {
+                Card card = cards.get(f[0]);
+                if (card != null) {
+                    if (Boolean.parseBoolean(f[1])) {
+                        card.block();
+                    } else {
+                        card.unblock();
+                    }
+                    changedCards.add(card);
+                    unpublishedCards.add(f[0]);
+                    saveData("cards");
+                }
+            }
+            case "RETIRED" -> {
+                storageService.retire(List.<String[]>of(f));
+                observeRetired(f);
+            }
+            case "TRANSACTION" -> {
+                try {
+                    Transaction transaction = storageService.parseTransaction(f, accounts::get);
+                    if (transaction != null) {
+                        transaction.getAccount().addTransaction(transaction);
+                        post(transaction);
+                    }
+                } catch (ParseException e) {
+                    logger.error("Skipping replicated transaction: {}", e.getMessage());
+                }
+            }
+            case "DEPOSIT", "WITHDRAW", "CARD_PAYMENT", "TRANSFER", "COMMIT" -> {
+                forEachPosting(record, this::applyPosting);
+                saveData("transactions");
+            }
+            default -> { }
+        }
+        idempotencyCache.observe(record);
+        publish();
+    }
+
+    // A record shipped with a snapshot that already holds its change: it only goes into the follower's journal and
+    // idempotency keys.
+    synchronized void observeReplicated(JournalService.JournalRecord record) {
+        journal.appendReplicated(record);
+        idempotencyCache.observe(record);
+    }
+
+    private void applyPosting(String transactionId, String accountId, TransactionType type, double amount, long timestampMillis) {
         Account account = accounts.get(accountId);
         if (account == null) {
-            logger.error("Account not found: {}", accountId);
-            throw new InvalidAccountException("Account not found");
+            logger.error("Replicated posting for unknown account: {}", accountId);
+            return;
         }
-        if (amount <= 0) {
-            logger.error("Deposit amount must be positive: {}", amount);
-            throw new IllegalArgumentException("Deposit amount must be positive");
+        if (type == TransactionType.DEPOSIT) {
+            account.deposit(amount);
+        } else {
+            try {
+                account.withdraw(amount);
+            } catch (InsufficientFundsException e) {
+                logger.error("Replicated withdrawal exceeds balance of account {}", accountId);
+                account.restoreBalance(account.getBalance() - amount);
+            }
         }
-        account.deposit(amount);
-        Transaction transaction = new Transaction(UUID.randomUUID().toString(), amount, TransactionType.DEPOSIT, account);
-        transactions.add(transaction);
-        logger.info("Deposited {} to account {}", amount, accountId);
-        auditService.logAction("deposit");
-        saveData("transactions");
+        Transaction transaction = new Transaction(transactionId, amount, type, account);
+        transaction.setTimestampMillis(timestampMillis);
+        post(transaction);
+        historyStore.touch(account);
     }
 
+    // Runs the operations as one group under the service lock; their saves are written once at the end.
     @Override
-    public Account getAccountById(String accountId) {
-        return accounts.get(accountId);
+    public synchronized void runGrouped(Runnable group) {
+        boolean wasDeferred = deferSaves;
+        deferSaves = true;
+        try {
+            group.run();
+        } finally {
+            deferSaves = wasDeferred;
+            if (!wasDeferred) {
+                flush();
+            }
+        }
+    }
+
+    StorageService getStorageService() {
+        return storageService;
+    }
+
+    JournalService getJournal() {
+        return journal;
+    }
+
+    public EventBus getEventBus() {
+        return eventBus;
+    }
+
+    // While deferred, saves are coalesced per table and written once by flush(); used by bulk callers.
+    public synchronized void setDeferSaves(boolean deferSaves) {
+        this.deferSaves = deferSaves;
+        if (!deferSaves) {
+            flush();
+        }
+    }
+
+    public synchronized void flush() {
+        List<String> types = new ArrayList<>(pendingSaves);
+        pendingSaves.clear();
+        boolean wasDeferred = deferSaves;
+        deferSaves = false;
+        for (String type : types) {
+            saveData(type);
+        }
+        deferSaves = wasDeferred;
+    }
+
+    // Funds reserved by prepared transfers cannot be spent elsewhere. Everything that can refuse a withdrawal is
+    // checked here, before its record is journaled, so the withdraw() that follows the record cannot fail. Only
+    // withdrawals that will go through count against the velocity windows.
+    private void checkWithdrawal(Account account, Card card, double amount) throws InsufficientFundsException {
+        Double reserved = held.get(account);
+        if (amount > account.getBalance() - (reserved == null ? 0 : reserved)) {
+            throw new InsufficientFundsException("Insufficient funds for withdrawal.");
+        }
+        velocityLimiter.checkAndRecord(account, card, amount);
+    }
+
+    private void observeRetired(String[] retired) {
+        if (retired[0].equals("ACCOUNT")) {
+            long accountNumber = AccountIds.parse(retired[1]);
+            if (accountNumber != AccountIds.INVALID) {
+                accountNumberGenerator.observe(accountNumber);
+            }
+        } else if (retired[0].equals("CUSTOMER")) {
+            try {
+                customerIndex.accumulateAndGet(Integer.parseInt(retired[1]), Math::max);
+            } catch (NumberFormatException e) {
+                logger.error("Skipping retired customer id: {}", retired[1]);
+            }
+        }
+    }
+
+    private long nextAccountNumber() {
+        long accountNumber;
+        do {
+            accountNumber = accountNumberGenerator.nextId();
+        } while (accounts.contains(accountNumber));
+        return accountNumber;
+    }
+
+    private String nextTransactionId() {
+        return Long.toString(transactionIdGenerator.nextId());
+    }
+
+    // Queues a posting for the next save; its account's balance changed with it.
+    private void post(Transaction transaction) {
+        unsavedTransactions.add(transaction);
+        changedAccounts.add(transaction.getAccount());
+        unpublishedAccounts.add(transaction.getAccount());
+        aggregates.posted(transaction);
+        if (searchIndexReady) {
+            searchIndex.add(transaction.getTransactionId(), transaction.getAccount().getAccountNumber(),
+                    transaction.getType(), transaction.getAmount(), transaction.getTimestampMillis());
+        }
+    }
+
+    // Every mutation ends in a save, so publishing here makes each change visible to readers once it is complete.
+    // Only the entries changed since the last publish are copied; an entity that is no longer live is dropped.
+    private void publish() {
+        if (unpublishedAccounts.isEmpty() && unpublishedCustomers.isEmpty() && unpublishedCards.isEmpty()) {
+            return;
+        }
+        LedgerSnapshot current = snapshot;
+        PersistentVector<LedgerSnapshot.AccountState> accountStates = current.accountStates();
+        for (Account account : unpublishedAccounts) {
+            unpublishedCustomers.add(account.getOwner());
+            LedgerSnapshot.AccountState previous = accountStates.get(account.getOrdinal());
+            LedgerSnapshot.AccountState state = null;
+            if (accounts.get(account.getAccountNumber()) == account) {
+                accountOrdinals.put(account.getAccountNumber(), account.getOrdinal());
+                state = new LedgerSnapshot.AccountState(account);
+            } else {
+                accountOrdinals.remove(account.getAccountNumber(), account.getOrdinal());
+            }
+            if (previous != null && previous.getAccount() != account) {
+                previous = null;
+            }
+            if (previous != null || state != null) {
+                accountStates = accountStates.set(account.getOrdinal(), state);
+                Double previousBalance = previous == null ? null : previous.getBalance();
+                Double balance = state == null ? null : state.getBalance();
+                aggregates.accountChanged(account, previousBalance, balance);
+                balanceIndex.update(account, previousBalance, balance);
+            }
+        }
+        PersistentVector<LedgerSnapshot.CustomerState> customerStates = current.customerStates();
+        for (Customer customer : unpublishedCustomers) {
+            int index = LedgerSnapshot.customerIndex(customer.getId());
+            if (index < 0) {
+                continue;
+            }
+            if (customers.get(customer.getId()) == customer) {
+                customerStates = customerStates.set(index, new LedgerSnapshot.CustomerState(customer));
+            } else if (!customers.containsKey(customer.getId())) {
+                customerStates = customerStates.set(index, null);
+                aggregates.customerRemoved(customer.getId());
+            }
+        }
+        for (String cardNumber : unpublishedCards) {
+            aggregates.cardChanged(cardNumber, cards.get(cardNumber));
+        }
+        unpublishedAccounts.clear();
+        unpublishedCustomers.clear();
+        unpublishedCards.clear();
+        snapshot = current.with(journal.getPosition(), accountStates, customerStates);
     }
 
     private void saveData(String type) {
-        StorageService storageService = StorageService.getInstance();
+        publish();
+        if (journal.getPosition() - checkpointPosition >= checkpointRecords) {
+            checkpoint();
+        }
+        if (deferSaves) {
+            pendingSaves.add(type);
+            if (unsavedTransactions.size() >= DEFERRED_TRANSACTION_FLUSH) {
+                storageService.appendTransactions(unsavedTransactions);
+                unsavedTransactions.clear();
+            }
+            return;
+        }
+        long started = System.nanoTime();
         switch (type) {
             case "customers" -> {
-                storageService.saveCustomers(customers.values());
-                auditService.logAction("saveCustomers");
+                storageService.saveCustomers(changedCustomers, deletedCustomers);
+                changedCustomers.clear();
+                deletedCustomers.clear();
+                auditService.event("saveCustomers", started).record();
             }
             case "accounts" -> {
-                storageService.saveAccounts(accounts.values());
-                auditService.logAction("saveAccounts");
+                saveAccounts();
+                auditService.event("saveAccounts", started).record();
             }
             case "transactions" -> {
-                storageService.saveTransactions(transactions);
-                storageService.saveAccounts(accounts.values());
-                auditService.logAction("saveTransactions&Accounts");
+                storageService.appendTransactions(unsavedTransactions);
+                unsavedTransactions.clear();
+                saveAccounts();
+                auditService.event("saveTransactions&Accounts", started).record();
             }
             case "cards" -> {
-                storageService.saveCards(cards);
-                auditService.logAction("saveCards");
+                storageService.saveCards(changedCards, deletedCards);
+                changedCards.clear();
+                deletedCards.clear();
+                auditService.event("saveCards", started).record();
             }
             default -> {
                 auditService.logAction("Wrong_save_data");
@@ -283,4 +1398,26 @@ public class BankService implements BankServiceInterface {
         }
 
     }
+
+    private void saveAccounts() {
+        storageService.saveAccounts(changedAccounts, deletedAccounts);
+        changedAccounts.clear();
+        deletedAccounts.clear();
+    }
+
+    private interface PostingConsumer {
+        void posted(String transactionId, String accountId, TransactionType type, double amount, long timestampMillis);
+    }
+
+    private static class PreparedTransfer {
+        private final Account account;
+        private final double amount;
+        private final boolean debit;
+
+        private PreparedTransfer(Account account, double amount, boolean debit) {
+            this.account = account;
+            this.amount = amount;
+            this.debit = debit;
+        }
+    }
 }
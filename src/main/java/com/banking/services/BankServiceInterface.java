@@ -9,20 +9,31 @@ import java.util.Date;
 import java.util.List;
 
 public interface BankServiceInterface {
-    void createCustomer(String name, String surname, int age);
-    void createAccount(String customerId, AccountType type) throws InvalidAccountException;
+    Customer createCustomer(String name, String surname, int age);
+    Account createAccount(String customerId, AccountType type) throws InvalidAccountException;
     List<Account> getAccountsByCustomer(String customerId) throws InvalidAccountException;
     BankStatement generateBankStatement(String accountId, Date startDate, Date endDate) throws InvalidAccountException;
     List<Customer> getAllCustomers();
     List<Account> getAllAccounts();
     Customer getCustomerById(String customerId) throws InvalidAccountException;
-    void updateCustomer(Customer customer);
+    Customer updateCustomer(String customerId, String name, String surname, Integer age) throws InvalidAccountException;
     void deleteCustomer(String customerId) throws InvalidAccountException;
     void deleteAccount(String accountId) throws InvalidAccountException;
     void addCard(Card card);
+    Card issueCard(String accountId) throws InvalidAccountException;
     void removeCard(Card card);
     void transfer(String fromAccountId, String toAccountId, double amount) throws InsufficientFundsException, InvalidAccountException;
     void withdraw(String accountId, double amount) throws InsufficientFundsException, InvalidAccountException;
     void deposit(String accountId, double amount) throws InvalidAccountException;
+    void transfer(String idempotencyKey, String fromAccountId, String toAccountId, double amount) throws InsufficientFundsException, InvalidAccountException;
+    void withdraw(String idempotencyKey, String accountId, double amount) throws InsufficientFundsException, InvalidAccountException;
+    void deposit(String idempotencyKey, String accountId, double amount) throws InvalidAccountException;
+    void cardPayment(String cardNumber, double amount) throws InsufficientFundsException, InvalidAccountException;
     Account getAccountById(String accountId);
+    void setCardBlocked(String cardNumber, boolean blocked) throws InvalidAccountException;
+
+    // Runs several operations whose saves may be written once at the end; services without that just run them.
+    default void runGrouped(Runnable group) {
+        group.run();
+    }
 }
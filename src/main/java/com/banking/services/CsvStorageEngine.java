@@ -0,0 +1,138 @@
+package com.banking.services;
+
+import com.banking.enums.StorageTable;
+import com.banking.utils.CsvReader;
+import com.banking.utils.CsvWriter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.function.Consumer;
+
+// One CSV file per table, as the service has always stored them. Files are unordered, so reads scan the whole file;
+// a write streams the file into a copy with the changed rows replaced and renames it over the original. Postings are
+// never rewritten, so new ones are appended. Rows are RFC 4180 records; ones with broken quoting are logged and skipped
+// by reads but carried over as parsed when the file is rewritten.
+public class CsvStorageEngine implements StorageEngine {
+    private static final Logger logger = LogManager.getLogger(CsvStorageEngine.class);
+
+    private final String databasePath;
+
+    public CsvStorageEngine(String databasePath) {
+        this.databasePath = databasePath;
+    }
+
+    private File file(StorageTable table) {
+        return new File(databasePath + table.getFileName());
+    }
+
+    @Override
+    public void scan(StorageTable table, String fromKey, String toKey, Consumer<String[]> consumer) throws IOException {
+        File file = file(table);
+        if (!file.exists()) {
+            return;
+        }
+        boolean bounded = fromKey != null || toKey != null;
+        try (CsvReader reader = new CsvReader(new FileInputStream(file))) {
+            while (reader.next()) {
+                if (reader.isMalformed()) {
+                    logger.warn("Skipping malformed row at {}:{}", file.getName(), reader.getLineNumber());
+                    continue;
+                }
+                String[] row = reader.toArray();
+                if (bounded) {
+                    String key = StorageEngine.keyOf(table, row);
+                    if ((fromKey != null && key.compareTo(fromKey) < 0) || (toKey != null && key.compareTo(toKey) >= 0)) {
+                        continue;
+                    }
+                }
+                consumer.accept(row);
+            }
+        }
+    }
+
+    @Override
+    public String[] get(StorageTable table, String key) throws IOException {
+        String[][] found = new String[1][];
+        scan(table, row -> {
+            if (found[0] == null && StorageEngine.keyOf(table, row).equals(key)) {
+                found[0] = row;
+            }
+        });
+        return found[0];
+    }
+
+    @Override
+    public void write(StorageTable table, Collection<String[]> upserts, Collection<String> deletes) throws IOException {
+        if (upserts.isEmpty() && deletes.isEmpty()) {
+            return;
+        }
+        if (table == StorageTable.POSTINGS && deletes.isEmpty()) {
+            try (CsvWriter writer = new CsvWriter(new BufferedWriter(new FileWriter(file(table), true), 1 << 16))) {
+                for (String[] row : upserts) {
+                    writer.writeRow(row);
+                }
+            }
+            return;
+        }
+        Set<String> removed = new HashSet<>(deletes);
+        Map<String, String[]> pending = new LinkedHashMap<>();
+        for (String[] row : upserts) {
+            String key = StorageEngine.keyOf(table, row);
+            if (!removed.contains(key)) {
+                pending.put(key, row);
+            }
+        }
+        File file = file(table);
+        File temp = new File(databasePath + table.getFileName() + ".tmp");
+        try (CsvWriter writer = new CsvWriter(new BufferedWriter(new FileWriter(temp), 1 << 16))) {
+            if (file.exists()) {
+                try (CsvReader reader = new CsvReader(new FileInputStream(file))) {
+                    while (reader.next()) {
+                        String[] row = reader.toArray();
+                        String key = reader.isMalformed() ? null : StorageEngine.keyOf(table, row);
+                        if (key != null && removed.contains(key)) {
+                            continue;
+                        }
+                        String[] replacement = key == null ? null : pending.remove(key);
+                        writer.writeRow(replacement != null ? replacement : row);
+                    }
+                }
+            }
+            for (String[] row : pending.values()) {
+                writer.writeRow(row);
+            }
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // A new file rather than truncating the old one, which a backup in progress may still be reading.
+    @Override
+    public void clear(StorageTable table) throws IOException {
+        Files.deleteIfExists(file(table).toPath());
+        new FileOutputStream(file(table)).close();
+    }
+
+    @Override
+    public long size(StorageTable table) {
+        return file(table).length();
+    }
+
+    // Only postings are appended to in place; the other tables are replaced by rename, so a link keeps this version.
+    @Override
+    public Backup backup(File directory) throws IOException {
+        for (StorageTable table : StorageTable.values()) {
+            if (table != StorageTable.POSTINGS) {
+                BackupFiles.link(file(table), new File(directory, table.getFileName()));
+            }
+        }
+        return BackupFiles.copyPrefix(file(StorageTable.POSTINGS), new File(directory, StorageTable.POSTINGS.getFileName()));
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,254 @@
+package com.banking.services;
+
+import com.banking.enums.LedgerEventType;
+import com.banking.enums.TransactionType;
+import com.banking.models.LedgerEvent;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+// Change-data-capture over the journal. Every appended record goes into a ring indexed by its journal position; the
+// writer only stores a reference and bumps the cursor, and never waits. Each subscriber reads batches on its own
+// thread, and one that falls a full ring behind catches up from the journal file, then rejoins the ring.
+public class EventBus {
+    private static final Logger logger = LogManager.getLogger(EventBus.class);
+    private static final int BATCH_SIZE = 1024;
+    private static final long IDLE_PARK_NANOS = 200_000;
+    private static final long MIN_RETRY_MILLIS = 100;
+    private static final long MAX_RETRY_MILLIS = 30_000;
+
+    private final JournalService journal;
+    private final File offsetDirectory;
+    private final int capacity;
+    private final AtomicReferenceArray<JournalService.JournalRecord> ring;
+    private final AtomicLong cursor;
+
+    public EventBus(JournalService journal, int capacity, File offsetDirectory) {
+        this.journal = journal;
+        this.offsetDirectory = offsetDirectory;
+        this.capacity = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+        this.ring = new AtomicReferenceArray<>(this.capacity);
+        this.cursor = new AtomicLong(journal.getPosition());
+        journal.setListener(this::publish);
+    }
+
+    public static EventBus fromSystemProperties(JournalService journal, String databasePath) {
+        return new EventBus(journal, Integer.getInteger("banking.events.ringSize", 65536), new File(databasePath + "subscribers"));
+    }
+
+    // Single producer: the journal calls this under its own lock.
+    private void publish(JournalService.JournalRecord record) {
+        ring.lazySet((int) record.getPosition() & (capacity - 1), record);
+        cursor.lazySet(record.getPosition());
+    }
+
+    public long getPosition() {
+        return cursor.get();
+    }
+
+    // Delivers every event after the given journal position, then follows new ones.
+    public Subscription subscribe(String name, long afterPosition, LedgerSubscriber subscriber) {
+        Subscription subscription = new Subscription(name, afterPosition, subscriber, false);
+        subscription.start();
+        return subscription;
+    }
+
+    // Resumes from the position stored for this name after the last delivered batch, or from now for a new name.
+    public Subscription subscribeDurable(String name, LedgerSubscriber subscriber) {
+        long afterPosition = getPosition();
+        File offsetFile = new File(offsetDirectory, name + ".offset");
+        if (offsetFile.exists()) {
+            try {
+                afterPosition = Long.parseLong(Files.readString(offsetFile.toPath()).trim());
+            } catch (IOException | NumberFormatException e) {
+                logger.error("Error reading offset of subscriber {}: {}", name, e.getMessage(), e);
+            }
+        }
+        Subscription subscription = new Subscription(name, afterPosition, subscriber, true);
+        subscription.start();
+        return subscription;
+    }
+
+    // The oldest position a durable subscriber still has to resume after; the journal is kept from there on.
+    public long getOldestDurablePosition() {
+        long oldest = Long.MAX_VALUE;
+        File[] offsets = offsetDirectory.listFiles((dir, name) -> name.endsWith(".offset"));
+        for (File offsetFile : offsets == null ? new File[0] : offsets) {
+            try {
+                oldest = Math.min(oldest, Long.parseLong(Files.readString(offsetFile.toPath()).trim()));
+            } catch (IOException | NumberFormatException e) {
+                logger.error("Error reading offset {}: {}", offsetFile.getName(), e.getMessage(), e);
+                return 0;
+            }
+        }
+        return oldest;
+    }
+
+    static void toEvents(JournalService.JournalRecord record, List<LedgerEvent> events) {
+        String[] f = record.getFields();
+        long position = record.getPosition();
+        long timestamp = record.getTimestamp();
+        switch (record.getType()) {
+            case "CREATE_CUSTOMER" -> events.add(new LedgerEvent(LedgerEventType.CUSTOMER_CREATED, position, timestamp, f[0], null, null, null, null, 0));
+            case "UPDATE_CUSTOMER" -> events.add(new LedgerEvent(LedgerEventType.CUSTOMER_UPDATED, position, timestamp, f[0], null, null, null, null, 0));
+            case "DELETE_CUSTOMER" -> events.add(new LedgerEvent(LedgerEventType.CUSTOMER_DELETED, position, timestamp, f[0], null, null, null, null, 0));
+            case "CREATE_ACCOUNT" -> events.add(new LedgerEvent(LedgerEventType.ACCOUNT_OPENED, position, timestamp, f[2], f[0], null, null, null, 0));
+            case "DELETE_ACCOUNT" -> events.add(new LedgerEvent(LedgerEventType.ACCOUNT_CLOSED, position, timestamp, null, f[0], null, null, null, 0));
+            case "ADD_CARD" -> events.add(new LedgerEvent(LedgerEventType.CARD_ADDED, position, timestamp, null, f[1], f[0], null, null, 0));
+            case "REMOVE_CARD" -> events.add(new LedgerEvent(LedgerEventType.CARD_REMOVED, position, timestamp, null, null, f[0], null, null, 0));
+            case "CARD_BLOCKED" -> events.add(new LedgerEvent(Boolean.parseBoolean(f[1]) ? LedgerEventType.CARD_BLOCKED : LedgerEventType.CARD_UNBLOCKED,
+                    position, timestamp, null, null, f[0], null, null, 0));
+            case "DEPOSIT" -> events.add(posting(record, f[0], null, f[2], TransactionType.DEPOSIT, f[1]));
+            case "WITHDRAW" -> events.add(posting(record, f[0], null, f[2], TransactionType.WITHDRAWAL, f[1]));
+            case "CARD_PAYMENT" -> events.add(posting(record, f.length > 3 ? f[3] : null, f[0], f[2], TransactionType.WITHDRAWAL, f[1]));
+            case "TRANSFER" -> {
+                events.add(posting(record, f[0], null, f[3], TransactionType.WITHDRAWAL, f[2]));
+                events.add(posting(record, f[1], null, f[4], TransactionType.DEPOSIT, f[2]));
+            }
+            case "COMMIT" -> {
+                if (f.length > 3) {
+                    events.add(posting(record, f[1], null, f[0], f[3].equals("DEBIT") ? TransactionType.WITHDRAWAL : TransactionType.DEPOSIT, f[2]));
+                }
+            }
+            default -> { }
+        }
+    }
+
+    private static LedgerEvent posting(JournalService.JournalRecord record, String accountId, String cardNumber,
+                                       String transactionId, TransactionType type, String amount) {
+        return new LedgerEvent(LedgerEventType.POSTING, record.getPosition(), record.getTimestamp(), null, accountId,
+                cardNumber, transactionId, type, Double.parseDouble(amount));
+    }
+
+    public class Subscription implements Closeable {
+        private final String name;
+        private final LedgerSubscriber subscriber;
+        private final boolean durable;
+        private final Thread thread;
+        private volatile boolean running = true;
+        private volatile long position;
+        private long retryMillis;
+
+        private Subscription(String name, long afterPosition, LedgerSubscriber subscriber, boolean durable) {
+            this.name = name;
+            this.position = afterPosition;
+            this.subscriber = subscriber;
+            this.durable = durable;
+            this.thread = new Thread(this::run, "subscriber-" + name);
+            thread.setDaemon(true);
+        }
+
+        private void start() {
+            thread.start();
+        }
+
+        // Journal position of the last record delivered to the subscriber, and stored if it is durable.
+        public long getPosition() {
+            return position;
+        }
+
+        private void run() {
+            while (running) {
+                long published = cursor.get();
+                if (published <= position) {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                } else if (published - position > capacity || !readRing(Math.min(published, position + BATCH_SIZE))) {
+                    catchUp();
+                }
+            }
+        }
+
+        // A slot holding a different position was overwritten while we read it, so the ring can no longer serve us.
+        private boolean readRing(long end) {
+            List<LedgerEvent> batch = new ArrayList<>();
+            for (long sequence = position + 1; sequence <= end; sequence++) {
+                JournalService.JournalRecord record = ring.get((int) sequence & (capacity - 1));
+                if (record == null || record.getPosition() != sequence) {
+                    return false;
+                }
+                toEvents(record, batch);
+            }
+            deliver(batch, end);
+            return true;
+        }
+
+        // Only records already published are read, so a line the writer is still appending is never seen half-written.
+        private void catchUp() {
+            logger.info("Subscriber {} fell behind at position {}; replaying from the journal", name, position);
+            long published = cursor.get();
+            List<LedgerEvent> batch = new ArrayList<>();
+            long[] last = {position};
+            boolean[] failed = {false};
+            journal.replay(position, record -> {
+                if (!running || failed[0] || record.getPosition() > published) {
+                    return;
+                }
+                toEvents(record, batch);
+                last[0] = record.getPosition();
+                if (batch.size() >= BATCH_SIZE) {
+                    failed[0] = !deliver(new ArrayList<>(batch), last[0]);
+                    batch.clear();
+                }
+            });
+            if (!failed[0]) {
+                deliver(batch, last[0]);
+            }
+        }
+
+        // A batch the subscriber throws on is not acknowledged: the position and stored offset stay before it, and the
+        // same events are delivered again after a pause that doubles up to MAX_RETRY_MILLIS. Returns whether the
+        // batch was taken.
+        private boolean deliver(List<LedgerEvent> batch, long lastPosition) {
+            if (!batch.isEmpty()) {
+                try {
+                    subscriber.onEvents(batch);
+                } catch (RuntimeException e) {
+                    retryMillis = Math.min(MAX_RETRY_MILLIS, Math.max(MIN_RETRY_MILLIS, retryMillis * 2));
+                    logger.error("Subscriber {} failed on events after {}, retrying in {} ms: {}", name, position,
+                            retryMillis, e.getMessage(), e);
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(retryMillis));
+                    return false;
+                }
+                retryMillis = 0;
+            }
+            if (lastPosition == position) {
+                return true;
+            }
+            if (durable) {
+                storeOffset(lastPosition);
+            }
+            position = lastPosition;
+            return true;
+        }
+
+        // Replaced by rename, so a crash never leaves a half-written offset that would be read as none.
+        private void storeOffset(long lastPosition) {
+            File offsetFile = new File(offsetDirectory, name + ".offset");
+            File temp = new File(offsetDirectory, name + ".offset.tmp");
+            try {
+                offsetDirectory.mkdirs();
+                Files.writeString(temp.toPath(), Long.toString(lastPosition));
+                Files.move(temp.toPath(), offsetFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                logger.error("Error storing offset of subscriber {}: {}", name, e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public void close() {
+            running = false;
+            thread.interrupt();
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.banking.services;
+
+import com.banking.exceptions.InsufficientFundsException;
+import com.banking.exceptions.InvalidAccountException;
+import com.banking.exceptions.LimitExceededException;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class IdempotencyCache {
+    private static final String RECORD_TYPE = "IDEMPOTENCY";
+    private static final String[] NO_FIELDS = new String[0];
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    // Insertion order equals expiry order, so the eldest entries are always the first to go.
+    private final LinkedHashMap<String, Outcome> outcomes = new LinkedHashMap<>();
+    private final Map<String, Boolean> inFlight = new ConcurrentHashMap<>();
+
+    public IdempotencyCache(int maxEntries, long ttlMillis) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+    }
+
+    public static IdempotencyCache fromSystemProperties() {
+        return new IdempotencyCache(Integer.getInteger("banking.idempotency.maxKeys", 100_000),
+                Long.getLong("banking.idempotency.ttlMinutes", 24 * 60) * 60 * 1000);
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    // Rebuilds the cache from the outcomes journaled inside the retention window.
+    public void restore(JournalService journal) {
+        journal.replaySince(System.currentTimeMillis() - ttlMillis, this::observe);
+    }
+
+    // Picks up an outcome from a journal record: an IDEMPOTENCY record, or a mutation record carrying one at its end.
+    public void observe(JournalService.JournalRecord record) {
+        String[] f = record.getFields();
+        if (record.getType().equals(RECORD_TYPE)) {
+            put(f[0], new Outcome(record.getTimestamp(), f[1], f[2], f[3]));
+        } else if (f.length >= 3 && RECORD_TYPE.equals(f[f.length - 3])) {
+            put(f[f.length - 2], Outcome.success(record.getTimestamp(), f[f.length - 1]));
+        }
+    }
+
+    // The fields to append to the record of a mutation run by executeInRecord.
+    public static String[] withOutcome(String[] fields, String... outcome) {
+        if (outcome.length == 0) {
+            return fields;
+        }
+        String[] all = Arrays.copyOf(fields, fields.length + outcome.length);
+        System.arraycopy(outcome, 0, all, fields.length, outcome.length);
+        return all;
+    }
+
+    // A repeated key returns the recorded outcome without running the operation again; the outcome is journaled so
+    // retries after a restart are still recognised.
+    public void execute(String key, String request, JournalService journal, Operation operation) throws InsufficientFundsException, InvalidAccountException {
+        run(key, request, journal, outcome -> operation.run(), false);
+    }
+
+    // For an operation that journals exactly one record when it succeeds: it gets the outcome fields to write at the
+    // end of that record, so a crash can never keep the mutation and lose the key. Failures change nothing and are
+    // journaled on their own as before.
+    public void executeInRecord(String key, String request, JournalService journal, RecordedOperation operation) throws InsufficientFundsException, InvalidAccountException {
+        run(key, request, journal, operation, true);
+    }
+
+    private void run(String key, String request, JournalService journal, RecordedOperation operation, boolean inRecord) throws InsufficientFundsException, InvalidAccountException {
+        if (key == null || key.isEmpty()) {
+            operation.run(NO_FIELDS);
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Outcome previous = get(key, now);
+        if (previous != null) {
+            previous.replay(request);
+            return;
+        }
+        if (inFlight.putIfAbsent(key, Boolean.TRUE) != null) {
+            throw new IllegalArgumentException("A request with this idempotency key is still in progress");
+        }
+        try {
+            try {
+                operation.run(inRecord ? new String[]{RECORD_TYPE, key, request} : NO_FIELDS);
+            } catch (InsufficientFundsException | InvalidAccountException | IllegalArgumentException e) {
+                record(key, Outcome.failure(now, request, e), journal);
+                throw e;
+            }
+            Outcome outcome = Outcome.success(now, request);
+            if (inRecord) {
+                put(key, outcome);
+            } else {
+                record(key, outcome, journal);
+            }
+        } finally {
+            inFlight.remove(key);
+        }
+    }
+
+    private void record(String key, Outcome outcome, JournalService journal) {
+        put(key, outcome);
+        journal.append(RECORD_TYPE, key, outcome.getRequest(), outcome.getErrorType(), outcome.getMessage());
+    }
+
+    public synchronized Outcome get(String key, long now) {
+        expire(now);
+        return outcomes.get(key);
+    }
+
+    public synchronized void put(String key, Outcome outcome) {
+        outcomes.remove(key);
+        outcomes.put(key, outcome);
+        expire(outcome.recordedAt);
+        while (outcomes.size() > maxEntries) {
+            Iterator<String> eldest = outcomes.keySet().iterator();
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    public synchronized int size() {
+        return outcomes.size();
+    }
+
+    private void expire(long now) {
+        Iterator<Outcome> iterator = outcomes.values().iterator();
+        while (iterator.hasNext() && iterator.next().recordedAt + ttlMillis < now) {
+            iterator.remove();
+        }
+    }
+
+    public interface Operation {
+        void run() throws InsufficientFundsException, InvalidAccountException;
+    }
+
+    public interface RecordedOperation {
+        void run(String... outcome) throws InsufficientFundsException, InvalidAccountException;
+    }
+
+    public static class Outcome {
+        private final long recordedAt;
+        private final String request;
+        private final String errorType;
+        private final String message;
+
+        public Outcome(long recordedAt, String request, String errorType, String message) {
+            this.recordedAt = recordedAt;
+            this.request = request;
+            this.errorType = errorType;
+            this.message = message;
+        }
+
+        public static Outcome success(long recordedAt, String request) {
+            return new Outcome(recordedAt, request, "", "");
+        }
+
+        public static Outcome failure(long recordedAt, String request, Exception e) {
+            return new Outcome(recordedAt, request, e.getClass().getSimpleName(), e.getMessage() == null ? "" : e.getMessage());
+        }
+
+        public long getRecordedAt() {
+            return recordedAt;
+        }
+
+        public String getRequest() {
+            return request;
+        }
+
+        public String getErrorType() {
+            return errorType;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public boolean isSuccess() {
+            return errorType.isEmpty();
+        }
+
+        // Replays the original result of the request: returns normally on success, otherwise throws the same error.
+        public void replay(String request) throws InsufficientFundsException, InvalidAccountException {
+            if (!this.request.equals(request)) {
+                throw new IllegalArgumentException("Idempotency key was already used for a different request");
+            }
+            switch (errorType) {
+                case "" -> { }
+                case "LimitExceededException" -> throw new LimitExceededException(message);
+                case "InsufficientFundsException" -> throw new InsufficientFundsException(message);
+                case "InvalidAccountException" -> throw new InvalidAccountException(message);
+                default -> throw new IllegalArgumentException(message);
+            }
+        }
+    }
+}
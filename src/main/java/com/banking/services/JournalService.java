@@ -0,0 +1,402 @@
+package com.banking.services;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+public class JournalService implements Closeable {
+    private static final Logger logger = LogManager.getLogger(JournalService.class);
+
+    private final File file;
+    private final boolean fsync;
+    private FileOutputStream output;
+    private Writer writer;
+    private long position;
+    // Set when a write fails. Part of a line may have reached the file, so nothing more is appended until the journal
+    // is reopened, which cuts that partial line off again.
+    private IOException failure;
+    private volatile Consumer<JournalRecord> listener;
+
+    public JournalService(File file) {
+        this.file = file;
+        this.fsync = Boolean.getBoolean("banking.journal.fsync");
+        truncatePartialLine();
+        this.position = readLastPosition();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    // Called with every record once it is on disk, in position order, while the journal lock is held.
+    public void setListener(Consumer<JournalRecord> listener) {
+        this.listener = listener;
+    }
+
+    public synchronized long getPosition() {
+        return position;
+    }
+
+    // Appends one mutation as "position,timestamp,type,fields..." and returns its position. Throws when the record
+    // cannot be written, so the mutation fails instead of going on without its record.
+    public synchronized long append(String type, String... fields) {
+        return append(System.currentTimeMillis(), type, fields);
+    }
+
+    // For a record that carries postings: written at their timestamp, so replaying it gives them back as posted. The
+    // caller takes the time under the lock it appends under, which keeps timestamps in file order.
+    public synchronized long append(long timestampMillis, String type, String... fields) {
+        write(position + 1, timestampMillis, type, fields);
+        return position;
+    }
+
+    // Writes a record shipped from a primary under the primary's position and time, so a promoted follower goes on
+    // numbering where the primary left off and keeps the idempotency keys it has seen across a restart.
+    public synchronized void appendReplicated(JournalRecord record) {
+        write(record.getPosition(), record.getTimestamp(), record.getType(), record.getFields());
+    }
+
+    private void write(long next, long timestamp, String type, String[] fields) {
+        if (failure != null) {
+            throw new UncheckedIOException("Journal " + file + " stopped after a failed write", failure);
+        }
+        String line = format(next, timestamp, type, fields);
+        try {
+            if (writer == null) {
+                output = new FileOutputStream(file, true);
+                writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+            }
+            writer.write(line);
+            writer.flush();
+            if (fsync) {
+                output.getFD().sync();
+            }
+            position = next;
+            if (listener != null) {
+                listener.accept(new JournalRecord(next, timestamp, type, fields));
+            }
+        } catch (IOException e) {
+            failure = e;
+            logger.error("Error appending {} to journal: {}", type, e.getMessage(), e);
+            throw new UncheckedIOException("Cannot append " + type + " to journal", e);
+        }
+    }
+
+    // Empties the journal of a follower about to load a new snapshot, which brings its own records.
+    public synchronized void reset() {
+        close();
+        try {
+            Files.write(file.toPath(), new byte[0]);
+        } catch (IOException e) {
+            failure = e;
+            throw new UncheckedIOException("Cannot reset journal " + file, e);
+        }
+        failure = null;
+        position = 0;
+    }
+
+    // Start of the records a follower needs along with a snapshot fenced at the given position: the record at the
+    // fence, which carries the position on, and every record since the given time, which carry idempotency keys.
+    public synchronized long offsetOfRecent(long fencePosition, long sinceMillis) {
+        flushQuietly();
+        return Math.min(offsetOf(JournalRecord::getPosition, fencePosition), offsetOf(JournalRecord::getTimestamp, sinceMillis));
+    }
+
+    // Complete lines between two offsets, as written.
+    public void readLines(long fromOffset, long toOffset, Consumer<String> consumer) throws IOException {
+        if (fromOffset >= toOffset) {
+            return;
+        }
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 16)) {
+            in.skipNBytes(fromOffset);
+            ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+            for (long offset = fromOffset; offset < toOffset; offset++) {
+                int b = in.read();
+                if (b == -1) {
+                    break;
+                }
+                line.write(b);
+                if (b == '\n') {
+                    consumer.accept(line.toString(StandardCharsets.UTF_8));
+                    line.reset();
+                }
+            }
+        }
+    }
+
+    public static String format(long position, long timestampMillis, String type, String... fields) {
+        StringBuilder line = new StringBuilder(64);
+        line.append(position).append(',').append(timestampMillis).append(',').append(type);
+        for (String field : fields) {
+            line.append(',');
+            escape(line, field);
+        }
+        return line.append('\n').toString();
+    }
+
+    // Positions only grow along the file, so the first record after the given position is found by binary search.
+    public void replay(long afterPosition, Consumer<JournalRecord> consumer) {
+        replayFrom(offsetOf(JournalRecord::getPosition, afterPosition + 1), afterPosition, consumer);
+    }
+
+    // Replays records written at or after the given time, seeking to them by binary search over the file.
+    public void replaySince(long timestampMillis, Consumer<JournalRecord> consumer) {
+        replayFrom(offsetOf(JournalRecord::getTimestamp, timestampMillis), 0, record -> {
+            if (record.getTimestamp() >= timestampMillis) {
+                consumer.accept(record);
+            }
+        });
+    }
+
+    // Drops the records up to the given position that were also written before the given time, by copying the rest
+    // into a new file. Positions are kept, so replaying after a position works as before. The last record always
+    // stays, since reopening reads the position from it. Only call this before anything tails the file, since a
+    // tailer would keep reading the old one.
+    public synchronized void compact(long throughPosition, long keepSinceMillis) throws IOException {
+        if (failure != null || !file.exists()) {
+            return;
+        }
+        flushQuietly();
+        long offset = Math.min(offsetOf(JournalRecord::getPosition, Math.min(throughPosition, position - 1) + 1),
+                offsetOf(JournalRecord::getTimestamp, keepSinceMillis));
+        if (offset == 0) {
+            return;
+        }
+        close();
+        File compacted = new File(file.getPath() + ".tmp");
+        try (InputStream in = new FileInputStream(file); FileOutputStream out = new FileOutputStream(compacted)) {
+            in.skipNBytes(offset);
+            in.transferTo(out);
+            out.getFD().sync();
+        }
+        Files.move(compacted.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logger.info("Compacted journal {}: dropped {} bytes up to position {}", file.getName(), offset, throughPosition);
+    }
+
+    private void replayFrom(long offset, long afterPosition, Consumer<JournalRecord> consumer) {
+        synchronized (this) {
+            flushQuietly();
+        }
+        if (!file.exists()) {
+            return;
+        }
+        try (InputStream in = new FileInputStream(file)) {
+            in.skipNBytes(offset);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                JournalRecord record = JournalRecord.parse(line);
+                if (record != null && record.getPosition() > afterPosition) {
+                    consumer.accept(record);
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Error replaying journal: {}", e.getMessage(), e);
+        }
+    }
+
+    // Start of the first line whose key is at least the target, for a key that never decreases along the file.
+    private long offsetOf(ToLongFunction<JournalRecord> key, long target) {
+        if (!file.exists()) {
+            return 0;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long length = raf.length();
+            long low = 0;
+            long high = length;
+            while (low < high) {
+                long middle = (low + high) >>> 1;
+                long lineStart = nextLineStart(raf, middle);
+                JournalRecord record = null;
+                if (lineStart < length) {
+                    raf.seek(lineStart);
+                    String line = raf.readLine();
+                    record = line == null ? null : JournalRecord.parse(line);
+                }
+                if (record == null || key.applyAsLong(record) >= target) {
+                    high = middle;
+                } else {
+                    low = middle + 1;
+                }
+            }
+            return nextLineStart(raf, low);
+        } catch (IOException e) {
+            logger.error("Error searching journal: {}", e.getMessage(), e);
+            return 0;
+        }
+    }
+
+    private static long nextLineStart(RandomAccessFile raf, long offset) throws IOException {
+        if (offset == 0) {
+            return 0;
+        }
+        raf.seek(offset - 1);
+        int b;
+        while ((b = raf.read()) != -1 && b != '\n') {
+            // skip the rest of the partial line
+        }
+        return raf.getFilePointer();
+    }
+
+    private void truncatePartialLine() {
+        if (!file.exists() || file.length() == 0) {
+            return;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long length = raf.length();
+            long end = length;
+            raf.seek(end - 1);
+            while (end > 0 && raf.read() != '\n') {
+                end--;
+                if (end > 0) {
+                    raf.seek(end - 1);
+                }
+            }
+            if (end < length) {
+                raf.setLength(end);
+                logger.warn("Cut {} bytes of a partly written record off the end of journal {}", length - end, file.getName());
+            }
+        } catch (IOException e) {
+            logger.error("Error checking the end of journal {}: {}", file.getName(), e.getMessage(), e);
+        }
+    }
+
+    private long readLastPosition() {
+        if (!file.exists() || file.length() == 0) {
+            return 0;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long offset = Math.max(0, raf.length() - 4096);
+            raf.seek(offset);
+            if (offset > 0) {
+                raf.readLine();
+            }
+            long last = 0;
+            String line;
+            while ((line = raf.readLine()) != null) {
+                JournalRecord record = JournalRecord.parse(line);
+                if (record != null) {
+                    last = record.getPosition();
+                }
+            }
+            return last;
+        } catch (IOException e) {
+            logger.error("Error reading journal position: {}", e.getMessage(), e);
+            return 0;
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            if (writer != null) {
+                writer.flush();
+            }
+        } catch (IOException e) {
+            logger.error("Error flushing journal: {}", e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            if (writer != null) {
+                writer.close();
+                writer = null;
+            }
+        } catch (IOException e) {
+            logger.error("Error closing journal: {}", e.getMessage(), e);
+        }
+    }
+
+    private static void escape(StringBuilder line, String field) {
+        if (field == null) {
+            return;
+        }
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            switch (c) {
+                case '%' -> line.append("%25");
+                case ',' -> line.append("%2C");
+                case '\n' -> line.append("%0A");
+                case '\r' -> line.append("%0D");
+                default -> line.append(c);
+            }
+        }
+    }
+
+    private static String unescape(String field) {
+        if (field.indexOf('%') < 0) {
+            return field;
+        }
+        StringBuilder sb = new StringBuilder(field.length());
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == '%' && i + 2 < field.length()) {
+                sb.append((char) Integer.parseInt(field.substring(i + 1, i + 3), 16));
+                i += 2;
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    public static class JournalRecord {
+        private final long position;
+        private final long timestamp;
+        private final String type;
+        private final String[] fields;
+
+        public JournalRecord(long position, long timestamp, String type, String[] fields) {
+            this.position = position;
+            this.timestamp = timestamp;
+            this.type = type;
+            this.fields = fields;
+        }
+
+        public static JournalRecord parse(String line) {
+            String[] values = line.split(",", -1);
+            if (values.length < 3) {
+                return null;
+            }
+            try {
+                List<String> fields = new ArrayList<>(values.length - 3);
+                for (int i = 3; i < values.length; i++) {
+                    fields.add(unescape(values[i]));
+                }
+                return new JournalRecord(Long.parseLong(values[0]), Long.parseLong(values[1]), values[2],
+                        fields.toArray(new String[0]));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        public long getPosition() {
+            return position;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public String[] getFields() {
+            return fields;
+        }
+
+        public String getField(int index) {
+            return fields[index];
+        }
+    }
+}
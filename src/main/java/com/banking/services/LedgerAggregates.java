@@ -0,0 +1,221 @@
+package com.banking.services;
+
+import com.banking.enums.AccountType;
+import com.banking.enums.TransactionType;
+import com.banking.models.Account;
+import com.banking.models.Card;
+import com.banking.models.SavingsAccount;
+import com.banking.models.Transaction;
+import com.banking.utils.DateCodec;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Running totals kept up to date as the service publishes changes, so each answer is a counter read instead of a walk
+// over every customer, account, posting or card. Amounts are summed in cents on striped counters; balance totals move
+// with the published snapshot, posting flows are recorded as postings are queued. Balance totals follow the accounts a
+// load reads anyway; the daily flows are saved with each journal checkpoint, so a load adds only the postings after it.
+public class LedgerAggregates {
+    private static final Logger logger = LogManager.getLogger(LedgerAggregates.class);
+    private final int retentionDays;
+    private final Map<String, LongAdder> customerBalances = new ConcurrentHashMap<>();
+    private final Map<AccountType, LongAdder> typeBalances = new EnumMap<>(AccountType.class);
+    private final Map<AccountType, LongAdder> typeCounts = new EnumMap<>(AccountType.class);
+    // yyyy-MM-dd in the local zone to per-type totals; days older than the retention are dropped as new ones start.
+    private final Map<String, DayTotals> days = new ConcurrentHashMap<>();
+    private final Map<String, Boolean> cardBlocked = new ConcurrentHashMap<>();
+    private final LongAdder cardCount = new LongAdder();
+    private final LongAdder blockedCardCount = new LongAdder();
+    private volatile String oldestDay;
+
+    public LedgerAggregates(int retentionDays) {
+        this.retentionDays = retentionDays;
+        for (AccountType type : AccountType.values()) {
+            typeBalances.put(type, new LongAdder());
+            typeCounts.put(type, new LongAdder());
+        }
+        this.oldestDay = oldestRetainedDay();
+    }
+
+    public static LedgerAggregates fromSystemProperties() {
+        return new LedgerAggregates(Integer.getInteger("banking.aggregates.days", 90));
+    }
+
+    public double getCustomerBalance(String customerId) {
+        LongAdder balance = customerBalances.get(customerId);
+        return balance == null ? 0.0 : balance.sum() / 100.0;
+    }
+
+    public double getBalance(AccountType type) {
+        return typeBalances.get(type).sum() / 100.0;
+    }
+
+    public long getAccountCount(AccountType type) {
+        return typeCounts.get(type).sum();
+    }
+
+    public double getTotalBalance() {
+        long total = 0;
+        for (LongAdder balance : typeBalances.values()) {
+            total += balance.sum();
+        }
+        return total / 100.0;
+    }
+
+    // Total of the day's postings of this type; date is yyyy-MM-dd.
+    public double getDailyTotal(String date, TransactionType type) {
+        DayTotals totals = days.get(date);
+        return totals == null ? 0.0 : totals.amounts[type.ordinal()].sum() / 100.0;
+    }
+
+    public long getDailyCount(String date, TransactionType type) {
+        DayTotals totals = days.get(date);
+        return totals == null ? 0 : totals.counts[type.ordinal()].sum();
+    }
+
+    public long getCardCount() {
+        return cardCount.sum();
+    }
+
+    public long getBlockedCardCount() {
+        return blockedCardCount.sum();
+    }
+
+    // An account's published balance moved from previous to current; null means absent from that version.
+    void accountChanged(Account account, Double previous, Double current) {
+        AccountType type = account instanceof SavingsAccount ? AccountType.SAVINGS : AccountType.PRIMARY;
+        long delta = (current == null ? 0 : cents(current)) - (previous == null ? 0 : cents(previous));
+        if (previous == null && current != null) {
+            typeCounts.get(type).increment();
+        } else if (previous != null && current == null) {
+            typeCounts.get(type).decrement();
+        }
+        if (delta != 0) {
+            typeBalances.get(type).add(delta);
+            customerBalances.computeIfAbsent(account.getOwner().getId(), id -> new LongAdder()).add(delta);
+        }
+    }
+
+    void customerRemoved(String customerId) {
+        customerBalances.remove(customerId);
+    }
+
+    void posted(Transaction transaction) {
+        posted(DateCodec.formatDate(transaction.getTimestampMillis()), transaction.getType(), transaction.getAmount());
+    }
+
+    void posted(String date, TransactionType type, double amount) {
+        if (date.compareTo(oldestDay) < 0) {
+            return;
+        }
+        DayTotals totals = days.get(date);
+        if (totals == null) {
+            oldestDay = oldestRetainedDay();
+            days.keySet().removeIf(day -> day.compareTo(oldestDay) < 0);
+            totals = days.computeIfAbsent(date, day -> new DayTotals());
+        }
+        totals.amounts[type.ordinal()].add(cents(amount));
+        totals.counts[type.ordinal()].increment();
+    }
+
+    // A card was added or changed (card non-null) or removed (card null).
+    void cardChanged(String cardNumber, Card card) {
+        Boolean wasBlocked = card == null ? cardBlocked.remove(cardNumber) : cardBlocked.put(cardNumber, card.isBlocked());
+        boolean blocked = card != null && card.isBlocked();
+        if (wasBlocked == null && card != null) {
+            cardCount.increment();
+        } else if (wasBlocked != null && card == null) {
+            cardCount.decrement();
+        }
+        if (Boolean.TRUE.equals(wasBlocked) != blocked) {
+            blockedCardCount.add(blocked ? 1 : -1);
+        }
+    }
+
+    // Writes the daily totals, which count every posting up to the given journal position, as the position followed by
+    // one "date,type,cents,count" line per day and type.
+    void saveDailyTotals(File file, long position) throws IOException {
+        StringBuilder lines = new StringBuilder().append(position).append('\n');
+        for (Map.Entry<String, DayTotals> day : days.entrySet()) {
+            for (TransactionType type : TransactionType.values()) {
+                long count = day.getValue().counts[type.ordinal()].sum();
+                if (count > 0) {
+                    lines.append(day.getKey()).append(',').append(type.name()).append(',')
+                            .append(day.getValue().amounts[type.ordinal()].sum()).append(',').append(count).append('\n');
+                }
+            }
+        }
+        File temporary = new File(file.getPath() + ".tmp");
+        Files.writeString(temporary.toPath(), lines);
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Adds the totals written by saveDailyTotals and returns their journal position, or -1 with none added when the
+    // file is missing or unreadable. Days past the retention are skipped.
+    long restoreDailyTotals(File file) {
+        if (!file.exists()) {
+            return -1;
+        }
+        try {
+            List<String> lines = Files.readAllLines(file.toPath());
+            long position = Long.parseLong(lines.get(0));
+            for (String line : lines.subList(1, lines.size())) {
+                String[] f = line.split(",");
+                if (f[0].compareTo(oldestDay) >= 0) {
+                    DayTotals totals = days.computeIfAbsent(f[0], day -> new DayTotals());
+                    int type = TransactionType.valueOf(f[1]).ordinal();
+                    totals.amounts[type].add(Long.parseLong(f[2]));
+                    totals.counts[type].add(Long.parseLong(f[3]));
+                }
+            }
+            return position;
+        } catch (IOException | RuntimeException e) {
+            logger.error("Error reading daily totals {}: {}", file, e.getMessage(), e);
+            days.clear();
+            return -1;
+        }
+    }
+
+    void clearDailyTotals() {
+        days.clear();
+    }
+
+    void clear() {
+        customerBalances.clear();
+        typeBalances.values().forEach(LongAdder::reset);
+        typeCounts.values().forEach(LongAdder::reset);
+        days.clear();
+        cardBlocked.clear();
+        cardCount.reset();
+        blockedCardCount.reset();
+    }
+
+    private String oldestRetainedDay() {
+        return DateCodec.formatDate(System.currentTimeMillis() - (retentionDays - 1) * 86_400_000L);
+    }
+
+    private static long cents(double amount) {
+        return Math.round(amount * 100);
+    }
+
+    private static class DayTotals {
+        private final LongAdder[] amounts = new LongAdder[TransactionType.values().length];
+        private final LongAdder[] counts = new LongAdder[TransactionType.values().length];
+
+        private DayTotals() {
+            for (int i = 0; i < amounts.length; i++) {
+                amounts[i] = new LongAdder();
+                counts[i] = new LongAdder();
+            }
+        }
+    }
+}
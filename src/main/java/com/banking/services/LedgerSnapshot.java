@@ -0,0 +1,138 @@
+package com.banking.services;
+
+import com.banking.models.Account;
+import com.banking.models.Customer;
+import com.banking.models.Transaction;
+import com.banking.utils.AccountIds;
+import com.banking.utils.PersistentVector;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+// One published version of the ledger: which customers and accounts exist, each account's balance and how many
+// postings it had. Versions share structure and never change, so readers hold one for as long as they like while the
+// service publishes newer ones. Customer and account details such as names and cards are read live.
+public final class LedgerSnapshot {
+    private final long version;
+    private final PersistentVector<AccountState> accounts;
+    private final PersistentVector<CustomerState> customers;
+    // Account number to ordinal, shared by all versions; ordinals are never reused, so a stale entry only misses.
+    private final Map<Long, Integer> ordinals;
+
+    LedgerSnapshot(long version, PersistentVector<AccountState> accounts, PersistentVector<CustomerState> customers,
+                   Map<Long, Integer> ordinals) {
+        this.version = version;
+        this.accounts = accounts;
+        this.customers = customers;
+        this.ordinals = ordinals;
+    }
+
+    // The journal position this version was published at.
+    public long getVersion() {
+        return version;
+    }
+
+    public List<Account> getAccounts() {
+        List<Account> result = new ArrayList<>(accounts.size());
+        accounts.forEach(state -> result.add(state.account));
+        return result;
+    }
+
+    public List<Customer> getCustomers() {
+        List<Customer> result = new ArrayList<>(customers.size());
+        customers.forEach(state -> result.add(state.customer));
+        return result;
+    }
+
+    public Account getAccount(String accountId) {
+        AccountState state = state(accountId);
+        return state == null ? null : state.account;
+    }
+
+    public Customer getCustomer(String customerId) {
+        CustomerState state = customers.get(customerIndex(customerId));
+        return state == null ? null : state.customer;
+    }
+
+    // The customer's accounts in this version, or null if the customer does not exist in it.
+    public List<Account> getAccounts(String customerId) {
+        CustomerState state = customers.get(customerIndex(customerId));
+        return state == null ? null : new ArrayList<>(state.accounts);
+    }
+
+    public double getBalance(Account account) {
+        AccountState state = accounts.get(account.getOrdinal());
+        return state != null && state.account == account ? state.balance : Double.NaN;
+    }
+
+    // The account's postings in range that were part of this version.
+    public void forEachTransaction(Account account, Date startDate, Date endDate, Consumer<Transaction> action) {
+        AccountState state = accounts.get(account.getOrdinal());
+        if (state != null && state.account == account) {
+            account.forEachTransaction(startDate, endDate, state.postingCount, action);
+        }
+    }
+
+    LedgerSnapshot with(long version, PersistentVector<AccountState> accounts, PersistentVector<CustomerState> customers) {
+        return new LedgerSnapshot(version, accounts, customers, ordinals);
+    }
+
+    PersistentVector<AccountState> accountStates() {
+        return accounts;
+    }
+
+    PersistentVector<CustomerState> customerStates() {
+        return customers;
+    }
+
+    private AccountState state(String accountId) {
+        long number = AccountIds.parse(accountId);
+        Integer ordinal = number == AccountIds.INVALID ? null : ordinals.get(number);
+        if (ordinal == null) {
+            return null;
+        }
+        AccountState state = accounts.get(ordinal);
+        return state != null && state.account.getAccountNumber() == number ? state : null;
+    }
+
+    static int customerIndex(String customerId) {
+        try {
+            return Integer.parseInt(customerId);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    static final class AccountState {
+        private final Account account;
+        private final double balance;
+        private final long postingCount;
+
+        AccountState(Account account) {
+            this.account = account;
+            this.balance = account.getBalance();
+            this.postingCount = account.getPostingCount();
+        }
+
+        Account getAccount() {
+            return account;
+        }
+
+        double getBalance() {
+            return balance;
+        }
+    }
+
+    static final class CustomerState {
+        private final Customer customer;
+        private final List<Account> accounts;
+
+        CustomerState(Customer customer) {
+            this.customer = customer;
+            this.accounts = List.copyOf(customer.getAccounts());
+        }
+    }
+}
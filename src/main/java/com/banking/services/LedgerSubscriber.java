@@ -0,0 +1,10 @@
+package com.banking.services;
+
+import com.banking.models.LedgerEvent;
+
+import java.util.List;
+
+public interface LedgerSubscriber {
+    // Batches arrive in journal order on the subscription's own thread.
+    void onEvents(List<LedgerEvent> events);
+}
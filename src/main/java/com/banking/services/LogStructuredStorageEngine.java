@@ -0,0 +1,617 @@
+package com.banking.services;
+
+import com.banking.enums.StorageTable;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+// Embedded log-structured store, one directory per table. Writes go to a checksummed write-ahead log and a sorted
+// in-memory table; when that fills up it is written out as an immutable sorted run and the log starts over. A run
+// keeps every 64th key in a sparse index at its end, so a point read decodes one block and a range scan only the
+// blocks it covers; nothing ever loads a whole table. Reads merge the memory table and the runs, newest first, and
+// deletes are tombstones until a compaction folds all runs into one.
+public class LogStructuredStorageEngine implements StorageEngine {
+    private static final Logger logger = LogManager.getLogger(LogStructuredStorageEngine.class);
+    private static final int MAGIC = 0x4c534d31;
+    private static final int INDEX_INTERVAL = 64;
+    private static final int FOOTER_BYTES = 28;
+    private static final String[] TOMBSTONE = new String[0];
+
+    private final File directory;
+    private final int memtableRows;
+    private final int maxRuns;
+    private final Map<StorageTable, TableStore> tables = new EnumMap<>(StorageTable.class);
+
+    public LogStructuredStorageEngine(File directory, int memtableRows, int maxRuns) throws IOException {
+        this.directory = directory;
+        this.memtableRows = Math.max(1, memtableRows);
+        this.maxRuns = Math.max(2, maxRuns);
+        for (StorageTable table : StorageTable.values()) {
+            tables.put(table, new TableStore(new File(directory, table.name().toLowerCase())));
+        }
+    }
+
+    public static LogStructuredStorageEngine fromSystemProperties(String databasePath) throws IOException {
+        return new LogStructuredStorageEngine(new File(databasePath + "lsm"),
+                Integer.getInteger("banking.storage.memtableRows", 65536),
+                Integer.getInteger("banking.storage.maxRuns", 4));
+    }
+
+    public synchronized boolean isEmpty() {
+        for (TableStore store : tables.values()) {
+            if (!store.memtable.isEmpty() || !store.runs.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized void scan(StorageTable table, String fromKey, String toKey, Consumer<String[]> consumer) throws IOException {
+        try {
+            tables.get(table).scan(fromKey, toKey, consumer);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Override
+    public synchronized String[] get(StorageTable table, String key) throws IOException {
+        return tables.get(table).get(key);
+    }
+
+    @Override
+    public synchronized void write(StorageTable table, Collection<String[]> upserts, Collection<String> deletes) throws IOException {
+        TableStore store = tables.get(table);
+        Set<String> removed = new HashSet<>(deletes);
+        for (String[] row : upserts) {
+            String key = StorageEngine.keyOf(table, row);
+            if (!removed.contains(key)) {
+                store.put(key, row);
+            }
+        }
+        for (String key : removed) {
+            store.put(key, TOMBSTONE);
+        }
+        store.wal.flush();
+        if (store.memtable.size() >= memtableRows) {
+            store.flushMemtable();
+        }
+    }
+
+    @Override
+    public synchronized void clear(StorageTable table) throws IOException {
+        tables.get(table).clear();
+    }
+
+    @Override
+    public synchronized long size(StorageTable table) {
+        TableStore store = tables.get(table);
+        long size = store.walFile.length();
+        for (Run run : store.runs) {
+            size += run.file.length();
+        }
+        return size;
+    }
+
+    // Runs never change once written, so they are linked; write-ahead logs are copied up to their current length.
+    @Override
+    public synchronized Backup backup(File target) throws IOException {
+        List<Backup> logs = new ArrayList<>();
+        for (TableStore store : tables.values()) {
+            File tableTarget = new File(new File(target, directory.getName()), store.dir.getName());
+            for (Run run : store.runs) {
+                BackupFiles.link(run.file, new File(tableTarget, run.file.getName()));
+            }
+            tableTarget.mkdirs();
+            logs.add(BackupFiles.copyPrefix(store.walFile, new File(tableTarget, store.walFile.getName())));
+        }
+        return () -> {
+            for (Backup log : logs) {
+                log.finish();
+            }
+        };
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        for (TableStore store : tables.values()) {
+            store.close();
+        }
+    }
+
+    private final class TableStore {
+        private final File dir;
+        private final File walFile;
+        private final ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+        private final CRC32 crc = new CRC32();
+        private TreeMap<String, String[]> memtable = new TreeMap<>();
+        // Newest first.
+        private final List<Run> runs = new ArrayList<>();
+        private DataOutputStream wal;
+        private long nextRunId;
+
+        private TableStore(File dir) throws IOException {
+            this.dir = dir;
+            this.walFile = new File(dir, "wal.log");
+            dir.mkdirs();
+            openRuns();
+            replayWal();
+            wal = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(walFile, true), 1 << 16));
+        }
+
+        private void openRuns() throws IOException {
+            File[] files = dir.listFiles();
+            List<Run> found = new ArrayList<>();
+            for (File file : files == null ? new File[0] : files) {
+                String name = file.getName();
+                if (name.endsWith(".tmp")) {
+                    file.delete();
+                } else if (name.startsWith("run-") && name.endsWith(".dat")) {
+                    found.add(Run.open(file, Long.parseLong(name.substring(4, name.length() - 4))));
+                }
+            }
+            found.sort((a, b) -> Long.compare(b.id, a.id));
+            // A compaction that stopped before deleting its inputs left them behind; its output already has them.
+            long covered = -1;
+            for (Run run : found) {
+                covered = Math.max(covered, run.covers);
+            }
+            for (Run run : found) {
+                if (run.id <= covered) {
+                    run.close();
+                    Files.delete(run.file.toPath());
+                } else {
+                    runs.add(run);
+                }
+                nextRunId = Math.max(nextRunId, run.id + 1);
+            }
+        }
+
+        // Stops at the first record that is cut short or fails its checksum and drops it and anything after.
+        private void replayWal() throws IOException {
+            if (!walFile.exists()) {
+                return;
+            }
+            long good = 0;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(walFile), 1 << 16))) {
+                while (true) {
+                    int length = in.readInt();
+                    int checksum = in.readInt();
+                    if (length < 0 || length > 1 << 24) {
+                        break;
+                    }
+                    byte[] payload = new byte[length];
+                    in.readFully(payload);
+                    crc.reset();
+                    crc.update(payload);
+                    if ((int) crc.getValue() != checksum) {
+                        break;
+                    }
+                    DataInputStream entry = new DataInputStream(new ByteArrayInputStream(payload));
+                    String key = entry.readUTF();
+                    memtable.put(key, readRow(entry));
+                    good += 8 + length;
+                }
+            } catch (EOFException e) {
+                // Torn tail of the last write.
+            }
+            if (good < walFile.length()) {
+                logger.info("Truncating write-ahead log {} from {} to {} bytes", walFile, walFile.length(), good);
+                try (RandomAccessFile raf = new RandomAccessFile(walFile, "rw")) {
+                    raf.setLength(good);
+                }
+            }
+        }
+
+        private void put(String key, String[] row) throws IOException {
+            record.reset();
+            DataOutputStream out = new DataOutputStream(record);
+            out.writeUTF(key);
+            writeRow(out, row);
+            crc.reset();
+            crc.update(record.toByteArray(), 0, record.size());
+            wal.writeInt(record.size());
+            wal.writeInt((int) crc.getValue());
+            record.writeTo(wal);
+            memtable.put(key, row);
+        }
+
+        private String[] get(String key) throws IOException {
+            String[] row = memtable.get(key);
+            if (row == null) {
+                for (Run run : runs) {
+                    row = run.get(key);
+                    if (row != null) {
+                        break;
+                    }
+                }
+            }
+            return row == TOMBSTONE ? null : row;
+        }
+
+        private void scan(String fromKey, String toKey, Consumer<String[]> consumer) {
+            SortedMap<String, String[]> range = fromKey == null && toKey == null ? memtable
+                    : fromKey == null ? memtable.headMap(toKey)
+                    : toKey == null ? memtable.tailMap(fromKey)
+                    : fromKey.compareTo(toKey) < 0 ? memtable.subMap(fromKey, toKey) : Collections.emptySortedMap();
+            List<Iterator<Map.Entry<String, String[]>>> sources = new ArrayList<>();
+            sources.add(range.entrySet().iterator());
+            for (Run run : runs) {
+                sources.add(run.iterator(fromKey, toKey));
+            }
+            merge(sources, entry -> {
+                if (entry.getValue() != TOMBSTONE) {
+                    consumer.accept(entry.getValue());
+                }
+            });
+        }
+
+        // Tombstones are only kept while an older run may still hold the key.
+        private void flushMemtable() throws IOException {
+            if (memtable.isEmpty()) {
+                return;
+            }
+            runs.add(0, writeRun(memtable.entrySet().iterator(), !runs.isEmpty(), -1));
+            memtable = new TreeMap<>();
+            resetWal();
+            if (runs.size() > maxRuns) {
+                compact();
+            }
+        }
+
+        private void compact() throws IOException {
+            long started = System.nanoTime();
+            List<Iterator<Map.Entry<String, String[]>>> sources = new ArrayList<>();
+            long covers = -1;
+            for (Run run : runs) {
+                sources.add(run.iterator(null, null));
+                covers = Math.max(covers, run.id);
+            }
+            Run output;
+            try {
+                output = writeRun(new MergingIterator(sources), false, covers);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            for (Run run : runs) {
+                run.close();
+                Files.delete(run.file.toPath());
+            }
+            logger.info("Compacted {} runs of {} into {} rows in {} ms", runs.size(), dir.getName(), output.count,
+                    (System.nanoTime() - started) / 1_000_000);
+            runs.clear();
+            runs.add(output);
+        }
+
+        // Written under a temporary name and renamed, so a run file is either complete or absent.
+        private Run writeRun(Iterator<Map.Entry<String, String[]>> entries, boolean keepTombstones, long covers) throws IOException {
+            long id = nextRunId++;
+            File file = new File(dir, String.format("run-%012d.dat", id));
+            File temp = new File(dir, file.getName() + ".tmp");
+            List<String> indexKeys = new ArrayList<>();
+            List<Long> indexOffsets = new ArrayList<>();
+            long offset = 0;
+            int count = 0;
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(temp), 1 << 16)) {
+                while (entries.hasNext()) {
+                    Map.Entry<String, String[]> entry = entries.next();
+                    if (entry.getValue() == TOMBSTONE && !keepTombstones) {
+                        continue;
+                    }
+                    if (count % INDEX_INTERVAL == 0) {
+                        indexKeys.add(entry.getKey());
+                        indexOffsets.add(offset);
+                    }
+                    record.reset();
+                    DataOutputStream data = new DataOutputStream(record);
+                    data.writeUTF(entry.getKey());
+                    writeRow(data, entry.getValue());
+                    record.writeTo(out);
+                    offset += record.size();
+                    count++;
+                }
+                DataOutputStream footer = new DataOutputStream(out);
+                for (int i = 0; i < indexKeys.size(); i++) {
+                    footer.writeUTF(indexKeys.get(i));
+                    footer.writeLong(indexOffsets.get(i));
+                }
+                footer.writeLong(offset);
+                footer.writeInt(indexKeys.size());
+                footer.writeLong(covers);
+                footer.writeInt(count);
+                footer.writeInt(MAGIC);
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            return Run.open(file, id);
+        }
+
+        private void clear() throws IOException {
+            for (Run run : runs) {
+                run.close();
+                Files.delete(run.file.toPath());
+            }
+            runs.clear();
+            memtable = new TreeMap<>();
+            resetWal();
+        }
+
+        // A new file rather than truncating the old one, which a backup in progress may still be reading.
+        private void resetWal() throws IOException {
+            wal.close();
+            Files.deleteIfExists(walFile.toPath());
+            wal = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(walFile, true), 1 << 16));
+        }
+
+        private void close() throws IOException {
+            wal.close();
+            for (Run run : runs) {
+                run.close();
+            }
+        }
+    }
+
+    private static void writeRow(DataOutputStream out, String[] row) throws IOException {
+        if (row == TOMBSTONE) {
+            out.writeShort(-1);
+            return;
+        }
+        out.writeShort(row.length);
+        for (String field : row) {
+            out.writeUTF(field);
+        }
+    }
+
+    private static String[] readRow(DataInputStream in) throws IOException {
+        int fields = in.readShort();
+        if (fields < 0) {
+            return TOMBSTONE;
+        }
+        String[] row = new String[fields];
+        for (int i = 0; i < fields; i++) {
+            row[i] = in.readUTF();
+        }
+        return row;
+    }
+
+    // Entries in key order; of equal keys only the one from the earliest, that is newest, source is kept.
+    private static void merge(List<Iterator<Map.Entry<String, String[]>>> sources, Consumer<Map.Entry<String, String[]>> consumer) {
+        MergingIterator iterator = new MergingIterator(sources);
+        while (iterator.hasNext()) {
+            consumer.accept(iterator.next());
+        }
+    }
+
+    private static final class MergingIterator implements Iterator<Map.Entry<String, String[]>> {
+        private final PriorityQueue<Cursor> queue = new PriorityQueue<>();
+
+        private MergingIterator(List<Iterator<Map.Entry<String, String[]>>> sources) {
+            for (int i = 0; i < sources.size(); i++) {
+                Cursor cursor = new Cursor(i, sources.get(i));
+                if (cursor.advance()) {
+                    queue.add(cursor);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !queue.isEmpty();
+        }
+
+        @Override
+        public Map.Entry<String, String[]> next() {
+            Cursor top = queue.poll();
+            if (top == null) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<String, String[]> entry = top.current;
+            if (top.advance()) {
+                queue.add(top);
+            }
+            while (!queue.isEmpty() && queue.peek().current.getKey().equals(entry.getKey())) {
+                Cursor shadowed = queue.poll();
+                if (shadowed.advance()) {
+                    queue.add(shadowed);
+                }
+            }
+            return entry;
+        }
+    }
+
+    private static final class Cursor implements Comparable<Cursor> {
+        private final int rank;
+        private final Iterator<Map.Entry<String, String[]>> source;
+        private Map.Entry<String, String[]> current;
+
+        private Cursor(int rank, Iterator<Map.Entry<String, String[]>> source) {
+            this.rank = rank;
+            this.source = source;
+        }
+
+        private boolean advance() {
+            current = source.hasNext() ? source.next() : null;
+            return current != null;
+        }
+
+        @Override
+        public int compareTo(Cursor other) {
+            int order = current.getKey().compareTo(other.current.getKey());
+            return order != 0 ? order : Integer.compare(rank, other.rank);
+        }
+    }
+
+    // An immutable sorted run: records, then the sparse index, then a fixed footer. Reads are positional, so any
+    // number of iterators can share the channel.
+    private static final class Run {
+        private final File file;
+        private final long id;
+        private final FileChannel channel;
+        private final String[] indexKeys;
+        private final long[] indexOffsets;
+        private final long dataEnd;
+        private final long covers;
+        private final int count;
+
+        private Run(File file, long id, FileChannel channel, String[] indexKeys, long[] indexOffsets, long dataEnd,
+                    long covers, int count) {
+            this.file = file;
+            this.id = id;
+            this.channel = channel;
+            this.indexKeys = indexKeys;
+            this.indexOffsets = indexOffsets;
+            this.dataEnd = dataEnd;
+            this.covers = covers;
+            this.count = count;
+        }
+
+        private static Run open(File file, long id) throws IOException {
+            FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            try {
+                long length = channel.size();
+                if (length < FOOTER_BYTES) {
+                    throw new IOException("Not a complete run file: " + file);
+                }
+                ByteBuffer footer = read(channel, length - FOOTER_BYTES, FOOTER_BYTES);
+                long dataEnd = footer.getLong();
+                int indexCount = footer.getInt();
+                long covers = footer.getLong();
+                int count = footer.getInt();
+                if (footer.getInt() != MAGIC || dataEnd < 0 || dataEnd > length - FOOTER_BYTES) {
+                    throw new IOException("Not a complete run file: " + file);
+                }
+                ByteBuffer index = read(channel, dataEnd, (int) (length - FOOTER_BYTES - dataEnd));
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(index.array()));
+                String[] keys = new String[indexCount];
+                long[] offsets = new long[indexCount];
+                for (int i = 0; i < indexCount; i++) {
+                    keys[i] = in.readUTF();
+                    offsets[i] = in.readLong();
+                }
+                return new Run(file, id, channel, keys, offsets, dataEnd, covers, count);
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+            if (position < 0 || length < 0) {
+                throw new IOException("Run file is too short");
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new EOFException();
+                }
+            }
+            buffer.flip();
+            return buffer;
+        }
+
+        // The block whose first key is the greatest one not after the key, or -1.
+        private int blockOf(String key) {
+            int low = 0;
+            int high = indexKeys.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (indexKeys[mid].compareTo(key) <= 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return high;
+        }
+
+        private List<Map.Entry<String, String[]>> readBlock(int block) throws IOException {
+            long start = indexOffsets[block];
+            long end = block + 1 < indexOffsets.length ? indexOffsets[block + 1] : dataEnd;
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(read(channel, start, (int) (end - start)).array()));
+            List<Map.Entry<String, String[]>> entries = new ArrayList<>(INDEX_INTERVAL);
+            while (in.available() > 0) {
+                String key = in.readUTF();
+                entries.add(new AbstractMap.SimpleImmutableEntry<>(key, readRow(in)));
+            }
+            return entries;
+        }
+
+        private String[] get(String key) throws IOException {
+            int block = blockOf(key);
+            if (block < 0) {
+                return null;
+            }
+            for (Map.Entry<String, String[]> entry : readBlock(block)) {
+                int order = entry.getKey().compareTo(key);
+                if (order == 0) {
+                    return entry.getValue();
+                }
+                if (order > 0) {
+                    break;
+                }
+            }
+            return null;
+        }
+
+        private Iterator<Map.Entry<String, String[]>> iterator(String fromKey, String toKey) {
+            return new Iterator<>() {
+                private int block = fromKey == null ? 0 : Math.max(0, blockOf(fromKey));
+                private Iterator<Map.Entry<String, String[]>> entries = Collections.emptyIterator();
+                private Map.Entry<String, String[]> next = advance();
+
+                private Map.Entry<String, String[]> advance() {
+                    while (true) {
+                        while (!entries.hasNext()) {
+                            if (block >= indexKeys.length || (toKey != null && indexKeys[block].compareTo(toKey) >= 0)) {
+                                return null;
+                            }
+                            try {
+                                entries = readBlock(block++).iterator();
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        }
+                        Map.Entry<String, String[]> entry = entries.next();
+                        if (fromKey != null && entry.getKey().compareTo(fromKey) < 0) {
+                            continue;
+                        }
+                        if (toKey != null && entry.getKey().compareTo(toKey) >= 0) {
+                            block = indexKeys.length;
+                            entries = Collections.emptyIterator();
+                            return null;
+                        }
+                        return entry;
+                    }
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return next != null;
+                }
+
+                @Override
+                public Map.Entry<String, String[]> next() {
+                    if (next == null) {
+                        throw new NoSuchElementException();
+                    }
+                    Map.Entry<String, String[]> entry = next;
+                    next = advance();
+                    return entry;
+                }
+            };
+        }
+
+        private void close() throws IOException {
+            channel.close();
+        }
+    }
+}
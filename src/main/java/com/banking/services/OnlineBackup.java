@@ -0,0 +1,52 @@
+package com.banking.services;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+// A consistent copy of the database taken while the service keeps running. Writes are held off only while files
+// are linked and measured; the copying itself runs alongside new transfers. The copy is built under a .partial
+// name and renamed when complete, and its backup.properties records the journal position it was fenced at, so
+// journal records after that position bring it up to date.
+public class OnlineBackup {
+    private static final Logger logger = LogManager.getLogger(OnlineBackup.class);
+
+    private final BankService bankService;
+
+    public OnlineBackup(BankService bankService) {
+        this.bankService = bankService;
+    }
+
+    // Returns the journal position the backup is consistent with.
+    public long run(File target) throws IOException {
+        if (target.exists()) {
+            throw new IOException("Backup target already exists: " + target);
+        }
+        File partial = new File(target.getPath() + ".partial");
+        BackupFiles.deleteRecursively(partial);
+        partial.mkdirs();
+
+        long started = System.nanoTime();
+        List<StorageEngine.Backup> pending = new ArrayList<>();
+        long position = bankService.startBackup(partial, pending);
+        long fenced = System.nanoTime();
+        for (StorageEngine.Backup step : pending) {
+            step.finish();
+        }
+        String engine = bankService.getStorageService().getEngine() instanceof CsvStorageEngine ? "csv" : "log";
+        Files.writeString(new File(partial, "backup.properties").toPath(), String.join(System.lineSeparator(),
+                "journalPosition=" + position,
+                "createdAt=" + System.currentTimeMillis(),
+                "engine=" + engine) + System.lineSeparator());
+        Files.move(partial.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        logger.info("Backed up to {} at journal position {} in {} ms, writes held for {} ms", target, position,
+                (System.nanoTime() - started) / 1_000_000, (fenced - started) / 1_000_000);
+        return position;
+    }
+}
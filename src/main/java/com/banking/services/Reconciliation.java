@@ -0,0 +1,435 @@
+package com.banking.services;
+
+import com.banking.enums.StorageTable;
+import com.banking.utils.AccountIds;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class Reconciliation {
+    private static final Logger logger = LogManager.getLogger(Reconciliation.class);
+    private static final long TARGET_RANGE_BYTES = 32L * 1024 * 1024;
+    private static final int MAX_ORPHAN_SAMPLES = 1000;
+    private static final long NOT_PLAIN = Long.MIN_VALUE;
+
+    private final BankService bankService;
+    private final int parallelism;
+
+    public Reconciliation(BankService bankService, int parallelism) {
+        this.bankService = bankService;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    // Recomputes every balance from the stored postings and compares it, to the cent, with the stored balance.
+    // Postings of accounts that only exist in the archive are expected and not reported. Run it on
+    // a quiet ledger: postings written during the scan show up as mismatches.
+    public Report run() throws IOException, InterruptedException {
+        bankService.flush();
+        String databasePath = bankService.getStorageService().getDatabasePath();
+        StorageEngine engine = bankService.getStorageService().getEngine();
+        File transactionsFile = new File(databasePath + StorageTable.POSTINGS.getFileName());
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try {
+            Future<AccountIndex> accountsResult = executor.submit(() -> loadAccounts(engine));
+            Future<long[]> archivedResult = executor.submit(() -> loadArchivedAccounts(bankService.getStorageService()));
+            AccountIndex accounts = accountsResult.get();
+            long[] archived = archivedResult.get();
+
+            // The table is small next to the postings, so it is indexed first and the postings are then scanned
+            // in byte ranges of the CSV file, each range summing into its own arrays. Other engines are read
+            // through one ordered scan.
+            List<Future<Partial>> partials = new ArrayList<>();
+            if (engine instanceof CsvStorageEngine) {
+                long length = transactionsFile.exists() ? transactionsFile.length() : 0;
+                int ranges = (int) Math.max(parallelism, length / TARGET_RANGE_BYTES + 1);
+                for (int i = 0; i < ranges; i++) {
+                    long start = length * i / ranges;
+                    long end = length * (i + 1) / ranges;
+                    partials.add(executor.submit(() -> scan(transactionsFile, start, end, accounts, archived)));
+                }
+            } else {
+                partials.add(executor.submit(() -> scan(engine, accounts, archived)));
+            }
+            Future<List<String>> orphanCards = executor.submit(() -> findOrphanCards(engine, accounts));
+
+            Report report = new Report();
+            long[] cents = new long[accounts.size()];
+            BigDecimal[] exact = new BigDecimal[accounts.size()];
+            for (Future<Partial> result : partials) {
+                Partial partial = result.get();
+                for (int i = 0; i < cents.length; i++) {
+                    try {
+                        cents[i] = Math.addExact(cents[i], partial.cents[i]);
+                    } catch (ArithmeticException e) {
+                        exact[i] = add(exact[i], BigDecimal.valueOf(partial.cents[i], 2));
+                    }
+                    if (partial.exact[i] != null) {
+                        exact[i] = add(exact[i], partial.exact[i]);
+                    }
+                }
+                report.transactions += partial.transactions;
+                report.archivedTransactions += partial.archivedTransactions;
+                report.malformedRows += partial.malformedRows;
+                report.orphanTransactionCount += partial.orphans;
+                for (String orphan : partial.orphanSamples) {
+                    if (report.orphanTransactions.size() < MAX_ORPHAN_SAMPLES) {
+                        report.orphanTransactions.add(orphan);
+                    }
+                }
+            }
+            for (int i = 0; i < accounts.size(); i++) {
+                BigDecimal computed = add(exact[i], BigDecimal.valueOf(cents[i], 2)).setScale(2, RoundingMode.HALF_EVEN);
+                BigDecimal recorded = accounts.balances[i].setScale(2, RoundingMode.HALF_EVEN);
+                if (recorded.compareTo(computed) != 0) {
+                    report.mismatches.add(String.join(",", AccountIds.format(accounts.numbers[i]),
+                            recorded.toPlainString(), computed.toPlainString(), recorded.subtract(computed).toPlainString()));
+                }
+            }
+            report.accounts = accounts.size();
+            report.orphanCards.addAll(orphanCards.get());
+            logger.info("Reconciled {} accounts against {} postings: {} mismatches, {} orphan transactions, {} orphan cards",
+                    report.accounts, report.transactions, report.mismatches.size(), report.orphanTransactionCount,
+                    report.orphanCards.size());
+            return report;
+        } catch (ExecutionException e) {
+            throw new IOException("Reconciliation failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static BigDecimal add(BigDecimal sum, BigDecimal amount) {
+        return sum == null ? amount : sum.add(amount);
+    }
+
+    private static AccountIndex loadAccounts(StorageEngine engine) throws IOException {
+        TreeMap<Long, BigDecimal> balances = new TreeMap<>();
+        engine.scan(StorageTable.ACCOUNTS, values -> {
+            long number = values.length == 4 ? AccountIds.parse(values[0]) : AccountIds.INVALID;
+            if (number != AccountIds.INVALID) {
+                balances.put(number, new BigDecimal(values[3]));
+            }
+        });
+        AccountIndex index = new AccountIndex(balances.size());
+        int i = 0;
+        for (Map.Entry<Long, BigDecimal> entry : balances.entrySet()) {
+            index.numbers[i] = entry.getKey();
+            index.balances[i++] = entry.getValue();
+        }
+        return index;
+    }
+
+    private static long[] loadArchivedAccounts(StorageService storageService) {
+        TreeSet<Long> numbers = new TreeSet<>();
+        for (String[] row : storageService.loadRetired()) {
+            long number = row[0].equals("ACCOUNT") ? AccountIds.parse(row[1]) : AccountIds.INVALID;
+            if (number != AccountIds.INVALID) {
+                numbers.add(number);
+            }
+        }
+        return numbers.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private static List<String> findOrphanCards(StorageEngine engine, AccountIndex accounts) throws IOException {
+        List<String> orphans = new ArrayList<>();
+        engine.scan(StorageTable.CARDS, values -> {
+            if (values.length == 4 && accounts.indexOf(AccountIds.parse(values[1])) < 0) {
+                orphans.add(values[0] + "," + values[1]);
+            }
+        });
+        return orphans;
+    }
+
+    // Rows are joined back into CSV lines so both paths share the same parsing.
+    private static Partial scan(StorageEngine engine, AccountIndex accounts, long[] archived) throws IOException {
+        Partial partial = new Partial(accounts.size());
+        byte[][] line = {new byte[256]};
+        AsciiSequence[] accountId = {new AsciiSequence(line[0])};
+        engine.scan(StorageTable.POSTINGS, values -> {
+            byte[] bytes = String.join(",", values).getBytes(StandardCharsets.US_ASCII);
+            if (bytes.length > line[0].length) {
+                line[0] = Arrays.copyOf(bytes, bytes.length * 2);
+                accountId[0] = new AsciiSequence(line[0]);
+            } else {
+                System.arraycopy(bytes, 0, line[0], 0, bytes.length);
+            }
+            post(partial, line[0], bytes.length, accountId[0], accounts, archived);
+        });
+        return partial;
+    }
+
+    // Owns the rows that start inside [start, end); the row straddling start belongs to the previous range.
+    private static Partial scan(File file, long start, long end, AccountIndex accounts, long[] archived) throws IOException {
+        Partial partial = new Partial(accounts.size());
+        if (start >= end) {
+            return partial;
+        }
+        try (FileInputStream in = new FileInputStream(file)) {
+            long offset = Math.max(0, start - 1);
+            in.getChannel().position(offset);
+            byte[] buffer = new byte[1 << 16];
+            byte[] line = new byte[256];
+            AsciiSequence accountId = new AsciiSequence(line);
+            int length = 0;
+            boolean skipping = start > 0;
+            int read;
+            while (offset < end && (read = in.read(buffer)) != -1) {
+                for (int i = 0; i < read; i++) {
+                    byte b = buffer[i];
+                    if (b != '\n') {
+                        if (!skipping) {
+                            if (length == line.length) {
+                                line = Arrays.copyOf(line, length * 2);
+                                accountId = new AsciiSequence(line);
+                            }
+                            line[length++] = b;
+                        }
+                        continue;
+                    }
+                    long lineStart = offset + i - length;
+                    if (skipping) {
+                        skipping = false;
+                    } else if (lineStart >= end) {
+                        return partial;
+                    } else {
+                        post(partial, line, length, accountId, accounts, archived);
+                    }
+                    length = 0;
+                }
+                offset += read;
+            }
+            if (length > 0 && !skipping && offset - length < end) {
+                post(partial, line, length, accountId, accounts, archived);
+            }
+        }
+        return partial;
+    }
+
+    // Rows are id,account,type,amount,date.
+    private static void post(Partial partial, byte[] line, int length, AsciiSequence accountId, AccountIndex accounts, long[] archived) {
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+        if (length == 0) {
+            return;
+        }
+        int[] commas = partial.commas;
+        int found = 0;
+        for (int i = 0; i < length && found <= 4; i++) {
+            if (line[i] == ',') {
+                if (found < 4) {
+                    commas[found] = i;
+                }
+                found++;
+            }
+        }
+        if (found != 4 || (line[commas[1] + 1] != 'D' && line[commas[1] + 1] != 'W')) {
+            partial.malformedRows++;
+            return;
+        }
+        accountId.set(commas[0] + 1, commas[1]);
+        long number = AccountIds.parse(accountId);
+        partial.transactions++;
+        int index = accounts.indexOf(number);
+        if (index < 0) {
+            if (number != AccountIds.INVALID && Arrays.binarySearch(archived, number) >= 0) {
+                partial.archivedTransactions++;
+            } else {
+                partial.orphans++;
+                if (partial.orphanSamples.size() < MAX_ORPHAN_SAMPLES) {
+                    partial.orphanSamples.add(new String(line, 0, commas[1], StandardCharsets.US_ASCII));
+                }
+            }
+            return;
+        }
+        boolean withdrawal = line[commas[1] + 1] == 'W';
+        long cents = parseCents(line, commas[2] + 1, commas[3]);
+        if (cents != NOT_PLAIN) {
+            try {
+                partial.cents[index] = Math.addExact(partial.cents[index], withdrawal ? -cents : cents);
+                return;
+            } catch (ArithmeticException e) {
+                // Falls through to the exact sum.
+            }
+        }
+        BigDecimal amount;
+        try {
+            amount = new BigDecimal(new String(line, commas[2] + 1, commas[3] - commas[2] - 1, StandardCharsets.US_ASCII));
+        } catch (NumberFormatException e) {
+            partial.transactions--;
+            partial.malformedRows++;
+            return;
+        }
+        partial.exact[index] = add(partial.exact[index], withdrawal ? amount.negate() : amount);
+    }
+
+    // Most amounts are written as plain decimals with at most two fraction digits and are summed as cents; anything
+    // else (more digits, exponent notation) returns NOT_PLAIN and goes through BigDecimal.
+    private static long parseCents(byte[] line, int from, int to) {
+        long value = 0;
+        int fraction = -1;
+        if (from == to || to - from > 18) {
+            return NOT_PLAIN;
+        }
+        for (int i = from; i < to; i++) {
+            byte c = line[i];
+            if (c == '.' && fraction < 0) {
+                fraction = 0;
+            } else if (c >= '0' && c <= '9' && fraction < 2) {
+                value = value * 10 + (c - '0');
+                if (fraction >= 0) {
+                    fraction++;
+                }
+            } else {
+                return NOT_PLAIN;
+            }
+        }
+        for (int i = Math.max(fraction, 0); i < 2; i++) {
+            value *= 10;
+        }
+        return value;
+    }
+
+    private static final class AccountIndex {
+        private final long[] numbers;
+        private final BigDecimal[] balances;
+
+        private AccountIndex(int size) {
+            this.numbers = new long[size];
+            this.balances = new BigDecimal[size];
+        }
+
+        private int size() {
+            return numbers.length;
+        }
+
+        private int indexOf(long number) {
+            return number == AccountIds.INVALID ? -1 : Math.max(-1, Arrays.binarySearch(numbers, number));
+        }
+    }
+
+    private static final class Partial {
+        private final long[] cents;
+        private final BigDecimal[] exact;
+        private final int[] commas = new int[4];
+        private final List<String> orphanSamples = new ArrayList<>();
+        private long transactions;
+        private long archivedTransactions;
+        private long orphans;
+        private long malformedRows;
+
+        private Partial(int accounts) {
+            this.cents = new long[accounts];
+            this.exact = new BigDecimal[accounts];
+        }
+    }
+
+    // Lets AccountIds.parse read the account column in place instead of allocating a String per row.
+    private static final class AsciiSequence implements CharSequence {
+        private final byte[] bytes;
+        private int from;
+        private int to;
+
+        private AsciiSequence(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        private void set(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public int length() {
+            return to - from;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (bytes[from + index] & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return toString().subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return new String(bytes, from, to - from, StandardCharsets.US_ASCII);
+        }
+    }
+
+    public static class Report {
+        private final List<String> mismatches = new ArrayList<>();
+        private final List<String> orphanTransactions = new ArrayList<>();
+        private final List<String> orphanCards = new ArrayList<>();
+        private int accounts;
+        private long transactions;
+        private long archivedTransactions;
+        private long orphanTransactionCount;
+        private long malformedRows;
+
+        public int getAccounts() {
+            return accounts;
+        }
+
+        public long getTransactions() {
+            return transactions;
+        }
+
+        public long getArchivedTransactions() {
+            return archivedTransactions;
+        }
+
+        public long getMalformedRows() {
+            return malformedRows;
+        }
+
+        // account,recorded,computed,difference
+        public List<String> getMismatches() {
+            return mismatches;
+        }
+
+        public long getOrphanTransactionCount() {
+            return orphanTransactionCount;
+        }
+
+        // transactionId,account for the first rows found; getOrphanTransactionCount has the total.
+        public List<String> getOrphanTransactions() {
+            return orphanTransactions;
+        }
+
+        // cardNumber,account
+        public List<String> getOrphanCards() {
+            return orphanCards;
+        }
+
+        public boolean isClean() {
+            return mismatches.isEmpty() && orphanTransactionCount == 0 && orphanCards.isEmpty() && malformedRows == 0;
+        }
+
+        public void write(File file) throws IOException {
+            try (PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(file)))) {
+                writer.println(String.join(",", "SUMMARY", String.valueOf(accounts), String.valueOf(transactions),
+                        String.valueOf(archivedTransactions), String.valueOf(orphanTransactionCount),
+                        String.valueOf(malformedRows)));
+                for (String mismatch : mismatches) {
+                    writer.println("MISMATCH," + mismatch);
+                }
+                for (String orphan : orphanTransactions) {
+                    writer.println("ORPHAN_TRANSACTION," + orphan);
+                }
+                for (String orphan : orphanCards) {
+                    writer.println("ORPHAN_CARD," + orphan);
+                }
+            }
+        }
+    }
+}
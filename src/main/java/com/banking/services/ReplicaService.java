@@ -0,0 +1,309 @@
+package com.banking.services;
+
+import com.banking.enums.AccountType;
+import com.banking.exceptions.InsufficientFundsException;
+import com.banking.exceptions.InvalidAccountException;
+import com.banking.models.*;
+import com.banking.utils.AccountNumberGenerator;
+import com.banking.utils.SnowflakeIdGenerator;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Warm standby: follows a primary's journal into its own BankService and directory, serving reads while following.
+// Writes are refused until promote(), which stops following and flushes the mirrored state to disk.
+public class ReplicaService implements BankServiceInterface {
+    private static final Logger logger = LogManager.getLogger(ReplicaService.class);
+    private static final long RECONNECT_MILLIS = 1000;
+
+    private final BankService bankService;
+    private final String host;
+    private final int port;
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "replica-flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Thread follower;
+    private volatile Socket socket;
+    private volatile boolean promoted = false;
+    private boolean inSnapshot;
+    private volatile long appliedPosition;
+    private volatile long appliedTimestamp;
+    private volatile long primaryPosition;
+    private volatile long lastContact;
+
+    public ReplicaService(String databasePath, String host, int port) {
+        this.bankService = new BankService(StorageService.forDirectory(databasePath), new AccountNumberGenerator(),
+                new SnowflakeIdGenerator(Integer.getInteger("banking.workerId", 1)));
+        this.host = host;
+        this.port = port;
+        bankService.setDeferSaves(true);
+    }
+
+    public void start() {
+        follower = new Thread(this::follow, "replica-follower");
+        follower.setDaemon(true);
+        follower.start();
+        long flushSeconds = Long.getLong("banking.replica.flushSeconds", 5);
+        flusher.scheduleAtFixedRate(() -> {
+            bankService.flush();
+            logger.info("Replication lag: {} records, {} ms", getLagRecords(), getLagMillis());
+        }, flushSeconds, flushSeconds, TimeUnit.SECONDS);
+    }
+
+    // Every connection starts from a fresh snapshot, so a follower that fell behind or restarted needs no catch-up state.
+    private void follow() {
+        while (!promoted) {
+            try (Socket connection = new Socket(host, port);
+                 BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8), 1 << 16)) {
+                socket = connection;
+                logger.info("Following primary {}:{}", host, port);
+                String line;
+                while (!promoted && (line = reader.readLine()) != null) {
+                    apply(JournalService.JournalRecord.parse(line));
+                }
+            } catch (IOException | UncheckedIOException e) {
+                if (!promoted) {
+                    logger.error("Lost primary {}:{}: {}", host, port, e.getMessage());
+                }
+            }
+            if (!promoted) {
+                try {
+                    Thread.sleep(RECONNECT_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void apply(JournalService.JournalRecord record) {
+        if (record == null) {
+            return;
+        }
+        lastContact = System.currentTimeMillis();
+        switch (record.getType()) {
+            case "HEARTBEAT" -> primaryPosition = Math.max(primaryPosition, Long.parseLong(record.getField(0)));
+            case "SNAPSHOT_END" -> {
+                inSnapshot = false;
+                appliedPosition = Long.parseLong(record.getField(0));
+                appliedTimestamp = record.getTimestamp();
+                primaryPosition = Math.max(primaryPosition, appliedPosition);
+                logger.info("Snapshot applied at journal position {}", appliedPosition);
+            }
+            // Journal records inside a snapshot are already part of its state.
+            default -> {
+                if (inSnapshot && record.getPosition() > 0) {
+                    bankService.observeReplicated(record);
+                    return;
+                }
+                inSnapshot |= record.getType().equals("SNAPSHOT_BEGIN");
+                bankService.applyReplicated(record);
+                if (record.getPosition() > 0) {
+                    appliedPosition = record.getPosition();
+                    appliedTimestamp = record.getTimestamp();
+                    primaryPosition = Math.max(primaryPosition, appliedPosition);
+                }
+            }
+        }
+    }
+
+    public synchronized void promote() {
+        if (promoted) {
+            return;
+        }
+        promoted = true;
+        try {
+            if (socket != null) {
+                socket.close();
+            }
+            if (follower != null) {
+                follower.join(5000);
+            }
+        } catch (IOException e) {
+            logger.error("Error closing replication connection: {}", e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flusher.shutdown();
+        bankService.setDeferSaves(false);
+        logger.info("Promoted replica at journal position {}", appliedPosition);
+    }
+
+    public boolean isPromoted() {
+        return promoted;
+    }
+
+    // The service that takes over once promoted, e.g. to ship its own journal to a new follower.
+    public BankService getBankService() {
+        return bankService;
+    }
+
+    public long getAppliedPosition() {
+        return appliedPosition;
+    }
+
+    public long getPrimaryPosition() {
+        return primaryPosition;
+    }
+
+    public long getLagRecords() {
+        return Math.max(0, primaryPosition - appliedPosition);
+    }
+
+    // Age of the newest applied record while records are outstanding; 0 once caught up.
+    public long getLagMillis() {
+        if (getLagRecords() == 0 || appliedTimestamp == 0) {
+            return 0;
+        }
+        return Math.max(0, System.currentTimeMillis() - appliedTimestamp);
+    }
+
+    public long getMillisSinceContact() {
+        return lastContact == 0 ? -1 : System.currentTimeMillis() - lastContact;
+    }
+
+    private void checkPromoted() {
+        if (!promoted) {
+            throw new UnsupportedOperationException("Replica is read-only until promoted");
+        }
+    }
+
+    @Override
+    public Customer createCustomer(String name, String surname, int age) {
+        checkPromoted();
+        return bankService.createCustomer(name, surname, age);
+    }
+
+    @Override
+    public Account createAccount(String customerId, AccountType type) throws InvalidAccountException {
+        checkPromoted();
+        return bankService.createAccount(customerId, type);
+    }
+
+    @Override
+    public List<Account> getAccountsByCustomer(String customerId) throws InvalidAccountException {
+        return bankService.getAccountsByCustomer(customerId);
+    }
+
+    @Override
+    public BankStatement generateBankStatement(String accountId, Date startDate, Date endDate) throws InvalidAccountException {
+        return bankService.generateBankStatement(accountId, startDate, endDate);
+    }
+
+    @Override
+    public List<Customer> getAllCustomers() {
+        return bankService.getAllCustomers();
+    }
+
+    @Override
+    public List<Account> getAllAccounts() {
+        return bankService.getAllAccounts();
+    }
+
+    @Override
+    public Customer getCustomerById(String customerId) throws InvalidAccountException {
+        return bankService.getCustomerById(customerId);
+    }
+
+    @Override
+    public Customer updateCustomer(String customerId, String name, String surname, Integer age) throws InvalidAccountException {
+        checkPromoted();
+        return bankService.updateCustomer(customerId, name, surname, age);
+    }
+
+    @Override
+    public void deleteCustomer(String customerId) throws InvalidAccountException {
+        checkPromoted();
+        bankService.deleteCustomer(customerId);
+    }
+
+    @Override
+    public void deleteAccount(String accountId) throws InvalidAccountException {
+        checkPromoted();
+        bankService.deleteAccount(accountId);
+    }
+
+    @Override
+    public void addCard(Card card) {
+        checkPromoted();
+        bankService.addCard(card);
+    }
+
+    @Override
+    public Card issueCard(String accountId) throws InvalidAccountException {
+        checkPromoted();
+        return bankService.issueCard(accountId);
+    }
+
+    @Override
+    public void removeCard(Card card) {
+        checkPromoted();
+        bankService.removeCard(card);
+    }
+
+    @Override
+    public void transfer(String fromAccountId, String toAccountId, double amount) throws InsufficientFundsException, InvalidAccountException {
+        checkPromoted();
+        bankService.transfer(fromAccountId, toAccountId, amount);
+    }
+
+    @Override
+    public void withdraw(String accountId, double amount) throws InsufficientFundsException, InvalidAccountException {
+        checkPromoted();
+        bankService.withdraw(accountId, amount);
+    }
+
+    @Override
+    public void deposit(String accountId, double amount) throws InvalidAccountException {
+        checkPromoted();
+        bankService.deposit(accountId, amount);
+    }
+
+    @Override
+    public void transfer(String idempotencyKey, String fromAccountId, String toAccountId, double amount) throws InsufficientFundsException, InvalidAccountException {
+        checkPromoted();
+        bankService.transfer(idempotencyKey, fromAccountId, toAccountId, amount);
+    }
+
+    @Override
+    public void withdraw(String idempotencyKey, String accountId, double amount) throws InsufficientFundsException, InvalidAccountException {
+        checkPromoted();
+        bankService.withdraw(idempotencyKey, accountId, amount);
+    }
+
+    @Override
+    public void deposit(String idempotencyKey, String accountId, double amount) throws InvalidAccountException {
+        checkPromoted();
+        bankService.deposit(idempotencyKey, accountId, amount);
+    }
+
+    @Override
+    public void cardPayment(String cardNumber, double amount) throws InsufficientFundsException, InvalidAccountException {
+        checkPromoted();
+        bankService.cardPayment(cardNumber, amount);
+    }
+
+    @Override
+    public Account getAccountById(String accountId) {
+        return bankService.getAccountById(accountId);
+    }
+
+    @Override
+    public void setCardBlocked(String cardNumber, boolean blocked) throws InvalidAccountException {
+        checkPromoted();
+        bankService.setCardBlocked(cardNumber, blocked);
+    }
+}
@@ -0,0 +1,127 @@
+package com.banking.services;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Ships the primary's journal to followers: each follower gets a snapshot fenced at a journal position, then every
+// journal line after it as it is appended, with a heartbeat carrying the primary's position when idle.
+public class ReplicationServer implements Closeable {
+    private static final Logger logger = LogManager.getLogger(ReplicationServer.class);
+    private static final long HEARTBEAT_MILLIS = 1000;
+    private static final long POLL_MILLIS = 20;
+
+    private final BankService bankService;
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "replication");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile boolean running = true;
+
+    public ReplicationServer(BankService bankService, int port) throws IOException {
+        this.bankService = bankService;
+        this.serverSocket = new ServerSocket(port);
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public void start() {
+        executor.submit(this::acceptFollowers);
+        logger.info("Shipping journal to followers on port {}", getPort());
+    }
+
+    private void acceptFollowers() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                executor.submit(() -> ship(socket));
+            } catch (IOException e) {
+                if (running) {
+                    logger.error("Error accepting follower: {}", e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    private void ship(Socket socket) {
+        String follower = socket.getRemoteSocketAddress().toString();
+        try (socket; Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), 1 << 16)) {
+            long offset = bankService.writeSnapshot(line -> {
+                try {
+                    out.write(line);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            out.flush();
+            logger.info("Sent snapshot to follower {}", follower);
+            tail(bankService.getJournal(), offset, out);
+        } catch (IOException | UncheckedIOException e) {
+            logger.info("Follower {} disconnected: {}", follower, e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Forwards complete lines only; a line still being written is held back until its newline arrives.
+    private void tail(JournalService journal, long offset, Writer out) throws IOException, InterruptedException {
+        long lastSent = System.currentTimeMillis();
+        while (running && !journal.getFile().exists()) {
+            lastSent = heartbeat(journal, out, lastSent);
+            Thread.sleep(POLL_MILLIS);
+        }
+        try (RandomAccessFile file = new RandomAccessFile(journal.getFile(), "r")) {
+            file.seek(offset);
+            byte[] buffer = new byte[1 << 16];
+            ByteArrayOutputStream partial = new ByteArrayOutputStream();
+            while (running) {
+                int read = file.read(buffer);
+                if (read > 0) {
+                    for (int i = 0; i < read; i++) {
+                        partial.write(buffer[i]);
+                        if (buffer[i] == '\n') {
+                            out.write(partial.toString(StandardCharsets.UTF_8));
+                            partial.reset();
+                        }
+                    }
+                    out.flush();
+                    lastSent = System.currentTimeMillis();
+                } else {
+                    lastSent = heartbeat(journal, out, lastSent);
+                    Thread.sleep(POLL_MILLIS);
+                }
+            }
+        }
+    }
+
+    private static long heartbeat(JournalService journal, Writer out, long lastSent) throws IOException {
+        long now = System.currentTimeMillis();
+        if (now - lastSent < HEARTBEAT_MILLIS) {
+            return lastSent;
+        }
+        out.write(JournalService.format(0, now, "HEARTBEAT", String.valueOf(journal.getPosition())));
+        out.flush();
+        return now;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            logger.error("Error closing replication socket: {}", e.getMessage(), e);
+        }
+        executor.shutdownNow();
+    }
+}
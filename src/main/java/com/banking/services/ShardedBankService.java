@@ -0,0 +1,472 @@
+package com.banking.services;
+
+import com.banking.enums.AccountType;
+import com.banking.exceptions.InsufficientFundsException;
+import com.banking.exceptions.InvalidAccountException;
+import com.banking.models.*;
+import com.banking.utils.AccountIds;
+import com.banking.utils.AccountNumberGenerator;
+import com.banking.utils.IdGenerator;
+import com.banking.utils.SnowflakeIdGenerator;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Accounts are partitioned over independent BankService shards by a hash of the account number. A customer lives on
+// one shard and its accounts are numbered so that they hash to that shard too; only transfers can span shards.
+public class ShardedBankService implements BankServiceInterface {
+    private static final Logger logger = LogManager.getLogger(ShardedBankService.class);
+    private static final int COORDINATOR_WORKER_ID = 1023;
+    private static final String[] NO_FIELDS = new String[0];
+
+    private final List<Shard> shards = new ArrayList<>();
+    private final Map<String, Integer> customerShards = new ConcurrentHashMap<>();
+    private final Map<String, Integer> cardShards = new ConcurrentHashMap<>();
+    private final AtomicInteger nextCustomerShard = new AtomicInteger();
+    private final JournalService coordinatorLog;
+    private final StorageService storageService;
+    private final IdempotencyCache idempotencyCache = IdempotencyCache.fromSystemProperties();
+    private final IdGenerator transferIds = new SnowflakeIdGenerator(COORDINATOR_WORKER_ID);
+
+    public ShardedBankService(String databasePath, int shardCount) {
+        if (shardCount < 1 || shardCount >= COORDINATOR_WORKER_ID) {
+            throw new IllegalArgumentException("Shard count must be between 1 and " + (COORDINATOR_WORKER_ID - 1));
+        }
+        new File(databasePath).mkdirs();
+        this.coordinatorLog = new JournalService(new File(databasePath + "coordinator.log"));
+        this.storageService = StorageService.forDirectory(databasePath);
+        for (int i = 0; i < shardCount; i++) {
+            StorageService storage = StorageService.forDirectory(databasePath + "shard-" + i + "/");
+            BankService service = new BankService(storage, new ShardAccountNumbers(i, shardCount), new SnowflakeIdGenerator(i));
+            shards.add(new Shard(i, service));
+            for (Customer customer : service.getAllCustomers()) {
+                customerShards.put(customer.getId(), i);
+            }
+            for (Account account : service.getAllAccounts()) {
+                for (Card card : account.getCards()) {
+                    cardShards.put(card.getCardNumber(), i);
+                }
+            }
+        }
+        recoverTransfers();
+        idempotencyCache.restore(coordinatorLog);
+        for (Shard shard : shards) {
+            idempotencyCache.restore(shard.service.getJournal());
+        }
+        logger.info("Started {} shards in {}", shardCount, databasePath);
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    // Holds what belongs to the router rather than a shard, such as standing orders.
+    StorageService getStorageService() {
+        return storageService;
+    }
+
+    public void stop() {
+        for (Shard shard : shards) {
+            shard.writer.shutdown();
+        }
+        coordinatorLog.close();
+    }
+
+    static int shardOf(long accountNumber, int shardCount) {
+        return (int) Math.floorMod((accountNumber * 0x9E3779B97F4A7C15L) >>> 32, (long) shardCount);
+    }
+
+    private Shard accountShard(String accountId) throws InvalidAccountException {
+        long accountNumber = AccountIds.parse(accountId);
+        if (accountNumber == AccountIds.INVALID) {
+            logger.error("Account not found: {}", accountId);
+            throw new InvalidAccountException("Account not found");
+        }
+        return shards.get(shardOf(accountNumber, shards.size()));
+    }
+
+    private Shard customerShard(String customerId) throws InvalidAccountException {
+        Integer shard = customerShards.get(customerId);
+        if (shard == null) {
+            logger.error("Customer not found: {}", customerId);
+            throw new InvalidAccountException("Customer not found");
+        }
+        return shards.get(shard);
+    }
+
+    private Shard cardShard(String cardNumber) throws InvalidAccountException {
+        Integer shard = cardShards.get(cardNumber);
+        if (shard == null) {
+            logger.error("Card not found: {}", cardNumber);
+            throw new InvalidAccountException("Card not found");
+        }
+        return shards.get(shard);
+    }
+
+    @Override
+    public Customer createCustomer(String name, String surname, int age) {
+        Shard shard = shards.get(Math.floorMod(nextCustomerShard.getAndIncrement(), shards.size()));
+        Customer customer = shard.writeUnchecked(service -> service.createCustomer(name, surname, age));
+        customerShards.put(customer.getId(), shard.index);
+        return customer;
+    }
+
+    @Override
+    public Account createAccount(String customerId, AccountType type) throws InvalidAccountException {
+        return customerShard(customerId).writeAccount(service -> service.createAccount(customerId, type));
+    }
+
+    @Override
+    public List<Account> getAccountsByCustomer(String customerId) throws InvalidAccountException {
+        return customerShard(customerId).service.getAccountsByCustomer(customerId);
+    }
+
+    @Override
+    public BankStatement generateBankStatement(String accountId, Date startDate, Date endDate) throws InvalidAccountException {
+        return accountShard(accountId).service.generateBankStatement(accountId, startDate, endDate);
+    }
+
+    @Override
+    public List<Customer> getAllCustomers() {
+        List<Customer> customers = new ArrayList<>();
+        for (Shard shard : shards) {
+            customers.addAll(shard.service.getAllCustomers());
+        }
+        return customers;
+    }
+
+    @Override
+    public List<Account> getAllAccounts() {
+        List<Account> accounts = new ArrayList<>();
+        for (Shard shard : shards) {
+            accounts.addAll(shard.service.getAllAccounts());
+        }
+        return accounts;
+    }
+
+    @Override
+    public Customer getCustomerById(String customerId) throws InvalidAccountException {
+        return customerShard(customerId).service.getCustomerById(customerId);
+    }
+
+    @Override
+    public Customer updateCustomer(String customerId, String name, String surname, Integer age) throws InvalidAccountException {
+        return customerShard(customerId).writeAccount(service -> service.updateCustomer(customerId, name, surname, age));
+    }
+
+    @Override
+    public void deleteCustomer(String customerId) throws InvalidAccountException {
+        customerShard(customerId).writeAccount(service -> {
+            service.deleteCustomer(customerId);
+            return null;
+        });
+        customerShards.remove(customerId);
+    }
+
+    @Override
+    public void deleteAccount(String accountId) throws InvalidAccountException {
+        accountShard(accountId).writeAccount(service -> {
+            service.deleteAccount(accountId);
+            return null;
+        });
+    }
+
+    @Override
+    public void addCard(Card card) {
+        int shard = shardOf(card.getAccount().getAccountNumber(), shards.size());
+        shards.get(shard).writeUnchecked(service -> {
+            service.addCard(card);
+            return null;
+        });
+        cardShards.put(card.getCardNumber(), shard);
+    }
+
+    // Card numbers are unique across shards: a number is only taken once the router has reserved it for this shard.
+    @Override
+    public Card issueCard(String accountId) throws InvalidAccountException {
+        Shard shard = accountShard(accountId);
+        return shard.writeAccount(service -> service.issueCard(accountId,
+                number -> cardShards.putIfAbsent(number, shard.index) != null));
+    }
+
+    @Override
+    public void removeCard(Card card) {
+        shards.get(shardOf(card.getAccount().getAccountNumber(), shards.size())).writeUnchecked(service -> {
+            service.removeCard(card);
+            return null;
+        });
+        cardShards.remove(card.getCardNumber());
+    }
+
+    @Override
+    public void transfer(String fromAccountId, String toAccountId, double amount) throws InsufficientFundsException, InvalidAccountException {
+        transfer(fromAccountId, toAccountId, amount, NO_FIELDS);
+    }
+
+    // An idempotency outcome goes into the record that decides the transfer: the shard's TRANSFER record, or the
+    // coordinator's COMMIT.
+    private void transfer(String fromAccountId, String toAccountId, double amount, String[] outcome) throws InsufficientFundsException, InvalidAccountException {
+        Shard from = accountShard(fromAccountId);
+        Shard to = accountShard(toAccountId);
+        if (from == to) {
+            from.write(service -> {
+                service.transfer(fromAccountId, toAccountId, amount, outcome);
+                return null;
+            });
+            return;
+        }
+        if (amount <= 0) {
+            logger.error("Transfer amount must be positive: {}", amount);
+            throw new IllegalArgumentException("Transfer amount must be positive");
+        }
+        transferAcrossShards(from, to, fromAccountId, toAccountId, amount, outcome);
+    }
+
+    // Two-phase commit: both legs are prepared in parallel, the decision is logged by the coordinator, then both legs
+    // are committed. Without a logged commit a transfer is presumed aborted, which is what recovery relies on.
+    private void transferAcrossShards(Shard from, Shard to, String fromAccountId, String toAccountId, double amount, String[] outcome) throws InsufficientFundsException, InvalidAccountException {
+        String transferId = Long.toString(transferIds.nextId());
+        coordinatorLog.append("BEGIN", transferId, fromAccountId, toAccountId, String.valueOf(amount));
+        Future<Void> debit = from.submit(service -> {
+            service.prepareTransfer(transferId, fromAccountId, amount, true);
+            return null;
+        });
+        Future<Void> credit = to.submit(service -> {
+            service.prepareTransfer(transferId, toAccountId, amount, false);
+            return null;
+        });
+        Exception failure = null;
+        for (Future<Void> leg : List.of(debit, credit)) {
+            try {
+                await(leg);
+            } catch (InsufficientFundsException | InvalidAccountException | RuntimeException e) {
+                failure = failure == null ? e : failure;
+            }
+        }
+        if (failure != null) {
+            from.writeUnchecked(service -> {
+                service.abortTransfer(transferId);
+                return null;
+            });
+            to.writeUnchecked(service -> {
+                service.abortTransfer(transferId);
+                return null;
+            });
+            coordinatorLog.append("ABORT", transferId);
+            logger.error("Transfer {} aborted: {}", transferId, failure.getMessage());
+            if (failure instanceof InsufficientFundsException e) {
+                throw e;
+            }
+            if (failure instanceof InvalidAccountException e) {
+                throw e;
+            }
+            throw (RuntimeException) failure;
+        }
+        coordinatorLog.append("COMMIT", IdempotencyCache.withOutcome(new String[]{transferId}, outcome));
+        Future<Void> commitDebit = from.submit(service -> {
+            service.commitTransfer(transferId);
+            return null;
+        });
+        to.writeUnchecked(service -> {
+            service.commitTransfer(transferId);
+            return null;
+        });
+        awaitUnchecked(commitDebit);
+        logger.info("Transferred {} from account {} to account {} across shards", amount, fromAccountId, toAccountId);
+    }
+
+    // Legs left prepared by a crash are committed when the coordinator logged the decision and aborted otherwise.
+    private void recoverTransfers() {
+        Set<String> committed = new HashSet<>();
+        coordinatorLog.replay(0, record -> {
+            if (record.getType().equals("COMMIT")) {
+                committed.add(record.getField(0));
+            }
+        });
+        for (Shard shard : shards) {
+            for (String transferId : shard.service.recoverPreparedTransfers()) {
+                if (committed.contains(transferId)) {
+                    shard.service.commitTransfer(transferId);
+                } else {
+                    shard.service.abortTransfer(transferId);
+                }
+                logger.info("Recovered transfer {} on shard {}", transferId, shard.index);
+            }
+        }
+    }
+
+    @Override
+    public void withdraw(String accountId, double amount) throws InsufficientFundsException, InvalidAccountException {
+        withdraw(accountId, amount, NO_FIELDS);
+    }
+
+    private void withdraw(String accountId, double amount, String[] outcome) throws InsufficientFundsException, InvalidAccountException {
+        accountShard(accountId).write(service -> {
+            service.withdraw(accountId, amount, outcome);
+            return null;
+        });
+    }
+
+    @Override
+    public void deposit(String accountId, double amount) throws InvalidAccountException {
+        deposit(accountId, amount, NO_FIELDS);
+    }
+
+    private void deposit(String accountId, double amount, String[] outcome) throws InvalidAccountException {
+        accountShard(accountId).writeAccount(service -> {
+            service.deposit(accountId, amount, outcome);
+            return null;
+        });
+    }
+
+    // Keys are kept by the router rather than the shards, since a transfer can span two of them. A successful
+    // outcome is written into the deciding record, in a shard's journal or the coordinator log, so restoring reads
+    // both.
+    @Override
+    public void transfer(String idempotencyKey, String fromAccountId, String toAccountId, double amount) throws InsufficientFundsException, InvalidAccountException {
+        idempotencyCache.executeInRecord(idempotencyKey, "TRANSFER " + fromAccountId + " " + toAccountId + " " + amount,
+                coordinatorLog, outcome -> transfer(fromAccountId, toAccountId, amount, outcome));
+    }
+
+    @Override
+    public void withdraw(String idempotencyKey, String accountId, double amount) throws InsufficientFundsException, InvalidAccountException {
+        idempotencyCache.executeInRecord(idempotencyKey, "WITHDRAW " + accountId + " " + amount, coordinatorLog,
+                outcome -> withdraw(accountId, amount, outcome));
+    }
+
+    @Override
+    public void deposit(String idempotencyKey, String accountId, double amount) throws InvalidAccountException {
+        try {
+            idempotencyCache.executeInRecord(idempotencyKey, "DEPOSIT " + accountId + " " + amount, coordinatorLog,
+                    outcome -> deposit(accountId, amount, outcome));
+        } catch (InsufficientFundsException e) {
+            throw new IllegalStateException("Deposit cannot fail for insufficient funds", e);
+        }
+    }
+
+    @Override
+    public void cardPayment(String cardNumber, double amount) throws InsufficientFundsException, InvalidAccountException {
+        cardShard(cardNumber).write(service -> {
+            service.cardPayment(cardNumber, amount);
+            return null;
+        });
+    }
+
+    @Override
+    public Account getAccountById(String accountId) {
+        long accountNumber = AccountIds.parse(accountId);
+        if (accountNumber == AccountIds.INVALID) {
+            return null;
+        }
+        return shards.get(shardOf(accountNumber, shards.size())).service.getAccountById(accountId);
+    }
+
+    @Override
+    public void setCardBlocked(String cardNumber, boolean blocked) throws InvalidAccountException {
+        cardShard(cardNumber).writeAccount(service -> {
+            service.setCardBlocked(cardNumber, blocked);
+            return null;
+        });
+    }
+
+    private static <T> T await(Future<T> future) throws InsufficientFundsException, InvalidAccountException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for shard", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof InsufficientFundsException insufficientFunds) {
+                throw insufficientFunds;
+            }
+            if (cause instanceof InvalidAccountException invalidAccount) {
+                throw invalidAccount;
+            }
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private static <T> T awaitUnchecked(Future<T> future) {
+        try {
+            return await(future);
+        } catch (InsufficientFundsException | InvalidAccountException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private interface ShardCall<T> {
+        T call(BankService service) throws InsufficientFundsException, InvalidAccountException;
+    }
+
+    // All writes to a shard go through its single writer thread, so shards never contend with each other.
+    private static class Shard {
+        private final int index;
+        private final BankService service;
+        private final ExecutorService writer;
+
+        private Shard(int index, BankService service) {
+            this.index = index;
+            this.service = service;
+            this.writer = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "shard-" + index);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        private <T> Future<T> submit(ShardCall<T> call) {
+            return writer.submit(() -> call.call(service));
+        }
+
+        private <T> T write(ShardCall<T> call) throws InsufficientFundsException, InvalidAccountException {
+            return await(submit(call));
+        }
+
+        // For operations that can only fail with a missing account or customer.
+        private <T> T writeAccount(ShardCall<T> call) throws InvalidAccountException {
+            try {
+                return write(call);
+            } catch (InsufficientFundsException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private <T> T writeUnchecked(ShardCall<T> call) {
+            return awaitUnchecked(submit(call));
+        }
+    }
+
+    // Walks the shared account number sequence and keeps only the numbers that hash to this shard.
+    private static class ShardAccountNumbers implements IdGenerator {
+        private final AccountNumberGenerator numbers = new AccountNumberGenerator();
+        private final int shard;
+        private final int shardCount;
+
+        private ShardAccountNumbers(int shard, int shardCount) {
+            this.shard = shard;
+            this.shardCount = shardCount;
+        }
+
+        @Override
+        public long nextId() {
+            long number;
+            do {
+                number = numbers.nextId();
+            } while (shardOf(number, shardCount) != shard);
+            return number;
+        }
+
+        @Override
+        public void observe(long existingId) {
+            numbers.observe(existingId);
+        }
+    }
+}
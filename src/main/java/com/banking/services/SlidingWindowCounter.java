@@ -0,0 +1,113 @@
+package com.banking.services;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+public class SlidingWindowCounter {
+    private static final int STRIPES = 64;
+
+    private final int buckets;
+    private final long bucketMillis;
+    private final Object[] stripes = new Object[STRIPES];
+    private final ReadWriteLock resizeLock = new ReentrantReadWriteLock();
+    // Flat ring buffers: key k owns slots [k * buckets, (k + 1) * buckets).
+    private long[] epochs;
+    private long[] amounts;
+    private int[] counts;
+    private int capacity;
+
+    public SlidingWindowCounter(long windowMillis, int buckets, int initialKeys) {
+        this.buckets = buckets;
+        this.bucketMillis = Math.max(1, windowMillis / buckets);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Object();
+        }
+        allocate(Math.max(16, initialKeys));
+    }
+
+    public long sumAmount(int key, long now) {
+        return read(key, now, true);
+    }
+
+    public long sumCount(int key, long now) {
+        return read(key, now, false);
+    }
+
+    public void record(int key, long amount, long now) {
+        ensureCapacity(key + 1);
+        resizeLock.readLock().lock();
+        try {
+            synchronized (stripes[key & (STRIPES - 1)]) {
+                long epoch = now / bucketMillis;
+                int slot = key * buckets + (int) (epoch % buckets);
+                if (epochs[slot] != epoch) {
+                    epochs[slot] = epoch;
+                    amounts[slot] = 0;
+                    counts[slot] = 0;
+                }
+                amounts[slot] += amount;
+                counts[slot]++;
+            }
+        } finally {
+            resizeLock.readLock().unlock();
+        }
+    }
+
+    private long read(int key, long now, boolean amount) {
+        resizeLock.readLock().lock();
+        try {
+            if (key >= capacity) {
+                return 0;
+            }
+            synchronized (stripes[key & (STRIPES - 1)]) {
+                long oldest = now / bucketMillis - buckets + 1;
+                long total = 0;
+                int base = key * buckets;
+                for (int i = base; i < base + buckets; i++) {
+                    if (epochs[i] >= oldest) {
+                        total += amount ? amounts[i] : counts[i];
+                    }
+                }
+                return total;
+            }
+        } finally {
+            resizeLock.readLock().unlock();
+        }
+    }
+
+    private void ensureCapacity(int keys) {
+        if (keys <= capacity) {
+            return;
+        }
+        resizeLock.writeLock().lock();
+        try {
+            if (keys > capacity) {
+                allocate(Math.max(keys, capacity * 2));
+            }
+        } finally {
+            resizeLock.writeLock().unlock();
+        }
+    }
+
+    private void allocate(int keys) {
+        int slots = keys * buckets;
+        epochs = epochs == null ? filled(slots) : grow(epochs, slots);
+        amounts = amounts == null ? new long[slots] : Arrays.copyOf(amounts, slots);
+        counts = counts == null ? new int[slots] : Arrays.copyOf(counts, slots);
+        capacity = keys;
+    }
+
+    private static long[] filled(int slots) {
+        long[] array = new long[slots];
+        Arrays.fill(array, Long.MIN_VALUE);
+        return array;
+    }
+
+    private static long[] grow(long[] array, int slots) {
+        int old = array.length;
+        long[] grown = Arrays.copyOf(array, slots);
+        Arrays.fill(grown, old, slots, Long.MIN_VALUE);
+        return grown;
+    }
+}
@@ -0,0 +1,183 @@
+package com.banking.services;
+
+import com.banking.enums.Frequency;
+import com.banking.exceptions.InsufficientFundsException;
+import com.banking.exceptions.InvalidAccountException;
+import com.banking.models.StandingOrder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class StandingOrderService {
+    private static final Logger logger = LogManager.getLogger(StandingOrderService.class);
+    private static final AuditService auditService = AuditService.getInstance();
+
+    // The change log is folded into a new snapshot once it holds this many records and twice as many as there are
+    // orders, so writes stay proportional to the changes and the log to the orders.
+    private static final long COMPACT_MIN_RECORDS = 1000;
+
+    private final BankServiceInterface bankService;
+    private final StorageService storageService;
+    private final Map<String, StandingOrder> orders = new LinkedHashMap<>();
+    private final TimingWheel<StandingOrder> wheel;
+    private ScheduledExecutorService scheduler;
+    private long orderIndex = 0;
+
+    public StandingOrderService(BankService bankService) {
+        this(bankService, bankService.getStorageService());
+    }
+
+    // Sharded services keep their orders next to the coordinator log and pay them through the router, which sends
+    // each transfer to the shards that hold its accounts.
+    public StandingOrderService(ShardedBankService bankService) {
+        this(bankService, bankService.getStorageService());
+    }
+
+    StandingOrderService(BankServiceInterface bankService, StorageService storageService) {
+        this(bankService, storageService, Long.getLong("banking.standingOrders.tickSeconds", 60) * 1000);
+    }
+
+    StandingOrderService(BankServiceInterface bankService, StorageService storageService, long tickMillis) {
+        this.bankService = bankService;
+        this.storageService = storageService;
+        this.wheel = new TimingWheel<>(tickMillis, System.currentTimeMillis(), StandingOrder::getNextRun);
+        // Orders whose next run passed while the application was down are due on the first tick.
+        for (StandingOrder order : storageService.loadStandingOrders()) {
+            orders.put(order.getId(), order);
+            orderIndex = Math.max(orderIndex, Long.parseLong(order.getId()));
+            wheel.schedule(order);
+        }
+    }
+
+    public synchronized StandingOrder createStandingOrder(String fromAccountId, String toAccountId, double amount,
+                                                          Frequency frequency, long firstRun) throws InvalidAccountException {
+        if (bankService.getAccountById(fromAccountId) == null || bankService.getAccountById(toAccountId) == null) {
+            logger.error("Account not found for standing order: {} -> {}", fromAccountId, toAccountId);
+            throw new InvalidAccountException("Account not found");
+        }
+        if (amount <= 0) {
+            logger.error("Standing order amount must be positive: {}", amount);
+            throw new IllegalArgumentException("Standing order amount must be positive");
+        }
+        StandingOrder order = new StandingOrder(String.valueOf(++orderIndex), fromAccountId, toAccountId, amount,
+                frequency, firstRun, 0);
+        orders.put(order.getId(), order);
+        wheel.schedule(order);
+        save(List.<String[]>of(StorageService.standingOrderCreated(order)));
+        logger.info("Created standing order: {}", order.getId());
+        auditService.event("createStandingOrder", 0).account(fromAccountId).counterparty(toAccountId).amount(amount).record();
+        return order;
+    }
+
+    // The order stays in its wheel slot and is dropped when that slot fires.
+    public synchronized void cancelStandingOrder(String orderId) throws InvalidAccountException {
+        StandingOrder order = orders.remove(orderId);
+        if (order == null) {
+            logger.error("Standing order not found: {}", orderId);
+            throw new InvalidAccountException("Standing order not found");
+        }
+        order.cancel();
+        save(List.<String[]>of(StorageService.standingOrderCancelled(orderId)));
+        logger.info("Cancelled standing order: {}", orderId);
+        auditService.event("cancelStandingOrder", 0).account(order.getFromAccountId()).record();
+    }
+
+    private void save(List<String[]> changes) {
+        if (storageService.appendStandingOrders(changes) >= Math.max(COMPACT_MIN_RECORDS, 2L * orders.size())) {
+            storageService.saveStandingOrders(orders.values());
+        }
+    }
+
+    public synchronized List<StandingOrder> getAllStandingOrders() {
+        return new ArrayList<>(orders.values());
+    }
+
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "standing-orders");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(() -> {
+            try {
+                runDue(System.currentTimeMillis());
+            } catch (RuntimeException e) {
+                logger.error("Error running standing orders: {}", e.getMessage(), e);
+            }
+        }, 0, wheel.getTickMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            scheduler = null;
+        }
+    }
+
+    public synchronized void runDue(long now) {
+        wheel.advance(now, due -> runGroup(due, now));
+    }
+
+    // Every order due on a tick is paid in one group, with the transaction and account files written once and only the
+    // orders that ran appended to the log. Missed occurrences are all paid; the idempotency key per occurrence keeps a
+    // run repeated after a crash from paying twice.
+    private void runGroup(List<StandingOrder> due, long now) {
+        long started = System.nanoTime();
+        List<StandingOrder> live = new ArrayList<>(due.size());
+        for (StandingOrder order : due) {
+            if (!order.isCancelled()) {
+                live.add(order);
+            }
+        }
+        if (live.isEmpty()) {
+            return;
+        }
+        int[] paid = new int[2];
+        bankService.runGrouped(() -> {
+            for (StandingOrder order : live) {
+                while (!order.isCancelled() && order.getNextRun() <= now) {
+                    paid[pay(order) ? 0 : 1]++;
+                    order.advance();
+                }
+            }
+        });
+        List<String[]> changes = new ArrayList<>(live.size());
+        for (StandingOrder order : live) {
+            if (order.isCancelled()) {
+                changes.add(StorageService.standingOrderCancelled(order.getId()));
+            } else {
+                wheel.schedule(order);
+                changes.add(StorageService.standingOrderRan(order));
+            }
+        }
+        logger.info("Ran {} standing orders: {} paid, {} failed", live.size(), paid[0], paid[1]);
+        auditService.event("runStandingOrders", started).record();
+        save(changes);
+    }
+
+    private boolean pay(StandingOrder order) {
+        try {
+            bankService.transfer("standing-order-" + order.getId() + "-" + order.getRuns(),
+                    order.getFromAccountId(), order.getToAccountId(), order.getAmount());
+            return true;
+        } catch (InsufficientFundsException e) {
+            logger.error("Standing order {} skipped: {}", order.getId(), e.getMessage());
+            return false;
+        } catch (InvalidAccountException e) {
+            logger.error("Standing order {} cancelled: {}", order.getId(), e.getMessage());
+            orders.remove(order.getId());
+            order.cancel();
+            return false;
+        }
+    }
+}
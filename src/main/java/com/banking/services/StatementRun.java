@@ -0,0 +1,202 @@
+package com.banking.services;
+
+import com.banking.models.Account;
+import com.banking.utils.AccountIds;
+import com.banking.utils.CsvReader;
+import com.banking.utils.CsvWriter;
+import com.banking.utils.DateCodec;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class StatementRun {
+    private static final Logger logger = LogManager.getLogger(StatementRun.class);
+    private static final String CHECKPOINT = "_checkpoint";
+    private static final String SPLIT_DONE = "SPLIT_DONE";
+    private static final long TARGET_PARTITION_BYTES = 32L * 1024 * 1024;
+
+    private final BankService bankService;
+    private final File outputDir;
+    private final String fromDate;
+    private final String toDate;
+    private final int parallelism;
+    private final boolean bundled;
+
+    // Dates are yyyy-MM-dd strings, which order the same way as the dates themselves; postings are compared on the
+    // date part of their timestamp.
+    public StatementRun(BankService bankService, File outputDir, String fromDate, String toDate, int parallelism, boolean bundled) {
+        this.bankService = bankService;
+        this.outputDir = outputDir;
+        this.fromDate = fromDate;
+        this.toDate = toDate;
+        this.parallelism = Math.max(1, parallelism);
+        this.bundled = bundled;
+    }
+
+    // One sequential pass splits postings on or after the period start into per-partition spill files; partitions
+    // are then turned into statements in parallel and checkpointed, so a rerun skips finished work.
+    public int run() throws IOException, InterruptedException {
+        bankService.flush();
+        outputDir.mkdirs();
+        StorageService storageService = bankService.getStorageService();
+        Set<String> checkpoint = readCheckpoint();
+        int partitions = checkpoint.contains(SPLIT_DONE) ? countSpillFiles()
+                : (int) Math.max(parallelism, storageService.transactionBytes() / TARGET_PARTITION_BYTES + 1);
+
+        if (!checkpoint.contains(SPLIT_DONE)) {
+            split(storageService, partitions);
+            appendCheckpoint(SPLIT_DONE);
+        } else {
+            logger.info("Resuming statement run in {} with {} of {} partitions done", outputDir, checkpoint.size() - 1, partitions);
+        }
+
+        List<List<Account>> accountsByPartition = new ArrayList<>(partitions);
+        for (int i = 0; i < partitions; i++) {
+            accountsByPartition.add(new ArrayList<>());
+        }
+        for (Account account : bankService.getAllAccounts()) {
+            accountsByPartition.get(partitionOf(account.getAccountNumber(), partitions)).add(account);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < partitions; i++) {
+            if (checkpoint.contains("PART " + i)) {
+                continue;
+            }
+            int partition = i;
+            results.add(executor.submit(() -> writePartition(partition, accountsByPartition.get(partition))));
+        }
+        executor.shutdown();
+        int statements = 0;
+        try {
+            for (Future<Integer> result : results) {
+                statements += result.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IOException("Statement partition failed", e.getCause());
+        }
+
+        for (int i = 0; i < partitions; i++) {
+            spillFile(i).delete();
+        }
+        new File(outputDir, CHECKPOINT).delete();
+        new File(outputDir, "_SUCCESS").createNewFile();
+        logger.info("Generated {} statements for {} to {} in {}", statements, fromDate, toDate, outputDir);
+        return statements;
+    }
+
+    private void split(StorageService storageService, int partitions) throws IOException {
+        CsvWriter[] spills = new CsvWriter[partitions];
+        try {
+            for (int i = 0; i < partitions; i++) {
+                spills[i] = new CsvWriter(new BufferedWriter(new FileWriter(spillFile(i)), 1 << 16));
+            }
+            storageService.scanTransactionRows(values -> {
+                if (values.length != 5 || DateCodec.compareDate(values[4], fromDate) < 0) {
+                    return;
+                }
+                long accountNumber = AccountIds.parse(values[1]);
+                if (accountNumber != AccountIds.INVALID) {
+                    try {
+                        spills[partitionOf(accountNumber, partitions)].writeRow(values);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            for (CsvWriter spill : spills) {
+                if (spill != null) {
+                    spill.close();
+                }
+            }
+        }
+    }
+
+    private int writePartition(int partition, List<Account> accounts) throws IOException {
+        Map<Long, List<String[]>> inPeriod = new HashMap<>();
+        Map<Long, Double> netAfterPeriod = new HashMap<>();
+        try (CsvReader reader = new CsvReader(new FileInputStream(spillFile(partition)))) {
+            while (reader.next()) {
+                String[] values = reader.toArray();
+                long accountNumber = AccountIds.parse(values[1]);
+                if (DateCodec.compareDate(values[4], toDate) > 0) {
+                    netAfterPeriod.merge(accountNumber, signedAmount(values), Double::sum);
+                } else {
+                    inPeriod.computeIfAbsent(accountNumber, k -> new ArrayList<>()).add(values);
+                }
+            }
+        }
+
+        File target = bundled ? new File(outputDir, "statements-" + partition + ".csv") : null;
+        PrintWriter bundle = bundled ? new PrintWriter(new BufferedWriter(new FileWriter(target))) : null;
+        try {
+            for (Account account : accounts) {
+                List<String[]> rows = inPeriod.getOrDefault(account.getAccountNumber(), List.of());
+                double closing = account.getBalance() - netAfterPeriod.getOrDefault(account.getAccountNumber(), 0.0);
+                double opening = closing;
+                for (String[] row : rows) {
+                    opening -= signedAmount(row);
+                }
+                if (bundled) {
+                    writeStatement(bundle, account, rows, opening, closing);
+                } else {
+                    try (PrintWriter writer = new PrintWriter(new BufferedWriter(
+                            new FileWriter(new File(outputDir, account.getAccountId() + ".csv"))))) {
+                        writeStatement(writer, account, rows, opening, closing);
+                    }
+                }
+            }
+        } finally {
+            if (bundle != null) {
+                bundle.close();
+            }
+        }
+        appendCheckpoint("PART " + partition);
+        return accounts.size();
+    }
+
+    private void writeStatement(PrintWriter writer, Account account, List<String[]> rows, double opening, double closing) {
+        writer.println(CsvWriter.formatRow("STATEMENT", account.getAccountId(), fromDate, toDate,
+                String.valueOf(opening), String.valueOf(closing)));
+        for (String[] row : rows) {
+            writer.println(CsvWriter.formatRow(row[0], row[2], row[3], row[4]));
+        }
+    }
+
+    private static double signedAmount(String[] values) {
+        double amount = Double.parseDouble(values[3]);
+        return values[2].equals("WITHDRAWAL") ? -amount : amount;
+    }
+
+    private static int partitionOf(long accountNumber, int partitions) {
+        return (int) Math.floorMod(accountNumber * 0x9E3779B97F4A7C15L >>> 16, (long) partitions);
+    }
+
+    private File spillFile(int partition) {
+        return new File(outputDir, "_spill-" + partition + ".csv");
+    }
+
+    private int countSpillFiles() {
+        File[] files = outputDir.listFiles((dir, name) -> name.startsWith("_spill-"));
+        return files == null ? 0 : files.length;
+    }
+
+    private Set<String> readCheckpoint() throws IOException {
+        File file = new File(outputDir, CHECKPOINT);
+        return file.exists() ? new HashSet<>(Files.readAllLines(file.toPath())) : new HashSet<>();
+    }
+
+    private synchronized void appendCheckpoint(String entry) throws IOException {
+        Files.writeString(new File(outputDir, CHECKPOINT).toPath(), entry + System.lineSeparator(),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.SYNC);
+    }
+}
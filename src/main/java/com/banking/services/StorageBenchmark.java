@@ -0,0 +1,119 @@
+package com.banking.services;
+
+import com.banking.enums.StorageTable;
+import com.banking.utils.AccountIds;
+import com.banking.utils.DateCodec;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+// Runs the same workload against each storage engine in a scratch directory: bulk load, single-row balance updates
+// as the service saves them, point reads, one account's postings, and a full postings scan.
+public class StorageBenchmark {
+    private static final int BATCH_ROWS = 1000;
+
+    private final int accounts;
+    private final int postings;
+    private final int operations;
+
+    public StorageBenchmark(int accounts, int postings, int operations) {
+        this.accounts = accounts;
+        this.postings = postings;
+        this.operations = operations;
+    }
+
+    // Usage: StorageBenchmark [accounts] [postings] [operations]
+    public static void main(String[] args) throws Exception {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        int postings = args.length > 1 ? Integer.parseInt(args[1]) : 500_000;
+        int operations = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        StorageBenchmark benchmark = new StorageBenchmark(accounts, postings, operations);
+        System.out.printf("accounts=%d postings=%d operations=%d%n", accounts, postings, operations);
+        benchmark.run("csv");
+        benchmark.run("log");
+    }
+
+    public void run(String engineName) throws IOException {
+        File directory = Files.createTempDirectory("storage-bench-").toFile();
+        String path = directory.getPath() + File.separator;
+        try (StorageEngine engine = engineName.equals("csv") ? new CsvStorageEngine(path)
+                : LogStructuredStorageEngine.fromSystemProperties(path)) {
+            Random random = new Random(42);
+            long started = System.nanoTime();
+            List<String[]> batch = new ArrayList<>(BATCH_ROWS);
+            for (int i = 0; i < accounts; i++) {
+                batch.add(accountRow(i, 0));
+                if (batch.size() == BATCH_ROWS || i == accounts - 1) {
+                    engine.write(StorageTable.ACCOUNTS, batch, List.of());
+                    batch.clear();
+                }
+            }
+            long time = System.currentTimeMillis() - postings * 1000L;
+            for (int i = 0; i < postings; i++) {
+                batch.add(new String[]{Integer.toString(i), accountId(random.nextInt(accounts)), "DEPOSIT", "10.0",
+                        DateCodec.formatTimestamp(time + i * 1000L)});
+                if (batch.size() == BATCH_ROWS || i == postings - 1) {
+                    engine.write(StorageTable.POSTINGS, batch, List.of());
+                    batch.clear();
+                }
+            }
+            report(engineName, "load", accounts + postings, started);
+
+            started = System.nanoTime();
+            for (int i = 0; i < operations; i++) {
+                engine.write(StorageTable.ACCOUNTS, List.<String[]>of(accountRow(random.nextInt(accounts), i)), List.of());
+            }
+            report(engineName, "update", operations, started);
+
+            started = System.nanoTime();
+            int found = 0;
+            for (int i = 0; i < operations; i++) {
+                found += engine.get(StorageTable.ACCOUNTS, accountId(random.nextInt(accounts))) != null ? 1 : 0;
+            }
+            report(engineName, "get", operations, started);
+
+            started = System.nanoTime();
+            long rows = 0;
+            for (int i = 0; i < operations; i++) {
+                String accountId = accountId(random.nextInt(accounts));
+                long[] count = {0};
+                engine.scan(StorageTable.POSTINGS, StorageEngine.postingKey(accountId, 0),
+                        StorageEngine.postingKey(accountId, Long.MAX_VALUE), row -> count[0]++);
+                rows += count[0];
+            }
+            report(engineName, "history", operations, started);
+
+            started = System.nanoTime();
+            long[] scanned = {0};
+            engine.scan(StorageTable.POSTINGS, row -> scanned[0]++);
+            report(engineName, "scan", scanned[0], started);
+            System.out.printf("%s: found=%d/%d history rows=%d size=%.1fMB%n", engineName, found, operations, rows,
+                    (engine.size(StorageTable.ACCOUNTS) + engine.size(StorageTable.POSTINGS)) / 1048576.0);
+        } finally {
+            try (Stream<Path> files = Files.walk(directory.toPath())) {
+                files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    private static String accountId(int index) {
+        return AccountIds.format(100_000_000L + index);
+    }
+
+    private static String[] accountRow(int index, int version) {
+        return new String[]{accountId(index), "PRIMARY", String.format("%04d", index % 10_000), version + ".0"};
+    }
+
+    private static void report(String engine, String phase, long operations, long startedNanos) {
+        double millis = (System.nanoTime() - startedNanos) / 1e6;
+        System.out.printf("%s %-8s ops=%d total=%.1fms per-op=%.2fus%n", engine, phase, operations, millis,
+                operations == 0 ? 0 : millis * 1000 / operations);
+    }
+}
@@ -0,0 +1,66 @@
+package com.banking.services;
+
+import com.banking.enums.StorageTable;
+import com.banking.utils.DateCodec;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.Collection;
+import java.util.function.Consumer;
+
+// Row store behind StorageService. Every table is keyed: customers by id, accounts by IBAN, cards by number, and
+// postings by account, then time, then transaction id, so one account's postings form a contiguous key range.
+public interface StorageEngine extends Closeable {
+    // Rows with fromKey <= key < toKey; a null bound is open. Engines that keep keys sorted deliver them in key order.
+    void scan(StorageTable table, String fromKey, String toKey, Consumer<String[]> consumer) throws IOException;
+
+    // The row with this key, or null.
+    String[] get(StorageTable table, String key) throws IOException;
+
+    // Inserts or replaces the rows and removes the keys; a key in both is removed.
+    void write(StorageTable table, Collection<String[]> upserts, Collection<String> deletes) throws IOException;
+
+    void clear(StorageTable table) throws IOException;
+
+    // Approximate bytes on disk, used to size partitions of full scans.
+    long size(StorageTable table);
+
+    // Starts a point-in-time copy of every table into the directory, laid out so it can be opened as a database.
+    // Called while writes are held off, so it only links files and notes lengths; the returned step does the
+    // copying after writes resume.
+    Backup backup(File directory) throws IOException;
+
+    default void scan(StorageTable table, Consumer<String[]> consumer) throws IOException {
+        scan(table, null, null, consumer);
+    }
+
+    interface Backup {
+        void finish() throws IOException;
+    }
+
+    static String keyOf(StorageTable table, String[] row) {
+        if (table != StorageTable.POSTINGS) {
+            return row[0];
+        }
+        long timestamp;
+        try {
+            timestamp = row.length > 4 ? DateCodec.parse(row[4]) : 0;
+        } catch (ParseException e) {
+            timestamp = 0;
+        }
+        return postingKey(row[1], timestamp) + row[0];
+    }
+
+    // Prefix of the keys of an account's postings at or after the given time; millis are zero-padded so the keys
+    // sort by time.
+    static String postingKey(String accountId, long timestampMillis) {
+        String millis = Long.toString(Math.max(0, timestampMillis));
+        StringBuilder key = new StringBuilder(accountId.length() + 15).append(accountId).append('|');
+        for (int i = millis.length(); i < 13; i++) {
+            key.append('0');
+        }
+        return key.append(millis).append('|').toString();
+    }
+}
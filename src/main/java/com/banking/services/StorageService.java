@@ -2,235 +2,788 @@ package com.banking.services;
 
 import com.banking.models.*;
 import com.banking.enums.*;
+import com.banking.utils.AccountIds;
+import com.banking.utils.CsvReader;
+import com.banking.utils.CsvWriter;
+import com.banking.utils.DateCodec;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
 
 public class StorageService {
     private static final Logger logger = LogManager.getLogger(StorageService.class);
-    private static StorageService instance = null;
-    private static final String DATABASE_PATH = "database/";
-    private static final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+    private static final Map<String, StorageService> instances = new HashMap<>();
+    static final String DATABASE_PATH = "database/";
+    private static final int IMPORT_BATCH_ROWS = 10_000;
+    private final String databasePath;
+    private final StorageEngine engine;
+    private final FileChannel lock;
+    private final Object standingOrderLock = new Object();
+    private long standingOrderLogRecords;
+    private int snapshotDirectories;
 
-    private StorageService() {
-        File directory = new File(DATABASE_PATH);
+    private StorageService(String databasePath) {
+        this.databasePath = databasePath;
+        File directory = new File(databasePath);
         if (!directory.exists()) {
             directory.mkdirs();
         }
+        this.lock = lock(directory);
+        this.engine = openEngine(databasePath);
     }
 
-    public static synchronized StorageService getInstance() {
-        if (instance == null) {
-            instance = new StorageService();
+    // One process owns a database directory, holding storage.lock until it exits. A second one, such as a CLI mode
+    // started next to the running application, fails here instead of writing the same files.
+    private static FileChannel lock(File directory) {
+        File file = new File(directory, "storage.lock");
+        try {
+            FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            if (channel.tryLock() != null) {
+                return channel;
+            }
+            channel.close();
+        } catch (IOException | OverlappingFileLockException e) {
+            logger.error("Error locking {}: {}", file, e.getMessage(), e);
         }
-        return instance;
+        throw new IllegalStateException("Database " + directory + " is in use by another process");
     }
 
-    public List<Customer> loadCustomers() {
-        List<Customer> customers = new ArrayList<>();
-        File file = new File(DATABASE_PATH + "customers.csv");
+    // banking.databasePath moves the default database away from database/ in the working directory.
+    public static synchronized StorageService getInstance() {
+        return forDirectory(System.getProperty("banking.databasePath", DATABASE_PATH));
+    }
 
-        if (file.exists()) {
-            try (BufferedReader br = new BufferedReader(new FileReader(file))) {
-                String line;
-                while ((line = br.readLine()) != null) {
-                    String[] values = line.split(",");
-                    if (values.length == 4) {
-                        String id = values[0];
-                        String name = values[1];
-                        String surname = values[2];
-                        int age = Integer.parseInt(values[3]);
-                        Customer customer = new Customer(id, name, surname, age);
-                        customers.add(customer);
-                    }
+    public static synchronized StorageService forDirectory(String databasePath) {
+        return instances.computeIfAbsent(databasePath, StorageService::new);
+    }
+
+    // banking.storage.engine picks the backend: csv (the default) or log. A new log store starts from the CSV files.
+    private static StorageEngine openEngine(String databasePath) {
+        String name = System.getProperty("banking.storage.engine", "csv");
+        CsvStorageEngine csv = new CsvStorageEngine(databasePath);
+        if (name.equals("csv")) {
+            return csv;
+        }
+        if (!name.equals("log")) {
+            throw new IllegalArgumentException("Unknown storage engine: " + name);
+        }
+        try {
+            LogStructuredStorageEngine log = LogStructuredStorageEngine.fromSystemProperties(databasePath);
+            if (log.isEmpty()) {
+                for (StorageTable table : StorageTable.values()) {
+                    copyTable(csv, log, table);
                 }
-                logger.info("Loaded customers from CSV.");
-            } catch (IOException e) {
-                logger.error("Error loading customers from CSV: {}", e.getMessage(), e);
             }
+            return log;
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot open storage in " + databasePath, e);
         }
+    }
 
-        return customers;
+    static void copyTable(StorageEngine from, StorageEngine to, StorageTable table) throws IOException {
+        List<String[]> batch = new ArrayList<>(IMPORT_BATCH_ROWS);
+        long[] copied = {0};
+        IOException[] failure = {null};
+        from.scan(table, row -> {
+            batch.add(row);
+            if (batch.size() == IMPORT_BATCH_ROWS && failure[0] == null) {
+                try {
+                    to.write(table, batch, List.of());
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+                copied[0] += batch.size();
+                batch.clear();
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        to.write(table, batch, List.of());
+        copied[0] += batch.size();
+        if (copied[0] > 0) {
+            logger.info("Copied {} rows of {} into the new store", copied[0], table);
+        }
     }
 
-    public void saveCustomers(Collection<Customer> customers) {
-        File file = new File(DATABASE_PATH + "customers.csv");
+    public String getDatabasePath() {
+        return databasePath;
+    }
 
-        try (PrintWriter writer = new PrintWriter(new FileWriter(file))) {
-            for (Customer customer : customers) {
-                writer.println(String.join(",",
-                        customer.getId(),
-                        customer.getName(),
-                        customer.getSurname(),
-                        String.valueOf(customer.getAge())));
-            }
-            logger.info("Saved customers to CSV.");
+    public StorageEngine getEngine() {
+        return engine;
+    }
+
+    public List<Customer> loadCustomers() {
+        List<Customer> customers = new ArrayList<>();
+        try {
+            engine.scan(StorageTable.CUSTOMERS, values -> {
+                if (values.length != 4) {
+                    logger.warn("Skipping customer row with {} fields: {}", values.length, values[0]);
+                } else {
+                    String id = values[0];
+                    String name = values[1];
+                    String surname = values[2];
+                    int age = Integer.parseInt(values[3]);
+                    Customer customer = new Customer(id, name, surname, age);
+                    customers.add(customer);
+                }
+            });
+            logger.info("Loaded customers.");
         } catch (IOException e) {
-            logger.error("Error saving customers to CSV: {}", e.getMessage(), e);
+            logger.error("Error loading customers: {}", e.getMessage(), e);
+        }
+        return customers;
+    }
+
+    // Writes only the given changes; rows of other customers are left as they are.
+    public void saveCustomers(Collection<Customer> changed, Collection<String> deletedIds) {
+        List<String[]> rows = new ArrayList<>(changed.size());
+        for (Customer customer : changed) {
+            rows.add(new String[]{
+                    customer.getId(),
+                    customer.getName(),
+                    customer.getSurname(),
+                    String.valueOf(customer.getAge())});
+        }
+        try {
+            engine.write(StorageTable.CUSTOMERS, rows, deletedIds);
+            logger.info("Saved {} customers.", rows.size() + deletedIds.size());
+        } catch (IOException e) {
+            logger.error("Error saving customers: {}", e.getMessage(), e);
         }
     }
 
     public List<Account> loadAccounts(Map<String, Customer> customerMap) {
         List<Account> accounts = new ArrayList<>();
-        File file = new File(DATABASE_PATH + "accounts.csv");
+        try {
+            engine.scan(StorageTable.ACCOUNTS, values -> {
+                if (values.length != 4) {
+                    logger.warn("Skipping account row with {} fields: {}", values.length, values[0]);
+                } else {
+                    long accountNumber = AccountIds.parse(values[0]);
+                    String type = values[1];
+                    String customerId = values[2];
+                    double balance = Double.parseDouble(values[3]);
 
-        if (file.exists()) {
-            try (BufferedReader br = new BufferedReader(new FileReader(file))) {
-                String line;
-                while ((line = br.readLine()) != null) {
-                    String[] values = line.split(",");
-                    if (values.length == 4) {
-                        String id = values[0];
-                        String type = values[1];
-                        String customerId = values[2];
-                        double balance = Double.parseDouble(values[3]);
-
-                        Customer customer = customerMap.get(customerId);
-                        if (customer != null) {
-                            Account account;
-                            if (type.equals("PRIMARY")) {
-                                account = new PrimaryAccount(id, customer);
-                            } else {
-                                account = new SavingsAccount(id, customer, 1.5); // Assuming 1.5% interest rate
-                            }
-                            account.deposit(balance); // Set the initial balance
-                            accounts.add(account);
-                            customer.addAccount(account);
+                    if (accountNumber == AccountIds.INVALID) {
+                        logger.error("Skipping account with invalid id: {}", values[0]);
+                        return;
+                    }
+                    Customer customer = customerMap.get(customerId);
+                    if (customer != null) {
+                        Account account;
+                        if (type.equals("PRIMARY")) {
+                            account = new PrimaryAccount(accountNumber, customer);
+                        } else {
+                            account = new SavingsAccount(accountNumber, customer, 1.5); // Assuming 1.5% interest rate
                         }
+                        account.restoreBalance(balance);
+                        accounts.add(account);
+                        customer.addAccount(account);
                     }
                 }
-                logger.info("Loaded accounts from CSV.");
-            } catch (IOException e) {
-                logger.error("Error loading accounts from CSV: {}", e.getMessage(), e);
+            });
+            logger.info("Loaded accounts.");
+        } catch (IOException e) {
+            logger.error("Error loading accounts: {}", e.getMessage(), e);
+        }
+        return accounts;
+    }
+
+    public void saveAccounts(Collection<Account> changed, Collection<String> deletedIds) {
+        List<String[]> rows = new ArrayList<>(changed.size());
+        for (Account account : changed) {
+            String accountType = account instanceof PrimaryAccount ? "PRIMARY" : "SAVINGS";
+            rows.add(new String[]{
+                    account.getAccountId(),
+                    accountType,
+                    account.getOwner().getId(),
+                    String.valueOf(account.getBalance())});
+        }
+        try {
+            engine.write(StorageTable.ACCOUNTS, rows, deletedIds);
+            logger.info("Saved {} accounts.", rows.size() + deletedIds.size());
+        } catch (IOException e) {
+            logger.error("Error saving accounts: {}", e.getMessage(), e);
+        }
+    }
+
+    public List<Transaction> loadTransactions(AccountTable accountTable) {
+        List<Transaction> transactions = new ArrayList<>();
+        try {
+            engine.scan(StorageTable.POSTINGS, values -> {
+                Transaction transaction = toTransaction(values, accountTable::get);
+                if (transaction != null) {
+                    transaction.getAccount().addTransaction(transaction);
+                    transactions.add(transaction);
+                }
+            });
+            logger.info("Loaded transactions.");
+        } catch (IOException | UncheckedParseException e) {
+            logger.error("Error loading transactions: {}", e.getMessage(), e);
+        }
+        return transactions;
+    }
+
+    // Postings rows, id,account,type,amount,timestamp, in the engine's order.
+    public void scanTransactionRows(Consumer<String[]> consumer) throws IOException {
+        engine.scan(StorageTable.POSTINGS, consumer);
+    }
+
+    public long transactionBytes() {
+        return engine.size(StorageTable.POSTINGS);
+    }
+
+    // Pages in an account's stored postings on first use. The CSV engine keeps an offset index over its file; the
+    // other engines keep postings sorted by account and time, so one range scan reads them.
+    public HistoryLoader historyLoader() {
+        if (engine instanceof CsvStorageEngine) {
+            return new TransactionHistoryIndex(this);
+        }
+        // Postings written from now on are already on the accounts in memory.
+        long startup = System.currentTimeMillis();
+        return account -> {
+            List<Transaction> history = new ArrayList<>();
+            String accountId = account.getAccountId();
+            try {
+                engine.scan(StorageTable.POSTINGS, StorageEngine.postingKey(accountId, 0),
+                        StorageEngine.postingKey(accountId, startup), values -> {
+                            Transaction transaction = toTransaction(values, number -> account);
+                            if (transaction != null) {
+                                history.add(transaction);
+                            }
+                        });
+                logger.info("Paged in {} transactions for account {}", history.size(), accountId);
+            } catch (IOException | UncheckedParseException e) {
+                logger.error("Error paging in transactions for {}: {}", accountId, e.getMessage(), e);
             }
+            return history;
+        };
+    }
+
+    Transaction parseTransaction(String line, LongFunction<Account> accountLookup) throws IOException, ParseException {
+        return parseTransaction(CsvReader.parseRow(line), accountLookup);
+    }
+
+    Transaction parseTransaction(String[] values, LongFunction<Account> accountLookup) throws ParseException {
+        try {
+            return toTransaction(values, accountLookup);
+        } catch (UncheckedParseException e) {
+            throw e.getCause();
         }
+    }
 
-        return accounts;
+    private Transaction toTransaction(String[] values, LongFunction<Account> accountLookup) {
+        if (values.length != 5) {
+            logger.warn("Skipping transaction row with {} fields: {}", values.length, values[0]);
+            return null;
+        }
+        String id = values[0];
+        long accountNumber = AccountIds.parse(values[1]);
+        TransactionType type = TransactionType.valueOf(values[2]);
+        double amount = Double.parseDouble(values[3]);
+        // Rows written before timestamps kept the time of day only have the date.
+        long timestamp;
+        try {
+            timestamp = DateCodec.parse(values[4]);
+        } catch (ParseException e) {
+            throw new UncheckedParseException(e);
+        }
+
+        Account account = accountLookup.apply(accountNumber);
+        if (account == null) {
+            return null;
+        }
+        Transaction transaction = new Transaction(id, amount, type, account);
+        transaction.setTimestampMillis(timestamp); // Set the timestamp from the file
+        return transaction;
+    }
+
+    public void saveTransactions(Collection<Transaction> transactions) {
+        try {
+            engine.clear(StorageTable.POSTINGS);
+        } catch (IOException e) {
+            logger.error("Error saving transactions: {}", e.getMessage(), e);
+            return;
+        }
+        appendTransactions(transactions);
+    }
+
+    public void appendTransactions(Collection<Transaction> transactions) {
+        List<String[]> rows = new ArrayList<>(transactions.size());
+        for (Transaction transaction : transactions) {
+            rows.add(new String[]{
+                    transaction.getTransactionId(),
+                    transaction.getAccount().getAccountId(),
+                    transaction.getType().toString(),
+                    String.valueOf(transaction.getAmount()),
+                    DateCodec.formatTimestamp(transaction.getTimestampMillis())});
+        }
+        try {
+            engine.write(StorageTable.POSTINGS, rows, List.of());
+            logger.info("Saved {} transactions.", rows.size());
+        } catch (IOException e) {
+            logger.error("Error saving transactions: {}", e.getMessage(), e);
+        }
+    }
+
+    // Adds the files kept outside the engine to a backup: the standing order snapshot is replaced by rename and can be
+    // linked, its change log, the archives and retired ids only grow. The snapshot and log are taken together so a
+    // compaction cannot fall between them.
+    void backup(File directory, List<StorageEngine.Backup> pending) throws IOException {
+        pinSnapshot(directory, pending);
+        synchronized (standingOrderLock) {
+            BackupFiles.link(new File(databasePath + "standing_orders.csv"), new File(directory, "standing_orders.csv"));
+            pending.add(BackupFiles.copyPrefix(standingOrderLog(), new File(directory, "standing_orders.log")));
+        }
+        File[] archives = new File(databasePath + "archive").listFiles((dir, name) -> name.startsWith("archive-"));
+        for (File archive : archives == null ? new File[0] : archives) {
+            File target = new File(directory, "archive/" + archive.getName());
+            target.getParentFile().mkdirs();
+            pending.add(BackupFiles.copyPrefix(archive, target));
+        }
+    }
+
+    // Pins the tables and retired ids the way a backup does, for a replication snapshot that is read once writes
+    // resume. Like backup, it is called while writes are held off.
+    void pinSnapshot(File directory, List<StorageEngine.Backup> pending) throws IOException {
+        pending.add(engine.backup(directory));
+        File retired = retiredFile();
+        if (retired.exists()) {
+            new File(directory, "archive").mkdirs();
+            pending.add(BackupFiles.copyPrefix(retired, new File(directory, "archive/" + retired.getName())));
+        }
+    }
+
+    // A fresh directory for a pinned copy. It sits inside the database directory so files can be hard linked into it;
+    // copies left behind by a crash are removed when the next one is made.
+    File newSnapshotDirectory() throws IOException {
+        File parent = new File(databasePath + "snapshots");
+        synchronized (this) {
+            if (snapshotDirectories == 0) {
+                BackupFiles.deleteRecursively(parent);
+            }
+            snapshotDirectories++;
+        }
+        parent.mkdirs();
+        return Files.createTempDirectory(parent.toPath(), "snapshot-").toFile();
+    }
+
+    void removeSnapshotDirectory(File directory) throws IOException {
+        BackupFiles.deleteRecursively(directory);
+    }
+
+    // Opens a copy made by pinSnapshot, once its steps have run, to be read and closed. It is not shared through
+    // forDirectory, since it is deleted once read.
+    static StorageService openCopy(File directory) {
+        return new StorageService(directory.getPath() + File.separator);
+    }
+
+    void close() throws IOException {
+        engine.close();
+        lock.close();
+    }
+
+    // Drops every customer, account, card and posting, and the retired ids, for a replica about to load a snapshot.
+    public void clear() {
+        try {
+            for (StorageTable table : StorageTable.values()) {
+                engine.clear(table);
+            }
+            Files.deleteIfExists(retiredFile().toPath());
+        } catch (IOException e) {
+            logger.error("Error clearing storage: {}", e.getMessage(), e);
+        }
     }
 
-    public void saveAccounts(Collection<Account> accounts) {
-        File file = new File(DATABASE_PATH + "accounts.csv");
+    // Appends the removed entities to the day's archive file: the customer, its accounts with their cards, and the
+    // accounts' stored postings as they were written, under the ids they were posted with. Their ids are then
+    // retired, so they are never handed out again and stored postings can never attach to a new account.
+    public void archive(Customer customer, Collection<Account> accounts) {
+        File directory = new File(databasePath + "archive");
+        directory.mkdirs();
+        File file = new File(directory, "archive-" + DateCodec.formatDate(System.currentTimeMillis()) + ".csv");
 
-        try (PrintWriter writer = new PrintWriter(new FileWriter(file))) {
+        try (CsvWriter writer = new CsvWriter(new BufferedWriter(new FileWriter(file, true)))) {
+            if (customer != null) {
+                writer.writeRow(
+                        "CUSTOMER",
+                        customer.getId(),
+                        customer.getName(),
+                        customer.getSurname(),
+                        String.valueOf(customer.getAge()));
+            }
             for (Account account : accounts) {
                 String accountType = account instanceof PrimaryAccount ? "PRIMARY" : "SAVINGS";
-                writer.println(String.join(",",
+                writer.writeRow(
+                        "ACCOUNT",
                         account.getAccountId(),
                         accountType,
                         account.getOwner().getId(),
-                        String.valueOf(account.getBalance())));
+                        String.valueOf(account.getBalance()));
+                for (Card card : account.getCards()) {
+                    writer.writeRow(
+                            "CARD",
+                            card.getCardNumber(),
+                            account.getAccountId(),
+                            DateCodec.formatDate(card.getExpirationDate().getTime()),
+                            String.valueOf(card.isBlocked()));
+                }
+            }
+            IOException[] failure = {null};
+            scanPostings(accounts, row -> {
+                String[] archived = new String[row.length + 1];
+                archived[0] = "TRANSACTION";
+                System.arraycopy(row, 0, archived, 1, row.length);
+                try {
+                    writer.writeRow(archived);
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            });
+            if (failure[0] != null) {
+                throw failure[0];
             }
-            logger.info("Saved accounts to CSV.");
+            logger.info("Archived {} accounts to {}", accounts.size(), file.getName());
         } catch (IOException e) {
-            logger.error("Error saving accounts to CSV: {}", e.getMessage(), e);
+            logger.error("Error archiving to CSV: {}", e.getMessage(), e);
         }
+        retire(customer, accounts);
     }
 
-    public List<Transaction> loadTransactions(Map<String, Account> accountMap) {
-        List<Transaction> transactions = new ArrayList<>();
-        File file = new File(DATABASE_PATH + "transactions.csv");
+    // The stored postings of these accounts. The CSV engine reads its whole file for any range, so one pass serves
+    // all of them; the sorted engines read each account's key range.
+    void scanPostings(Collection<Account> accounts, Consumer<String[]> consumer) throws IOException {
+        if (engine instanceof CsvStorageEngine) {
+            Set<String> accountIds = new HashSet<>();
+            for (Account account : accounts) {
+                accountIds.add(account.getAccountId());
+            }
+            engine.scan(StorageTable.POSTINGS, row -> {
+                if (row.length > 1 && accountIds.contains(row[1])) {
+                    consumer.accept(row);
+                }
+            });
+            return;
+        }
+        for (Account account : accounts) {
+            // '}' sorts right after the '|' that ends the account part of every posting key.
+            String accountId = account.getAccountId();
+            engine.scan(StorageTable.POSTINGS, accountId + "|", accountId + "}", consumer);
+        }
+    }
 
-        if (file.exists()) {
-            try (BufferedReader br = new BufferedReader(new FileReader(file))) {
-                String line;
-                while ((line = br.readLine()) != null) {
-                    String[] values = line.split(",");
-                    if (values.length == 5) {
-                        String id = values[0];
-                        String accountId = values[1];
-                        TransactionType type = TransactionType.valueOf(values[2]);
-                        double amount = Double.parseDouble(values[3]);
-                        Date timestamp = dateFormat.parse(values[4]);
-
-                        Account account = accountMap.get(accountId);
-                        if (account != null) {
-                            Transaction transaction = new Transaction(id, amount, type, account);
-                            transaction.setTimestamp(timestamp); // Set the timestamp from the file
-                            account.getTransactions().add(transaction);
-                            transactions.add(transaction);
+    private void retire(Customer customer, Collection<Account> accounts) {
+        List<String[]> rows = new ArrayList<>(accounts.size() + 1);
+        if (customer != null) {
+            rows.add(new String[]{"CUSTOMER", customer.getId()});
+        }
+        for (Account account : accounts) {
+            rows.add(new String[]{"ACCOUNT", account.getAccountId()});
+        }
+        retire(rows);
+    }
+
+    // Tombstones for deleted customers and accounts: retired.csv holds one CUSTOMER,id or ACCOUNT,iban row per id.
+    void retire(List<String[]> rows) {
+        File file = retiredFile();
+        file.getParentFile().mkdirs();
+        try (CsvWriter writer = new CsvWriter(new BufferedWriter(new FileWriter(file, true)))) {
+            for (String[] row : rows) {
+                writer.writeRow(row);
+            }
+        } catch (IOException e) {
+            logger.error("Error retiring ids: {}", e.getMessage(), e);
+        }
+    }
+
+    // Rows of retired.csv. Archives written before it existed are read once to build it.
+    public List<String[]> loadRetired() {
+        File file = retiredFile();
+        List<String[]> retired = new ArrayList<>();
+        try {
+            if (!file.exists()) {
+                rebuildRetired(file);
+                if (!file.exists()) {
+                    return retired;
+                }
+            }
+            try (CsvReader reader = new CsvReader(new FileInputStream(file))) {
+                while (reader.next()) {
+                    if (!reader.isMalformed() && reader.fieldCount() == 2) {
+                        retired.add(reader.toArray());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Error loading retired ids: {}", e.getMessage(), e);
+        }
+        return retired;
+    }
+
+    private void rebuildRetired(File file) throws IOException {
+        File[] archives = new File(databasePath + "archive").listFiles((dir, name) -> name.startsWith("archive-"));
+        if (archives == null || archives.length == 0) {
+            return;
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        try (CsvWriter writer = new CsvWriter(new BufferedWriter(new FileWriter(temp)))) {
+            for (File archive : archives) {
+                try (CsvReader reader = new CsvReader(new FileInputStream(archive))) {
+                    while (reader.next()) {
+                        String kind = reader.get(0);
+                        if (reader.fieldCount() > 1 && (kind.equals("CUSTOMER") || kind.equals("ACCOUNT"))) {
+                            writer.writeRow(kind, reader.get(1));
                         }
                     }
                 }
-                logger.info("Loaded transactions from CSV.");
-            } catch (IOException | ParseException e) {
-                logger.error("Error loading transactions from CSV: {}", e.getMessage(), e);
             }
         }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        logger.info("Rebuilt {} from {} archive files", file.getName(), archives.length);
+    }
 
-        return transactions;
+    private File retiredFile() {
+        return new File(databasePath + "archive/retired.csv");
     }
 
-    public void saveTransactions(Collection<Transaction> transactions) {
-        File file = new File(DATABASE_PATH + "transactions.csv");
-
-        try (PrintWriter writer = new PrintWriter(new FileWriter(file))) {
-            for (Transaction transaction : transactions) {
-                writer.println(String.join(",",
-                        transaction.getTransactionId(),
-                        transaction.getAccount().getAccountId(),
-                        transaction.getType().toString(),
-                        String.valueOf(transaction.getAmount()),
-                        dateFormat.format(transaction.getTimestamp())));
-            }
-            logger.info("Saved transactions to CSV.");
+    public List<Card> loadCards(AccountTable accountTable) {
+        List<Card> cards = new ArrayList<>();
+        try {
+            engine.scan(StorageTable.CARDS, values -> {
+                if (values.length != 4) {
+                    logger.warn("Skipping card row with {} fields: {}", values.length, values[0]);
+                } else {
+                    String cardNumber = values[0];
+                    long accountNumber = AccountIds.parse(values[1]);
+                    Date expirationDate;
+                    try {
+                        expirationDate = new Date(DateCodec.parse(values[2]));
+                    } catch (ParseException e) {
+                        throw new UncheckedParseException(e);
+                    }
+                    boolean blocked = Boolean.parseBoolean(values[3]);
+
+                    Account account = accountTable.get(accountNumber);
+                    if (account != null) {
+                        Card card = new Card(cardNumber, expirationDate, account);
+                        if (blocked) {
+                            card.block();
+                        }
+                        account.getCards().add(card);
+                        cards.add(card);
+                    }
+                }
+            });
+            logger.info("Loaded cards.");
+        } catch (IOException | UncheckedParseException e) {
+            logger.error("Error loading cards: {}", e.getMessage(), e);
+        }
+        return cards;
+    }
+
+    public void saveCards(Collection<Card> changed, Collection<String> deletedNumbers) {
+        List<String[]> rows = new ArrayList<>(changed.size());
+        for (Card card : changed) {
+            rows.add(new String[]{
+                    card.getCardNumber(),
+                    card.getAccount().getAccountId(),
+                    DateCodec.formatDate(card.getExpirationDate().getTime()),
+                    String.valueOf(card.isBlocked())});
+        }
+        try {
+            engine.write(StorageTable.CARDS, rows, deletedNumbers);
+            logger.info("Saved {} cards.", rows.size() + deletedNumbers.size());
         } catch (IOException e) {
-            logger.error("Error saving transactions to CSV: {}", e.getMessage(), e);
+            logger.error("Error saving cards: {}", e.getMessage(), e);
         }
     }
 
-    public List<Card> loadCards(Map<String, Account> accountMap) {
-        List<Card> cards = new ArrayList<>();
-        File file = new File(DATABASE_PATH + "cards.csv");
+    // The snapshot in standing_orders.csv plus the changes appended to standing_orders.log since it was written. Log
+    // records carry whole state (the order, its run count, or its removal), so replaying one the snapshot already
+    // holds changes nothing.
+    public List<StandingOrder> loadStandingOrders() {
+        Map<String, StandingOrder> orders = new LinkedHashMap<>();
+        File file = new File(databasePath + "standing_orders.csv");
 
         if (file.exists()) {
-            try (BufferedReader br = new BufferedReader(new FileReader(file))) {
-                String line;
-                while ((line = br.readLine()) != null) {
-                    String[] values = line.split(",");
-                    if (values.length == 4) {
-                        String cardNumber = values[0];
-                        String accountId = values[1];
-                        Date expirationDate = dateFormat.parse(values[2]);
-                        boolean blocked = Boolean.parseBoolean(values[3]);
-
-                        Account account = accountMap.get(accountId);
-                        if (account != null) {
-                            Card card = new Card(cardNumber, expirationDate, account);
-                            if (blocked) {
-                                card.block();
-                            }
-                            account.getCards().add(card);
-                            cards.add(card);
-                        }
+            try (CsvReader reader = new CsvReader(new FileInputStream(file))) {
+                while (reader.next()) {
+                    String[] values = reader.toArray();
+                    if (reader.isMalformed() || values.length != 7) {
+                        logger.warn("Skipping malformed standing order at line {}", reader.getLineNumber());
+                    } else {
+                        StandingOrder order = parseStandingOrder(values, 0);
+                        orders.put(order.getId(), order);
                     }
                 }
-                logger.info("Loaded cards from CSV.");
-            } catch (IOException | ParseException e) {
-                logger.error("Error loading cards from CSV: {}", e.getMessage(), e);
+                logger.info("Loaded standing orders from CSV.");
+            } catch (IOException e) {
+                logger.error("Error loading standing orders from CSV: {}", e.getMessage(), e);
             }
         }
+        synchronized (standingOrderLock) {
+            standingOrderLogRecords = replayStandingOrderLog(orders);
+        }
 
-        return cards;
+        return new ArrayList<>(orders.values());
     }
 
-    public void saveCards(Collection<Card> cards) {
-        File file = new File(DATABASE_PATH + "cards.csv");
+    private static StandingOrder parseStandingOrder(String[] values, int from) {
+        return new StandingOrder(values[from], values[from + 1], values[from + 2], Double.parseDouble(values[from + 3]),
+                Frequency.valueOf(values[from + 4]), Long.parseLong(values[from + 5]), Long.parseLong(values[from + 6]));
+    }
 
-        try (PrintWriter writer = new PrintWriter(new FileWriter(file))) {
-            for (Card card : cards) {
-                writer.println(String.join(",",
-                        card.getCardNumber(),
-                        card.getAccount().getAccountId(),
-                        dateFormat.format(card.getExpirationDate()),
-                        String.valueOf(card.isBlocked())));
+    // A record cut short by a crash is dropped from the file, so the next append starts on a line of its own.
+    private long replayStandingOrderLog(Map<String, StandingOrder> orders) {
+        File log = standingOrderLog();
+        if (!log.exists()) {
+            return 0;
+        }
+        long records = 0;
+        try {
+            byte[] bytes = Files.readAllBytes(log.toPath());
+            int end = bytes.length;
+            while (end > 0 && bytes[end - 1] != '\n') {
+                end--;
+            }
+            if (end < bytes.length) {
+                logger.warn("Dropping a partly written standing order change from {}", log);
+                try (RandomAccessFile raf = new RandomAccessFile(log, "rw")) {
+                    raf.setLength(end);
+                }
+            }
+            try (CsvReader reader = new CsvReader(new ByteArrayInputStream(bytes, 0, end))) {
+                while (reader.next()) {
+                    records++;
+                    String[] values = reader.toArray();
+                    try {
+                        applyStandingOrderChange(orders, values);
+                    } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                        logger.warn("Skipping malformed standing order change at line {}", reader.getLineNumber());
+                    }
+                }
             }
-            logger.info("Saved cards to CSV.");
         } catch (IOException e) {
-            logger.error("Error saving cards to CSV: {}", e.getMessage(), e);
+            logger.error("Error loading standing order changes: {}", e.getMessage(), e);
+        }
+        return records;
+    }
+
+    private static void applyStandingOrderChange(Map<String, StandingOrder> orders, String[] values) {
+        switch (values[0]) {
+            case "ORDER" -> {
+                StandingOrder order = parseStandingOrder(values, 1);
+                orders.put(order.getId(), order);
+            }
+            case "RUN" -> {
+                StandingOrder order = orders.get(values[1]);
+                if (order != null) {
+                    orders.put(order.getId(), new StandingOrder(order.getId(), order.getFromAccountId(),
+                            order.getToAccountId(), order.getAmount(), order.getFrequency(), order.getFirstRun(),
+                            Long.parseLong(values[2])));
+                }
+            }
+            case "CANCEL" -> orders.remove(values[1]);
+            default -> throw new IllegalArgumentException("Unknown standing order change: " + values[0]);
+        }
+    }
+
+    public static String[] standingOrderCreated(StandingOrder order) {
+        return new String[]{"ORDER", order.getId(), order.getFromAccountId(), order.getToAccountId(),
+                String.valueOf(order.getAmount()), order.getFrequency().name(), String.valueOf(order.getFirstRun()),
+                String.valueOf(order.getRuns())};
+    }
+
+    public static String[] standingOrderRan(StandingOrder order) {
+        return new String[]{"RUN", order.getId(), String.valueOf(order.getRuns())};
+    }
+
+    public static String[] standingOrderCancelled(String orderId) {
+        return new String[]{"CANCEL", orderId};
+    }
+
+    // Appends changes in one write and returns how many records the log holds, so the caller can decide when to
+    // fold it into a new snapshot with saveStandingOrders.
+    public long appendStandingOrders(List<String[]> changes) {
+        StringBuilder text = new StringBuilder();
+        for (String[] change : changes) {
+            CsvWriter.appendRow(text, change).append('\n');
+        }
+        synchronized (standingOrderLock) {
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(standingOrderLog(), true),
+                    StandardCharsets.UTF_8)) {
+                writer.write(text.toString());
+                standingOrderLogRecords += changes.size();
+            } catch (IOException e) {
+                logger.error("Error saving standing order changes: {}", e.getMessage(), e);
+            }
+            return standingOrderLogRecords;
+        }
+    }
+
+    // Writes a new snapshot and then starts an empty log. Both are replaced by rename, and a crash between the two
+    // only replays changes the snapshot already holds.
+    public void saveStandingOrders(Collection<StandingOrder> orders) {
+        File file = new File(databasePath + "standing_orders.csv");
+        File temp = new File(databasePath + "standing_orders.csv.tmp");
+        File log = standingOrderLog();
+        File emptyLog = new File(databasePath + "standing_orders.log.tmp");
+
+        synchronized (standingOrderLock) {
+            try {
+                try (CsvWriter writer = new CsvWriter(new BufferedWriter(new FileWriter(temp)))) {
+                    for (StandingOrder order : orders) {
+                        writer.writeRow(
+                                order.getId(),
+                                order.getFromAccountId(),
+                                order.getToAccountId(),
+                                String.valueOf(order.getAmount()),
+                                order.getFrequency().name(),
+                                String.valueOf(order.getFirstRun()),
+                                String.valueOf(order.getRuns()));
+                    }
+                }
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                if (log.exists()) {
+                    Files.write(emptyLog.toPath(), new byte[0]);
+                    Files.move(emptyLog.toPath(), log.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                }
+                standingOrderLogRecords = 0;
+                logger.info("Saved standing orders to CSV.");
+            } catch (IOException e) {
+                logger.error("Error saving standing orders to CSV: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    private File standingOrderLog() {
+        return new File(databasePath + "standing_orders.log");
+    }
+
+    // Carries a bad date out of a row callback.
+    private static final class UncheckedParseException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private UncheckedParseException(ParseException cause) {
+            super(cause.getMessage(), cause);
+        }
+
+        @Override
+        public synchronized ParseException getCause() {
+            return (ParseException) super.getCause();
         }
     }
 }
@@ -0,0 +1,315 @@
+package com.banking.services;
+
+import com.banking.enums.TransactionType;
+import com.banking.models.Account;
+import com.banking.models.ColdSegment;
+import com.banking.models.ColdStore;
+import com.banking.models.Transaction;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.stream.Stream;
+
+// Spilled segments only live for the session that wrote them; transactions.csv stays the durable copy. Each store
+// writes into its own session directory under cold/, locked while it runs, so stores sharing the directory never
+// touch each other's files; directories whose lock is free were left by a stopped process and are removed.
+public class TieredTransactionStore implements ColdStore {
+    private static final Logger logger = LogManager.getLogger(TieredTransactionStore.class);
+    // Rough heap cost of a Transaction with its id string and list slot.
+    static final int BYTES_PER_TRANSACTION = 136;
+    private static final int KEEP_RECENT = 16;
+    // Trimming an account to its recent postings only pays off once that spills at least this many.
+    private static final int MIN_SPILL = 64;
+    private static final long DEFAULT_FILE_BYTES = 64L * 1024 * 1024;
+
+    private final File sessionDirectory;
+    private final FileChannel lockChannel;
+    private final long maxHotTransactions;
+    // Eviction stops here, so the next one is a batch of postings away rather than the next posting.
+    private final long lowWaterTransactions;
+    private final long fileBytes;
+    private final int maxCachedSegments;
+    private final Map<Account, Integer> hotCounts = new HashMap<>();
+    // Eviction candidates, least recently touched first. Touched accounts wait in untrimmed; once cut down to their
+    // recent postings they move to trimmed, which is only emptied when trimming alone does not get under budget.
+    private final LinkedHashSet<Account> untrimmed = new LinkedHashSet<>();
+    private final LinkedHashSet<Account> trimmed = new LinkedHashSet<>();
+    private final Map<ColdSegment, List<Transaction>> segmentCache;
+    private final Map<Integer, SegmentFile> files = new HashMap<>();
+    // Segments written since the last flush, appended to the current file in one write.
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private SegmentFile current;
+    private int nextFile;
+    private long totalHot;
+    private long evictedCount;
+
+    public TieredTransactionStore(File directory, long heapBudgetBytes, int maxCachedSegments) {
+        this(directory, heapBudgetBytes, maxCachedSegments, DEFAULT_FILE_BYTES);
+    }
+
+    TieredTransactionStore(File directory, long heapBudgetBytes, int maxCachedSegments, long fileBytes) {
+        this.maxHotTransactions = Math.max(KEEP_RECENT, heapBudgetBytes / BYTES_PER_TRANSACTION);
+        this.lowWaterTransactions = maxHotTransactions - maxHotTransactions / 8;
+        this.fileBytes = fileBytes;
+        this.maxCachedSegments = maxCachedSegments;
+        this.segmentCache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ColdSegment, List<Transaction>> eldest) {
+                return size() > TieredTransactionStore.this.maxCachedSegments;
+            }
+        };
+        directory.mkdirs();
+        removeAbandonedSessions(directory);
+        try {
+            this.sessionDirectory = Files.createTempDirectory(directory.toPath(), "session-").toFile();
+            this.lockChannel = FileChannel.open(new File(sessionDirectory, "session.lock").toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            lockChannel.lock();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open cold history store in " + directory, e);
+        }
+    }
+
+    public static TieredTransactionStore fromSystemProperties(String databasePath) {
+        long budgetMb = Long.getLong("banking.historyHeapBudgetMb", 256);
+        int cachedSegments = Integer.getInteger("banking.coldCacheSegments", 64);
+        return new TieredTransactionStore(new File(databasePath + "cold"), budgetMb * 1024 * 1024, cachedSegments);
+    }
+
+    public synchronized void touch(Account account) {
+        int hot = account.getHotTransactionCount();
+        Integer previous = hotCounts.put(account, hot);
+        totalHot += hot - (previous == null ? 0 : previous);
+        // Removing and adding again moves the account to the most recently touched end.
+        untrimmed.remove(account);
+        trimmed.remove(account);
+        if (hot > 0) {
+            untrimmed.add(account);
+        }
+        if (totalHot > maxHotTransactions) {
+            evict();
+        }
+    }
+
+    // Its segments stay in their file until the file is compacted or deleted; a statement still reading the
+    // account's history can finish meanwhile.
+    public synchronized void forget(Account account) {
+        Integer previous = hotCounts.remove(account);
+        if (previous == null) {
+            return;
+        }
+        totalHot -= previous;
+        untrimmed.remove(account);
+        trimmed.remove(account);
+        for (ColdSegment segment : account.getColdSegments()) {
+            SegmentFile file = files.get(segment.getFile());
+            if (file != null) {
+                file.liveBytes -= segment.getLength();
+            }
+            segmentCache.remove(segment);
+        }
+    }
+
+    public synchronized long getHotTransactionCount() {
+        return totalHot;
+    }
+
+    public synchronized long getEvictedTransactionCount() {
+        return evictedCount;
+    }
+
+    synchronized int getFileCount() {
+        return files.size();
+    }
+
+    private void evict() {
+        try {
+            Iterator<Account> candidates = untrimmed.iterator();
+            while (totalHot > lowWaterTransactions && candidates.hasNext()) {
+                Account account = candidates.next();
+                candidates.remove();
+                int hot = account.getHotTransactionCount();
+                if (hot >= KEEP_RECENT + MIN_SPILL) {
+                    spill(account, hot - KEEP_RECENT);
+                }
+                if (account.getHotTransactionCount() > 0) {
+                    trimmed.add(account);
+                }
+            }
+            candidates = trimmed.iterator();
+            while (totalHot > lowWaterTransactions && candidates.hasNext()) {
+                Account account = candidates.next();
+                candidates.remove();
+                spill(account, account.getHotTransactionCount());
+            }
+            flushPending();
+        } catch (IOException e) {
+            logger.error("Error spilling transactions: {}", e.getMessage(), e);
+        }
+    }
+
+    private void spill(Account account, int count) throws IOException {
+        evictedCount += account.spillOldest(count, this);
+        int remaining = account.getHotTransactionCount();
+        Integer previous = hotCounts.replace(account, remaining);
+        if (previous != null) {
+            totalHot += remaining - previous;
+        }
+    }
+
+    @Override
+    public synchronized ColdSegment write(List<Transaction> transactions) throws IOException {
+        if (current == null || current.size + pending.size() >= fileBytes) {
+            roll();
+        }
+        DataOutputStream out = new DataOutputStream(pending);
+        int start = pending.size();
+        long first = Long.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+        for (Transaction transaction : transactions) {
+            long time = transaction.getTimestampMillis();
+            first = Math.min(first, time);
+            last = Math.max(last, time);
+            out.writeUTF(transaction.getTransactionId());
+            out.writeByte(transaction.getType().ordinal());
+            out.writeDouble(transaction.getAmount());
+            out.writeLong(time);
+        }
+        int length = pending.size() - start;
+        current.liveBytes += length;
+        return new ColdSegment(current.id, current.size + start, length, transactions.size(), first, last);
+    }
+
+    @Override
+    public synchronized List<Transaction> read(Account account, ColdSegment segment) {
+        List<Transaction> cached = segmentCache.get(segment);
+        if (cached != null) {
+            return cached;
+        }
+        List<Transaction> decoded = new ArrayList<>(segment.getCount());
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(readBytes(segment)));
+            TransactionType[] types = TransactionType.values();
+            for (int i = 0; i < segment.getCount(); i++) {
+                String id = in.readUTF();
+                TransactionType type = types[in.readByte()];
+                double amount = in.readDouble();
+                Transaction transaction = new Transaction(id, amount, type, account);
+                transaction.setTimestampMillis(in.readLong());
+                decoded.add(transaction);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read spilled history of " + account.getAccountId(), e);
+        }
+        List<Transaction> result = Collections.unmodifiableList(decoded);
+        segmentCache.put(segment, result);
+        return result;
+    }
+
+    private byte[] readBytes(ColdSegment segment) throws IOException {
+        flushPending();
+        SegmentFile file = files.get(segment.getFile());
+        if (file == null) {
+            throw new IOException("Segment file " + segment.getFile() + " was already reclaimed");
+        }
+        byte[] bytes = new byte[segment.getLength()];
+        file.data.seek(segment.getOffset());
+        file.data.readFully(bytes);
+        return bytes;
+    }
+
+    private void flushPending() throws IOException {
+        if (pending.size() == 0) {
+            return;
+        }
+        current.data.seek(current.size);
+        current.data.write(pending.toByteArray());
+        current.size += pending.size();
+        pending.reset();
+    }
+
+    // Starts a new current file, then reclaims the older ones that forgotten accounts left empty or mostly empty.
+    private void roll() throws IOException {
+        flushPending();
+        current = new SegmentFile(nextFile++, new File(sessionDirectory, "history-" + (nextFile - 1) + ".seg"));
+        files.put(current.id, current);
+        List<SegmentFile> sparse = new ArrayList<>();
+        for (SegmentFile file : files.values()) {
+            if (file != current && file.liveBytes * 2 < file.size) {
+                sparse.add(file);
+            }
+        }
+        for (SegmentFile file : sparse) {
+            if (file.liveBytes > 0) {
+                compact(file);
+            }
+            files.remove(file.id);
+            file.data.close();
+            Files.deleteIfExists(file.path.toPath());
+        }
+    }
+
+    // Moves the live segments out of a file into the current one. Segments are found through the accounts, which
+    // only happens when deletes have left a whole file half empty.
+    private void compact(SegmentFile file) throws IOException {
+        long moved = 0;
+        for (Account account : hotCounts.keySet()) {
+            for (ColdSegment segment : account.getColdSegments()) {
+                if (segment.getFile() != file.id) {
+                    continue;
+                }
+                byte[] bytes = readBytes(segment);
+                segment.moveTo(current.id, current.size + pending.size());
+                pending.write(bytes);
+                current.liveBytes += bytes.length;
+                moved += bytes.length;
+            }
+        }
+        flushPending();
+        logger.info("Compacted {} live bytes out of {}", moved, file.path.getName());
+    }
+
+    private static void removeAbandonedSessions(File directory) {
+        File[] sessions = directory.listFiles((dir, name) -> name.startsWith("session-"));
+        for (File session : sessions == null ? new File[0] : sessions) {
+            try (FileChannel channel = FileChannel.open(new File(session, "session.lock").toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                FileLock lock = channel.tryLock();
+                if (lock == null) {
+                    continue;
+                }
+                try (Stream<Path> paths = Files.walk(session.toPath())) {
+                    for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                        Files.deleteIfExists(path);
+                    }
+                }
+            } catch (OverlappingFileLockException e) {
+                // Held by another store in this JVM.
+            } catch (IOException e) {
+                logger.error("Error removing abandoned history session {}: {}", session.getName(), e.getMessage(), e);
+            }
+        }
+    }
+
+    private static final class SegmentFile {
+        private final int id;
+        private final File path;
+        private final RandomAccessFile data;
+        private long size;
+        private long liveBytes;
+
+        private SegmentFile(int id, File path) throws IOException {
+            this.id = id;
+            this.path = path;
+            this.data = new RandomAccessFile(path, "rw");
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.banking.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+// Hierarchical timing wheel: four levels of 64 slots, so one tick of a minute covers about 31 years before the
+// overflow list is needed. Scheduling is O(1) and each item is moved down at most once per level.
+public class TimingWheel<T> {
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int LEVELS = 4;
+
+    private final long tickMillis;
+    private final ToLongFunction<T> deadline;
+    private final List<List<T>> slots = new ArrayList<>(LEVELS * SLOTS);
+    private List<T> ready = new ArrayList<>();
+    private List<T> overflow = new ArrayList<>();
+    private long currentTick;
+    private int size;
+
+    public TimingWheel(long tickMillis, long startMillis, ToLongFunction<T> deadline) {
+        this.tickMillis = tickMillis;
+        this.deadline = deadline;
+        this.currentTick = startMillis / tickMillis;
+        for (int i = 0; i < LEVELS * SLOTS; i++) {
+            slots.add(null);
+        }
+    }
+
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Items already due are handed out on the next advance.
+    public void schedule(T item) {
+        size++;
+        place(item);
+    }
+
+    // Processes every tick up to now; items falling due on the same tick are handed over as one list.
+    public void advance(long nowMillis, Consumer<List<T>> onDue) {
+        long target = nowMillis / tickMillis;
+        if (!ready.isEmpty()) {
+            fire(onDue);
+        }
+        while (currentTick < target) {
+            currentTick++;
+            if ((currentTick & mask(LEVELS)) == 0) {
+                List<T> far = overflow;
+                overflow = new ArrayList<>();
+                far.forEach(this::place);
+            }
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((currentTick & mask(level)) == 0) {
+                    List<T> bucket = take(level, (int) (currentTick >>> (SLOT_BITS * level)) & (SLOTS - 1));
+                    if (bucket != null) {
+                        bucket.forEach(this::place);
+                    }
+                }
+            }
+            List<T> due = take(0, (int) currentTick & (SLOTS - 1));
+            if (due != null) {
+                ready.addAll(due);
+            }
+            if (!ready.isEmpty()) {
+                fire(onDue);
+            }
+        }
+    }
+
+    private void fire(Consumer<List<T>> onDue) {
+        List<T> due = ready;
+        ready = new ArrayList<>();
+        size -= due.size();
+        onDue.accept(due);
+    }
+
+    // An item goes to the lowest level whose higher digits it shares with the current tick.
+    private void place(T item) {
+        long tick = deadline.applyAsLong(item) / tickMillis;
+        if (tick <= currentTick) {
+            ready.add(item);
+            return;
+        }
+        for (int level = 0; level < LEVELS; level++) {
+            int shift = SLOT_BITS * (level + 1);
+            if ((tick >>> shift) == (currentTick >>> shift)) {
+                int index = level * SLOTS + ((int) (tick >>> (SLOT_BITS * level)) & (SLOTS - 1));
+                List<T> bucket = slots.get(index);
+                if (bucket == null) {
+                    bucket = new ArrayList<>();
+                    slots.set(index, bucket);
+                }
+                bucket.add(item);
+                return;
+            }
+        }
+        overflow.add(item);
+    }
+
+    private List<T> take(int level, int slot) {
+        return slots.set(level * SLOTS + slot, null);
+    }
+
+    private static long mask(int level) {
+        return (1L << (SLOT_BITS * level)) - 1;
+    }
+}
@@ -0,0 +1,226 @@
+package com.banking.services;
+
+import com.banking.models.Account;
+import com.banking.models.HistoryLoader;
+import com.banking.models.Transaction;
+import com.banking.utils.AccountIds;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.*;
+
+public class TransactionHistoryIndex implements HistoryLoader {
+    private static final Logger logger = LogManager.getLogger(TransactionHistoryIndex.class);
+    private static final int MAGIC = 0x54584958;
+    private static final int TAIL_CHECK_BYTES = 64;
+
+    private final File dataFile;
+    private final File indexFile;
+    private final StorageService storageService;
+    private final long startupLength;
+
+    // Byte offsets of each account's rows in transactions.csv, built once on the first history access.
+    private Map<Long, OffsetList> offsetsByAccount;
+    private long coveredLength;
+    private byte[] coveredTail = new byte[0];
+
+    public TransactionHistoryIndex(StorageService storageService) {
+        this.storageService = storageService;
+        this.dataFile = new File(storageService.getDatabasePath() + "transactions.csv");
+        this.indexFile = new File(storageService.getDatabasePath() + "transactions.idx");
+        // Rows appended after startup are already on the accounts in memory, so only older rows are paged in.
+        this.startupLength = dataFile.length();
+    }
+
+    @Override
+    public synchronized List<Transaction> load(Account account) {
+        List<Transaction> history = new ArrayList<>();
+        try {
+            ensureCurrent();
+            OffsetList offsets = offsetsByAccount.get(account.getAccountNumber());
+            if (offsets == null) {
+                return history;
+            }
+            try (RandomAccessFile raf = new RandomAccessFile(dataFile, "r")) {
+                byte[] buffer = new byte[256];
+                for (int i = 0; i < offsets.size && offsets.values[i] < startupLength; i++) {
+                    String line = readLine(raf, offsets.values[i], buffer);
+                    Transaction transaction = storageService.parseTransaction(line, number -> account);
+                    if (transaction != null) {
+                        history.add(transaction);
+                    }
+                }
+            }
+            logger.info("Paged in {} transactions for account {}", history.size(), account.getAccountId());
+        } catch (IOException | ParseException e) {
+            logger.error("Error paging in transactions for {}: {}", account.getAccountId(), e.getMessage(), e);
+        }
+        return history;
+    }
+
+    public synchronized void invalidate() {
+        offsetsByAccount = null;
+        indexFile.delete();
+    }
+
+    private void ensureCurrent() throws IOException {
+        if (offsetsByAccount == null) {
+            offsetsByAccount = new HashMap<>();
+            coveredLength = 0;
+            coveredTail = new byte[0];
+            readIndexFile();
+        }
+        long length = dataFile.exists() ? dataFile.length() : 0;
+        if (length < coveredLength || !Arrays.equals(coveredTail, readTail(coveredLength))) {
+            logger.info("Transaction index is stale, rebuilding.");
+            offsetsByAccount.clear();
+            coveredLength = 0;
+        }
+        if (length > coveredLength) {
+            scan(coveredLength, length);
+            coveredTail = readTail(coveredLength);
+            writeIndexFile();
+        }
+    }
+
+    private void scan(long from, long to) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(dataFile), 1 << 16)) {
+            in.skipNBytes(from);
+            long offset = from;
+            long lineStart = from;
+            int field = 0;
+            StringBuilder accountId = new StringBuilder(AccountIds.LENGTH);
+            int b;
+            while (offset < to && (b = in.read()) != -1) {
+                offset++;
+                if (b == '\n') {
+                    addOffset(accountId, lineStart);
+                    lineStart = offset;
+                    field = 0;
+                    accountId.setLength(0);
+                } else if (b == ',') {
+                    field++;
+                } else if (field == 1) {
+                    accountId.append((char) b);
+                }
+            }
+            // A trailing row without a newline is still being written; pick it up on the next scan.
+            coveredLength = lineStart;
+        }
+    }
+
+    private void addOffset(CharSequence accountId, long offset) {
+        long accountNumber = AccountIds.parse(accountId);
+        if (accountNumber != AccountIds.INVALID) {
+            offsetsByAccount.computeIfAbsent(accountNumber, k -> new OffsetList()).add(offset);
+        }
+    }
+
+    private String readLine(RandomAccessFile raf, long offset, byte[] buffer) throws IOException {
+        raf.seek(offset);
+        ByteArrayOutputStream line = null;
+        while (true) {
+            int read = raf.read(buffer);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer[i] == '\n' || buffer[i] == '\r') {
+                    if (line == null) {
+                        return new String(buffer, 0, i, StandardCharsets.UTF_8);
+                    }
+                    line.write(buffer, 0, i);
+                    return line.toString(StandardCharsets.UTF_8);
+                }
+            }
+            if (line == null) {
+                line = new ByteArrayOutputStream();
+            }
+            line.write(buffer, 0, read);
+        }
+        return line == null ? "" : line.toString(StandardCharsets.UTF_8);
+    }
+
+    private byte[] readTail(long end) throws IOException {
+        int length = (int) Math.min(TAIL_CHECK_BYTES, end);
+        byte[] tail = new byte[length];
+        if (length > 0) {
+            try (RandomAccessFile raf = new RandomAccessFile(dataFile, "r")) {
+                raf.seek(end - length);
+                raf.readFully(tail);
+            }
+        }
+        return tail;
+    }
+
+    private void readIndexFile() {
+        if (!indexFile.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC) {
+                return;
+            }
+            long length = in.readLong();
+            byte[] tail = new byte[in.readInt()];
+            in.readFully(tail);
+            int accounts = in.readInt();
+            Map<Long, OffsetList> offsets = new HashMap<>(accounts * 2);
+            for (int i = 0; i < accounts; i++) {
+                long accountNumber = in.readLong();
+                OffsetList list = new OffsetList();
+                int count = in.readInt();
+                for (int j = 0; j < count; j++) {
+                    list.add(in.readLong());
+                }
+                offsets.put(accountNumber, list);
+            }
+            offsetsByAccount = offsets;
+            coveredLength = length;
+            coveredTail = tail;
+        } catch (IOException e) {
+            logger.error("Error reading transaction index, rebuilding: {}", e.getMessage(), e);
+        }
+    }
+
+    private void writeIndexFile() {
+        File temp = new File(indexFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeLong(coveredLength);
+            out.writeInt(coveredTail.length);
+            out.write(coveredTail);
+            out.writeInt(offsetsByAccount.size());
+            for (Map.Entry<Long, OffsetList> entry : offsetsByAccount.entrySet()) {
+                out.writeLong(entry.getKey());
+                OffsetList list = entry.getValue();
+                out.writeInt(list.size);
+                for (int i = 0; i < list.size; i++) {
+                    out.writeLong(list.values[i]);
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Error writing transaction index: {}", e.getMessage(), e);
+            return;
+        }
+        if (!temp.renameTo(indexFile)) {
+            indexFile.delete();
+            temp.renameTo(indexFile);
+        }
+    }
+
+    private static class OffsetList {
+        private long[] values = new long[4];
+        private int size;
+
+        private void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
@@ -0,0 +1,596 @@
+package com.banking.services;
+
+import com.banking.enums.TransactionType;
+import com.banking.utils.AccountIds;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+// Every posting in primitive columns, partitioned by type and kept in chunks sorted by time, which together act as a
+// composite (type, time) index. A query binary-searches each chunk whose time range overlaps, filters amounts on the
+// cents column, and chunks are searched in parallel. Results come back in (time, sequence) order one page at a time;
+// the cursor of a page resumes right after its last row. Appends come from the service lock; readers never lock.
+// Transaction ids are snowflake numbers and are kept as longs; an id of any other form goes into a per-chunk map, so
+// a row costs five longs rather than a String of its own. With a directory, each chunk is written to a file as it is
+// sealed and read through a mapping from then on, so only the open chunks take heap; save() records the open rows and
+// the journal position the index covers, and restore() maps the chunks back instead of reading every posting again.
+public class TransactionSearchIndex {
+    private static final Logger logger = LogManager.getLogger(TransactionSearchIndex.class);
+    static final int CHUNK_ROWS = 4096;
+    private static final long OTHER_ID = -1;
+    private static final String MANIFEST = "index.manifest";
+
+    private final Partition[] partitions = new Partition[TransactionType.values().length];
+    // Null when the index is kept in memory only.
+    private final File directory;
+    private long nextSequence;
+
+    public TransactionSearchIndex() {
+        this(null);
+    }
+
+    TransactionSearchIndex(File directory) {
+        this.directory = directory;
+        for (int i = 0; i < partitions.length; i++) {
+            partitions[i] = new Partition();
+        }
+    }
+
+    public long size() {
+        long size = 0;
+        for (Partition partition : partitions) {
+            size += partition.size();
+        }
+        return size;
+    }
+
+    // Postings of the type (any type if null) with fromMillis <= time <= toMillis and minAmount <= amount <= maxAmount.
+    public Page search(TransactionType type, long fromMillis, long toMillis, double minAmount, double maxAmount,
+                       String cursor, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit must be positive");
+        }
+        long afterTime = Long.MIN_VALUE;
+        long afterSequence = Long.MAX_VALUE;
+        if (cursor != null) {
+            int separator = cursor.indexOf('-', 1);
+            if (separator < 0) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            }
+            afterTime = Long.parseLong(cursor.substring(0, separator));
+            afterSequence = Long.parseLong(cursor.substring(separator + 1));
+        }
+        Query query = new Query(fromMillis, toMillis, cents(minAmount), cents(maxAmount), afterTime, afterSequence, limit);
+        List<Chunk> chunks = new ArrayList<>();
+        for (TransactionType partitionType : TransactionType.values()) {
+            if (type == null || type == partitionType) {
+                partitions[partitionType.ordinal()].collect(chunks);
+            }
+        }
+        // Each chunk returns at most limit matches, its smallest after the cursor, so the page is the smallest of those.
+        Stream<Chunk> stream = chunks.size() > 1 ? chunks.parallelStream() : chunks.stream();
+        List<Match> matches = stream.flatMap(chunk -> chunk.search(query).stream())
+                .sorted(Comparator.comparingLong((Match match) -> match.time).thenComparingLong(match -> match.sequence))
+                .limit(limit)
+                .toList();
+        List<Hit> hits = new ArrayList<>(matches.size());
+        for (Match match : matches) {
+            hits.add(match.toHit());
+        }
+        String next = matches.size() < limit ? null
+                : matches.get(matches.size() - 1).time + "-" + matches.get(matches.size() - 1).sequence;
+        return new Page(hits, next);
+    }
+
+    void add(String transactionId, long accountNumber, TransactionType type, double amount, long timestampMillis) {
+        Partition partition = partitions[type.ordinal()];
+        Chunk open = partition.add(transactionId, accountNumber, type, cents(amount), timestampMillis, nextSequence++);
+        if (open.size == CHUNK_ROWS) {
+            partition.replaceLast(store(Chunk.sealed(open), partition.chunks.length - 1));
+        }
+    }
+
+    // Drops every row, and the files of a stored index with them.
+    void clear() {
+        for (Partition partition : partitions) {
+            partition.clear();
+        }
+        File[] files = directory == null ? null : directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.delete()) {
+                    logger.error("Could not delete search index file {}", file);
+                }
+            }
+        }
+    }
+
+    // Writes what a restart needs besides the chunk files, for an index that holds every posting up to the given
+    // journal position: the position, the next sequence, how many sealed chunks each type has and the rows of its
+    // open chunk. A sealed chunk whose file could not be written when it filled is written now.
+    void save(long position) throws IOException {
+        if (directory == null) {
+            return;
+        }
+        for (Partition partition : partitions) {
+            Chunk[] chunks = partition.chunks;
+            for (int i = 0; i < chunks.length; i++) {
+                if (chunks[i].sorted && !chunks[i].stored) {
+                    Chunk stored = store(chunks[i], i);
+                    if (!stored.stored) {
+                        throw new IOException("Cannot write search index chunk " + file(chunks[i].type, i));
+                    }
+                    partition.replace(i, stored);
+                }
+            }
+        }
+        File temporary = new File(directory, MANIFEST + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary), 1 << 16))) {
+            out.writeLong(position);
+            out.writeLong(nextSequence);
+            for (Partition partition : partitions) {
+                Chunk[] chunks = partition.chunks;
+                Chunk open = chunks.length == 0 || chunks[chunks.length - 1].sorted ? null : chunks[chunks.length - 1];
+                if (open == null) {
+                    out.writeInt(chunks.length);
+                    out.writeInt(0);
+                    out.writeInt(0);
+                } else {
+                    out.writeInt(chunks.length - 1);
+                    open.write(out);
+                }
+            }
+        }
+        Files.move(temporary.toPath(), new File(directory, MANIFEST).toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Maps the chunks the last save() listed and loads its open rows. Returns the journal position the index then
+    // covers, or -1 with the index left empty when there is no usable save. Chunk files sealed after the save are
+    // removed; their rows come back with the journal after the position.
+    long restore() {
+        if (directory == null) {
+            return -1;
+        }
+        File manifest = new File(directory, MANIFEST);
+        if (!manifest.exists()) {
+            clear();
+            return -1;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(manifest), 1 << 16))) {
+            long position = in.readLong();
+            long sequence = in.readLong();
+            for (TransactionType type : TransactionType.values()) {
+                int sealed = in.readInt();
+                List<Chunk> chunks = new ArrayList<>(sealed + 1);
+                for (int i = 0; i < sealed; i++) {
+                    chunks.add(map(type, file(type, i)));
+                }
+                Chunk open = Chunk.read(type, in);
+                if (open.size > 0) {
+                    chunks.add(open);
+                }
+                partitions[type.ordinal()].chunks = chunks.toArray(new Chunk[0]);
+                for (int i = sealed; file(type, i).exists(); i++) {
+                    Files.delete(file(type, i).toPath());
+                }
+            }
+            nextSequence = sequence;
+            return position;
+        } catch (IOException | RuntimeException e) {
+            logger.error("Error restoring the search index, it is built again: {}", e.getMessage(), e);
+            clear();
+            return -1;
+        }
+    }
+
+    // The chunk read back through a mapping of the file it was written to, or the chunk itself when that fails.
+    private Chunk store(Chunk sealed, int number) {
+        if (directory == null) {
+            return sealed;
+        }
+        File file = file(sealed.type, number);
+        try {
+            directory.mkdirs();
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+                sealed.write(out);
+            }
+            return map(sealed.type, file);
+        } catch (IOException e) {
+            logger.error("Error writing search index chunk {}: {}", file, e.getMessage(), e);
+            return sealed;
+        }
+    }
+
+    private static Chunk map(TransactionType type, File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return Chunk.mapped(type, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    private File file(TransactionType type, int number) {
+        return new File(directory, type.name() + "-" + number + ".chunk");
+    }
+
+    private static long cents(double amount) {
+        return Math.round(amount * 100);
+    }
+
+    // The id as a long when it is written exactly as Long.toString writes a non-negative value, otherwise OTHER_ID.
+    static long idValue(String id) {
+        int length = id.length();
+        if (length == 0 || length > 19 || (id.charAt(0) == '0' && length > 1)) {
+            return OTHER_ID;
+        }
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            char c = id.charAt(i);
+            if (c < '0' || c > '9') {
+                return OTHER_ID;
+            }
+            value = value * 10 + (c - '0');
+            if (value < 0) {
+                return OTHER_ID;
+            }
+        }
+        return value;
+    }
+
+    public static class Page {
+        private final List<Hit> hits;
+        private final String nextCursor;
+
+        Page(List<Hit> hits, String nextCursor) {
+            this.hits = hits;
+            this.nextCursor = nextCursor;
+        }
+
+        public List<Hit> getHits() {
+            return hits;
+        }
+
+        // Null on the last page.
+        public String getNextCursor() {
+            return nextCursor;
+        }
+    }
+
+    public static class Hit {
+        private final String transactionId;
+        private final String accountId;
+        private final TransactionType type;
+        private final double amount;
+        private final long timestamp;
+
+        Hit(String transactionId, String accountId, TransactionType type, double amount, long timestamp) {
+            this.transactionId = transactionId;
+            this.accountId = accountId;
+            this.type = type;
+            this.amount = amount;
+            this.timestamp = timestamp;
+        }
+
+        public String getTransactionId() {
+            return transactionId;
+        }
+
+        public String getAccountId() {
+            return accountId;
+        }
+
+        public TransactionType getType() {
+            return type;
+        }
+
+        public double getAmount() {
+            return amount;
+        }
+
+        public long getTimestampMillis() {
+            return timestamp;
+        }
+    }
+
+    private static final class Query {
+        private final long from;
+        private final long to;
+        private final long minCents;
+        private final long maxCents;
+        private final long afterTime;
+        private final long afterSequence;
+        private final int limit;
+
+        private Query(long from, long to, long minCents, long maxCents, long afterTime, long afterSequence, int limit) {
+            this.from = from;
+            this.to = to;
+            this.minCents = minCents;
+            this.maxCents = maxCents;
+            this.afterTime = afterTime;
+            this.afterSequence = afterSequence;
+            this.limit = limit;
+        }
+
+        private boolean matches(long time, long sequence, long cents) {
+            return time >= from && time <= to && cents >= minCents && cents <= maxCents
+                    && (time > afterTime || time == afterTime && sequence > afterSequence);
+        }
+    }
+
+    private static final class Match {
+        private final Chunk chunk;
+        private final int row;
+        private final long time;
+        private final long sequence;
+
+        private Match(Chunk chunk, int row) {
+            this.chunk = chunk;
+            this.row = row;
+            this.time = chunk.times.get(row);
+            this.sequence = chunk.sequences.get(row);
+        }
+
+        private Hit toHit() {
+            return new Hit(chunk.id(row), AccountIds.format(chunk.accounts.get(row)), chunk.type,
+                    chunk.cents.get(row) / 100.0, time);
+        }
+    }
+
+    // Sealed chunks are sorted by (time, sequence) and never change; the open chunk, always the last one, fills in
+    // arrival order and is published row by row through its volatile size. Columns are buffers so a sealed chunk can
+    // be read straight from its mapped file. On disk a chunk is its row count, the five columns one after the other,
+    // then the count of ids that are not plain numbers and each of them as row, byte length and UTF-8 bytes.
+    private static final class Chunk {
+        private final TransactionType type;
+        private final LongBuffer times;
+        private final LongBuffer sequences;
+        private final LongBuffer cents;
+        private final LongBuffer accounts;
+        private final LongBuffer ids;
+        // Rows whose id is not a plain number; created on the first one. Written under the service lock while
+        // readers look rows up, hence concurrent.
+        private volatile Map<Integer, String> otherIds;
+        private final boolean sorted;
+        private final boolean stored;
+        private final long minTime;
+        private final long maxTime;
+        private volatile int size;
+
+        private Chunk(TransactionType type) {
+            this(type, LongBuffer.allocate(CHUNK_ROWS), LongBuffer.allocate(CHUNK_ROWS), LongBuffer.allocate(CHUNK_ROWS),
+                    LongBuffer.allocate(CHUNK_ROWS), LongBuffer.allocate(CHUNK_ROWS), false, false);
+        }
+
+        private Chunk(TransactionType type, LongBuffer times, LongBuffer sequences, LongBuffer cents, LongBuffer accounts,
+                      LongBuffer ids, boolean sorted, boolean stored) {
+            this.type = type;
+            this.times = times;
+            this.sequences = sequences;
+            this.cents = cents;
+            this.accounts = accounts;
+            this.ids = ids;
+            this.sorted = sorted;
+            this.stored = stored;
+            this.minTime = sorted && times.limit() > 0 ? times.get(0) : Long.MIN_VALUE;
+            this.maxTime = sorted && times.limit() > 0 ? times.get(times.limit() - 1) : Long.MAX_VALUE;
+        }
+
+        // The open chunk's rows sorted by (time, sequence), on the heap until stored.
+        private static Chunk sealed(Chunk open) {
+            Integer[] order = new Integer[open.size];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.<Integer>comparingLong(open.times::get).thenComparingLong(open.sequences::get));
+            Chunk chunk = new Chunk(open.type, sortedColumn(open.times, order), sortedColumn(open.sequences, order),
+                    sortedColumn(open.cents, order), sortedColumn(open.accounts, order), sortedColumn(open.ids, order),
+                    true, false);
+            for (int i = 0; i < order.length; i++) {
+                if (chunk.ids.get(i) == OTHER_ID) {
+                    chunk.setOtherId(i, open.otherIds.get(order[i]));
+                }
+            }
+            chunk.size = order.length;
+            return chunk;
+        }
+
+        private static LongBuffer sortedColumn(LongBuffer column, Integer[] order) {
+            long[] values = new long[order.length];
+            for (int i = 0; i < order.length; i++) {
+                values[i] = column.get(order[i]);
+            }
+            return LongBuffer.wrap(values);
+        }
+
+        private static Chunk mapped(TransactionType type, ByteBuffer file) {
+            int rows = file.getInt(0);
+            int columns = Integer.BYTES;
+            Chunk chunk = new Chunk(type, column(file, columns, rows, 0), column(file, columns, rows, 1),
+                    column(file, columns, rows, 2), column(file, columns, rows, 3), column(file, columns, rows, 4),
+                    true, true);
+            ByteBuffer others = file.duplicate().position(columns + 5 * rows * Long.BYTES);
+            for (int i = others.getInt(); i > 0; i--) {
+                int row = others.getInt();
+                byte[] id = new byte[others.getInt()];
+                others.get(id);
+                chunk.setOtherId(row, new String(id, StandardCharsets.UTF_8));
+            }
+            chunk.size = rows;
+            return chunk;
+        }
+
+        private static LongBuffer column(ByteBuffer file, int offset, int rows, int index) {
+            return file.slice(offset + index * rows * Long.BYTES, rows * Long.BYTES).asLongBuffer();
+        }
+
+        // An open chunk holding the rows written by write().
+        private static Chunk read(TransactionType type, DataInputStream in) throws IOException {
+            int rows = in.readInt();
+            Chunk chunk = new Chunk(type);
+            for (LongBuffer column : List.of(chunk.times, chunk.sequences, chunk.cents, chunk.accounts, chunk.ids)) {
+                for (int i = 0; i < rows; i++) {
+                    column.put(i, in.readLong());
+                }
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                int row = in.readInt();
+                byte[] id = new byte[in.readInt()];
+                in.readFully(id);
+                chunk.setOtherId(row, new String(id, StandardCharsets.UTF_8));
+            }
+            chunk.size = rows;
+            return chunk;
+        }
+
+        private void write(DataOutputStream out) throws IOException {
+            int rows = size;
+            out.writeInt(rows);
+            for (LongBuffer column : List.of(times, sequences, cents, accounts, ids)) {
+                for (int i = 0; i < rows; i++) {
+                    out.writeLong(column.get(i));
+                }
+            }
+            Map<Integer, String> others = otherIds;
+            List<Map.Entry<Integer, String>> written = new ArrayList<>();
+            if (others != null) {
+                for (Map.Entry<Integer, String> entry : others.entrySet()) {
+                    if (entry.getKey() < rows) {
+                        written.add(entry);
+                    }
+                }
+            }
+            out.writeInt(written.size());
+            for (Map.Entry<Integer, String> entry : written) {
+                byte[] id = entry.getValue().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(entry.getKey());
+                out.writeInt(id.length);
+                out.write(id);
+            }
+        }
+
+        private String id(int row) {
+            long id = ids.get(row);
+            return id == OTHER_ID ? otherIds.get(row) : Long.toString(id);
+        }
+
+        private void setId(int row, String id) {
+            long value = idValue(id);
+            ids.put(row, value);
+            if (value == OTHER_ID) {
+                setOtherId(row, id);
+            }
+        }
+
+        private void setOtherId(int row, String id) {
+            if (otherIds == null) {
+                otherIds = new ConcurrentHashMap<>();
+            }
+            otherIds.put(row, id);
+        }
+
+        private List<Match> search(Query query) {
+            int count = size;
+            List<Match> result = new ArrayList<>();
+            if (!sorted) {
+                for (int i = 0; i < count; i++) {
+                    if (query.matches(times.get(i), sequences.get(i), cents.get(i))) {
+                        result.add(new Match(this, i));
+                    }
+                }
+                result.sort(Comparator.comparingLong((Match match) -> match.time).thenComparingLong(match -> match.sequence));
+                return result.size() > query.limit ? result.subList(0, query.limit) : result;
+            }
+            if (maxTime < query.from || minTime > query.to || maxTime < query.afterTime) {
+                return result;
+            }
+            for (int i = firstAtOrAfter(Math.max(query.from, query.afterTime)); i < count && times.get(i) <= query.to; i++) {
+                if (query.matches(times.get(i), sequences.get(i), cents.get(i))) {
+                    result.add(new Match(this, i));
+                    if (result.size() == query.limit) {
+                        break;
+                    }
+                }
+            }
+            return result;
+        }
+
+        private int firstAtOrAfter(long time) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (times.get(middle) < time) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+
+    // The sealed chunks and the open one are swapped together, so a reader sees each row in exactly one chunk.
+    private static final class Partition {
+        private volatile Chunk[] chunks = new Chunk[0];
+
+        private long size() {
+            long size = 0;
+            for (Chunk chunk : chunks) {
+                size += chunk.size;
+            }
+            return size;
+        }
+
+        private void collect(List<Chunk> target) {
+            target.addAll(Arrays.asList(chunks));
+        }
+
+        // Adds a row to the open chunk, starting one if needed, and returns that chunk; the caller seals it once full.
+        private Chunk add(String id, long account, TransactionType type, long cents, long time, long sequence) {
+            Chunk[] current = chunks;
+            Chunk open = current.length == 0 || current[current.length - 1].sorted ? null : current[current.length - 1];
+            if (open == null) {
+                open = new Chunk(type);
+                current = Arrays.copyOf(current, current.length + 1);
+                current[current.length - 1] = open;
+                chunks = current;
+            }
+            int row = open.size;
+            open.times.put(row, time);
+            open.sequences.put(row, sequence);
+            open.cents.put(row, cents);
+            open.accounts.put(row, account);
+            open.setId(row, id);
+            open.size = row + 1;
+            return open;
+        }
+
+        private void replaceLast(Chunk chunk) {
+            replace(chunks.length - 1, chunk);
+        }
+
+        private void replace(int index, Chunk chunk) {
+            Chunk[] replaced = chunks.clone();
+            replaced[index] = chunk;
+            chunks = replaced;
+        }
+
+        private void clear() {
+            chunks = new Chunk[0];
+        }
+    }
+}
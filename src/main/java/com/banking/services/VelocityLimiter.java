@@ -0,0 +1,110 @@
+package com.banking.services;
+
+import com.banking.exceptions.LimitExceededException;
+import com.banking.models.Account;
+import com.banking.models.Card;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class VelocityLimiter {
+    private static final long HOUR = 60L * 60 * 1000;
+    private static final long DAY = 24 * HOUR;
+
+    private final List<Limit> accountLimits = new ArrayList<>();
+    private final List<Limit> cardLimits = new ArrayList<>();
+    private final Map<String, Integer> cardKeys = new ConcurrentHashMap<>();
+    private final AtomicInteger nextCardKey = new AtomicInteger();
+
+    public void addAccountLimit(String name, long windowMillis, int buckets, double maxAmount, long maxCount) {
+        accountLimits.add(new Limit(name, new SlidingWindowCounter(windowMillis, buckets, 1024), toCents(maxAmount), maxCount));
+    }
+
+    public void addCardLimit(String name, long windowMillis, int buckets, double maxAmount, long maxCount) {
+        cardLimits.add(new Limit(name, new SlidingWindowCounter(windowMillis, buckets, 1024), toCents(maxAmount), maxCount));
+    }
+
+    // Limits are read from banking.limit.{account|card}.{hourly|daily}.{amount|count}; unset or 0 means unlimited.
+    public static VelocityLimiter fromSystemProperties() {
+        VelocityLimiter limiter = new VelocityLimiter();
+        for (String scope : new String[]{"account", "card"}) {
+            for (String period : new String[]{"hourly", "daily"}) {
+                String prefix = "banking.limit." + scope + "." + period + ".";
+                double amount = Double.parseDouble(System.getProperty(prefix + "amount", "0"));
+                long count = Long.getLong(prefix + "count", 0);
+                if (amount <= 0 && count <= 0) {
+                    continue;
+                }
+                long window = period.equals("hourly") ? HOUR : DAY;
+                int buckets = period.equals("hourly") ? 60 : 24;
+                if (scope.equals("account")) {
+                    limiter.addAccountLimit(period, window, buckets, amount, count);
+                } else {
+                    limiter.addCardLimit(period, window, buckets, amount, count);
+                }
+            }
+        }
+        return limiter;
+    }
+
+    public boolean isEnabled() {
+        return !accountLimits.isEmpty() || !cardLimits.isEmpty();
+    }
+
+    // Callers hold the service lock, so checking every window before recording keeps the limits all-or-nothing.
+    public void checkAndRecord(Account account, Card card, double amount) throws LimitExceededException {
+        if (!isEnabled()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long cents = toCents(amount);
+        int accountKey = account.getOrdinal();
+        int cardKey = card == null ? -1 : cardKeys.computeIfAbsent(card.getCardNumber(), k -> nextCardKey.getAndIncrement());
+        for (Limit limit : accountLimits) {
+            limit.check(accountKey, cents, now, "Account " + limit.name + " limit exceeded for " + account.getAccountId());
+        }
+        if (card != null) {
+            for (Limit limit : cardLimits) {
+                limit.check(cardKey, cents, now, "Card " + limit.name + " limit exceeded for card " + card.getCardNumber());
+            }
+        }
+        for (Limit limit : accountLimits) {
+            limit.counter.record(accountKey, cents, now);
+        }
+        if (card != null) {
+            for (Limit limit : cardLimits) {
+                limit.counter.record(cardKey, cents, now);
+            }
+        }
+    }
+
+    private static long toCents(double amount) {
+        return Math.round(amount * 100);
+    }
+
+    private static class Limit {
+        private final String name;
+        private final SlidingWindowCounter counter;
+        private final long maxAmountCents;
+        private final long maxCount;
+
+        private Limit(String name, SlidingWindowCounter counter, long maxAmountCents, long maxCount) {
+            this.name = name;
+            this.counter = counter;
+            this.maxAmountCents = maxAmountCents;
+            this.maxCount = maxCount;
+        }
+
+        private void check(int key, long cents, long now, String message) throws LimitExceededException {
+            if (maxAmountCents > 0 && counter.sumAmount(key, now) + cents > maxAmountCents) {
+                throw new LimitExceededException(message);
+            }
+            if (maxCount > 0 && counter.sumCount(key, now) + 1 > maxCount) {
+                throw new LimitExceededException(message);
+            }
+        }
+    }
+}
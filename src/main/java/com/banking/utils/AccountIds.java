@@ -0,0 +1,69 @@
+package com.banking.utils;
+
+public final class AccountIds {
+    public static final String PREFIX = "RO49AAAA1B31007";
+    public static final int NUMBER_DIGITS = 9;
+    public static final int LENGTH = PREFIX.length() + NUMBER_DIGITS;
+    public static final long MIN_NUMBER = 100000000L;
+    public static final long MAX_NUMBER = 999999999L;
+    public static final long INVALID = -1L;
+
+    private AccountIds() { }
+
+    // Accounts are keyed internally by the 9-digit suffix; the IBAN string only exists at API and file boundaries.
+    public static long parse(CharSequence iban) {
+        if (iban == null || iban.length() != LENGTH) {
+            return INVALID;
+        }
+        for (int i = 0; i < PREFIX.length(); i++) {
+            if (iban.charAt(i) != PREFIX.charAt(i)) {
+                return INVALID;
+            }
+        }
+        long number = 0;
+        for (int i = PREFIX.length(); i < LENGTH; i++) {
+            char c = iban.charAt(i);
+            if (c < '0' || c > '9') {
+                return INVALID;
+            }
+            number = number * 10 + (c - '0');
+        }
+        return isValidNumber(number) ? number : INVALID;
+    }
+
+    public static boolean isValidNumber(long number) {
+        return number >= MIN_NUMBER && number <= MAX_NUMBER;
+    }
+
+    public static boolean isValidIban(CharSequence iban) {
+        if (iban == null || iban.length() < 5) {
+            return false;
+        }
+        int remainder = 0;
+        int length = iban.length();
+        for (int i = 0; i < length; i++) {
+            char c = iban.charAt((i + 4) % length);
+            if (c >= '0' && c <= '9') {
+                remainder = (remainder * 10 + (c - '0')) % 97;
+            } else if (c >= 'A' && c <= 'Z') {
+                remainder = (remainder * 100 + (c - 'A' + 10)) % 97;
+            } else {
+                return false;
+            }
+        }
+        return remainder == 1;
+    }
+
+    public static String format(long number) {
+        if (!isValidNumber(number)) {
+            throw new IllegalArgumentException("Invalid account number: " + number);
+        }
+        char[] chars = new char[LENGTH];
+        PREFIX.getChars(0, PREFIX.length(), chars, 0);
+        for (int i = LENGTH - 1; i >= PREFIX.length(); i--) {
+            chars[i] = (char) ('0' + number % 10);
+            number /= 10;
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,36 @@
+package com.banking.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class AccountNumberGenerator implements IdGenerator {
+    private static final long STRIDE = 97;
+
+    // The IBAN check digits are affine in the account number mod 97, so every 97th number keeps the shared RO49 prefix valid.
+    private final long first;
+    private final AtomicLong sequence = new AtomicLong();
+
+    public AccountNumberGenerator() {
+        long candidate = AccountIds.MIN_NUMBER;
+        while (!AccountIds.isValidIban(AccountIds.format(candidate))) {
+            candidate++;
+        }
+        this.first = candidate;
+    }
+
+    @Override
+    public long nextId() {
+        long number = first + STRIDE * sequence.getAndIncrement();
+        if (number > AccountIds.MAX_NUMBER) {
+            throw new IllegalStateException("Account number space exhausted");
+        }
+        return number;
+    }
+
+    @Override
+    public void observe(long existingId) {
+        if (existingId >= first && (existingId - first) % STRIDE == 0) {
+            long next = (existingId - first) / STRIDE + 1;
+            sequence.accumulateAndGet(next, Math::max);
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package com.banking.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Streams RFC 4180 records: fields may be quoted, a quote inside a quoted field is doubled, and quoted fields may
+// hold separators and line breaks. Input is read through one reusable buffer. A record of unquoted fields that lies
+// wholly inside it, nearly every record of a typical file, is returned as offsets into the buffer; any other record has
+// its unescaped fields packed into a second buffer. Parsing so allocates nothing per record, and strings are made only
+// for the fields asked for. Blank lines are skipped. Rows that break the quoting rules are still returned as well as
+// they parse, flagged malformed. The input is UTF-8 and is scanned as raw bytes, eight at a time where it can be, which
+// is safe because separators, quotes and line breaks never occur inside a multi-byte sequence.
+public final class CsvReader implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final VarHandle WORDS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+    // Separators, line breaks and quotes all sort below '-'.
+    private static final long BELOW_DASH = ONES * '-';
+    private static final long COMMAS = ONES * ',';
+    private static final long NEWLINES = ONES * '\n';
+    private static final long RETURNS = ONES * '\r';
+    private static final long QUOTES = ONES * '"';
+
+    private final InputStream in;
+    private final byte[] buffer;
+    private int position;
+    private int limit;
+    private byte[] record = new byte[256];
+    private int recordLength;
+    // The current record's fields, as offsets into either buffer or record.
+    private byte[] fields;
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private int fieldCount;
+    private long line;
+    private long recordLine;
+    private boolean malformed;
+    private boolean quoted;
+
+    public CsvReader(InputStream in) {
+        this(in, BUFFER_SIZE);
+    }
+
+    public CsvReader(InputStream in, int bufferSize) {
+        this.in = in;
+        this.buffer = new byte[Math.max(16, bufferSize)];
+    }
+
+    // One record from a single line of text, for callers that already hold it.
+    public static String[] parseRow(String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        try (CsvReader reader = new CsvReader(new ByteArrayInputStream(bytes), bytes.length + 1)) {
+            return reader.next() ? reader.toArray() : new String[0];
+        }
+    }
+
+    // Advances to the next record; false at the end of input.
+    public boolean next() throws IOException {
+        do {
+            if (!readRecord()) {
+                return false;
+            }
+        } while (fieldCount == 1 && starts[0] == ends[0] && !malformed && !quoted);
+        return true;
+    }
+
+    public int fieldCount() {
+        return fieldCount;
+    }
+
+    public String get(int index) {
+        if (index < 0 || index >= fieldCount) {
+            throw new IndexOutOfBoundsException("Field " + index + " of " + fieldCount);
+        }
+        return new String(fields, starts[index], ends[index] - starts[index], StandardCharsets.UTF_8);
+    }
+
+    public String[] toArray() {
+        String[] row = new String[fieldCount];
+        for (int i = 0; i < fieldCount; i++) {
+            row[i] = new String(fields, starts[i], ends[i] - starts[i], StandardCharsets.UTF_8);
+        }
+        return row;
+    }
+
+    // Whether the current record broke the quoting rules: an unterminated quoted field, text after a closing quote,
+    // or a quote inside an unquoted field.
+    public boolean isMalformed() {
+        return malformed;
+    }
+
+    // The 1-based line the current record starts on.
+    public long getLineNumber() {
+        return recordLine;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private boolean readRecord() throws IOException {
+        fieldCount = 0;
+        recordLength = 0;
+        malformed = false;
+        quoted = false;
+        if (position == limit && !fill()) {
+            return false;
+        }
+        recordLine = ++line;
+        if (readInBuffer()) {
+            return true;
+        }
+        fields = record;
+        while (true) {
+            if (position == limit && !fill()) {
+                endField();
+                return true;
+            }
+            if (buffer[position] == '"') {
+                position++;
+                quoted = true;
+                readQuoted();
+                if (position < limit || fill()) {
+                    byte c = buffer[position];
+                    if (c != ',' && c != '\n' && c != '\r') {
+                        malformed = true;
+                        readUnquoted();
+                    }
+                }
+            } else {
+                readUnquoted();
+            }
+            endField();
+            if (position == limit && !fill()) {
+                return true;
+            }
+            byte c = buffer[position++];
+            if (c == ',') {
+                continue;
+            }
+            if (c == '\r' && (position < limit || fill()) && buffer[position] == '\n') {
+                position++;
+            }
+            return true;
+        }
+    }
+
+    // Takes the record in place if it is unquoted and ends inside the buffer; otherwise leaves the position alone for
+    // the copying parser.
+    private boolean readInBuffer() {
+        int start = position;
+        int count = 0;
+        while (true) {
+            if (start < limit && buffer[start] == '"') {
+                return false;
+            }
+            int end = nextSpecial(start);
+            if (end == limit || buffer[end] == '"') {
+                return false;
+            }
+            if (count == ends.length) {
+                growFields();
+            }
+            starts[count] = start;
+            ends[count++] = end;
+            if (buffer[end] == ',') {
+                start = end + 1;
+                continue;
+            }
+            if (buffer[end] == '\r') {
+                if (end + 1 == limit) {
+                    return false;
+                }
+                if (buffer[end + 1] == '\n') {
+                    end++;
+                }
+            }
+            position = end + 1;
+            fieldCount = count;
+            fields = buffer;
+            return true;
+        }
+    }
+
+    private void readUnquoted() throws IOException {
+        while (position < limit || fill()) {
+            int start = position;
+            position = nextSpecial(position);
+            while (position < limit && buffer[position] == '"') {
+                malformed = true;
+                position = nextSpecial(position + 1);
+            }
+            append(start, position - start);
+            if (position < limit) {
+                return;
+            }
+        }
+    }
+
+    // Index of the first separator, line break or quote at or after from, or limit if the buffer holds none.
+    private int nextSpecial(int from) {
+        int i = from;
+        for (; i + Long.BYTES <= limit; i += Long.BYTES) {
+            long word = (long) WORDS.get(buffer, i);
+            // Most words hold no byte low enough to be one, which one subtraction shows.
+            if (((word - BELOW_DASH) & ~word & HIGHS) == 0) {
+                continue;
+            }
+            long found = zeroBytes(word ^ COMMAS) | zeroBytes(word ^ NEWLINES) | zeroBytes(word ^ RETURNS)
+                    | zeroBytes(word ^ QUOTES);
+            if (found != 0) {
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+        }
+        for (; i < limit; i++) {
+            byte c = buffer[i];
+            if (c == ',' || c == '\n' || c == '\r' || c == '"') {
+                return i;
+            }
+        }
+        return limit;
+    }
+
+    // Sets the high bit of each zero byte of the word. A borrow can also flag bytes above a zero one, but the
+    // lowest flagged byte, the first in buffer order, is always a real zero.
+    private static long zeroBytes(long word) {
+        return (word - ONES) & ~word & HIGHS;
+    }
+
+    // Called after the opening quote; stops after the closing one.
+    private void readQuoted() throws IOException {
+        while (true) {
+            if (position == limit && !fill()) {
+                malformed = true;
+                return;
+            }
+            int start = position;
+            while (position < limit && buffer[position] != '"') {
+                if (buffer[position] == '\n') {
+                    line++;
+                }
+                position++;
+            }
+            append(start, position - start);
+            if (position == limit) {
+                continue;
+            }
+            position++;
+            if ((position == limit && !fill()) || buffer[position] != '"') {
+                return;
+            }
+            append(position, 1);
+            position++;
+        }
+    }
+
+    private void append(int start, int length) {
+        if (recordLength + length > record.length) {
+            record = Arrays.copyOf(record, Math.max(record.length * 2, recordLength + length));
+        }
+        System.arraycopy(buffer, start, record, recordLength, length);
+        recordLength += length;
+    }
+
+    private void endField() {
+        if (fieldCount == ends.length) {
+            growFields();
+        }
+        starts[fieldCount] = fieldCount == 0 ? 0 : ends[fieldCount - 1];
+        ends[fieldCount++] = recordLength;
+    }
+
+    private void growFields() {
+        starts = Arrays.copyOf(starts, starts.length * 2);
+        ends = Arrays.copyOf(ends, ends.length * 2);
+    }
+
+    private boolean fill() throws IOException {
+        int read = in.read(buffer, 0, buffer.length);
+        position = 0;
+        limit = Math.max(read, 0);
+        return read > 0;
+    }
+}
@@ -0,0 +1,80 @@
+package com.banking.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+
+// Writes RFC 4180 records that CsvReader reads back unchanged. A field is quoted only when it holds a separator,
+// quote or line break, so rows without those are written exactly as plain comma-joined lines. Records end in '\n'.
+public final class CsvWriter implements Closeable {
+    private final Writer out;
+    private final StringBuilder line = new StringBuilder(128);
+
+    public CsvWriter(Writer out) {
+        this.out = out;
+    }
+
+    public void writeRow(String... fields) throws IOException {
+        line.setLength(0);
+        appendRow(line, fields);
+        out.append(line).append('\n');
+    }
+
+    // One record without the line break.
+    public static String formatRow(String... fields) {
+        return appendRow(new StringBuilder(), fields).toString();
+    }
+
+    public static StringBuilder appendRow(StringBuilder out, String... fields) {
+        if (fields.length == 1 && (fields[0] == null || fields[0].isEmpty())) {
+            // A bare empty line would read back as a blank line and be skipped.
+            return out.append("\"\"");
+        }
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            appendField(out, fields[i]);
+        }
+        return out;
+    }
+
+    // Null is written as an empty field.
+    public static void appendField(StringBuilder out, String field) {
+        if (field == null) {
+            return;
+        }
+        if (!needsQuotes(field)) {
+            out.append(field);
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == '"') {
+                out.append('"');
+            }
+            out.append(c);
+        }
+        out.append('"');
+    }
+
+    private static boolean needsQuotes(String field) {
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
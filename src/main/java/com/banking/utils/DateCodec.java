@@ -0,0 +1,197 @@
+package com.banking.utils;
+
+import java.text.ParseException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.zone.ZoneRules;
+
+// Dates are yyyy-MM-dd in the local zone; timestamps are yyyy-MM-ddTHH:mm:ss.SSS+hh:mm with the local offset, so their
+// first ten characters are the same local date and both forms still sort and compare as strings. Parsing reads
+// digits straight into epoch arithmetic from year and month tables; nothing is shared mutably between threads.
+public final class DateCodec {
+    public static final int DATE_LENGTH = 10;
+    public static final int TIMESTAMP_LENGTH = 29;
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+    private static final int FIRST_YEAR = 1900;
+    private static final int YEARS = 300;
+    private static final int[] YEAR_START_DAY = new int[YEARS + 1];
+    private static final int[] DAYS_BEFORE_MONTH = {0, 0, 31, 59, 90, 120, 151, 181, 212, 243, 273, 304, 334};
+    private static final int[] DAYS_IN_MONTH = {0, 31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+    private static final char[] DIGIT_PAIRS = new char[200];
+    private static final ZoneId ZONE_ID = ZoneId.systemDefault();
+    private static final ZoneRules ZONE = ZONE_ID.getRules();
+    private static final boolean FIXED_ZONE = ZONE.isFixedOffset();
+    private static final int FIXED_OFFSET_SECONDS = ZONE.getOffset(Instant.EPOCH).getTotalSeconds();
+
+    static {
+        for (int i = 0; i <= YEARS; i++) {
+            YEAR_START_DAY[i] = (int) LocalDate.of(FIRST_YEAR + i, 1, 1).toEpochDay();
+        }
+        for (int i = 0; i < 100; i++) {
+            DIGIT_PAIRS[i * 2] = (char) ('0' + i / 10);
+            DIGIT_PAIRS[i * 2 + 1] = (char) ('0' + i % 10);
+        }
+    }
+
+    private DateCodec() { }
+
+    // Accepts either form. A bare date is the start of that day in the local zone.
+    public static long parse(CharSequence text) throws ParseException {
+        long epochDay = parseEpochDay(text);
+        if (text.length() == DATE_LENGTH) {
+            return startOfDay(epochDay);
+        }
+        if (text.length() != TIMESTAMP_LENGTH || text.charAt(10) != 'T' || text.charAt(13) != ':'
+                || text.charAt(16) != ':' || text.charAt(19) != '.' || text.charAt(26) != ':') {
+            throw new ParseException("Unparseable timestamp: \"" + text + "\"", 10);
+        }
+        int hour = digits(text, 11, 2, 23);
+        int minute = digits(text, 14, 2, 59);
+        int second = digits(text, 17, 2, 59);
+        int millis = digits(text, 20, 3, 999);
+        char sign = text.charAt(23);
+        if (sign != '+' && sign != '-') {
+            throw new ParseException("Unparseable timestamp: \"" + text + "\"", 23);
+        }
+        int offsetSeconds = (digits(text, 24, 2, 18) * 3600 + digits(text, 27, 2, 59) * 60) * (sign == '-' ? -1 : 1);
+        return epochDay * MILLIS_PER_DAY + ((hour * 60L + minute) * 60 + second - offsetSeconds) * 1000 + millis;
+    }
+
+    // The last millisecond of the given date, for inclusive date ranges.
+    public static long parseEndOfDay(CharSequence text) throws ParseException {
+        return startOfDay(parseEpochDay(text) + 1) - 1;
+    }
+
+    public static String formatDate(long millis) {
+        return appendDate(new StringBuilder(DATE_LENGTH), millis).toString();
+    }
+
+    public static String formatTimestamp(long millis) {
+        return appendTimestamp(new StringBuilder(TIMESTAMP_LENGTH), millis).toString();
+    }
+
+    public static StringBuilder appendDate(StringBuilder out, long millis) {
+        return appendEpochDay(out, Math.floorDiv(millis + writtenOffsetSeconds(millis) * 1000L, MILLIS_PER_DAY));
+    }
+
+    public static StringBuilder appendTimestamp(StringBuilder out, long millis) {
+        int offsetSeconds = writtenOffsetSeconds(millis);
+        long local = millis + offsetSeconds * 1000L;
+        appendEpochDay(out, Math.floorDiv(local, MILLIS_PER_DAY));
+        int ofDay = (int) Math.floorMod(local, MILLIS_PER_DAY);
+        out.append('T');
+        appendPair(out, ofDay / 3_600_000);
+        out.append(':');
+        appendPair(out, ofDay / 60_000 % 60);
+        out.append(':');
+        appendPair(out, ofDay / 1000 % 60);
+        out.append('.');
+        out.append((char) ('0' + ofDay % 1000 / 100));
+        appendPair(out, ofDay % 100);
+        out.append(offsetSeconds < 0 ? '-' : '+');
+        int offset = Math.abs(offsetSeconds);
+        appendPair(out, offset / 3600);
+        out.append(':');
+        appendPair(out, offset / 60 % 60);
+        return out;
+    }
+
+    // Compares only the date part of a date or timestamp with a yyyy-MM-dd date.
+    public static int compareDate(CharSequence value, CharSequence date) {
+        for (int i = 0; i < DATE_LENGTH; i++) {
+            int difference = value.charAt(i) - date.charAt(i);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return 0;
+    }
+
+    private static long parseEpochDay(CharSequence text) throws ParseException {
+        if (text.length() < DATE_LENGTH || text.charAt(4) != '-' || text.charAt(7) != '-') {
+            throw new ParseException("Unparseable date: \"" + text + "\"", 0);
+        }
+        int year = digits(text, 0, 4, 9999);
+        int month = digits(text, 5, 2, 12);
+        int day = digits(text, 8, 2, 31);
+        boolean leap = (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+        if (month == 0 || day == 0 || day > DAYS_IN_MONTH[month] + (leap && month == 2 ? 1 : 0)) {
+            throw new ParseException("Invalid date: \"" + text + "\"", 5);
+        }
+        if (year < FIRST_YEAR || year >= FIRST_YEAR + YEARS) {
+            return LocalDate.of(year, month, day).toEpochDay();
+        }
+        return YEAR_START_DAY[year - FIRST_YEAR] + DAYS_BEFORE_MONTH[month] + (leap && month > 2 ? 1 : 0) + day - 1;
+    }
+
+    private static int digits(CharSequence text, int from, int count, int max) throws ParseException {
+        int value = 0;
+        for (int i = from; i < from + count; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new ParseException("Unparseable date: \"" + text + "\"", i);
+            }
+            value = value * 10 + digit;
+        }
+        if (value > max) {
+            throw new ParseException("Unparseable date: \"" + text + "\"", from);
+        }
+        return value;
+    }
+
+    private static StringBuilder appendEpochDay(StringBuilder out, long epochDay) {
+        if (epochDay < YEAR_START_DAY[0] || epochDay >= YEAR_START_DAY[YEARS]) {
+            return out.append(LocalDate.ofEpochDay(epochDay));
+        }
+        // The table is sorted, so the year is found from an estimate that is off by at most one.
+        int index = (int) ((epochDay - YEAR_START_DAY[0]) * 400 / 146097);
+        while (index + 1 <= YEARS && YEAR_START_DAY[index + 1] <= epochDay) {
+            index++;
+        }
+        while (YEAR_START_DAY[index] > epochDay) {
+            index--;
+        }
+        int year = FIRST_YEAR + index;
+        int dayOfYear = (int) (epochDay - YEAR_START_DAY[index]);
+        boolean leap = YEAR_START_DAY[index + 1] - YEAR_START_DAY[index] == 366;
+        int month = Math.min(12, dayOfYear / 31 + 1);
+        while (month < 12 && monthStart(month + 1, leap) <= dayOfYear) {
+            month++;
+        }
+        while (monthStart(month, leap) > dayOfYear) {
+            month--;
+        }
+        appendPair(out, year / 100);
+        appendPair(out, year % 100);
+        out.append('-');
+        appendPair(out, month);
+        out.append('-');
+        appendPair(out, dayOfYear - monthStart(month, leap) + 1);
+        return out;
+    }
+
+    private static int monthStart(int month, boolean leap) {
+        return DAYS_BEFORE_MONTH[month] + (leap && month > 2 ? 1 : 0);
+    }
+
+    private static void appendPair(StringBuilder out, int value) {
+        out.append(DIGIT_PAIRS[value * 2]).append(DIGIT_PAIRS[value * 2 + 1]);
+    }
+
+    private static long startOfDay(long epochDay) {
+        if (FIXED_ZONE) {
+            return (epochDay * 86_400 - FIXED_OFFSET_SECONDS) * 1000;
+        }
+        // Midnight can fall into a transition gap or overlap; only bare dates get here, timestamps carry their offset.
+        return LocalDate.ofEpochDay(epochDay).atStartOfDay(ZONE_ID).toEpochSecond() * 1000;
+    }
+
+    // Historic local mean time offsets carry seconds; the written offset drops them so a timestamp still round-trips,
+    // and dates use the same one so they keep matching the first ten characters of the timestamp.
+    private static int writtenOffsetSeconds(long millis) {
+        int offsetSeconds = FIXED_ZONE ? FIXED_OFFSET_SECONDS
+                : ZONE.getOffset(Instant.ofEpochMilli(millis)).getTotalSeconds();
+        return offsetSeconds / 60 * 60;
+    }
+}
@@ -0,0 +1,9 @@
+package com.banking.utils;
+
+public interface IdGenerator {
+    long nextId();
+
+    // Lets a generator skip past ids that already exist, e.g. after loading data from storage.
+    default void observe(long existingId) {
+    }
+}
@@ -0,0 +1,152 @@
+package com.banking.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public final class Json {
+    private Json() { }
+
+    public static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder(value.length() + 2);
+        appendQuoted(sb, value);
+        return sb.toString();
+    }
+
+    public static void appendQuoted(StringBuilder sb, String value) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                }
+            }
+        }
+        sb.append('"');
+    }
+
+    // Parses a flat JSON object whose values are strings, numbers, booleans or null; values come back as strings.
+    public static Map<String, String> parseObject(String json) {
+        Map<String, String> result = new LinkedHashMap<>();
+        Parser parser = new Parser(json == null ? "" : json);
+        parser.skipWhitespace();
+        if (parser.atEnd()) {
+            return result;
+        }
+        parser.expect('{');
+        parser.skipWhitespace();
+        if (parser.peek() == '}') {
+            parser.pos++;
+            return result;
+        }
+        while (true) {
+            parser.skipWhitespace();
+            String key = parser.readString();
+            parser.skipWhitespace();
+            parser.expect(':');
+            parser.skipWhitespace();
+            result.put(key, parser.readValue());
+            parser.skipWhitespace();
+            char c = parser.next();
+            if (c == '}') {
+                return result;
+            }
+            if (c != ',') {
+                throw new IllegalArgumentException("Expected ',' or '}' at " + (parser.pos - 1));
+            }
+        }
+    }
+
+    private static class Parser {
+        private final String text;
+        private int pos;
+
+        private Parser(String text) {
+            this.text = text;
+        }
+
+        private boolean atEnd() {
+            return pos >= text.length();
+        }
+
+        private char peek() {
+            if (atEnd()) {
+                throw new IllegalArgumentException("Unexpected end of JSON");
+            }
+            return text.charAt(pos);
+        }
+
+        private char next() {
+            char c = peek();
+            pos++;
+            return c;
+        }
+
+        private void expect(char expected) {
+            if (next() != expected) {
+                throw new IllegalArgumentException("Expected '" + expected + "' at " + (pos - 1));
+            }
+        }
+
+        private void skipWhitespace() {
+            while (!atEnd() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private String readString() {
+            expect('"');
+            StringBuilder sb = new StringBuilder();
+            while (true) {
+                char c = next();
+                if (c == '"') {
+                    return sb.toString();
+                }
+                if (c == '\\') {
+                    char escaped = next();
+                    switch (escaped) {
+                        case 'n' -> sb.append('\n');
+                        case 'r' -> sb.append('\r');
+                        case 't' -> sb.append('\t');
+                        case 'b' -> sb.append('\b');
+                        case 'f' -> sb.append('\f');
+                        case 'u' -> {
+                            sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                            pos += 4;
+                        }
+                        default -> sb.append(escaped);
+                    }
+                } else {
+                    sb.append(c);
+                }
+            }
+        }
+
+        private String readValue() {
+            if (peek() == '"') {
+                return readString();
+            }
+            int start = pos;
+            while (!atEnd() && ",}] \t\r\n".indexOf(text.charAt(pos)) < 0) {
+                pos++;
+            }
+            String literal = text.substring(start, pos);
+            if (literal.isEmpty()) {
+                throw new IllegalArgumentException("Missing value at " + start);
+            }
+            return literal.equals("null") ? null : literal;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.banking.utils;
+
+import java.util.function.Consumer;
+
+// An immutable sparse array: a 32-way trie where set() copies only the nodes on the path to the index, so every
+// earlier version stays valid and can be read from other threads without locking.
+public final class PersistentVector<T> {
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+    private static final PersistentVector<?> EMPTY = new PersistentVector<>(new Object[WIDTH], 0, 0);
+
+    private final Object[] root;
+    private final int shift;
+    private final int size;
+
+    private PersistentVector(Object[] root, int shift, int size) {
+        this.root = root;
+        this.shift = shift;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> PersistentVector<T> empty() {
+        return (PersistentVector<T>) EMPTY;
+    }
+
+    // Number of non-null elements.
+    public int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        if (index < 0 || (index >>> shift) >= WIDTH) {
+            return null;
+        }
+        Object[] node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            node = (Object[]) node[(index >>> level) & MASK];
+            if (node == null) {
+                return null;
+            }
+        }
+        return (T) node[index & MASK];
+    }
+
+    // A null value removes the element.
+    public PersistentVector<T> set(int index, T value) {
+        if (index < 0) {
+            throw new IndexOutOfBoundsException("Negative index: " + index);
+        }
+        Object[] newRoot = root;
+        int newShift = shift;
+        while ((index >>> newShift) >= WIDTH) {
+            Object[] grown = new Object[WIDTH];
+            grown[0] = newRoot;
+            newRoot = grown;
+            newShift += BITS;
+        }
+        Object previous = get(index);
+        if (previous == value) {
+            return this;
+        }
+        int newSize = size + (previous == null ? 1 : 0) - (value == null ? 1 : 0);
+        return new PersistentVector<>(set(newRoot, newShift, index, value), newShift, newSize);
+    }
+
+    private static Object[] set(Object[] node, int level, int index, Object value) {
+        Object[] copy = node == null ? new Object[WIDTH] : node.clone();
+        int slot = (index >>> level) & MASK;
+        copy[slot] = level == 0 ? value : set((Object[]) copy[slot], level - BITS, index, value);
+        return copy;
+    }
+
+    // Visits the elements in index order.
+    public void forEach(Consumer<? super T> action) {
+        forEach(root, shift, action);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> void forEach(Object[] node, int level, Consumer<? super T> action) {
+        for (Object child : node) {
+            if (child == null) {
+                continue;
+            }
+            if (level == 0) {
+                action.accept((T) child);
+            } else {
+                forEach((Object[]) child, level - BITS, action);
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.banking.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class SnowflakeIdGenerator implements IdGenerator {
+    public static final long EPOCH_MILLIS = 1704067200000L; // 2024-01-01T00:00:00Z
+    private static final int SEQUENCE_BITS = 12;
+    private static final int WORKER_BITS = 10;
+    private static final long MAX_WORKER = (1L << WORKER_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private final long workerId;
+    // Packs (millis << SEQUENCE_BITS | sequence); a sequence overflow borrows the next millisecond instead of spinning.
+    private final AtomicLong state = new AtomicLong();
+
+    public SnowflakeIdGenerator(int workerId) {
+        if (workerId < 0 || workerId > MAX_WORKER) {
+            throw new IllegalArgumentException("Worker id must be between 0 and " + MAX_WORKER);
+        }
+        this.workerId = workerId;
+    }
+
+    @Override
+    public long nextId() {
+        long now = (System.currentTimeMillis() - EPOCH_MILLIS) << SEQUENCE_BITS;
+        long previous;
+        long next;
+        do {
+            previous = state.get();
+            next = now > previous ? now : previous + 1;
+        } while (!state.compareAndSet(previous, next));
+        long millis = next >>> SEQUENCE_BITS;
+        return (millis << (SEQUENCE_BITS + WORKER_BITS)) | (workerId << SEQUENCE_BITS) | (next & SEQUENCE_MASK);
+    }
+
+    @Override
+    public void observe(long existingId) {
+        long millis = existingId >>> (SEQUENCE_BITS + WORKER_BITS);
+        long packed = (millis << SEQUENCE_BITS) | (existingId & SEQUENCE_MASK);
+        state.accumulateAndGet(packed, Math::max);
+    }
+
+    public static long timestampMillis(long id) {
+        return (id >>> (SEQUENCE_BITS + WORKER_BITS)) + EPOCH_MILLIS;
+    }
+}
@@ -0,0 +1,39 @@
+package com.banking;
+
+import com.banking.api.HttpApiServer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MainTest {
+    @TempDir
+    Path directory;
+
+    // Without shards the API serves the database Main opens on first use.
+    @Test
+    void httpApiServesTheDefaultDatabase() throws Exception {
+        System.setProperty("banking.databasePath", directory + "/");
+        HttpApiServer server = Main.startHttpApi(0);
+        try {
+            assertNotNull(server);
+            HttpResponse<String> response = HttpClient.newHttpClient().send(HttpRequest.newBuilder(
+                    URI.create("http://localhost:" + server.getPort() + "/customers"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"name\":\"Ana\",\"surname\":\"Pop\",\"age\":30}"))
+                    .build(), HttpResponse.BodyHandlers.ofString());
+
+            assertEquals(201, response.statusCode(), response.body());
+        } finally {
+            System.clearProperty("banking.databasePath");
+            if (server != null) {
+                server.stop();
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.banking.api;
+
+import com.banking.services.BankService;
+import com.banking.services.StorageService;
+import com.banking.utils.AccountNumberGenerator;
+import com.banking.utils.SnowflakeIdGenerator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HttpApiServerTest {
+    @TempDir
+    Path directory;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private HttpApiServer server;
+
+    @BeforeEach
+    void start() throws Exception {
+        BankService service = new BankService(StorageService.forDirectory(directory + "/"), new AccountNumberGenerator(),
+                new SnowflakeIdGenerator(0));
+        server = new HttpApiServer(service, 0);
+        server.start();
+    }
+
+    @AfterEach
+    void stop() {
+        server.stop();
+    }
+
+    private HttpResponse<String> send(String method, String path, String body, String idempotencyKey) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + path))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body));
+        if (idempotencyKey != null) {
+            request.header("Idempotency-Key", idempotencyKey);
+        }
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> send(String method, String path, String body) throws Exception {
+        return send(method, path, body, null);
+    }
+
+    private static String field(String json, String name) {
+        Matcher matcher = Pattern.compile("\"" + name + "\":\"?([^\",}]*)").matcher(json);
+        assertTrue(matcher.find(), json);
+        return matcher.group(1);
+    }
+
+    @Test
+    void createsAccountsAndMovesMoney() throws Exception {
+        HttpResponse<String> customer = send("POST", "/customers", "{\"name\":\"Ana\",\"surname\":\"Pop\",\"age\":30}");
+        assertEquals(201, customer.statusCode(), customer.body());
+        String customerId = field(customer.body(), "id");
+        String from = field(send("POST", "/accounts", "{\"customerId\":\"" + customerId + "\",\"type\":\"PRIMARY\"}").body(),
+                "accountId");
+        String to = field(send("POST", "/accounts", "{\"customerId\":\"" + customerId + "\",\"type\":\"SAVINGS\"}").body(),
+                "accountId");
+
+        assertEquals("100.0", field(send("POST", "/accounts/" + from + "/deposit", "{\"amount\":100}").body(), "balance"));
+        assertEquals(200, send("POST", "/transfers", "{\"from\":\"" + from + "\",\"to\":\"" + to + "\",\"amount\":40}")
+                .statusCode());
+
+        assertEquals("60.0", field(send("GET", "/accounts/" + from, null).body(), "balance"));
+        assertEquals("40.0", field(send("GET", "/accounts/" + to, null).body(), "balance"));
+        assertTrue(send("GET", "/customers/" + customerId + "/accounts", null).body().contains(to));
+    }
+
+    // A retried request with the same key is applied once.
+    @Test
+    void appliesARetriedDepositOnce() throws Exception {
+        String customerId = field(send("POST", "/customers", "{\"name\":\"Ana\",\"surname\":\"Pop\",\"age\":30}").body(), "id");
+        String account = field(send("POST", "/accounts", "{\"customerId\":\"" + customerId + "\",\"type\":\"PRIMARY\"}")
+                .body(), "accountId");
+
+        send("POST", "/accounts/" + account + "/deposit", "{\"amount\":25}", "retry-1");
+        HttpResponse<String> retried = send("POST", "/accounts/" + account + "/deposit", "{\"amount\":25}", "retry-1");
+
+        assertEquals(200, retried.statusCode(), retried.body());
+        assertEquals("25.0", field(send("GET", "/accounts/" + account, null).body(), "balance"));
+    }
+
+    // Deleting a card takes it off the account and out of the service in one step, so a second delete finds nothing.
+    @Test
+    void deletesACard() throws Exception {
+        String customerId = field(send("POST", "/customers", "{\"name\":\"Ana\",\"surname\":\"Pop\",\"age\":30}").body(), "id");
+        String account = field(send("POST", "/accounts", "{\"customerId\":\"" + customerId + "\",\"type\":\"PRIMARY\"}")
+                .body(), "accountId");
+        String card = field(send("POST", "/accounts/" + account + "/cards", null).body(), "cardNumber");
+
+        assertEquals(200, send("DELETE", "/accounts/" + account + "/cards/" + card, null).statusCode());
+
+        assertFalse(send("GET", "/accounts/" + account, null).body().contains(card));
+        assertEquals(404, send("DELETE", "/accounts/" + account + "/cards/" + card, null).statusCode());
+    }
+
+    @Test
+    void mapsFailuresToStatusCodes() throws Exception {
+        String customerId = field(send("POST", "/customers", "{\"name\":\"Ana\",\"surname\":\"Pop\",\"age\":30}").body(), "id");
+        String account = field(send("POST", "/accounts", "{\"customerId\":\"" + customerId + "\",\"type\":\"PRIMARY\"}")
+                .body(), "accountId");
+
+        assertEquals(404, send("GET", "/customers/missing", null).statusCode());
+        assertEquals(404, send("GET", "/nothing", null).statusCode());
+        assertEquals(409, send("POST", "/accounts/" + account + "/withdraw", "{\"amount\":5}").statusCode());
+        assertEquals(400, send("POST", "/accounts/" + account + "/deposit", "{\"amount\":\"lots\"}").statusCode());
+        assertEquals(400, send("POST", "/customers", "{\"name\":\"Ana\"}").statusCode());
+        assertEquals(400, send("POST", "/customers", "not json").statusCode());
+    }
+}
@@ -0,0 +1,112 @@
+package com.banking.batch;
+
+import com.banking.enums.AccountType;
+import com.banking.models.Account;
+import com.banking.models.Card;
+import com.banking.models.Customer;
+import com.banking.services.BankService;
+import com.banking.services.StorageService;
+import com.banking.utils.AccountNumberGenerator;
+import com.banking.utils.SnowflakeIdGenerator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchRunnerTest {
+    @TempDir
+    Path directory;
+
+    private BankService open() {
+        return new BankService(StorageService.forDirectory(directory + "/db/"), new AccountNumberGenerator(),
+                new SnowflakeIdGenerator(0));
+    }
+
+    private List<String> run(BankService service, List<String> lines) throws Exception {
+        File input = directory.resolve("input.csv").toFile();
+        File output = directory.resolve("output.csv").toFile();
+        Files.write(input.toPath(), lines);
+        new BatchRunner(service, 4).run(input, output);
+        return Files.readAllLines(output.toPath());
+    }
+
+    // Each withdrawal only succeeds once the transfer before it has credited the account, whichever worker the
+    // transfer's source maps to.
+    @Test
+    void keepsFileOrderForEveryAccountATransferTouches() throws Exception {
+        BankService service = open();
+        Customer customer = service.createCustomer("Ana", "Pop", 30);
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            Account from = service.createAccount(customer.getId(), AccountType.PRIMARY);
+            Account to = service.createAccount(customer.getId(), AccountType.PRIMARY);
+            service.deposit(from.getAccountId(), 10);
+            lines.add("TRANSFER," + from.getAccountId() + "," + to.getAccountId() + ",10");
+            lines.add("WITHDRAW," + to.getAccountId() + ",10");
+        }
+
+        List<String> results = run(service, lines);
+
+        assertEquals(100, results.size());
+        for (String result : results) {
+            assertTrue(result.contains(",OK,"), result);
+        }
+    }
+
+    @Test
+    void keepsCardPaymentsInOrderWithTheirAccount() throws Exception {
+        BankService service = open();
+        Customer customer = service.createCustomer("Ana", "Pop", 30);
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            Account account = service.createAccount(customer.getId(), AccountType.PRIMARY);
+            Card card = service.issueCard(account.getAccountId());
+            lines.add("DEPOSIT," + account.getAccountId() + ",10");
+            lines.add("CARD_PAYMENT," + card.getCardNumber() + ",10");
+        }
+
+        List<String> results = run(service, lines);
+
+        for (String result : results) {
+            assertTrue(result.contains(",OK,"), result);
+        }
+    }
+
+    // Input lines are CSV records, so a quoted argument keeps its comma, and results point at the file's own lines
+    // past comments and blank lines.
+    @Test
+    void readsQuotedArgumentsAndNumbersResultsByFileLine() throws Exception {
+        BankService service = open();
+
+        List<String> results = run(service, List.of("# customers", "", "CREATE_CUSTOMER,\"Pop, Ana\",Ionescu,30",
+                "DEPOSIT,missing,10"));
+
+        assertEquals(2, results.size());
+        assertTrue(results.get(0).startsWith("3,OK,"), results.get(0));
+        assertTrue(results.get(1).startsWith("4,ERR,"), results.get(1));
+        String customerId = results.get(0).substring("3,OK,".length());
+        assertEquals("Pop, Ana", service.getCustomerById(customerId).getName());
+    }
+
+    // A failed run must not leave workers waiting for work that never comes, which would keep the JVM alive.
+    @Test
+    void stopsItsWorkersWhenTheRunFails() throws Exception {
+        BankService service = open();
+        Thread.currentThread().interrupt();
+
+        assertThrows(InterruptedException.class, () -> run(service, List.of("DEPOSIT,1,10", "DEPOSIT,2,10")));
+
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("batch-")) {
+                thread.join(5000);
+                assertFalse(thread.isAlive(), thread.getName());
+            }
+        }
+    }
+}
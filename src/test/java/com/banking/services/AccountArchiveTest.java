@@ -0,0 +1,101 @@
+package com.banking.services;
+
+import com.banking.enums.AccountType;
+import com.banking.models.Account;
+import com.banking.models.Customer;
+import com.banking.utils.AccountNumberGenerator;
+import com.banking.utils.CsvReader;
+import com.banking.utils.DateCodec;
+import com.banking.utils.SnowflakeIdGenerator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AccountArchiveTest {
+    @TempDir
+    Path directory;
+
+    private BankService open() {
+        return new BankService(StorageService.forDirectory(directory + "/"), new AccountNumberGenerator(),
+                new SnowflakeIdGenerator(0));
+    }
+
+    @Test
+    void archivesStoredPostingsUnderTheirIds() throws Exception {
+        BankService service = open();
+        Customer customer = service.createCustomer("Ana", "Pop", 30);
+        Account account = service.createAccount(customer.getId(), AccountType.PRIMARY);
+        service.deposit(account.getAccountId(), 100);
+        service.withdraw(account.getAccountId(), 40);
+        List<String> postingIds = new ArrayList<>();
+        service.getStorageService().scanTransactionRows(row -> postingIds.add(row[0]));
+
+        service.deleteAccount(account.getAccountId());
+
+        List<String[]> archived = readArchive();
+        List<String> archivedIds = new ArrayList<>();
+        for (String[] row : archived) {
+            if (row[0].equals("TRANSACTION")) {
+                assertEquals(account.getAccountId(), row[2]);
+                archivedIds.add(row[1]);
+            }
+        }
+        assertEquals(postingIds, archivedIds);
+        assertEquals(2, archivedIds.size());
+        List<String[]> retired = service.getStorageService().loadRetired();
+        assertEquals(1, retired.size());
+        assertArrayEquals(new String[]{"ACCOUNT", account.getAccountId()}, retired.get(0));
+    }
+
+    @Test
+    void archivesPostingsStillQueuedByDeferredSaves() throws Exception {
+        BankService service = open();
+        Customer customer = service.createCustomer("Ion", "Rus", 41);
+        Account account = service.createAccount(customer.getId(), AccountType.SAVINGS);
+        service.setDeferSaves(true);
+        service.deposit(account.getAccountId(), 25);
+        service.deleteCustomer(customer.getId());
+        service.setDeferSaves(false);
+
+        long transactions = readArchive().stream().filter(row -> row[0].equals("TRANSACTION")).count();
+        assertEquals(1, transactions);
+        List<String[]> retired = service.getStorageService().loadRetired();
+        assertArrayEquals(new String[]{"CUSTOMER", customer.getId()}, retired.get(0));
+        assertArrayEquals(new String[]{"ACCOUNT", account.getAccountId()}, retired.get(1));
+    }
+
+    @Test
+    void rebuildsRetiredIdsFromOlderArchives() throws Exception {
+        BankService service = open();
+        Customer customer = service.createCustomer("Dan", "Mihai", 52);
+        Account account = service.createAccount(customer.getId(), AccountType.PRIMARY);
+        service.deleteCustomer(customer.getId());
+        assertTrue(new File(directory.toFile(), "archive/retired.csv").delete());
+
+        List<String[]> retired = service.getStorageService().loadRetired();
+
+        assertEquals(2, retired.size());
+        assertEquals(customer.getId(), retired.get(0)[1]);
+        assertEquals(account.getAccountId(), retired.get(1)[1]);
+        assertTrue(new File(directory.toFile(), "archive/retired.csv").exists());
+    }
+
+    private List<String[]> readArchive() throws IOException {
+        File file = new File(directory.toFile(), "archive/archive-" + DateCodec.formatDate(System.currentTimeMillis()) + ".csv");
+        List<String[]> rows = new ArrayList<>();
+        try (CsvReader reader = new CsvReader(new FileInputStream(file))) {
+            while (reader.next()) {
+                rows.add(reader.toArray());
+            }
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,48 @@
+package com.banking.services;
+
+import com.banking.enums.AccountType;
+import com.banking.models.Account;
+import com.banking.models.Customer;
+import com.banking.utils.AccountNumberGenerator;
+import com.banking.utils.SnowflakeIdGenerator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AccountNumberReuseTest {
+    @TempDir
+    Path directory;
+
+    private BankService open() {
+        return new BankService(StorageService.forDirectory(directory + "/"), new AccountNumberGenerator(),
+                new SnowflakeIdGenerator(0));
+    }
+
+    // A deleted account's postings stay stored; a restarted service must not give its number to a new account,
+    // which would pick those postings up as its own history.
+    @Test
+    void deletedAccountNumbersAreNotReusedAfterRestart() throws Exception {
+        BankService service = open();
+        Customer customer = service.createCustomer("Ana", "Pop", 30);
+        Account deleted = service.createAccount(customer.getId(), AccountType.PRIMARY);
+        service.deposit(deleted.getAccountId(), 100);
+        service.deleteAccount(deleted.getAccountId());
+
+        service = open();
+        Account created = service.createAccount(customer.getId(), AccountType.PRIMARY);
+        assertNotEquals(deleted.getAccountId(), created.getAccountId());
+
+        service = open();
+        Account reloaded = service.getAccountById(created.getAccountId());
+        assertEquals(0.0, reloaded.getBalance());
+        assertTrue(reloaded.getTransactions().isEmpty());
+
+        Reconciliation.Report report = new Reconciliation(service, 2).run();
+        assertTrue(report.getMismatches().isEmpty(), report.getMismatches().toString());
+        assertEquals(0, report.getOrphanTransactionCount());
+        assertEquals(1, report.getArchivedTransactions());
+    }
+}
@@ -0,0 +1,70 @@
+package com.banking.services;
+
+import com.banking.models.Account;
+import com.banking.models.Customer;
+import com.banking.models.PrimaryAccount;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AccountTableTest {
+    private final Customer owner = new Customer("0001", "Ana", "Pop", 30);
+
+    @Test
+    void findsAccountsByNumberAndOrdinal() {
+        AccountTable table = new AccountTable();
+        Account first = new PrimaryAccount(100000001L, owner);
+        Account second = new PrimaryAccount(100000098L, owner);
+
+        assertEquals(0, table.add(first));
+        assertEquals(1, table.add(second));
+
+        assertSame(first, table.get(100000001L));
+        assertSame(second, table.get(second.getAccountId()));
+        assertSame(second, table.get(1));
+        assertNull(table.get(100000002L));
+        assertNull(table.get("not an iban"));
+        assertThrows(IllegalStateException.class, () -> table.add(new PrimaryAccount(100000001L, owner)));
+    }
+
+    // Removing from the middle of a probe chain must keep every later entry of the chain reachable.
+    @Test
+    void removeKeepsCollidingEntriesReachable() {
+        AccountTable table = new AccountTable();
+        Map<Long, Account> expected = new HashMap<>();
+        for (long number = 100000000L; number < 100000000L + 5000; number++) {
+            Account account = new PrimaryAccount(number, owner);
+            table.add(account);
+            expected.put(number, account);
+        }
+        Random random = new Random(42);
+        List<Long> numbers = new ArrayList<>(expected.keySet());
+        Collections.shuffle(numbers, random);
+        for (Long number : numbers.subList(0, 2500)) {
+            assertSame(expected.remove(number), table.remove(number));
+            assertNull(table.get(number.longValue()));
+        }
+
+        assertEquals(expected.size(), table.size());
+        for (Map.Entry<Long, Account> entry : expected.entrySet()) {
+            assertSame(entry.getValue(), table.get(entry.getKey().longValue()));
+        }
+        assertEquals(expected.size(), table.values().size());
+    }
+
+    @Test
+    void ordinalsAreNotReusedAfterRemove() {
+        AccountTable table = new AccountTable();
+        Account removed = new PrimaryAccount(100000001L, owner);
+        table.add(removed);
+        table.remove(removed.getAccountId());
+
+        Account added = new PrimaryAccount(100000001L, owner);
+        assertEquals(1, table.add(added));
+        assertNull(table.get(0));
+        assertSame(added, table.get(100000001L));
+        assertEquals(2, table.ordinalLimit());
+    }
+}
@@ -0,0 +1,118 @@
+package com.banking.services;
+
+import com.banking.models.AuditEntry;
+import com.banking.utils.AccountIds;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AuditServiceTest {
+    @TempDir
+    Path directory;
+
+    private static List<String> actions(AuditService audit) {
+        return audit.query(null, 0, Long.MAX_VALUE).stream().map(AuditEntry::getAction).toList();
+    }
+
+    @Test
+    void readerSeesWhatTheWriterFlushed() {
+        AuditService writer = AuditService.forDirectory(directory.toFile());
+        writer.event("deposit", 0).account("1000000001").amount(25).record();
+        writer.logAction("loadData");
+        writer.flush();
+
+        AuditService reader = AuditService.openReadOnly(directory.toFile());
+        List<AuditEntry> deposits = reader.query("deposit", 0, Long.MAX_VALUE);
+
+        assertEquals(1, deposits.size());
+        assertEquals(25.0, deposits.get(0).getAmount());
+        assertEquals(List.of("deposit", "loadData"), actions(reader));
+    }
+
+    // A second process over the same directory would interleave records and number actions on its own.
+    @Test
+    void onlyOneWriterPerDirectory() throws Exception {
+        AuditService writer = AuditService.forDirectory(directory.toFile());
+        AuditService second = AuditService.forDirectory(directory.toFile());
+
+        second.logAction("loadData");
+        second.flush();
+        writer.logAction("deposit");
+        writer.flush();
+
+        assertEquals(List.of("deposit"), actions(AuditService.openReadOnly(directory.toFile())));
+        assertEquals(List.of("0,deposit"), Files.readAllLines(directory.resolve("actions.dict")));
+    }
+
+    @Test
+    void readerLeavesAPartlyWrittenRecordAlone() throws Exception {
+        AuditService writer = AuditService.forDirectory(directory.toFile());
+        writer.logAction("deposit");
+        writer.flush();
+        File[] segments = directory.toFile().listFiles((dir, name) -> name.endsWith(".bin"));
+        assertNotNull(segments);
+        Files.write(segments[0].toPath(), new byte[10], StandardOpenOption.APPEND);
+        long length = segments[0].length();
+
+        assertEquals(List.of("deposit"), actions(AuditService.openReadOnly(directory.toFile())));
+        assertEquals(length, segments[0].length());
+    }
+
+    // A segment from an earlier hour is indexed and compressed when the writer starts, and its blocks are still
+    // found by action and time once they are gzip members.
+    @Test
+    void compressesASealedSegmentAndStillQueriesIt() throws Exception {
+        File source = directory.resolve("source").toFile();
+        AuditService first = AuditService.forDirectory(source);
+        for (int i = 0; i < 1000; i++) {
+            first.event(i % 10 == 0 ? "withdraw" : "deposit", 0).account(AccountIds.format(100000001L + i)).amount(i).record();
+        }
+        first.flush();
+        File[] written = source.listFiles((dir, name) -> name.endsWith(".bin"));
+        assertNotNull(written);
+        assertEquals(1, written.length);
+        long bucket = Long.parseLong(written[0].getName().substring(6, written[0].getName().length() - 4));
+        File target = directory.resolve("target").toFile();
+        target.mkdirs();
+        Files.copy(new File(source, "actions.dict").toPath(), target.toPath().resolve("actions.dict"));
+        // Moved an hour back, records and all; a record starts with its timestamp.
+        ByteBuffer records = ByteBuffer.wrap(Files.readAllBytes(written[0].toPath()));
+        for (int offset = 0; offset < records.limit(); offset += AuditService.RECORD_BYTES) {
+            records.putLong(offset, records.getLong(offset) - 3_600_000);
+        }
+        Files.write(target.toPath().resolve("audit-" + (bucket - 3_600_000) + ".bin"), records.array());
+
+        AuditService writer = AuditService.forDirectory(target);
+        File compressed = new File(target, "audit-" + (bucket - 3_600_000) + ".bin.gz");
+        long deadline = System.currentTimeMillis() + 10_000;
+        while ((!compressed.exists() || new File(target, "audit-" + (bucket - 3_600_000) + ".bin").exists())
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(compressed.exists());
+        writer.logAction("withdraw");
+
+        for (AuditService audit : List.of(writer, AuditService.openReadOnly(target))) {
+            List<AuditEntry> withdrawals = audit.query("withdraw", 0, Long.MAX_VALUE);
+            assertEquals(101, withdrawals.size());
+            assertEquals(10.0, withdrawals.get(1).getAmount());
+            assertEquals(AccountIds.format(100000991L), withdrawals.get(99).getAccountId());
+            assertEquals(1001, actions(audit).size());
+        }
+        List<AuditEntry> all = writer.query(null, 0, Long.MAX_VALUE);
+        long from = all.get(300).getTimestamp();
+        long to = all.get(700).getTimestamp();
+        assertTrue(writer.query(null, from, to).stream().allMatch(entry -> entry.getTimestamp() >= from
+                && entry.getTimestamp() <= to));
+        assertEquals(all.stream().filter(entry -> entry.getTimestamp() >= from && entry.getTimestamp() <= to).count(),
+                writer.query(null, from, to).size());
+    }
+}
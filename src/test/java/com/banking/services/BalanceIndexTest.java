@@ -0,0 +1,73 @@
+package com.banking.services;
+
+import com.banking.enums.AccountType;
+import com.banking.models.Account;
+import com.banking.models.Customer;
+import com.banking.utils.AccountNumberGenerator;
+import com.banking.utils.SnowflakeIdGenerator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BalanceIndexTest {
+    @TempDir
+    Path directory;
+
+    private BankService open() {
+        return new BankService(StorageService.forDirectory(directory + "/"), new AccountNumberGenerator(),
+                new SnowflakeIdGenerator(0));
+    }
+
+    private static List<String> ids(List<Account> accounts) {
+        return accounts.stream().map(Account::getAccountId).toList();
+    }
+
+    // Every balance change reaches the index through publishing, whatever operation made it.
+    @Test
+    void followsDepositsWithdrawalsTransfersAndDeletes() throws Exception {
+        BankService service = open();
+        Customer customer = service.createCustomer("Ana", "Pop", 30);
+        Account first = service.createAccount(customer.getId(), AccountType.PRIMARY);
+        Account second = service.createAccount(customer.getId(), AccountType.PRIMARY);
+        Account third = service.createAccount(customer.getId(), AccountType.SAVINGS);
+        service.deposit(first.getAccountId(), 100);
+        service.deposit(second.getAccountId(), 50);
+        service.deposit(third.getAccountId(), 75);
+        BalanceIndex index = service.getBalanceIndex();
+
+        assertEquals(ids(List.of(first, third, second)), ids(index.top(3)));
+        assertEquals(ids(List.of(first)), ids(index.top(1)));
+
+        service.transfer(first.getAccountId(), second.getAccountId(), 60);
+        service.withdraw(third.getAccountId(), 75);
+
+        assertEquals(ids(List.of(second, first, third)), ids(index.top(5)));
+        assertEquals(ids(List.of(third, first)), ids(index.range(0, 40)));
+        assertEquals(ids(List.of(second)), ids(index.range(110, 110)));
+        assertTrue(index.range(50, 10).isEmpty());
+
+        service.deleteAccount(third.getAccountId());
+
+        assertEquals(2, index.size());
+        assertEquals(ids(List.of(first)), ids(index.range(0, 40)));
+    }
+
+    @Test
+    void isRebuiltOnLoad() throws Exception {
+        BankService service = open();
+        Customer customer = service.createCustomer("Ana", "Pop", 30);
+        Account rich = service.createAccount(customer.getId(), AccountType.PRIMARY);
+        Account poor = service.createAccount(customer.getId(), AccountType.PRIMARY);
+        service.deposit(rich.getAccountId(), 1000);
+        service.deposit(poor.getAccountId(), 1);
+        service.flush();
+
+        BankService reopened = open();
+
+        assertEquals(ids(List.of(rich, poor)), ids(reopened.getBalanceIndex().top(10)));
+    }
+}
@@ -0,0 +1,131 @@
+package com.banking.services;
+
+import com.banking.enums.AccountType;
+import com.banking.exceptions.InvalidAccountException;
+import com.banking.models.Account;
+import com.banking.models.BankStatement;
+import com.banking.models.Card;
+import com.banking.models.Customer;
+import com.banking.models.Transaction;
+import com.banking.utils.AccountNumberGenerator;
+import com.banking.utils.SnowflakeIdGenerator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CustomerAndCardTest {
+    @TempDir
+    Path directory;
+
+    private BankService open() {
+        return new BankService(StorageService.forDirectory(directory + "/"), new AccountNumberGenerator(),
+                new SnowflakeIdGenerator(0));
+    }
+
+    @Test
+    void updatesOnlyTheGivenFields() throws Exception {
+        BankService service = open();
+        Customer customer = service.createCustomer("Ana", "Pop", 30);
+
+        Customer updated = service.updateCustomer(customer.getId(), "Ioana", null, 31);
+
+        assertSame(customer, updated);
+        assertEquals("Ioana", customer.getName());
+        assertEquals("Pop", customer.getSurname());
+        assertEquals(31, customer.getAge());
+        Customer reloaded = open().getCustomerById(customer.getId());
+        assertEquals("Ioana", reloaded.getName());
+        assertEquals(31, reloaded.getAge());
+        assertThrows(InvalidAccountException.class, () -> service.updateCustomer("missing", "X", null, null));
+    }
+
+    @Test
+    void issuedCardsAreAttachedAndUsable() throws Exception {
+        BankService service = open();
+        Customer customer = service.createCustomer("Ana", "Pop", 30);
+        Account account = service.createAccount(customer.getId(), AccountType.PRIMARY);
+        service.deposit(account.getAccountId(), 100);
+
+        Card card = service.issueCard(account.getAccountId());
+        service.cardPayment(card.getCardNumber(), 40);
+
+        assertEquals(List.of(card), account.getCards());
+        assertEquals(16, card.getCardNumber().length());
+        assertEquals(60.0, account.getBalance());
+        assertEquals(1, open().getAccountById(account.getAccountId()).getCards().size());
+    }
+
+    // Removing a card through the service is enough: the account no longer lists it, also after a reload.
+    @Test
+    void removedCardsLeaveTheirAccount() throws Exception {
+        BankService service = open();
+        Customer customer = service.createCustomer("Ana", "Pop", 30);
+        Account account = service.createAccount(customer.getId(), AccountType.PRIMARY);
+        Card kept = service.issueCard(account.getAccountId());
+        Card removed = service.issueCard(account.getAccountId());
+
+        service.removeCard(removed);
+
+        assertEquals(List.of(kept), account.getCards());
+        assertNull(service.getCardAccount(removed.getCardNumber()));
+        assertEquals(1, open().getAccountById(account.getAccountId()).getCards().size());
+    }
+
+    @Test
+    void drawsAgainWhileTheNumberIsTaken() throws Exception {
+        BankService service = open();
+        Customer customer = service.createCustomer("Ana", "Pop", 30);
+        Account account = service.createAccount(customer.getId(), AccountType.PRIMARY);
+        List<String> drawn = new ArrayList<>();
+
+        Card card = service.issueCard(account.getAccountId(), number -> drawn.add(number) && drawn.size() < 4);
+
+        assertEquals(4, drawn.size());
+        assertEquals(drawn.get(3), card.getCardNumber());
+    }
+
+    // A card must never be taken over by another account, which would then be charged for its payments.
+    @Test
+    void rejectsANumberAlreadyInUse() throws Exception {
+        BankService service = open();
+        Customer customer = service.createCustomer("Ana", "Pop", 30);
+        Account owner = service.createAccount(customer.getId(), AccountType.PRIMARY);
+        Account other = service.createAccount(customer.getId(), AccountType.PRIMARY);
+        service.deposit(owner.getAccountId(), 100);
+        service.deposit(other.getAccountId(), 100);
+        Card card = service.issueCard(owner.getAccountId());
+
+        assertThrows(IllegalArgumentException.class,
+                () -> service.addCard(new Card(card.getCardNumber(), new Date(), other)));
+        service.cardPayment(card.getCardNumber(), 10);
+
+        assertEquals(90.0, owner.getBalance());
+        assertEquals(100.0, other.getBalance());
+    }
+
+    @Test
+    void streamsTheSamePostingsAsItLists() throws Exception {
+        BankService service = open();
+        Customer customer = service.createCustomer("Ana", "Pop", 30);
+        Account account = service.createAccount(customer.getId(), AccountType.PRIMARY);
+        for (int i = 1; i <= 5; i++) {
+            service.deposit(account.getAccountId(), i);
+        }
+        BankStatement statement = service.generateBankStatement(account.getAccountId(), new Date(0),
+                new Date(Long.MAX_VALUE));
+        service.deposit(account.getAccountId(), 100);
+
+        List<Transaction> streamed = new ArrayList<>();
+        statement.forEachTransaction(streamed::add);
+
+        assertEquals(5, streamed.size());
+        assertEquals(statement.getTransactions(), streamed);
+        assertEquals(15.0, statement.getClosingBalance());
+    }
+}
@@ -0,0 +1,111 @@
+package com.banking.services;
+
+import com.banking.models.LedgerEvent;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventBusTest {
+    @TempDir
+    Path directory;
+
+    private JournalService journal() {
+        return new JournalService(directory.resolve("journal.log").toFile());
+    }
+
+    private static void deposit(JournalService journal, int count) {
+        for (int i = 0; i < count; i++) {
+            journal.append("DEPOSIT", "1000000001", "1.0", "tx-" + journal.getPosition());
+        }
+    }
+
+    private static void awaitPosition(EventBus.Subscription subscription, long position) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (subscription.getPosition() < position && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(position, subscription.getPosition());
+    }
+
+    private static List<String> expected(int from, int to) {
+        return IntStream.range(from, to).mapToObj(i -> "tx-" + i).toList();
+    }
+
+    // A subscriber that throws gets the same events again instead of having them skipped.
+    @Test
+    void redeliversABatchTheSubscriberFailedOn() throws Exception {
+        JournalService journal = journal();
+        EventBus bus = new EventBus(journal, 64, directory.resolve("subscribers").toFile());
+        List<String> received = new CopyOnWriteArrayList<>();
+        AtomicInteger failures = new AtomicInteger(2);
+
+        try (EventBus.Subscription subscription = bus.subscribeDurable("ledger", events -> {
+            if (failures.getAndDecrement() > 0) {
+                throw new IllegalStateException("not yet");
+            }
+            for (LedgerEvent event : events) {
+                received.add(event.getTransactionId());
+            }
+        })) {
+            deposit(journal, 10);
+            awaitPosition(subscription, 10);
+        }
+
+        assertEquals(expected(0, 10), received);
+        assertEquals("10", Files.readString(new File(directory.toFile(), "subscribers/ledger.offset").toPath()));
+    }
+
+    // Replaying from the journal stops at a failed batch and resumes from it.
+    @Test
+    void catchUpRetriesFromTheFailedBatch() throws Exception {
+        JournalService journal = journal();
+        EventBus bus = new EventBus(journal, 8, directory.resolve("subscribers").toFile());
+        deposit(journal, 3000);
+        List<String> received = new CopyOnWriteArrayList<>();
+        AtomicInteger calls = new AtomicInteger();
+
+        try (EventBus.Subscription subscription = bus.subscribe("ledger", 0, events -> {
+            if (calls.incrementAndGet() == 2) {
+                throw new IllegalStateException("once");
+            }
+            for (LedgerEvent event : events) {
+                received.add(event.getTransactionId());
+            }
+        })) {
+            awaitPosition(subscription, 3000);
+        }
+
+        assertEquals(expected(0, 3000), received);
+    }
+
+    @Test
+    void durableSubscriberResumesAfterItsOffset() throws Exception {
+        JournalService journal = journal();
+        EventBus bus = new EventBus(journal, 64, directory.resolve("subscribers").toFile());
+        List<String> received = new CopyOnWriteArrayList<>();
+        try (EventBus.Subscription subscription = bus.subscribeDurable("ledger", events -> { })) {
+            deposit(journal, 5);
+            awaitPosition(subscription, 5);
+        }
+        deposit(journal, 5);
+
+        try (EventBus.Subscription subscription = bus.subscribeDurable("ledger", events -> {
+            for (LedgerEvent event : events) {
+                received.add(event.getTransactionId());
+            }
+        })) {
+            awaitPosition(subscription, 10);
+        }
+
+        assertEquals(expected(5, 10), received);
+    }
+}
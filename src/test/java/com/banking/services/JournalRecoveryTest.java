@@ -0,0 +1,108 @@
+package com.banking.services;
+
+import com.banking.enums.AccountType;
+import com.banking.models.Account;
+import com.banking.models.Customer;
+import com.banking.utils.AccountNumberGenerator;
+import com.banking.utils.SnowflakeIdGenerator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JournalRecoveryTest {
+    @TempDir
+    Path directory;
+
+    private BankService open() {
+        return new BankService(StorageService.forDirectory(directory + "/"), new AccountNumberGenerator(),
+                new SnowflakeIdGenerator(0));
+    }
+
+    // The key is written in the DEPOSIT record itself, so there is no point where the deposit is journaled and the
+    // key is not.
+    @Test
+    void keepsTheIdempotencyKeyInTheMutationRecord() throws Exception {
+        BankService service = open();
+        Customer customer = service.createCustomer("Ana", "Pop", 30);
+        Account account = service.createAccount(customer.getId(), AccountType.PRIMARY);
+
+        service.deposit("key-1", account.getAccountId(), 25);
+
+        List<String> lines = Files.readAllLines(directory.resolve("journal.log"));
+        assertTrue(lines.get(lines.size() - 1).contains(",DEPOSIT,"), lines.toString());
+        assertTrue(lines.get(lines.size() - 1).contains(",IDEMPOTENCY,key-1,"), lines.toString());
+
+        BankService restarted = open();
+        restarted.deposit("key-1", account.getAccountId(), 25);
+        assertEquals(25.0, restarted.getAccountById(account.getAccountId()).getBalance());
+        assertThrows(IllegalArgumentException.class, () -> restarted.deposit("key-1", account.getAccountId(), 30));
+    }
+
+    // Money moves only after its record is journaled, so retrying a key whose append failed does not move it again.
+    @Test
+    void failedAppendLeavesBalancesForTheRetry() throws Exception {
+        BankService service = open();
+        Customer customer = service.createCustomer("Ana", "Pop", 30);
+        Account x = service.createAccount(customer.getId(), AccountType.PRIMARY);
+        Account y = service.createAccount(customer.getId(), AccountType.PRIMARY);
+        service.deposit(x.getAccountId(), 100);
+        service.getJournal().close();
+        File journal = directory.resolve("journal.log").toFile();
+        assertTrue(journal.delete());
+        assertTrue(journal.mkdir());
+
+        for (int i = 0; i < 3; i++) {
+            assertThrows(UncheckedIOException.class, () -> service.transfer("key-1", x.getAccountId(), y.getAccountId(), 10));
+            assertThrows(UncheckedIOException.class, () -> service.withdraw("key-2", x.getAccountId(), 10));
+            assertThrows(UncheckedIOException.class, () -> service.deposit("key-3", y.getAccountId(), 10));
+        }
+
+        assertEquals(100.0, service.getAccountById(x.getAccountId()).getBalance());
+        assertEquals(0.0, service.getAccountById(y.getAccountId()).getBalance());
+        assertEquals(100.0, service.snapshot().getBalance(x));
+        assertEquals(1, service.generateBankStatement(x.getAccountId(), new Date(0), new Date(Long.MAX_VALUE))
+                .getTransactions().size());
+    }
+
+    // Legs open at the checkpoint come from the checkpoint file, later ones from the journal after it, so recovery
+    // still finds both once the journal up to the checkpoint is gone.
+    @Test
+    void recoversPreparedLegsFromTheCheckpoint() throws Exception {
+        System.setProperty("banking.journal.checkpointRecords", "5");
+        try {
+            BankService service = open();
+            Customer customer = service.createCustomer("Ana", "Pop", 30);
+            Account first = service.createAccount(customer.getId(), AccountType.PRIMARY);
+            Account second = service.createAccount(customer.getId(), AccountType.PRIMARY);
+            service.deposit(first.getAccountId(), 100);
+            service.prepareTransfer("t1", first.getAccountId(), 40, true);
+            service.prepareTransfer("t0", second.getAccountId(), 1, false);
+            service.abortTransfer("t0");
+            for (int i = 0; i < 10; i++) {
+                service.deposit(second.getAccountId(), 1);
+            }
+            service.prepareTransfer("t2", second.getAccountId(), 40, false);
+            File checkpoint = directory.resolve("journal.checkpoint").toFile();
+            assertTrue(checkpoint.exists());
+            long position = Long.parseLong(Files.readAllLines(checkpoint.toPath()).get(0));
+            service.getJournal().compact(position, Long.MAX_VALUE);
+
+            BankService restarted = open();
+            assertEquals(List.of("t1", "t2"), restarted.recoverPreparedTransfers().stream().sorted().toList());
+            restarted.commitTransfer("t1");
+            restarted.commitTransfer("t2");
+            assertEquals(60.0, restarted.getAccountById(first.getAccountId()).getBalance());
+            assertEquals(50.0, restarted.getAccountById(second.getAccountId()).getBalance());
+        } finally {
+            System.clearProperty("banking.journal.checkpointRecords");
+        }
+    }
+}
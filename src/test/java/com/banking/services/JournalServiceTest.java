@@ -0,0 +1,114 @@
+package com.banking.services;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JournalServiceTest {
+    @TempDir
+    Path directory;
+
+    private static List<Long> positionsAfter(JournalService journal, long position) {
+        List<Long> positions = new ArrayList<>();
+        journal.replay(position, record -> positions.add(record.getPosition()));
+        return positions;
+    }
+
+    @Test
+    void replaysOnlyRecordsAfterThePosition() {
+        JournalService journal = new JournalService(directory.resolve("journal.log").toFile());
+        for (int i = 0; i < 500; i++) {
+            journal.append("DEPOSIT", "1000000001", "1.0", "tx-" + i);
+        }
+
+        assertEquals(List.of(498L, 499L, 500L), positionsAfter(journal, 497));
+        assertEquals(500, positionsAfter(journal, 0).size());
+        assertTrue(positionsAfter(journal, 500).isEmpty());
+    }
+
+    // A crash in the middle of a write leaves part of a line; reopening cuts it off instead of numbering after it.
+    @Test
+    void dropsAPartlyWrittenLastRecord() throws Exception {
+        File file = directory.resolve("journal.log").toFile();
+        JournalService journal = new JournalService(file);
+        journal.append("DEPOSIT", "1000000001", "1.0", "tx-1");
+        journal.append("DEPOSIT", "1000000001", "2.0", "tx-2");
+        journal.close();
+        Files.writeString(file.toPath(), "3,1700000000000,DEPO", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        JournalService reopened = new JournalService(file);
+        assertEquals(2, reopened.getPosition());
+        assertEquals(3, reopened.append("DEPOSIT", "1000000001", "3.0", "tx-3"));
+
+        List<String> types = new ArrayList<>();
+        reopened.replay(0, record -> types.add(record.getType() + record.getPosition()));
+        assertEquals(List.of("DEPOSIT1", "DEPOSIT2", "DEPOSIT3"), types);
+    }
+
+    @Test
+    void failsTheAppendAndEveryOneAfterIt() {
+        File file = directory.resolve("missing/journal.log").toFile();
+        JournalService journal = new JournalService(file);
+
+        assertThrows(UncheckedIOException.class, () -> journal.append("DEPOSIT", "1000000001", "1.0", "tx-1"));
+        assertTrue(file.getParentFile().mkdirs());
+        assertThrows(UncheckedIOException.class, () -> journal.append("DEPOSIT", "1000000001", "1.0", "tx-1"));
+        assertEquals(0, journal.getPosition());
+    }
+
+    @Test
+    void compactionKeepsPositionsAfterTheCut() throws Exception {
+        File file = directory.resolve("journal.log").toFile();
+        JournalService journal = new JournalService(file);
+        for (int i = 0; i < 100; i++) {
+            journal.append("DEPOSIT", "1000000001", "1.0", "tx-" + i);
+        }
+        long before = file.length();
+
+        journal.compact(60, Long.MAX_VALUE);
+
+        assertTrue(file.length() < before);
+        assertEquals(40, positionsAfter(journal, 0).size());
+        assertEquals(61L, (long) positionsAfter(journal, 0).get(0));
+        assertEquals(101, journal.append("DEPOSIT", "1000000001", "1.0", "tx-100"));
+        assertEquals(101, new JournalService(file).getPosition());
+    }
+
+    // Records inside the idempotency window are kept even when the checkpoint is past them.
+    @Test
+    void compactionKeepsRecentRecords() throws Exception {
+        JournalService journal = new JournalService(directory.resolve("journal.log").toFile());
+        for (int i = 0; i < 10; i++) {
+            journal.append("DEPOSIT", "1000000001", "1.0", "tx-" + i);
+        }
+
+        journal.compact(10, 0);
+
+        assertEquals(10, positionsAfter(journal, 0).size());
+    }
+
+    // A journal compacted up to its last record still reopens at that position.
+    @Test
+    void compactionKeepsTheLastRecord() throws Exception {
+        File file = directory.resolve("journal.log").toFile();
+        JournalService journal = new JournalService(file);
+        for (int i = 0; i < 10; i++) {
+            journal.append("DEPOSIT", "1000000001", "1.0", "tx-" + i);
+        }
+
+        journal.compact(10, Long.MAX_VALUE);
+
+        assertEquals(List.of(10L), positionsAfter(journal, 0));
+        assertEquals(10, new JournalService(file).getPosition());
+    }
+}
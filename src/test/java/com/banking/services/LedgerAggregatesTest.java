@@ -0,0 +1,124 @@
+package com.banking.services;
+
+import com.banking.enums.AccountType;
+import com.banking.enums.TransactionType;
+import com.banking.models.Account;
+import com.banking.models.Card;
+import com.banking.models.Customer;
+import com.banking.utils.AccountNumberGenerator;
+import com.banking.utils.CsvWriter;
+import com.banking.utils.DateCodec;
+import com.banking.utils.SnowflakeIdGenerator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LedgerAggregatesTest {
+    @TempDir
+    Path directory;
+
+    private BankService open() {
+        return new BankService(StorageService.forDirectory(directory + "/"), new AccountNumberGenerator(),
+                new SnowflakeIdGenerator(0));
+    }
+
+    @Test
+    void keepsTotalsPerCustomerTypeAndDay() throws Exception {
+        BankService service = open();
+        Customer ana = service.createCustomer("Ana", "Pop", 30);
+        Customer ion = service.createCustomer("Ion", "Pop", 40);
+        Account primary = service.createAccount(ana.getId(), AccountType.PRIMARY);
+        Account savings = service.createAccount(ana.getId(), AccountType.SAVINGS);
+        Account other = service.createAccount(ion.getId(), AccountType.PRIMARY);
+        service.deposit(primary.getAccountId(), 100.10);
+        service.deposit(savings.getAccountId(), 20);
+        service.deposit(other.getAccountId(), 5);
+        service.transfer(primary.getAccountId(), other.getAccountId(), 0.10);
+        LedgerAggregates aggregates = service.getAggregates();
+        String today = DateCodec.formatDate(System.currentTimeMillis());
+
+        assertEquals(120.0, aggregates.getCustomerBalance(ana.getId()));
+        assertEquals(5.10, aggregates.getCustomerBalance(ion.getId()));
+        assertEquals(105.10, aggregates.getBalance(AccountType.PRIMARY));
+        assertEquals(20.0, aggregates.getBalance(AccountType.SAVINGS));
+        assertEquals(2, aggregates.getAccountCount(AccountType.PRIMARY));
+        assertEquals(125.10, aggregates.getTotalBalance());
+        assertEquals(125.20, aggregates.getDailyTotal(today, TransactionType.DEPOSIT));
+        assertEquals(4, aggregates.getDailyCount(today, TransactionType.DEPOSIT));
+        assertEquals(1, aggregates.getDailyCount(today, TransactionType.WITHDRAWAL));
+        assertEquals(0, aggregates.getDailyCount("2000-01-01", TransactionType.DEPOSIT));
+    }
+
+    @Test
+    void countsCardsAndBlockedCards() throws Exception {
+        BankService service = open();
+        Customer customer = service.createCustomer("Ana", "Pop", 30);
+        Account account = service.createAccount(customer.getId(), AccountType.PRIMARY);
+        Card first = service.issueCard(account.getAccountId());
+        service.issueCard(account.getAccountId());
+
+        service.setCardBlocked(first.getCardNumber(), true);
+        assertEquals(2, service.getAggregates().getCardCount());
+        assertEquals(1, service.getAggregates().getBlockedCardCount());
+
+        service.removeCard(first);
+        assertEquals(1, service.getAggregates().getCardCount());
+        assertEquals(0, service.getAggregates().getBlockedCardCount());
+    }
+
+    // A restart seeds the balances from the accounts and the daily totals from the stored postings.
+    @Test
+    void isSeededOnLoad() throws Exception {
+        BankService service = open();
+        Customer customer = service.createCustomer("Ana", "Pop", 30);
+        Account account = service.createAccount(customer.getId(), AccountType.PRIMARY);
+        service.deposit(account.getAccountId(), 40);
+        service.withdraw(account.getAccountId(), 15);
+        service.flush();
+        String today = DateCodec.formatDate(System.currentTimeMillis());
+
+        LedgerAggregates aggregates = open().getAggregates();
+
+        assertEquals(25.0, aggregates.getCustomerBalance(customer.getId()));
+        assertEquals(1, aggregates.getAccountCount(AccountType.PRIMARY));
+        assertEquals(40.0, aggregates.getDailyTotal(today, TransactionType.DEPOSIT));
+        assertEquals(15.0, aggregates.getDailyTotal(today, TransactionType.WITHDRAWAL));
+    }
+
+    // Daily totals come back from the last checkpoint plus the journal after it; the stored postings are read only
+    // when there is no save, which a row written behind the service's back shows.
+    @Test
+    void restoresDailyTotalsFromTheCheckpointAndJournal() throws Exception {
+        System.setProperty("banking.journal.checkpointRecords", "20");
+        try {
+            BankService service = open();
+            Customer customer = service.createCustomer("Ana", "Pop", 30);
+            Account account = service.createAccount(customer.getId(), AccountType.PRIMARY);
+            for (int i = 0; i < 50; i++) {
+                service.deposit(account.getAccountId(), 2);
+            }
+            service.withdraw(account.getAccountId(), 15);
+            String today = DateCodec.formatDate(System.currentTimeMillis());
+            Files.writeString(directory.resolve("transactions.csv"),
+                    CsvWriter.formatRow("900", account.getAccountId(), "DEPOSIT", "7.0", today) + "\n",
+                    StandardOpenOption.APPEND);
+
+            LedgerAggregates restored = open().getAggregates();
+            assertEquals(100.0, restored.getDailyTotal(today, TransactionType.DEPOSIT));
+            assertEquals(50, restored.getDailyCount(today, TransactionType.DEPOSIT));
+            assertEquals(15.0, restored.getDailyTotal(today, TransactionType.WITHDRAWAL));
+
+            Files.delete(directory.resolve("aggregates.checkpoint"));
+            LedgerAggregates counted = open().getAggregates();
+            assertEquals(107.0, counted.getDailyTotal(today, TransactionType.DEPOSIT));
+            assertEquals(15.0, counted.getDailyTotal(today, TransactionType.WITHDRAWAL));
+        } finally {
+            System.clearProperty("banking.journal.checkpointRecords");
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.banking.services;
+
+import com.banking.enums.AccountType;
+import com.banking.enums.TransactionType;
+import com.banking.exceptions.InvalidAccountException;
+import com.banking.models.Account;
+import com.banking.models.BankStatement;
+import com.banking.models.Customer;
+import com.banking.models.Transaction;
+import com.banking.utils.AccountNumberGenerator;
+import com.banking.utils.SnowflakeIdGenerator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LedgerSnapshotTest {
+    @TempDir
+    Path directory;
+
+    private BankService open() {
+        return new BankService(StorageService.forDirectory(directory + "/"), new AccountNumberGenerator(),
+                new SnowflakeIdGenerator(0));
+    }
+
+    private static double sum(BankStatement statement) {
+        double[] total = {0};
+        statement.forEachTransaction(transaction -> total[0] += signed(transaction));
+        return total[0];
+    }
+
+    private static double signed(Transaction transaction) {
+        return transaction.getType() == TransactionType.WITHDRAWAL ? -transaction.getAmount() : transaction.getAmount();
+    }
+
+    @Test
+    void anOlderSnapshotKeepsItsBalancesAndPostings() throws Exception {
+        BankService service = open();
+        Customer customer = service.createCustomer("Ana", "Pop", 30);
+        Account account = service.createAccount(customer.getId(), AccountType.PRIMARY);
+        service.deposit(account.getAccountId(), 10);
+        LedgerSnapshot before = service.snapshot();
+
+        service.deposit(account.getAccountId(), 5);
+        service.createAccount(customer.getId(), AccountType.SAVINGS);
+
+        assertEquals(10.0, before.getBalance(account));
+        assertEquals(1, before.getAccounts().size());
+        int[] postings = {0};
+        before.forEachTransaction(account, new Date(0), new Date(Long.MAX_VALUE), transaction -> postings[0]++);
+        assertEquals(1, postings[0]);
+        assertEquals(15.0, service.snapshot().getBalance(account));
+        assertEquals(2, service.snapshot().getAccounts(customer.getId()).size());
+        assertTrue(service.snapshot().getVersion() > before.getVersion());
+    }
+
+    // Every statement's postings add up to its closing balance, however the writer's deposits interleave.
+    @Test
+    void statementsAgreeWithTheirClosingBalanceUnderWrites() throws Exception {
+        BankService service = open();
+        Customer customer = service.createCustomer("Ana", "Pop", 30);
+        Account account = service.createAccount(customer.getId(), AccountType.PRIMARY);
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread writer = new Thread(() -> {
+            while (running.get()) {
+                try {
+                    service.deposit(account.getAccountId(), 1);
+                } catch (InvalidAccountException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+        writer.start();
+        try {
+            for (int i = 0; i < 200; i++) {
+                BankStatement statement = service.generateBankStatement(account.getAccountId(), new Date(0),
+                        new Date(Long.MAX_VALUE));
+                assertEquals(statement.getClosingBalance(), sum(statement));
+            }
+        } finally {
+            running.set(false);
+            writer.join();
+        }
+    }
+
+    @Test
+    void readersDoNotWaitForTheServiceLock() throws Exception {
+        BankService service = open();
+        Customer customer = service.createCustomer("Ana", "Pop", 30);
+        Account account = service.createAccount(customer.getId(), AccountType.PRIMARY);
+        service.deposit(account.getAccountId(), 10);
+        CountDownLatch held = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread holder = new Thread(() -> {
+            synchronized (service) {
+                held.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        holder.start();
+        held.await();
+        List<Object> results = new CopyOnWriteArrayList<>();
+        Thread reader = new Thread(() -> {
+            results.add(service.getAllAccounts().size());
+            results.add(service.getAllCustomers().size());
+            try {
+                results.add(service.generateBankStatement(account.getAccountId(), new Date(0),
+                        new Date(Long.MAX_VALUE)).getClosingBalance());
+            } catch (InvalidAccountException e) {
+                results.add(e);
+            }
+        });
+        try {
+            reader.start();
+            reader.join(5000);
+            assertFalse(reader.isAlive());
+            assertEquals(List.of(1, 1, 10.0), results);
+        } finally {
+            release.countDown();
+            holder.join();
+            reader.join();
+        }
+    }
+}
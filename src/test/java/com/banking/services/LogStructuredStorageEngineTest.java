@@ -0,0 +1,149 @@
+package com.banking.services;
+
+import com.banking.enums.StorageTable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogStructuredStorageEngineTest {
+    @TempDir
+    Path directory;
+
+    private LogStructuredStorageEngine open(int memtableRows, int maxRuns) throws IOException {
+        return new LogStructuredStorageEngine(directory.toFile(), memtableRows, maxRuns);
+    }
+
+    private static String key(int i) {
+        return String.format("c%04d", i);
+    }
+
+    private static void put(StorageEngine engine, int i, String name) throws IOException {
+        engine.write(StorageTable.CUSTOMERS, List.<String[]>of(new String[]{key(i), name}), List.of());
+    }
+
+    private static void delete(StorageEngine engine, int i) throws IOException {
+        engine.write(StorageTable.CUSTOMERS, List.of(), List.of(key(i)));
+    }
+
+    private static List<String> keys(StorageEngine engine, String fromKey, String toKey) throws IOException {
+        List<String> keys = new ArrayList<>();
+        engine.scan(StorageTable.CUSTOMERS, fromKey, toKey, row -> keys.add(row[0]));
+        return keys;
+    }
+
+    private File[] runs() {
+        File[] runs = directory.resolve("customers").toFile().listFiles((dir, name) -> name.startsWith("run-"));
+        assertNotNull(runs);
+        return runs;
+    }
+
+    // Overwrites and deletes spread over many flushed runs still read back as the latest value once merged.
+    @Test
+    void compactionKeepsTheNewestVersionOfEachKey() throws IOException {
+        try (LogStructuredStorageEngine engine = open(8, 2)) {
+            for (int i = 0; i < 100; i++) {
+                put(engine, i, "first");
+            }
+            for (int i = 0; i < 100; i += 3) {
+                put(engine, i, "second");
+            }
+            for (int i = 1; i < 100; i += 3) {
+                delete(engine, i);
+            }
+
+            assertTrue(runs().length <= 3, runs().length + " runs");
+            assertEquals("second", engine.get(StorageTable.CUSTOMERS, key(0))[1]);
+            assertNull(engine.get(StorageTable.CUSTOMERS, key(1)));
+            assertEquals("first", engine.get(StorageTable.CUSTOMERS, key(2))[1]);
+            List<String> keys = keys(engine, null, null);
+            assertEquals(67, keys.size());
+            assertFalse(keys.contains(key(1)));
+            assertEquals(keys.stream().sorted().toList(), keys);
+        }
+    }
+
+    // A delete flushed on top of an older run hides the key until the merge drops both.
+    @Test
+    void tombstoneHidesAKeyInAnOlderRun() throws IOException {
+        try (LogStructuredStorageEngine engine = open(1, 3)) {
+            put(engine, 1, "Ana");
+            put(engine, 2, "Ion");
+            delete(engine, 1);
+
+            assertNull(engine.get(StorageTable.CUSTOMERS, key(1)));
+            assertEquals(List.of(key(2)), keys(engine, null, null));
+
+            put(engine, 3, "Eva");
+            assertEquals(1, runs().length);
+            assertNull(engine.get(StorageTable.CUSTOMERS, key(1)));
+            assertEquals(List.of(key(2), key(3)), keys(engine, null, null));
+        }
+    }
+
+    @Test
+    void scansAKeyRange() throws IOException {
+        try (LogStructuredStorageEngine engine = open(4, 4)) {
+            for (int i = 0; i < 10; i++) {
+                put(engine, i, "n" + i);
+            }
+
+            assertEquals(List.of(key(3), key(4), key(5)), keys(engine, key(3), key(6)));
+            assertEquals(List.of(key(0), key(1)), keys(engine, null, key(2)));
+            assertEquals(List.of(key(8), key(9)), keys(engine, key(8), null));
+            assertEquals(List.of(), keys(engine, key(6), key(3)));
+        }
+    }
+
+    // Rows still only in the write-ahead log come back after a crash; a torn last record is cut off.
+    @Test
+    void recoversTheWriteAheadLogAndDropsATornTail() throws IOException {
+        LogStructuredStorageEngine crashed = open(1000, 4);
+        put(crashed, 1, "Ana");
+        delete(crashed, 1);
+        put(crashed, 2, "Ion");
+        Path wal = directory.resolve("customers/wal.log");
+        long length = Files.size(wal);
+        Files.write(wal, new byte[]{0, 0, 0, 40, 1, 2}, StandardOpenOption.APPEND);
+
+        try (LogStructuredStorageEngine engine = open(1000, 4)) {
+            assertNull(engine.get(StorageTable.CUSTOMERS, key(1)));
+            assertEquals("Ion", engine.get(StorageTable.CUSTOMERS, key(2))[1]);
+            assertEquals(length, Files.size(wal));
+            put(engine, 3, "Eva");
+        }
+        try (LogStructuredStorageEngine engine = open(1000, 4)) {
+            assertEquals(List.of(key(2), key(3)), keys(engine, null, null));
+        }
+        crashed.close();
+    }
+
+    // Runs merged into a newer one before a crash, but not yet deleted, are removed on open instead of read twice.
+    @Test
+    void removesRunsACompactionAlreadyCovered() throws IOException {
+        try (LogStructuredStorageEngine engine = open(1, 2)) {
+            for (int i = 0; i < 3; i++) {
+                put(engine, i, "n" + i);
+            }
+        }
+        File[] merged = runs();
+        assertEquals(1, merged.length);
+        File stale = new File(merged[0].getParentFile(), "run-000000000000.dat");
+        Files.copy(merged[0].toPath(), stale.toPath());
+        Files.writeString(directory.resolve("customers/run-000000000099.dat.tmp"), "partial");
+
+        try (LogStructuredStorageEngine engine = open(1, 2)) {
+            assertEquals(List.of(key(0), key(1), key(2)), keys(engine, null, null));
+        }
+        assertFalse(stale.exists());
+        assertEquals(1, runs().length);
+    }
+}
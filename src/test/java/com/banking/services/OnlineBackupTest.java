@@ -0,0 +1,72 @@
+package com.banking.services;
+
+import com.banking.enums.AccountType;
+import com.banking.exceptions.InvalidAccountException;
+import com.banking.models.Account;
+import com.banking.models.Customer;
+import com.banking.utils.AccountNumberGenerator;
+import com.banking.utils.SnowflakeIdGenerator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OnlineBackupTest {
+    @TempDir
+    Path directory;
+
+    private BankService open(String name) {
+        return new BankService(StorageService.forDirectory(directory + "/" + name + "/"), new AccountNumberGenerator(),
+                new SnowflakeIdGenerator(0));
+    }
+
+    // Deposits keep landing while the copy is made; the copy holds exactly those up to the position it reports.
+    @Test
+    void copyIsConsistentWithItsJournalPosition() throws Exception {
+        BankService service = open("live");
+        Customer customer = service.createCustomer("Ana", "Pop", 30);
+        Account account = service.createAccount(customer.getId(), AccountType.PRIMARY);
+        long before = service.getJournal().getPosition();
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread writer = new Thread(() -> {
+            while (running.get()) {
+                try {
+                    service.deposit(account.getAccountId(), 1);
+                } catch (InvalidAccountException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+        writer.start();
+        Thread.sleep(50);
+
+        long position;
+        try {
+            position = new OnlineBackup(service).run(directory.resolve("backup").toFile());
+        } finally {
+            running.set(false);
+            writer.join();
+        }
+
+        assertTrue(Files.readString(directory.resolve("backup/backup.properties")).contains("journalPosition=" + position));
+        assertFalse(new File(directory.toFile(), "backup.partial").exists());
+        BankService restored = open("backup");
+        assertEquals(position, restored.getJournal().getPosition());
+        assertEquals((double) (position - before), restored.getAccountById(account.getAccountId()).getBalance());
+        assertTrue(service.getAccountById(account.getAccountId()).getBalance() >= position - before);
+    }
+
+    @Test
+    void refusesAnExistingTarget() throws Exception {
+        BankService service = open("live");
+        Files.createDirectories(directory.resolve("backup"));
+
+        assertThrows(IOException.class, () -> new OnlineBackup(service).run(directory.resolve("backup").toFile()));
+    }
+}
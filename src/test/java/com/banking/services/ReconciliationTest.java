@@ -0,0 +1,82 @@
+package com.banking.services;
+
+import com.banking.enums.AccountType;
+import com.banking.models.Account;
+import com.banking.models.Customer;
+import com.banking.utils.AccountNumberGenerator;
+import com.banking.utils.SnowflakeIdGenerator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReconciliationTest {
+    @TempDir
+    Path directory;
+
+    private BankService open() {
+        return new BankService(StorageService.forDirectory(directory + "/"), new AccountNumberGenerator(),
+                new SnowflakeIdGenerator(0));
+    }
+
+    // 300 postings over three accounts, with amounts that need cents.
+    private static List<Account> ledger(BankService service) throws Exception {
+        Customer customer = service.createCustomer("Ana", "Pop", 30);
+        List<Account> accounts = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            accounts.add(service.createAccount(customer.getId(), AccountType.PRIMARY));
+        }
+        for (int i = 0; i < 200; i++) {
+            service.deposit(accounts.get(i % 3).getAccountId(), 10.25 + i);
+        }
+        for (int i = 0; i < 100; i++) {
+            service.withdraw(accounts.get(i % 3).getAccountId(), 0.75);
+        }
+        return accounts;
+    }
+
+    // However the file is cut into ranges, each row, including one without a trailing line break, is counted once.
+    @Test
+    void everySplitCountsEachRowOnce() throws Exception {
+        BankService service = open();
+        ledger(service);
+        service.flush();
+        Files.writeString(directory.resolve("transactions.csv"), "1,RO49AAAA1B31007999999999,DEPOSIT,5.00,x",
+                StandardOpenOption.APPEND);
+
+        for (int parallelism = 1; parallelism <= 64; parallelism++) {
+            Reconciliation.Report report = new Reconciliation(service, parallelism).run();
+
+            assertEquals(301, report.getTransactions(), "parallelism " + parallelism);
+            assertEquals(1, report.getOrphanTransactionCount(), "parallelism " + parallelism);
+            assertEquals(List.of("1,RO49AAAA1B31007999999999"), report.getOrphanTransactions());
+            assertTrue(report.getMismatches().isEmpty(), report.getMismatches().toString());
+            assertEquals(0, report.getMalformedRows());
+        }
+    }
+
+    @Test
+    void reportsABalanceThatDisagreesWithItsPostings() throws Exception {
+        BankService service = open();
+        List<Account> accounts = ledger(service);
+        service.flush();
+        String account = accounts.get(1).getAccountId();
+        Files.writeString(directory.resolve("transactions.csv"), "2," + account + ",WITHDRAWAL,1.5,x\nnot a row\n",
+                StandardOpenOption.APPEND);
+
+        Reconciliation.Report report = new Reconciliation(service, 4).run();
+
+        assertFalse(report.isClean());
+        assertEquals(1, report.getMalformedRows());
+        assertEquals(1, report.getMismatches().size());
+        String[] mismatch = report.getMismatches().get(0).split(",");
+        assertEquals(account, mismatch[0]);
+        assertEquals("1.50", mismatch[3]);
+    }
+}
@@ -0,0 +1,93 @@
+package com.banking.services;
+
+import com.banking.enums.AccountType;
+import com.banking.exceptions.InvalidAccountException;
+import com.banking.models.Account;
+import com.banking.models.Customer;
+import com.banking.utils.AccountNumberGenerator;
+import com.banking.utils.SnowflakeIdGenerator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReplicationTest {
+    @TempDir
+    Path directory;
+
+    private BankService open(String name) {
+        return new BankService(StorageService.forDirectory(directory + "/" + name + "/"), new AccountNumberGenerator(),
+                new SnowflakeIdGenerator(0));
+    }
+
+    private static void awaitPosition(ReplicaService replica, long position) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (replica.getAppliedPosition() < position && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(position, replica.getAppliedPosition());
+    }
+
+    // The snapshot is read from a pinned copy, so writes made while it is sent arrive as records after the fence.
+    @Test
+    void snapshotIsFencedAtAJournalPosition() throws Exception {
+        BankService primary = open("primary");
+        Customer customer = primary.createCustomer("Ana", "Pop", 30);
+        Account account = primary.createAccount(customer.getId(), AccountType.PRIMARY);
+        primary.deposit(account.getAccountId(), 100);
+        List<String> lines = new ArrayList<>();
+
+        long offset = primary.writeSnapshot(line -> {
+            if (lines.isEmpty()) {
+                try {
+                    primary.deposit(account.getAccountId(), 1);
+                } catch (InvalidAccountException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            lines.add(line);
+        });
+
+        String end = lines.get(lines.size() - 1);
+        assertTrue(end.contains(",SNAPSHOT_END,3"), end);
+        assertTrue(lines.stream().anyMatch(line -> line.contains(",BALANCE," + account.getAccountId() + ",100.0")));
+        List<String> after = new ArrayList<>();
+        primary.getJournal().readLines(offset, primary.getJournal().getFile().length(), after::add);
+        assertEquals(1, after.size());
+        assertTrue(after.get(0).startsWith("4,"), after.get(0));
+        assertFalse(new File(directory.toFile(), "primary/snapshots").list().length > 0);
+    }
+
+    // After promotion and a restart the follower numbers on from the primary and still knows the keys it was sent,
+    // both those inside the snapshot's window and those that followed it.
+    @Test
+    void followerKeepsPositionsAndKeysInItsOwnJournal() throws Exception {
+        BankService primary = open("primary");
+        Customer customer = primary.createCustomer("Ana", "Pop", 30);
+        Account account = primary.createAccount(customer.getId(), AccountType.PRIMARY);
+        primary.deposit("before", account.getAccountId(), 100);
+
+        try (ReplicationServer server = new ReplicationServer(primary, 0)) {
+            server.start();
+            ReplicaService replica = new ReplicaService(directory + "/replica/", "localhost", server.getPort());
+            replica.start();
+            awaitPosition(replica, 3);
+            primary.deposit("after", account.getAccountId(), 50);
+            awaitPosition(replica, 4);
+            replica.promote();
+        }
+
+        BankService restarted = open("replica");
+        assertEquals(4, restarted.getJournal().getPosition());
+        assertEquals(150.0, restarted.getAccountById(account.getAccountId()).getBalance());
+        restarted.deposit("before", account.getAccountId(), 100);
+        restarted.deposit("after", account.getAccountId(), 50);
+        assertEquals(150.0, restarted.getAccountById(account.getAccountId()).getBalance());
+        assertThrows(IllegalArgumentException.class, () -> restarted.deposit("after", account.getAccountId(), 60));
+    }
+}
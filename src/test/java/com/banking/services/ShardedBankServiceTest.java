@@ -0,0 +1,116 @@
+package com.banking.services;
+
+import com.banking.enums.AccountType;
+import com.banking.exceptions.InsufficientFundsException;
+import com.banking.models.Account;
+import com.banking.models.Customer;
+import com.banking.utils.AccountIds;
+import com.banking.utils.AccountNumberGenerator;
+import com.banking.utils.SnowflakeIdGenerator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardedBankServiceTest {
+    @TempDir
+    Path directory;
+
+    private String path() {
+        return directory + "/";
+    }
+
+    private static int shardOf(Account account) {
+        return ShardedBankService.shardOf(AccountIds.parse(account.getAccountId()), 2);
+    }
+
+    // The shard a crashed router left behind, opened on its own to put transfer legs into the state of the crash.
+    private BankService openShard(int shard) {
+        return new BankService(StorageService.forDirectory(path() + "shard-" + shard + "/"), new AccountNumberGenerator(),
+                new SnowflakeIdGenerator(shard));
+    }
+
+    // Customers are spread over the shards in turn and their accounts live with them, so these are on different
+    // shards; the first holds 100.
+    private static Account[] accountsOnBothShards(ShardedBankService service) throws Exception {
+        Customer first = service.createCustomer("Ana", "Pop", 30);
+        Customer second = service.createCustomer("Ion", "Pop", 40);
+        Account from = service.createAccount(first.getId(), AccountType.PRIMARY);
+        Account to = service.createAccount(second.getId(), AccountType.PRIMARY);
+        assertNotEquals(shardOf(from), shardOf(to));
+        service.deposit(from.getAccountId(), 100);
+        return new Account[]{from, to};
+    }
+
+    private void prepareBothLegs(Account from, Account to, String transferId) throws Exception {
+        openShard(shardOf(from)).prepareTransfer(transferId, from.getAccountId(), 40, true);
+        openShard(shardOf(to)).prepareTransfer(transferId, to.getAccountId(), 40, false);
+    }
+
+    @Test
+    void transfersAcrossShards() throws Exception {
+        ShardedBankService service = new ShardedBankService(path(), 2);
+        try {
+            Account[] accounts = accountsOnBothShards(service);
+
+            service.transfer(accounts[0].getAccountId(), accounts[1].getAccountId(), 30);
+
+            assertEquals(70.0, service.getAccountById(accounts[0].getAccountId()).getBalance());
+            assertEquals(30.0, service.getAccountById(accounts[1].getAccountId()).getBalance());
+            assertThrows(InsufficientFundsException.class,
+                    () -> service.transfer(accounts[0].getAccountId(), accounts[1].getAccountId(), 500));
+            assertEquals(70.0, service.getAccountById(accounts[0].getAccountId()).getBalance());
+            assertEquals(30.0, service.getAccountById(accounts[1].getAccountId()).getBalance());
+        } finally {
+            service.stop();
+        }
+    }
+
+    // Legs prepared when the router stopped, with the decision logged, are committed on restart.
+    @Test
+    void recoveryCommitsALoggedDecision() throws Exception {
+        ShardedBankService service = new ShardedBankService(path(), 2);
+        Account[] accounts = accountsOnBothShards(service);
+        service.stop();
+        prepareBothLegs(accounts[0], accounts[1], "7");
+        JournalService coordinator = new JournalService(new File(path() + "coordinator.log"));
+        coordinator.append("COMMIT", "7");
+        coordinator.close();
+
+        ShardedBankService restarted = new ShardedBankService(path(), 2);
+        try {
+            assertEquals(60.0, restarted.getAccountById(accounts[0].getAccountId()).getBalance());
+            assertEquals(40.0, restarted.getAccountById(accounts[1].getAccountId()).getBalance());
+        } finally {
+            restarted.stop();
+        }
+    }
+
+    // Without a logged commit the transfer is presumed aborted: balances stay and the held funds are released.
+    @Test
+    void recoveryAbortsAnUndecidedTransfer() throws Exception {
+        ShardedBankService service = new ShardedBankService(path(), 2);
+        Account[] accounts = accountsOnBothShards(service);
+        service.stop();
+        prepareBothLegs(accounts[0], accounts[1], "8");
+
+        ShardedBankService restarted = new ShardedBankService(path(), 2);
+        try {
+            assertEquals(100.0, restarted.getAccountById(accounts[0].getAccountId()).getBalance());
+            assertEquals(0.0, restarted.getAccountById(accounts[1].getAccountId()).getBalance());
+            restarted.withdraw(accounts[0].getAccountId(), 100);
+            assertEquals(0.0, restarted.getAccountById(accounts[0].getAccountId()).getBalance());
+        } finally {
+            restarted.stop();
+        }
+        ShardedBankService again = new ShardedBankService(path(), 2);
+        try {
+            assertEquals(0.0, again.getAccountById(accounts[0].getAccountId()).getBalance());
+        } finally {
+            again.stop();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.banking.services;
+
+import com.banking.enums.AccountType;
+import com.banking.enums.Frequency;
+import com.banking.models.Account;
+import com.banking.models.Customer;
+import com.banking.models.StandingOrder;
+import com.banking.utils.AccountNumberGenerator;
+import com.banking.utils.SnowflakeIdGenerator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StandingOrderServiceTest {
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    @TempDir
+    Path directory;
+
+    private BankService open() {
+        return new BankService(StorageService.forDirectory(directory + "/"), new AccountNumberGenerator(),
+                new SnowflakeIdGenerator(0));
+    }
+
+    private static StandingOrderService orders(BankServiceInterface service, StorageService storage) {
+        return new StandingOrderService(service, storage, 1000);
+    }
+
+    // Creating, running and cancelling append a line each instead of rewriting every order.
+    @Test
+    void appendsChangesAndReplaysThemOnLoad() throws Exception {
+        BankService service = open();
+        Customer customer = service.createCustomer("Ana", "Pop", 30);
+        Account from = service.createAccount(customer.getId(), AccountType.PRIMARY);
+        Account to = service.createAccount(customer.getId(), AccountType.PRIMARY);
+        service.deposit(from.getAccountId(), 100);
+        StandingOrderService orders = orders(service, service.getStorageService());
+
+        long now = System.currentTimeMillis();
+        StandingOrder paid = orders.createStandingOrder(from.getAccountId(), to.getAccountId(), 10, Frequency.DAILY,
+                now - 2 * DAY);
+        StandingOrder cancelled = orders.createStandingOrder(from.getAccountId(), to.getAccountId(), 5,
+                Frequency.WEEKLY, now + 7 * DAY);
+        orders.cancelStandingOrder(cancelled.getId());
+        orders.runDue(now + 2000);
+
+        assertFalse(new File(directory.toFile(), "standing_orders.csv").exists());
+        assertEquals(4, Files.readAllLines(directory.resolve("standing_orders.log")).size());
+        assertEquals(70.0, from.getBalance());
+
+        List<StandingOrder> reloaded = orders(service, service.getStorageService()).getAllStandingOrders();
+        assertEquals(1, reloaded.size());
+        assertEquals(paid.getId(), reloaded.get(0).getId());
+        assertEquals(3, reloaded.get(0).getRuns());
+    }
+
+    // 2250 changes to 750 live orders: the log never holds more than twice the orders before it is folded in.
+    @Test
+    void foldsTheLogIntoASnapshot() throws Exception {
+        BankService service = open();
+        Customer customer = service.createCustomer("Ana", "Pop", 30);
+        Account from = service.createAccount(customer.getId(), AccountType.PRIMARY);
+        Account to = service.createAccount(customer.getId(), AccountType.PRIMARY);
+        StandingOrderService orders = orders(service, service.getStorageService());
+        long firstRun = System.currentTimeMillis() + DAY;
+
+        for (int i = 0; i < 1500; i++) {
+            StandingOrder order = orders.createStandingOrder(from.getAccountId(), to.getAccountId(), 1,
+                    Frequency.MONTHLY, firstRun);
+            if (i % 2 == 1) {
+                orders.cancelStandingOrder(order.getId());
+            }
+        }
+
+        assertTrue(new File(directory.toFile(), "standing_orders.csv").exists());
+        assertTrue(Files.readAllLines(directory.resolve("standing_orders.log")).size() < 1500);
+        assertEquals(750, orders(service, service.getStorageService()).getAllStandingOrders().size());
+    }
+
+    // A record cut short by a crash is dropped, and the next one starts on its own line.
+    @Test
+    void dropsAPartlyWrittenChange() throws Exception {
+        BankService service = open();
+        Customer customer = service.createCustomer("Ana", "Pop", 30);
+        Account from = service.createAccount(customer.getId(), AccountType.PRIMARY);
+        Account to = service.createAccount(customer.getId(), AccountType.PRIMARY);
+        StandingOrderService orders = orders(service, service.getStorageService());
+        StandingOrder order = orders.createStandingOrder(from.getAccountId(), to.getAccountId(), 1, Frequency.DAILY,
+                System.currentTimeMillis() + DAY);
+        Files.writeString(directory.resolve("standing_orders.log"), "CANCEL,",
+                StandardOpenOption.APPEND);
+
+        StandingOrderService reopened = orders(service, service.getStorageService());
+        reopened.cancelStandingOrder(order.getId());
+
+        assertTrue(orders(service, service.getStorageService()).getAllStandingOrders().isEmpty());
+    }
+
+    // Sharded orders are paid through the router, so the accounts on the shards are the ones debited.
+    @Test
+    void paysShardedOrdersOnTheShards() throws Exception {
+        ShardedBankService service = new ShardedBankService(directory + "/shards/", 2);
+        try {
+            Customer first = service.createCustomer("Ana", "Pop", 30);
+            Customer second = service.createCustomer("Ion", "Pop", 40);
+            Account from = service.createAccount(first.getId(), AccountType.PRIMARY);
+            Account to = service.createAccount(second.getId(), AccountType.PRIMARY);
+            service.deposit(from.getAccountId(), 100);
+            StandingOrderService orders = orders(service, service.getStorageService());
+            long now = System.currentTimeMillis();
+
+            orders.createStandingOrder(from.getAccountId(), to.getAccountId(), 25, Frequency.DAILY, now - DAY);
+            orders.runDue(now + 2000);
+
+            assertEquals(50.0, service.getAccountById(from.getAccountId()).getBalance());
+            assertEquals(50.0, service.getAccountById(to.getAccountId()).getBalance());
+            assertTrue(new File(directory.toFile(), "shards/standing_orders.log").exists());
+        } finally {
+            service.stop();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.banking.services;
+
+import com.banking.enums.AccountType;
+import com.banking.models.Account;
+import com.banking.models.Customer;
+import com.banking.utils.AccountNumberGenerator;
+import com.banking.utils.CsvReader;
+import com.banking.utils.DateCodec;
+import com.banking.utils.SnowflakeIdGenerator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatementRunTest {
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    @TempDir
+    Path directory;
+
+    private BankService open() {
+        return new BankService(StorageService.forDirectory(directory + "/db/"), new AccountNumberGenerator(),
+                new SnowflakeIdGenerator(0));
+    }
+
+    private static String[] header(File statement) throws Exception {
+        return CsvReader.parseRow(Files.readAllLines(statement.toPath()).get(0));
+    }
+
+    // Postings after the period are taken back off the balance to find the closing one; the period's own postings
+    // lead back to the opening one.
+    @Test
+    void writesOpeningAndClosingBalances() throws Exception {
+        BankService service = open();
+        Customer customer = service.createCustomer("Ana", "Pop", 30);
+        Account active = service.createAccount(customer.getId(), AccountType.PRIMARY);
+        Account idle = service.createAccount(customer.getId(), AccountType.PRIMARY);
+        service.deposit(active.getAccountId(), 100);
+        service.withdraw(active.getAccountId(), 30);
+        String today = DateCodec.formatDate(System.currentTimeMillis());
+        String yesterday = DateCodec.formatDate(System.currentTimeMillis() - DAY);
+        File thisPeriod = directory.resolve("today").toFile();
+        File lastPeriod = directory.resolve("yesterday").toFile();
+
+        assertEquals(2, new StatementRun(service, thisPeriod, today, today, 3, false).run());
+        assertEquals(2, new StatementRun(service, lastPeriod, yesterday, yesterday, 3, false).run());
+
+        File statement = new File(thisPeriod, active.getAccountId() + ".csv");
+        assertArrayEquals(new String[]{"STATEMENT", active.getAccountId(), today, today, "0.0", "70.0"}, header(statement));
+        assertEquals(3, Files.readAllLines(statement.toPath()).size());
+        assertEquals("0.0", header(new File(lastPeriod, active.getAccountId() + ".csv"))[5]);
+        assertEquals(1, Files.readAllLines(new File(lastPeriod, idle.getAccountId() + ".csv").toPath()).size());
+        assertTrue(new File(thisPeriod, "_SUCCESS").exists());
+        assertEquals(0, thisPeriod.list((dir, name) -> name.startsWith("_spill") || name.equals("_checkpoint")).length);
+    }
+
+    // A rerun after a crash leaves the partitions the checkpoint lists alone and only clears up.
+    @Test
+    void rerunSkipsCheckpointedPartitions() throws Exception {
+        BankService service = open();
+        Customer customer = service.createCustomer("Ana", "Pop", 30);
+        Account account = service.createAccount(customer.getId(), AccountType.PRIMARY);
+        String today = DateCodec.formatDate(System.currentTimeMillis());
+        File output = directory.resolve("statements").toFile();
+        output.mkdirs();
+        Files.writeString(output.toPath().resolve("_checkpoint"), "SPLIT_DONE\nPART 0\nPART 1\n");
+        Files.writeString(output.toPath().resolve("_spill-0.csv"), "");
+        Files.writeString(output.toPath().resolve("_spill-1.csv"), "");
+
+        assertEquals(0, new StatementRun(service, output, today, today, 2, false).run());
+
+        assertFalse(new File(output, account.getAccountId() + ".csv").exists());
+        assertFalse(new File(output, "_spill-0.csv").exists());
+        assertFalse(new File(output, "_checkpoint").exists());
+        assertTrue(new File(output, "_SUCCESS").exists());
+    }
+}
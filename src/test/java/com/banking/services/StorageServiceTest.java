@@ -0,0 +1,25 @@
+package com.banking.services;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StorageServiceTest {
+    @TempDir
+    Path directory;
+
+    // A second opener of the same directory, like a CLI backup next to the running application, is refused.
+    @Test
+    void onlyOneOwnerPerDatabase() {
+        StorageService owner = StorageService.forDirectory(directory + "/");
+
+        IllegalStateException refused = assertThrows(IllegalStateException.class,
+                () -> StorageService.forDirectory(directory + "/./"));
+
+        assertTrue(refused.getMessage().contains("in use"), refused.getMessage());
+        assertSame(owner, StorageService.forDirectory(directory + "/"));
+    }
+}
@@ -0,0 +1,147 @@
+package com.banking.services;
+
+import com.banking.enums.TransactionType;
+import com.banking.models.Account;
+import com.banking.models.Customer;
+import com.banking.models.PrimaryAccount;
+import com.banking.models.Transaction;
+import com.banking.utils.AccountIds;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TieredTransactionStoreTest {
+    @TempDir
+    Path directory;
+
+    private final Customer owner = new Customer("0001", "Ana", "Pop", 30);
+
+    private static void post(Account account, TieredTransactionStore store, int count) {
+        for (int i = 0; i < count; i++) {
+            Transaction transaction = new Transaction(account.getAccountId() + "-" + account.getPostingCount(),
+                    1.0, TransactionType.DEPOSIT, account);
+            transaction.setTimestampMillis(1_700_000_000_000L + account.getPostingCount());
+            account.addTransaction(transaction);
+            store.touch(account);
+        }
+    }
+
+    private static List<String> ids(Account account) {
+        List<String> ids = new ArrayList<>();
+        for (Transaction transaction : account.getTransactions()) {
+            ids.add(transaction.getTransactionId());
+        }
+        return ids;
+    }
+
+    private static List<String> expected(Account account, int count) {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ids.add(account.getAccountId() + "-" + i);
+        }
+        return ids;
+    }
+
+    private TieredTransactionStore store(long budgetTransactions, long fileBytes) {
+        return new TieredTransactionStore(new File(directory.toFile(), "cold"),
+                budgetTransactions * TieredTransactionStore.BYTES_PER_TRANSACTION, 4, fileBytes);
+    }
+
+    @Test
+    void keepsHotPostingsWithinBudgetAndHistoryIntact() {
+        TieredTransactionStore store = store(400, 1 << 20);
+        List<Account> accounts = new ArrayList<>();
+        for (int i = 1; i <= 10; i++) {
+            accounts.add(new PrimaryAccount(AccountIds.MIN_NUMBER + i, owner));
+        }
+        for (int round = 0; round < 5; round++) {
+            for (Account account : accounts) {
+                post(account, store, 40);
+            }
+        }
+
+        assertTrue(store.getHotTransactionCount() <= 400);
+        assertEquals(2000, store.getHotTransactionCount() + store.getEvictedTransactionCount());
+        for (Account account : accounts) {
+            assertEquals(expected(account, 200), ids(account));
+        }
+    }
+
+    // Eviction goes down to a low-water mark, so each spill writes a batch rather than a posting or two.
+    @Test
+    void spillsInBatches() {
+        TieredTransactionStore store = store(800, 1 << 20);
+        Account account = new PrimaryAccount(AccountIds.MIN_NUMBER + 1, owner);
+
+        post(account, store, 5000);
+
+        assertTrue(account.getColdSegments().size() < 100, "segments: " + account.getColdSegments().size());
+        assertEquals(expected(account, 5000), ids(account));
+    }
+
+    @Test
+    void reclaimsFilesLeftBehindByForgottenAccounts() {
+        TieredTransactionStore store = store(200, 4096);
+        Account kept = new PrimaryAccount(AccountIds.MIN_NUMBER + 1, owner);
+        List<Account> deleted = new ArrayList<>();
+        for (int i = 2; i <= 20; i++) {
+            Account account = new PrimaryAccount(AccountIds.MIN_NUMBER + i, owner);
+            deleted.add(account);
+            post(kept, store, 20);
+            post(account, store, 400);
+        }
+        for (Account account : deleted) {
+            store.forget(account);
+        }
+        int before = store.getFileCount();
+
+        Account later = new PrimaryAccount(AccountIds.MIN_NUMBER + 30, owner);
+        post(later, store, 2000);
+
+        assertTrue(store.getFileCount() < before, "files: " + before + " -> " + store.getFileCount());
+        assertEquals(expected(kept, 380), ids(kept));
+        assertEquals(expected(later, 2000), ids(later));
+    }
+
+    // Two services over the same directory each keep their own segments.
+    @Test
+    void doesNotRemoveAnotherStoresFiles() {
+        TieredTransactionStore first = store(100, 1 << 20);
+        Account account = new PrimaryAccount(AccountIds.MIN_NUMBER + 1, owner);
+        post(account, first, 1000);
+
+        TieredTransactionStore second = store(100, 1 << 20);
+        post(new PrimaryAccount(AccountIds.MIN_NUMBER + 2, owner), second, 1000);
+
+        assertEquals(expected(account, 1000), ids(account));
+    }
+
+    @Test
+    void failsInsteadOfReturningPartialHistory() throws Exception {
+        TieredTransactionStore store = store(100, 1 << 20);
+        Account account = new PrimaryAccount(AccountIds.MIN_NUMBER + 1, owner);
+        post(account, store, 1000);
+        assertFalse(account.getColdSegments().isEmpty());
+
+        try (Stream<Path> files = Files.walk(directory.resolve("cold"))) {
+            for (Path file : files.filter(path -> path.toString().endsWith(".seg")).toList()) {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    channel.truncate(0);
+                }
+            }
+        }
+
+        assertThrows(UncheckedIOException.class, account::getTransactions);
+    }
+}
@@ -0,0 +1,80 @@
+package com.banking.services;
+
+import com.banking.enums.StorageTable;
+import com.banking.models.Account;
+import com.banking.models.Customer;
+import com.banking.models.PrimaryAccount;
+import com.banking.models.Transaction;
+import com.banking.utils.AccountIds;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransactionHistoryIndexTest {
+    @TempDir
+    Path directory;
+
+    private final Customer owner = new Customer("0001", "Ana", "Pop", 30);
+    private final Account first = new PrimaryAccount(AccountIds.MIN_NUMBER + 1, owner);
+    private final Account second = new PrimaryAccount(AccountIds.MIN_NUMBER + 2, owner);
+
+    private static String[] posting(String id, Account account, String amount) {
+        return new String[]{id, account.getAccountId(), "DEPOSIT", amount, "2024-03-01T10:00:00.000+00:00"};
+    }
+
+    @Test
+    void pagesInOnlyTheAccountsOwnRows() throws Exception {
+        StorageService storage = StorageService.forDirectory(directory + "/");
+        storage.getEngine().write(StorageTable.POSTINGS, List.of(
+                posting("1", first, "10.0"), posting("2", second, "20.0"), posting("3", first, "30.0")), List.of());
+
+        TransactionHistoryIndex index = new TransactionHistoryIndex(storage);
+
+        assertEquals(List.of("1", "3"), ids(index.load(first)));
+        assertEquals(List.of("2"), ids(index.load(second)));
+        assertTrue(index.load(new PrimaryAccount(AccountIds.MIN_NUMBER + 3, owner)).isEmpty());
+        assertSame(first, index.load(first).get(0).getAccount());
+        assertTrue(new File(directory.toFile(), "transactions.idx").exists());
+    }
+
+    // Rows written after the index was opened are already in memory and must not be paged in a second time.
+    @Test
+    void skipsRowsAppendedAfterStartup() throws Exception {
+        StorageService storage = StorageService.forDirectory(directory + "/");
+        storage.getEngine().write(StorageTable.POSTINGS, List.<String[]>of(posting("1", first, "10.0")), List.of());
+        TransactionHistoryIndex index = new TransactionHistoryIndex(storage);
+
+        storage.getEngine().write(StorageTable.POSTINGS, List.<String[]>of(posting("2", first, "5.0")), List.of());
+
+        assertEquals(List.of("1"), ids(index.load(first)));
+    }
+
+    @Test
+    void rebuildsAStaleIndexFile() throws Exception {
+        StorageService storage = StorageService.forDirectory(directory + "/");
+        storage.getEngine().write(StorageTable.POSTINGS, List.<String[]>of(posting("1", first, "10.0")), List.of());
+        new TransactionHistoryIndex(storage).load(first);
+
+        // Same length, different contents: only the tail check can tell.
+        storage.getEngine().clear(StorageTable.POSTINGS);
+        storage.getEngine().write(StorageTable.POSTINGS, List.<String[]>of(posting("7", second, "10.0")), List.of());
+        TransactionHistoryIndex reopened = new TransactionHistoryIndex(storage);
+
+        assertTrue(reopened.load(first).isEmpty());
+        assertEquals(List.of("7"), ids(reopened.load(second)));
+    }
+
+    private static List<String> ids(List<Transaction> transactions) {
+        List<String> ids = new ArrayList<>();
+        for (Transaction transaction : transactions) {
+            ids.add(transaction.getTransactionId());
+        }
+        return ids;
+    }
+}
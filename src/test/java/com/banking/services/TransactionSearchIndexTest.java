@@ -0,0 +1,195 @@
+package com.banking.services;
+
+import com.banking.enums.AccountType;
+import com.banking.enums.TransactionType;
+import com.banking.models.Account;
+import com.banking.models.Customer;
+import com.banking.utils.AccountNumberGenerator;
+import com.banking.utils.CsvWriter;
+import com.banking.utils.SnowflakeIdGenerator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransactionSearchIndexTest {
+    private static final long ACCOUNT = 100000001L;
+
+    @TempDir
+    Path directory;
+
+    private BankService open() {
+        return new BankService(StorageService.forDirectory(directory + "/"), new AccountNumberGenerator(),
+                new SnowflakeIdGenerator(0));
+    }
+
+    // Rows are added out of time order so that sealing has to sort them, and there are enough to seal two chunks.
+    private static TransactionSearchIndex index(int rows) {
+        TransactionSearchIndex index = new TransactionSearchIndex();
+        for (int i = 0; i < rows; i++) {
+            long time = 1_000_000 + (i * 7919L) % rows;
+            index.add(Long.toString(500_000_000_000L + i), ACCOUNT, TransactionType.DEPOSIT, i % 100, time);
+        }
+        return index;
+    }
+
+    private static List<TransactionSearchIndex.Hit> all(TransactionSearchIndex index, TransactionType type,
+                                                        double minAmount, double maxAmount, int limit) {
+        List<TransactionSearchIndex.Hit> hits = new ArrayList<>();
+        String cursor = null;
+        do {
+            TransactionSearchIndex.Page page = index.search(type, 0, Long.MAX_VALUE, minAmount, maxAmount, cursor, limit);
+            hits.addAll(page.getHits());
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return hits;
+    }
+
+    private static List<String> rows(TransactionSearchIndex index) {
+        return all(index, null, 0, Double.MAX_VALUE, 1000).stream().map(hit -> hit.getTransactionId() + ","
+                + hit.getAccountId() + "," + hit.getType() + "," + hit.getAmount() + "," + hit.getTimestampMillis()).toList();
+    }
+
+    // Paging across sealed and open chunks visits every row once, in time order.
+    @Test
+    void cursorPagesThroughEveryRowInTimeOrder() {
+        int rows = 2 * TransactionSearchIndex.CHUNK_ROWS + 100;
+        TransactionSearchIndex index = index(rows);
+
+        List<TransactionSearchIndex.Hit> hits = all(index, null, 0, Double.MAX_VALUE, 1000);
+
+        assertEquals(rows, hits.size());
+        assertEquals(rows, hits.stream().map(TransactionSearchIndex.Hit::getTransactionId).distinct().count());
+        for (int i = 1; i < hits.size(); i++) {
+            assertTrue(hits.get(i - 1).getTimestampMillis() <= hits.get(i).getTimestampMillis());
+        }
+    }
+
+    // Rows sharing a timestamp are split across pages by their sequence, so none is lost or repeated.
+    @Test
+    void pagesSplitRowsWithTheSameTimestamp() {
+        TransactionSearchIndex index = new TransactionSearchIndex();
+        for (int i = 0; i < 10; i++) {
+            index.add(Integer.toString(i + 1), ACCOUNT, TransactionType.DEPOSIT, 1, 5000);
+        }
+
+        List<String> ids = all(index, null, 0, Double.MAX_VALUE, 3).stream()
+                .map(TransactionSearchIndex.Hit::getTransactionId).toList();
+
+        assertEquals(List.of("1", "2", "3", "4", "5", "6", "7", "8", "9", "10"), ids);
+    }
+
+    @Test
+    void filtersByTypeAndAmount() {
+        TransactionSearchIndex index = index(TransactionSearchIndex.CHUNK_ROWS + 10);
+        index.add("900", ACCOUNT, TransactionType.WITHDRAWAL, 50, 2_000_000);
+
+        List<TransactionSearchIndex.Hit> withdrawals = all(index, TransactionType.WITHDRAWAL, 0, Double.MAX_VALUE, 10);
+        List<TransactionSearchIndex.Hit> fifties = all(index, TransactionType.DEPOSIT, 50, 50, 10);
+
+        assertEquals(1, withdrawals.size());
+        assertEquals("900", withdrawals.get(0).getTransactionId());
+        assertEquals(41, fifties.size());
+        assertTrue(fifties.stream().allMatch(hit -> hit.getAmount() == 50.0));
+    }
+
+    // Snowflake ids are held as numbers; ids of any other form come back exactly as they were added.
+    @Test
+    void keepsIdsThatAreNotPlainNumbers() {
+        TransactionSearchIndex index = new TransactionSearchIndex();
+        List<String> ids = List.of("42", "007", "-5", "tx-1", "", "99999999999999999999", Long.toString(Long.MAX_VALUE));
+        for (int i = 0; i < TransactionSearchIndex.CHUNK_ROWS; i++) {
+            index.add(ids.get(i % ids.size()), ACCOUNT, TransactionType.DEPOSIT, 1, 1000 + i);
+        }
+
+        List<TransactionSearchIndex.Hit> hits = all(index, null, 0, Double.MAX_VALUE, 500);
+
+        for (int i = 0; i < hits.size(); i++) {
+            assertEquals(ids.get(i % ids.size()), hits.get(i).getTransactionId());
+        }
+        assertEquals(42, TransactionSearchIndex.idValue("42"));
+        assertTrue(TransactionSearchIndex.idValue("007") < 0);
+    }
+
+    @Test
+    void rejectsAMalformedCursor() {
+        TransactionSearchIndex index = index(10);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> index.search(null, 0, Long.MAX_VALUE, 0, Double.MAX_VALUE, "abc", 10));
+        assertThrows(IllegalArgumentException.class,
+                () -> index.search(null, 0, Long.MAX_VALUE, 0, Double.MAX_VALUE, "1-x", 10));
+        assertThrows(IllegalArgumentException.class,
+                () -> index.search(null, 0, Long.MAX_VALUE, 0, Double.MAX_VALUE, null, 0));
+    }
+
+    // Chunks sealed after the save are dropped on restore; their rows are the journal's to bring back.
+    @Test
+    void restoresTheSavedChunksAndOpenRows() throws Exception {
+        File stored = directory.resolve("search").toFile();
+        TransactionSearchIndex index = new TransactionSearchIndex(stored);
+        for (int i = 0; i < TransactionSearchIndex.CHUNK_ROWS + 10; i++) {
+            index.add(i % 100 == 0 ? "tx-" + i : Integer.toString(i + 1), ACCOUNT + i % 3, TransactionType.DEPOSIT,
+                    i % 50, 1_000_000 + (i * 7919L) % 5000);
+        }
+        index.add("900", ACCOUNT, TransactionType.WITHDRAWAL, 5, 2_000_000);
+        index.save(42);
+        List<String> saved = rows(index);
+        for (int i = 0; i < TransactionSearchIndex.CHUNK_ROWS; i++) {
+            index.add(Integer.toString(10_000 + i), ACCOUNT, TransactionType.DEPOSIT, 1, 3_000_000 + i);
+        }
+        assertTrue(new File(stored, "DEPOSIT-1.chunk").exists());
+
+        TransactionSearchIndex restored = new TransactionSearchIndex(stored);
+        assertEquals(42, restored.restore());
+
+        assertEquals(saved, rows(restored));
+        assertFalse(new File(stored, "DEPOSIT-1.chunk").exists());
+        restored.add("901", ACCOUNT, TransactionType.DEPOSIT, 1, 4_000_000);
+        assertEquals(saved.size() + 1, rows(restored).size());
+        assertEquals(-1, new TransactionSearchIndex(directory.resolve("empty").toFile()).restore());
+    }
+
+    // After a restart the index comes from its last save and the journal after it, not from the stored postings: a
+    // row written behind the service's back only shows up once there is no save and the index is built on first use.
+    @Test
+    void restartCatchesTheSavedIndexUpFromTheJournal() throws Exception {
+        System.setProperty("banking.journal.checkpointRecords", "1000");
+        try {
+            BankService service = open();
+            Customer customer = service.createCustomer("Ana", "Pop", 30);
+            Account x = service.createAccount(customer.getId(), AccountType.PRIMARY);
+            Account y = service.createAccount(customer.getId(), AccountType.SAVINGS);
+            service.setDeferSaves(true);
+            for (int i = 0; i < 5000; i++) {
+                service.deposit(x.getAccountId(), 1 + i % 5);
+                if (i % 4 == 0) {
+                    service.transfer(x.getAccountId(), y.getAccountId(), 1);
+                }
+            }
+            service.setDeferSaves(false);
+            List<String> expected = rows(service.getSearchIndex());
+            assertEquals(7500, expected.size());
+            assertTrue(directory.resolve("search/index.manifest").toFile().exists());
+            Files.writeString(directory.resolve("transactions.csv"),
+                    CsvWriter.formatRow("900", x.getAccountId(), "DEPOSIT", "7.0", "2024-05-19") + "\n",
+                    StandardOpenOption.APPEND);
+
+            assertEquals(expected, rows(open().getSearchIndex()));
+
+            Files.delete(directory.resolve("search/index.manifest"));
+            List<String> built = rows(open().getSearchIndex());
+            assertEquals(expected.size() + 1, built.size());
+            assertTrue(built.stream().anyMatch(row -> row.startsWith("900,")));
+        } finally {
+            System.clearProperty("banking.journal.checkpointRecords");
+        }
+    }
+}
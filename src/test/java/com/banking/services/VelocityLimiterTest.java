@@ -0,0 +1,85 @@
+package com.banking.services;
+
+import com.banking.exceptions.LimitExceededException;
+import com.banking.models.Account;
+import com.banking.models.Card;
+import com.banking.models.Customer;
+import com.banking.models.PrimaryAccount;
+import com.banking.utils.AccountIds;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VelocityLimiterTest {
+    private static final long HOUR = 60L * 60 * 1000;
+
+    private static Account account(int ordinal) {
+        Account account = new PrimaryAccount(AccountIds.format(100000001L + ordinal), new Customer("1", "Ana", "Pop", 30));
+        account.setOrdinal(ordinal);
+        return account;
+    }
+
+    // An amount drops out of the window once its bucket is more than a window old.
+    @Test
+    void counterForgetsBucketsOutsideTheWindow() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(HOUR, 60, 1);
+        long start = 10 * HOUR;
+
+        counter.record(0, 500, start);
+        counter.record(0, 250, start + 30 * 60_000);
+
+        assertEquals(750, counter.sumAmount(0, start + 59 * 60_000));
+        assertEquals(2, counter.sumCount(0, start + 59 * 60_000));
+        assertEquals(250, counter.sumAmount(0, start + 60 * 60_000));
+        assertEquals(0, counter.sumAmount(0, start + 2 * HOUR));
+    }
+
+    // A bucket reused a whole window later starts from zero, and keys past the initial capacity keep their sums.
+    @Test
+    void counterReusesBucketsAndGrows() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(HOUR, 4, 1);
+
+        counter.record(3, 100, 0);
+        counter.record(3, 40, HOUR);
+        counter.record(1000, 7, 0);
+
+        assertEquals(40, counter.sumAmount(3, HOUR));
+        assertEquals(1, counter.sumCount(3, HOUR));
+        assertEquals(7, counter.sumAmount(1000, 0));
+        assertEquals(0, counter.sumAmount(5000, 0));
+    }
+
+    @Test
+    void rejectsPaymentsOverTheAmountOrCount() throws Exception {
+        VelocityLimiter limiter = new VelocityLimiter();
+        limiter.addAccountLimit("hourly", HOUR, 60, 100, 3);
+        Account account = account(0);
+
+        limiter.checkAndRecord(account, null, 60);
+        assertThrows(LimitExceededException.class, () -> limiter.checkAndRecord(account, null, 40.01));
+        limiter.checkAndRecord(account, null, 40);
+        assertThrows(LimitExceededException.class, () -> limiter.checkAndRecord(account(1), null, 100.01));
+        limiter.checkAndRecord(account(1), null, 1);
+        limiter.checkAndRecord(account(1), null, 1);
+        limiter.checkAndRecord(account(1), null, 1);
+        assertThrows(LimitExceededException.class, () -> limiter.checkAndRecord(account(1), null, 1));
+    }
+
+    // A payment the card limit refuses is not counted against the account either.
+    @Test
+    void refusedPaymentCountsAgainstNoWindow() throws Exception {
+        VelocityLimiter limiter = new VelocityLimiter();
+        limiter.addAccountLimit("daily", 24 * HOUR, 24, 100, 0);
+        limiter.addCardLimit("hourly", HOUR, 60, 30, 0);
+        Account account = account(0);
+        Card card = new Card("4000000000000001", new Date(), account);
+
+        limiter.checkAndRecord(account, card, 25);
+        assertThrows(LimitExceededException.class, () -> limiter.checkAndRecord(account, card, 25));
+        limiter.checkAndRecord(account, null, 75);
+
+        assertThrows(LimitExceededException.class, () -> limiter.checkAndRecord(account, null, 0.01));
+    }
+}
@@ -0,0 +1,33 @@
+package com.banking.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AccountIdsTest {
+    @Test
+    void formatAndParseRoundTrip() {
+        String iban = AccountIds.format(123456789L);
+
+        assertEquals("RO49AAAA1B31007123456789", iban);
+        assertEquals(AccountIds.LENGTH, iban.length());
+        assertEquals(123456789L, AccountIds.parse(iban));
+    }
+
+    @Test
+    void rejectsMalformedIds() {
+        assertEquals(AccountIds.INVALID, AccountIds.parse(null));
+        assertEquals(AccountIds.INVALID, AccountIds.parse("RO49AAAA1B3100712345678"));
+        assertEquals(AccountIds.INVALID, AccountIds.parse("RO49AAAA1B3100712345678X"));
+        assertEquals(AccountIds.INVALID, AccountIds.parse("RO48AAAA1B31007123456789"));
+        assertEquals(AccountIds.INVALID, AccountIds.parse("RO49AAAA1B31007012345678"));
+        assertThrows(IllegalArgumentException.class, () -> AccountIds.format(99L));
+    }
+
+    @Test
+    void checksIbanDigits() {
+        assertTrue(AccountIds.isValidIban("GB82WEST12345698765432"));
+        assertFalse(AccountIds.isValidIban("GB83WEST12345698765432"));
+        assertFalse(AccountIds.isValidIban("gb82west12345698765432"));
+    }
+}
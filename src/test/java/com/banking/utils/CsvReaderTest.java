@@ -0,0 +1,126 @@
+package com.banking.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CsvReaderTest {
+    private static InputStream input(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static List<String[]> read(String text, int bufferSize) throws IOException {
+        List<String[]> rows = new ArrayList<>();
+        try (CsvReader reader = new CsvReader(input(text), bufferSize)) {
+            while (reader.next()) {
+                rows.add(reader.toArray());
+            }
+        }
+        return rows;
+    }
+
+    private static void assertRows(List<String[]> expected, List<String[]> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals(expected.get(i), actual.get(i), "row " + i);
+        }
+    }
+
+    // What CsvWriter writes reads back field for field, also when quoted fields straddle the read buffer.
+    @Test
+    void readsBackWhatTheWriterWrote() throws IOException {
+        List<String[]> rows = List.<String[]>of(
+                new String[]{"1", "Ana", "Pop", "30"},
+                new String[]{"2", "Pop, Ana", "say \"hi\"", ""},
+                new String[]{"3", "two\nlines", "cr\r\nlf", "\"\""},
+                new String[]{""},
+                new String[]{"", ""});
+        StringWriter text = new StringWriter();
+        try (CsvWriter writer = new CsvWriter(text)) {
+            for (String[] row : rows) {
+                writer.writeRow(row);
+            }
+        }
+
+        assertRows(rows, read(text.toString(), 16));
+        assertRows(rows, read(text.toString(), 1 << 16));
+    }
+
+    // Fields are found eight bytes at a time and decoded only when asked for, so multi-byte text, fields longer than
+    // a word and records cut by the end of the buffer must all come back whole.
+    @Test
+    void readsUtf8AndLongFieldsAcrossTheBuffer() throws IOException {
+        List<String[]> rows = List.<String[]>of(
+                new String[]{"\u0218tefan", "\u021aar\u0103, Bra\u0219ov", "\u20ac 12,50"},
+                new String[]{"RO49AAAA1B31007976550817", "7000000000000004097", "2024-05-19 12:34:56.789+0300"},
+                new String[]{"\u65e5\u672c\u8a9e\u306e\u30c6\u30ad\u30b9\u30c8", "", "x"});
+        StringWriter text = new StringWriter();
+        try (CsvWriter writer = new CsvWriter(text)) {
+            for (String[] row : rows) {
+                writer.writeRow(row);
+            }
+        }
+
+        for (int bufferSize = 16; bufferSize <= 40; bufferSize++) {
+            assertRows(rows, read(text.toString(), bufferSize));
+        }
+        assertRows(rows, read(text.toString(), 1 << 16));
+        assertArrayEquals(new String[]{"0123456789abcdef\"ghij", "k"}, read("0123456789abcdef\"ghij,k", 64).get(0));
+    }
+
+    @Test
+    void writesPlainRowsUnquoted() {
+        assertEquals("1,Ana,30", CsvWriter.formatRow("1", "Ana", "30"));
+        assertEquals("1,\"a,b\",\"x\"\"y\"", CsvWriter.formatRow("1", "a,b", "x\"y"));
+        assertEquals("a,,b", CsvWriter.formatRow("a", null, "b"));
+    }
+
+    @Test
+    void skipsBlankLinesAndCountsLines() throws IOException {
+        try (CsvReader reader = new CsvReader(input("a,b\n\n\"x\ny\",z\r\nlast"))) {
+            assertTrue(reader.next());
+            assertEquals(1, reader.getLineNumber());
+            assertTrue(reader.next());
+            assertEquals(3, reader.getLineNumber());
+            assertEquals("x\ny", reader.get(0));
+            assertEquals(2, reader.fieldCount());
+            assertTrue(reader.next());
+            assertEquals(5, reader.getLineNumber());
+            assertArrayEquals(new String[]{"last"}, reader.toArray());
+            assertFalse(reader.next());
+        }
+    }
+
+    // Broken quoting is reported rather than thrown, and the rest of the input still parses.
+    @Test
+    void flagsMalformedRows() throws IOException {
+        try (CsvReader reader = new CsvReader(input("a\"b,c\n\"x\"y,z\nok,1\n\"open"))) {
+            assertTrue(reader.next());
+            assertTrue(reader.isMalformed());
+            assertArrayEquals(new String[]{"a\"b", "c"}, reader.toArray());
+            assertTrue(reader.next());
+            assertTrue(reader.isMalformed());
+            assertArrayEquals(new String[]{"xy", "z"}, reader.toArray());
+            assertTrue(reader.next());
+            assertFalse(reader.isMalformed());
+            assertTrue(reader.next());
+            assertTrue(reader.isMalformed());
+            assertEquals("open", reader.get(0));
+            assertThrows(IndexOutOfBoundsException.class, () -> reader.get(1));
+        }
+    }
+
+    @Test
+    void parsesASingleRow() throws IOException {
+        assertArrayEquals(new String[]{"a", "b,c"}, CsvReader.parseRow("a,\"b,c\""));
+        assertArrayEquals(new String[0], CsvReader.parseRow(""));
+    }
+}
@@ -0,0 +1,74 @@
+package com.banking.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.text.ParseException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DateCodecTest {
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSxxx");
+
+    // The date java.time gives at the offset a timestamp is written with, whole minutes.
+    private static String expectedDate(long millis) {
+        Instant instant = Instant.ofEpochMilli(millis);
+        int offsetSeconds = ZoneId.systemDefault().getRules().getOffset(instant).getTotalSeconds() / 60 * 60;
+        return instant.atOffset(ZoneOffset.ofTotalSeconds(offsetSeconds)).toLocalDate().toString();
+    }
+
+    // The table-driven arithmetic agrees with java.time across the table's years and past both of its ends.
+    @Test
+    void matchesJavaTime() throws ParseException {
+        Random random = new Random(41);
+        long from = LocalDate.of(1850, 1, 1).toEpochDay() * 86_400_000L;
+        long to = LocalDate.of(2250, 1, 1).toEpochDay() * 86_400_000L;
+        for (int i = 0; i < 100_000; i++) {
+            long millis = from + (long) (random.nextDouble() * (to - from));
+            String timestamp = DateCodec.formatTimestamp(millis);
+            String date = DateCodec.formatDate(millis);
+
+            assertEquals(DateCodec.TIMESTAMP_LENGTH, timestamp.length(), timestamp);
+            assertEquals(expectedDate(millis), date);
+            assertEquals(date, timestamp.substring(0, DateCodec.DATE_LENGTH));
+            assertEquals(millis, DateCodec.parse(timestamp), timestamp);
+            assertEquals(LocalDate.parse(date).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli(),
+                    DateCodec.parse(date), date);
+        }
+    }
+
+    @Test
+    void parsesTimestampsWithAnyOffset() throws ParseException {
+        String text = "2024-02-29T23:59:59.999-05:30";
+
+        assertEquals(java.time.OffsetDateTime.parse(text, TIMESTAMP).toInstant().toEpochMilli(), DateCodec.parse(text));
+        assertEquals(0, DateCodec.parse("1970-01-01T02:00:00.000+02:00"));
+    }
+
+    @Test
+    void endOfDayIsTheLastMillisecondBeforeTheNextDay() throws ParseException {
+        assertEquals(DateCodec.parse("2024-03-01") - 1, DateCodec.parseEndOfDay("2024-02-29"));
+        assertEquals(DateCodec.parse("2025-01-01") - 1, DateCodec.parseEndOfDay("2024-12-31"));
+    }
+
+    @Test
+    void rejectsMalformedAndImpossibleDates() {
+        for (String text : new String[]{"", "2024-1-01", "2024-13-01", "2024-00-10", "2023-02-29", "2024-04-31",
+                "20x4-01-01", "2024-01-01 10:00:00.000+00:00", "2024-01-01T24:00:00.000+00:00",
+                "2024-01-01T10:00:00.000*00:00", "2024-01-01T10:00:00"}) {
+            assertThrows(ParseException.class, () -> DateCodec.parse(text), text);
+        }
+    }
+
+    @Test
+    void comparesOnlyTheDatePart() {
+        assertEquals(0, DateCodec.compareDate("2024-05-06T10:00:00.000+00:00", "2024-05-06"));
+        assertTrue(DateCodec.compareDate("2024-05-06T10:00:00.000+00:00", "2024-05-07") < 0);
+        assertTrue(DateCodec.compareDate("2024-12-01", "2024-05-07") > 0);
+    }
+}
@@ -0,0 +1,49 @@
+package com.banking.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdGeneratorTest {
+    @Test
+    void accountNumbersAreValidIbansInOrder() {
+        AccountNumberGenerator generator = new AccountNumberGenerator();
+        long previous = 0;
+        for (int i = 0; i < 1000; i++) {
+            long number = generator.nextId();
+            assertTrue(AccountIds.isValidIban(AccountIds.format(number)));
+            assertTrue(number > previous);
+            previous = number;
+        }
+    }
+
+    @Test
+    void accountNumbersSkipPastObservedOnes() {
+        AccountNumberGenerator generator = new AccountNumberGenerator();
+        long first = generator.nextId();
+        long third = first + 2 * 97;
+
+        AccountNumberGenerator restarted = new AccountNumberGenerator();
+        restarted.observe(third);
+        restarted.observe(first + 1);
+
+        assertEquals(third + 97, restarted.nextId());
+    }
+
+    @Test
+    void snowflakeIdsAreUniqueAndIncreasing() {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(3);
+        Set<Long> seen = new HashSet<>();
+        long previous = Long.MIN_VALUE;
+        for (int i = 0; i < 100_000; i++) {
+            long id = generator.nextId();
+            assertTrue(id > previous);
+            assertTrue(seen.add(id));
+            previous = id;
+        }
+        assertThrows(IllegalArgumentException.class, () -> new SnowflakeIdGenerator(1024));
+    }
+}
@@ -0,0 +1,73 @@
+package com.banking.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PersistentVectorTest {
+    private static void assertSameAs(TreeMap<Integer, String> expected, PersistentVector<String> vector) {
+        assertEquals(expected.size(), vector.size());
+        for (Map.Entry<Integer, String> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), vector.get(entry.getKey()));
+        }
+        List<String> visited = new ArrayList<>();
+        vector.forEach(visited::add);
+        assertEquals(new ArrayList<>(expected.values()), visited);
+    }
+
+    // Random sets and removes match a sorted map, and every earlier version still reads as it did.
+    @Test
+    void everyVersionKeepsItsContents() {
+        Random random = new Random(46);
+        TreeMap<Integer, String> model = new TreeMap<>();
+        PersistentVector<String> vector = PersistentVector.empty();
+        List<TreeMap<Integer, String>> models = new ArrayList<>();
+        List<PersistentVector<String>> versions = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            int index = random.nextInt(4) == 0 ? random.nextInt(Integer.MAX_VALUE) : random.nextInt(3000);
+            if (random.nextInt(3) == 0) {
+                model.remove(index);
+                vector = vector.set(index, null);
+            } else {
+                model.put(index, "v" + i);
+                vector = vector.set(index, "v" + i);
+            }
+            if (i % 500 == 0) {
+                models.add(new TreeMap<>(model));
+                versions.add(vector);
+            }
+        }
+
+        assertSameAs(model, vector);
+        for (int i = 0; i < versions.size(); i++) {
+            assertSameAs(models.get(i), versions.get(i));
+        }
+    }
+
+    @Test
+    void unchangedSetReturnsTheSameVersion() {
+        String value = "a";
+        PersistentVector<String> vector = PersistentVector.<String>empty().set(40, value);
+
+        assertSame(vector, vector.set(40, value));
+        assertSame(vector, vector.set(41, null));
+        assertEquals(0, vector.set(40, null).size());
+    }
+
+    @Test
+    void readsOutsideTheTrieAreEmpty() {
+        PersistentVector<String> vector = PersistentVector.<String>empty().set(3, "a");
+
+        assertNull(vector.get(-1));
+        assertNull(vector.get(1 << 20));
+        assertNull(vector.get(Integer.MAX_VALUE));
+        assertThrows(IndexOutOfBoundsException.class, () -> vector.set(-1, "b"));
+        assertEquals("b", vector.set(Integer.MAX_VALUE, "b").get(Integer.MAX_VALUE));
+    }
+}